@@ -0,0 +1,115 @@
+package com.microservice.cartservice.client;
+
+import com.microservice.cartservice.dto.ProductDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Near-cache of product reads (price, stock, sizes) kept fresh by product-service events.
+ * <p>
+ * Every product has a local version that each inventory or catalog event for it increments.
+ * An entry remembers the version it was loaded under and is stale once the version moved on,
+ * so a load racing with an event is never served afterwards. Entries older than the max age are
+ * also reloaded, in case an event was lost.
+ */
+@Component
+public class ProductCache {
+
+    private static final String METRIC = "cart.product.cache";
+
+    private record Entry(ProductDTO product, long version, long loadedAt) {
+    }
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter stale;
+    private final Counter invalidations;
+    private final DistributionSummary hitAge;
+
+    @Value("${cart.product-cache.max-age-ms:300000}")
+    private long maxAgeMs;
+
+    @Value("${cart.product-cache.max-entries:50000}")
+    private int maxEntries;
+
+    public ProductCache(MeterRegistry meterRegistry) {
+        this.hits = lookups(meterRegistry, "hit");
+        this.misses = lookups(meterRegistry, "miss");
+        this.stale = lookups(meterRegistry, "stale");
+        this.invalidations = Counter.builder(METRIC + ".invalidations")
+                .description("Products invalidated by product-service events")
+                .register(meterRegistry);
+        this.hitAge = DistributionSummary.builder(METRIC + ".age")
+                .description("Age of cached products when served")
+                .baseUnit("milliseconds")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder(METRIC + ".size", entries, Map::size).register(meterRegistry);
+        Gauge.builder(METRIC + ".hit.ratio", this, cache -> {
+            double total = cache.hits.count() + cache.misses.count() + cache.stale.count();
+            return total == 0 ? 0 : cache.hits.count() / total;
+        }).register(meterRegistry);
+    }
+
+    /**
+     * @return the cached product, or null on a miss or when the entry is stale
+     */
+    public ProductDTO get(Long productId) {
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        long age = System.currentTimeMillis() - entry.loadedAt();
+        if (entry.version() != version(productId) || age > maxAgeMs) {
+            entries.remove(productId, entry);
+            stale.increment();
+            return null;
+        }
+        hits.increment();
+        hitAge.record(age);
+        return entry.product();
+    }
+
+    /**
+     * Version to pass to {@link #put} for a load that starts now.
+     */
+    public long version(Long productId) {
+        AtomicLong version = versions.get(productId);
+        return version != null ? version.get() : 0;
+    }
+
+    public void put(Long productId, ProductDTO product, long version) {
+        if (version != version(productId) || (entries.size() >= maxEntries && !entries.containsKey(productId))) {
+            return;
+        }
+        entries.put(productId, new Entry(product, version, System.currentTimeMillis()));
+    }
+
+    public void invalidate(Collection<Long> productIds) {
+        for (Long productId : productIds) {
+            versions.computeIfAbsent(productId, id -> new AtomicLong()).incrementAndGet();
+            entries.remove(productId);
+            invalidations.increment();
+        }
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(METRIC + ".lookups")
+                .description("Product cache lookups by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
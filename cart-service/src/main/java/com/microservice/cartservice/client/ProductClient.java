@@ -0,0 +1,419 @@
+package com.microservice.cartservice.client;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservice.cartservice.dto.ProductDTO;
+import com.microservice.cartservice.exception.InsufficientInventoryException;
+import com.microservice.cartservice.exception.ProductNotFoundException;
+import com.microservice.cartservice.exception.ServiceCommunicationException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The one place cart-service talks to product-service.
+ * <ul>
+ *     <li>Reads are served from {@link ProductCache} when it holds a fresh entry.</li>
+ *     <li>Concurrent lookups of the same product share one in-flight request (single-flight).</li>
+ *     <li>Several products can be looked up at once, with a deadline for the whole batch. Products not
+ *     cached or in flight are loaded with one request to the internal bulk endpoint.</li>
+ *     <li>The internal endpoint is tried first. When it fails for a reason other than "not found",
+ *     it is skipped for a short while and the public endpoint is used directly.</li>
+ *     <li>Latency is recorded per endpoint and outcome as the {@code cart.product.client} timer.</li>
+ * </ul>
+ * A product read is the same for every valid token, so a coalesced caller may be served by a
+ * request sent with another caller's token.
+ */
+@Component
+@Slf4j
+public class ProductClient {
+
+    private static final String METRIC = "cart.product.client";
+    // Largest id list product-service accepts in one bulk request
+    private static final int MAX_BULK_IDS = 100;
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ProductCache productCache;
+    private final Counter coalesced;
+    private final Map<Long, CompletableFuture<ProductDTO>> inFlight = new ConcurrentHashMap<>();
+
+    // Until this time the internal endpoint is considered broken
+    private volatile long internalRetryAt;
+
+    // Until this time products are looked up one by one (e.g. product-service without the bulk endpoint)
+    private volatile long bulkRetryAt;
+
+    @Value("${product.client.internal-retry-after-ms:30000}")
+    private long internalRetryAfterMs;
+
+    public ProductClient(@Qualifier("productWebClient") WebClient webClient,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         ProductCache productCache) {
+        this.webClient = webClient;
+        this.productCache = productCache;
+        this.objectMapper = objectMapper.copy().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.meterRegistry = meterRegistry;
+        this.coalesced = Counter.builder(METRIC + ".coalesced")
+                .description("Product lookups served by a request already in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws ProductNotFoundException if the product does not exist
+     * @throws ServiceCommunicationException if product-service cannot be reached
+     */
+    public ProductDTO getProduct(Long productId, String token) {
+        ProductDTO cached = productCache.get(productId);
+        return cached != null ? cached : await(shared(productId, token));
+    }
+
+    /**
+     * Non-blocking {@link #getProduct}: completes with the product or fails with the same exceptions.
+     */
+    public Mono<ProductDTO> getProductAsync(Long productId, String token) {
+        return Mono.defer(() -> {
+            ProductDTO cached = productCache.get(productId);
+            // Cancelling one caller must not cancel the lookup other callers share
+            return cached != null ? Mono.just(cached) : Mono.fromFuture(shared(productId, token), true);
+        });
+    }
+
+    /**
+     * Like {@link #getProduct} but always asks product-service, for read-modify-write of stock.
+     */
+    public ProductDTO getFreshProduct(Long productId, String token) {
+        // Not coalesced: a request already in flight may have started before the last write
+        productCache.invalidate(List.of(productId));
+        long version = productCache.version(productId);
+        ProductDTO product = await(fetch(productId, token)
+                .switchIfEmpty(Mono.error(() -> new ProductNotFoundException(productId)))
+                .toFuture());
+        productCache.put(productId, product, version);
+        return product;
+    }
+
+    /**
+     * Looks up several products concurrently and waits at most {@code deadline} for all of them.
+     * Products that do not exist are left out; so are products that failed or were not loaded in time,
+     * which are listed in {@link Batch#missing()}.
+     */
+    public Batch getProducts(Collection<Long> productIds, String token, Duration deadline) {
+        Map<Long, ProductDTO> products = new HashMap<>();
+        Map<Long, CompletableFuture<ProductDTO>> futures = start(productIds, token, products);
+        try {
+            CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+                    .get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Collected per product below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return collect(products, futures, deadline);
+    }
+
+    /**
+     * Non-blocking {@link #getProducts}: completes once all products are in or the deadline passed.
+     */
+    public Mono<Batch> getProductsAsync(Collection<Long> productIds, String token, Duration deadline) {
+        return Mono.defer(() -> {
+            Map<Long, ProductDTO> products = new HashMap<>();
+            Map<Long, CompletableFuture<ProductDTO>> futures = start(productIds, token, products);
+            return Mono.fromFuture(CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)), true)
+                    .timeout(deadline)
+                    // Collected per product below
+                    .onErrorResume(error -> Mono.empty())
+                    .then(Mono.fromCallable(() -> collect(products, futures, deadline)));
+        });
+    }
+
+    // Cached products go into products; the rest are looked up and returned as futures
+    private Map<Long, CompletableFuture<ProductDTO>> start(Collection<Long> productIds, String token,
+                                                          Map<Long, ProductDTO> products) {
+        Map<Long, CompletableFuture<ProductDTO>> futures = new LinkedHashMap<>();
+        Map<Long, CompletableFuture<ProductDTO>> owned = new LinkedHashMap<>();
+        for (Long productId : productIds) {
+            if (products.containsKey(productId) || futures.containsKey(productId)) {
+                continue;
+            }
+            ProductDTO cached = productCache.get(productId);
+            if (cached != null) {
+                products.put(productId, cached);
+                continue;
+            }
+            CompletableFuture<ProductDTO> mine = new CompletableFuture<>();
+            CompletableFuture<ProductDTO> existing = claim(productId, mine);
+            futures.put(productId, existing != null ? existing : mine);
+            if (existing == null) {
+                owned.put(productId, mine);
+            }
+        }
+        loadAll(owned, token);
+        return futures;
+    }
+
+    private Batch collect(Map<Long, ProductDTO> products, Map<Long, CompletableFuture<ProductDTO>> futures,
+                          Duration deadline) {
+        Set<Long> missing = new HashSet<>();
+        futures.forEach((productId, future) -> {
+            if (!future.isDone()) {
+                missing.add(productId);
+            } else if (!future.isCompletedExceptionally()) {
+                products.put(productId, future.join());
+            } else if (!isNotFound(future)) {
+                missing.add(productId);
+            }
+        });
+        if (!missing.isEmpty()) {
+            log.warn("{} of {} products not loaded within {} ms", missing.size(), futures.size(), deadline.toMillis());
+        }
+        return new Batch(products, missing);
+    }
+
+    /**
+     * @param products found products by id
+     * @param missing  ids that failed or missed the deadline (as opposed to not existing)
+     */
+    public record Batch(Map<Long, ProductDTO> products, Set<Long> missing) {
+    }
+
+    /**
+     * Sets the absolute stock of a product, or of one size when {@code size} is given.
+     */
+    public void updateInventory(Long productId, Integer size, int quantity, String token) {
+        Map<String, Integer> request = new HashMap<>();
+        request.put("quantity", quantity);
+        if (size != null) {
+            request.put("size", size);
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            webClient.patch()
+                    .uri("/api/products/{id}/inventory", productId)
+                    .headers(headers -> authorize(headers, token))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block();
+            outcome = "success";
+        } catch (WebClientResponseException e) {
+            if (e.getStatusCode().value() == 404) {
+                outcome = "not_found";
+                throw new ProductNotFoundException(productId);
+            }
+            if (e.getStatusCode().value() == 400) {
+                log.error("Bad request when updating inventory: {}", e.getResponseBodyAsString());
+                throw new InsufficientInventoryException(productId, Math.abs(quantity), 0);
+            }
+            throw new ServiceCommunicationException("product", e.getStatusCode().value(), e.getMessage());
+        } catch (RuntimeException e) {
+            throw new ServiceCommunicationException("product", e.getMessage());
+        } finally {
+            sample.stop(timer("inventory", outcome));
+            productCache.invalidate(List.of(productId));
+        }
+    }
+
+    // One request per product id at a time; later callers get the same future
+    private CompletableFuture<ProductDTO> shared(Long productId, String token) {
+        CompletableFuture<ProductDTO> mine = new CompletableFuture<>();
+        CompletableFuture<ProductDTO> existing = claim(productId, mine);
+        if (existing != null) {
+            return existing;
+        }
+        load(productId, mine, token);
+        return mine;
+    }
+
+    /**
+     * Registers {@code mine} as the in-flight lookup of the product.
+     *
+     * @return the lookup already in flight, or null if the caller now owns the lookup and must complete it
+     */
+    private CompletableFuture<ProductDTO> claim(Long productId, CompletableFuture<ProductDTO> mine) {
+        CompletableFuture<ProductDTO> existing = inFlight.putIfAbsent(productId, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        mine.whenComplete((product, error) -> inFlight.remove(productId, mine));
+        return null;
+    }
+
+    private void load(Long productId, CompletableFuture<ProductDTO> future, String token) {
+        long version = productCache.version(productId);
+        fetch(productId, token).subscribe(product -> {
+                    productCache.put(productId, product, version);
+                    future.complete(product);
+                }, future::completeExceptionally,
+                () -> future.completeExceptionally(new ProductNotFoundException(productId)));
+    }
+
+    // Bulk requests of at most MAX_BULK_IDS; one by one while the bulk or internal endpoint is considered broken
+    private void loadAll(Map<Long, CompletableFuture<ProductDTO>> owned, String token) {
+        long now = System.currentTimeMillis();
+        if (owned.size() == 1 || now < bulkRetryAt || now < internalRetryAt) {
+            owned.forEach((productId, future) -> load(productId, future, token));
+            return;
+        }
+        List<Long> ids = List.copyOf(owned.keySet());
+        for (int from = 0; from < ids.size(); from += MAX_BULK_IDS) {
+            Map<Long, CompletableFuture<ProductDTO>> chunk = new LinkedHashMap<>();
+            ids.subList(from, Math.min(from + MAX_BULK_IDS, ids.size())).forEach(id -> chunk.put(id, owned.get(id)));
+            loadBulk(chunk, token);
+        }
+    }
+
+    // Ids missing from the response do not exist
+    private void loadBulk(Map<Long, CompletableFuture<ProductDTO>> chunk, String token) {
+        Map<Long, Long> versions = new HashMap<>();
+        chunk.keySet().forEach(productId -> versions.put(productId, productCache.version(productId)));
+        Mono<List<ProductDTO>> request = webClient.get()
+                .uri(uri -> uri.path("/api/products/internal").queryParam("ids", chunk.keySet().toArray()).build())
+                .headers(headers -> authorize(headers, token))
+                .retrieve()
+                .bodyToFlux(ProductDTO.class)
+                .collectList();
+        timed("internal_bulk", request).subscribe(found -> {
+            Map<Long, ProductDTO> byId = new HashMap<>();
+            found.forEach(product -> byId.put(product.getId(), product));
+            chunk.forEach((productId, future) -> {
+                ProductDTO product = byId.get(productId);
+                if (product != null) {
+                    productCache.put(productId, product, versions.get(productId));
+                    future.complete(product);
+                } else {
+                    future.completeExceptionally(new ProductNotFoundException(productId));
+                }
+            });
+        }, error -> {
+            bulkRetryAt = System.currentTimeMillis() + internalRetryAfterMs;
+            log.warn("Bulk product lookup failed, looking up one by one for {} ms: {}", internalRetryAfterMs, error.getMessage());
+            chunk.forEach((productId, future) -> load(productId, future, token));
+        });
+    }
+
+    private Mono<ProductDTO> fetch(Long productId, String token) {
+        if (System.currentTimeMillis() < internalRetryAt) {
+            return fetchPublic(productId, token);
+        }
+        Mono<ProductDTO> internal = webClient.get()
+                .uri("/api/products/internal/{id}", productId)
+                .headers(headers -> authorize(headers, token))
+                .retrieve()
+                .bodyToMono(ProductDTO.class);
+        return timed("internal", internal)
+                .onErrorResume(error -> !isNotFound(error), error -> {
+                    markInternalBroken(error.getMessage());
+                    return fetchPublic(productId, token);
+                })
+                .onErrorMap(ProductClient::isNotFound, error -> new ProductNotFoundException(productId));
+    }
+
+    // Public endpoint wraps the product in a ResponseObject
+    private Mono<ProductDTO> fetchPublic(Long productId, String token) {
+        Mono<ProductDTO> request = webClient.get()
+                .uri("/api/products/{id}", productId)
+                .headers(headers -> authorize(headers, token))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .flatMap(response -> {
+                    Object data = response.get("data");
+                    // Older product-service versions serialized an Optional
+                    if (data instanceof Map<?, ?> dataMap && dataMap.containsKey("get")) {
+                        data = dataMap.get("get");
+                    }
+                    return data == null ? Mono.empty() : Mono.just(objectMapper.convertValue(data, ProductDTO.class));
+                });
+        return timed("public", request)
+                .onErrorMap(error -> !(error instanceof ProductNotFoundException), error -> isNotFound(error)
+                        ? new ProductNotFoundException(productId)
+                        : error instanceof WebClientResponseException e
+                                ? new ServiceCommunicationException("product", e.getStatusCode().value(), e.getMessage())
+                                : new ServiceCommunicationException("product", error.getMessage()));
+    }
+
+    private <T> Mono<T> timed(String endpoint, Mono<T> call) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return call
+                    .doOnSuccess(value -> sample.stop(timer(endpoint, value != null ? "success" : "not_found")))
+                    .doOnError(error -> sample.stop(timer(endpoint, isNotFound(error) ? "not_found" : "error")));
+        });
+    }
+
+    private void markInternalBroken(String reason) {
+        internalRetryAt = System.currentTimeMillis() + internalRetryAfterMs;
+        log.warn("Internal product endpoint failed, using the public endpoint for {} ms: {}", internalRetryAfterMs, reason);
+    }
+
+    private Timer timer(String endpoint, String outcome) {
+        return Timer.builder(METRIC)
+                .description("Latency of calls to product-service")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static void authorize(HttpHeaders headers, String token) {
+        if (token != null && !token.isEmpty()) {
+            headers.set(HttpHeaders.AUTHORIZATION, token.startsWith("Bearer ") ? token : "Bearer " + token);
+        }
+    }
+
+    private static boolean isNotFound(Throwable error) {
+        return error instanceof ProductNotFoundException
+                || (error instanceof WebClientResponseException e && e.getStatusCode().value() == 404);
+    }
+
+    private static boolean isNotFound(CompletableFuture<ProductDTO> future) {
+        try {
+            future.join();
+            return false;
+        } catch (CompletionException e) {
+            return isNotFound(e.getCause());
+        }
+    }
+
+    private static ProductDTO await(CompletableFuture<ProductDTO> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -42,6 +42,48 @@ public class RabbitMQConfig {
                 .with(cartEventsRoutingKey);
     }
 
+    // product-service events that keep the product near-cache fresh. Every instance needs its own
+    // copy, so the queue is server-named and removed when the instance disconnects.
+    @Bean
+    public DirectExchange productExchange(@Value("${product.exchange.name}") String productExchange) {
+        return new DirectExchange(productExchange);
+    }
+
+    @Bean
+    public Queue productCacheQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding productInventoryCacheBinding(Queue productCacheQueue, DirectExchange productExchange,
+                                                @Value("${product.inventory.routing-key}") String routingKey) {
+        return BindingBuilder.bind(productCacheQueue).to(productExchange).with(routingKey);
+    }
+
+    @Bean
+    public Binding productEventsCacheBinding(Queue productCacheQueue, DirectExchange productExchange,
+                                             @Value("${product.events.routing-key}") String routingKey) {
+        return BindingBuilder.bind(productCacheQueue).to(productExchange).with(routingKey);
+    }
+
+    // Replies to checkout saga steps from product-service and invoice-service
+    @Bean
+    public Queue checkoutQueue(@Value("${cart.queue.checkout}") String checkoutQueue) {
+        return QueueBuilder.durable(checkoutQueue).build();
+    }
+
+    @Bean
+    public Binding checkoutBinding(Queue checkoutQueue, DirectExchange cartExchange,
+                                   @Value("${cart.checkout.routing-key}") String routingKey) {
+        return BindingBuilder.bind(checkoutQueue).to(cartExchange).with(routingKey);
+    }
+
+    // Declared here too, so invoice commands are not dropped when invoice-service has not started yet
+    @Bean
+    public DirectExchange invoiceExchange(@Value("${invoice.exchange.name}") String invoiceExchange) {
+        return new DirectExchange(invoiceExchange);
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
@@ -3,6 +3,7 @@ package com.microservice.cartservice.config;
 import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
@@ -12,6 +13,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
@@ -43,6 +45,38 @@ public class WebClientConfig {
                 .filter(retryFilter()); // Add retry filter
     }
     
+    /**
+     * Client used only for product-service calls, with its own connection pool so slow product
+     * lookups cannot starve other outgoing calls. No retry filter: ProductClient decides between
+     * the internal and public endpoints itself, and coalesced callers should not sit through backoff.
+     */
+    @Bean
+    public WebClient productWebClient(@Value("${api.gateway.url}") String apiGatewayUrl,
+                                      @Value("${product.client.max-connections:50}") int maxConnections,
+                                      @Value("${product.client.pending-acquire-timeout-ms:2000}") long pendingAcquireTimeoutMs,
+                                      @Value("${product.client.response-timeout-ms:3000}") long responseTimeoutMs) {
+        ConnectionProvider pool = ConnectionProvider.builder("product-client")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(60))
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(pool)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 2000)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+
+        return WebClient.builder()
+                .baseUrl(apiGatewayUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .exchangeStrategies(ExchangeStrategies.builder()
+                        .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(5 * 1024 * 1024))
+                        .build())
+                .filter(logResponse())
+                .build();
+    }
+    
     // Filter to perform retry
     private ExchangeFilterFunction retryFilter() {
         return (request, next) -> next.exchange(request)
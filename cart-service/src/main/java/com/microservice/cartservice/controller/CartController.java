@@ -1,10 +1,21 @@
 package com.microservice.cartservice.controller;
 
+import com.microservice.cartservice.dto.CartBatchRequest;
 import com.microservice.cartservice.dto.CartRequest;
+import com.microservice.cartservice.dto.CartSummaryDto;
+import com.microservice.cartservice.dto.CheckoutPreviewDto;
+import com.microservice.cartservice.dto.ExpressCheckoutRequest;
+import com.microservice.cartservice.dto.GuestCartDto;
 import com.microservice.cartservice.models.Cart;
 import com.microservice.cartservice.models.CartDetails;
+import com.microservice.cartservice.models.Checkout;
+import com.microservice.cartservice.models.CheckoutItem;
 import com.microservice.cartservice.service.CartService;
+import com.microservice.cartservice.service.CheckoutSagaService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -16,22 +27,33 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import jakarta.validation.Valid;
+import java.net.URI;
 import java.util.HashMap;
 
+/**
+ * Servlet-mode cart API; with {@code cart.reactive.enabled=true} {@link ReactiveCartController} serves it instead.
+ */
 @RestController
 @RequestMapping("/api/carts")
 @RequiredArgsConstructor
 @Slf4j
+@ConditionalOnProperty(name = "cart.reactive.enabled", havingValue = "false", matchIfMissing = true)
 public class CartController {
 
+    // Carries the signed guest cart token, see GuestCartCodec
+    static final String GUEST_CART_HEADER = "X-Guest-Cart";
+    
     private final CartService cartService;
     private final WebClient.Builder webClientBuilder;
+    // Absent when RabbitMQ is disabled; checkout then runs synchronously
+    private final ObjectProvider<CheckoutSagaService> checkoutSagaService;
     @Value("${api.gateway.url}")
     private String apiGatewayUrl;
     
@@ -41,6 +63,38 @@ public class CartController {
         return ResponseEntity.ok(cartService.getOrCreateCart(userId));
     }
     
+    /**
+     * Item count, total and version of the user's cart for the storefront header, answered from memory.
+     * Polling with the returned ETag in {@code If-None-Match} gets 304 until the cart changes.
+     */
+    @GetMapping("/user/{userId}/summary")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<CartSummaryDto> getUserCartSummary(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return summary(cartService.getCartSummary(userId), ifNoneMatch);
+    }
+    
+    // Weak ETag of cart and version; the body is left out when the client already has it
+    static ResponseEntity<CartSummaryDto> summary(CartSummaryDto summary, String ifNoneMatch) {
+        String eTag = "W/\"" + summary.getCartId() + "-" + summary.getVersion() + "\"";
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || tag.equals(eTag) || tag.equals(eTag.substring(2))) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(eTag)
+                            .cacheControl(CacheControl.noCache().cachePrivate())
+                            .build();
+                }
+            }
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(summary);
+    }
+    
     @PostMapping("/user/{userId}/items")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<Cart> addToCart(
@@ -50,6 +104,63 @@ public class CartController {
         return ResponseEntity.ok(cartService.addToCart(userId, request, getTokenValue(token)));
     }
     
+    /**
+     * Applies a list of ADD / UPDATE / REMOVE operations as one change and returns the cart.
+     */
+    @PostMapping("/user/{userId}/items:batch")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Cart> applyBatch(
+            @PathVariable Long userId,
+            @Valid @RequestBody CartBatchRequest request,
+            @RequestHeader("Authorization") String token) {
+        return ResponseEntity.ok(cartService.applyBatch(userId, request, getTokenValue(token)));
+    }
+    
+    /**
+     * Guest cart of a shopper who is not signed in. The client keeps the cart as a signed token, sends it in
+     * {@code X-Guest-Cart} and replaces it with the {@code token} of every response; nothing is stored here.
+     */
+    @GetMapping("/guest")
+    public ResponseEntity<GuestCartDto> getGuestCart(
+            @RequestHeader(value = GUEST_CART_HEADER, required = false) String guestToken) {
+        return ResponseEntity.ok(cartService.getGuestCart(guestToken));
+    }
+    
+    @PostMapping("/guest/items")
+    public ResponseEntity<GuestCartDto> addToGuestCart(
+            @RequestHeader(value = GUEST_CART_HEADER, required = false) String guestToken,
+            @Valid @RequestBody CartRequest request) {
+        return ResponseEntity.ok(cartService.addToGuestCart(guestToken, request, null));
+    }
+    
+    @PatchMapping("/guest/items/{productId}")
+    public ResponseEntity<GuestCartDto> updateGuestQuantity(
+            @RequestHeader(value = GUEST_CART_HEADER, required = false) String guestToken,
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer size,
+            @RequestParam int quantity) {
+        return ResponseEntity.ok(cartService.updateGuestQuantity(guestToken, productId, size, quantity));
+    }
+    
+    @DeleteMapping("/guest/items/{productId}")
+    public ResponseEntity<GuestCartDto> removeFromGuestCart(
+            @RequestHeader(value = GUEST_CART_HEADER, required = false) String guestToken,
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(cartService.removeFromGuestCart(guestToken, productId, size));
+    }
+    
+    /**
+     * Moves the guest cart into the user's cart after login; the client drops its token afterwards.
+     */
+    @PostMapping("/user/{userId}/merge-guest")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Cart> mergeGuestCart(
+            @PathVariable Long userId,
+            @RequestHeader(value = GUEST_CART_HEADER, required = false) String guestToken) {
+        return ResponseEntity.ok(cartService.mergeGuestCart(userId, guestToken));
+    }
+    
     @GetMapping("/{cartId}/items")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<List<CartDetails>> getCartDetails(@PathVariable Long cartId) {
@@ -60,8 +171,9 @@ public class CartController {
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<Void> removeFromCart(
             @PathVariable Long cartId,
-            @PathVariable Long productId) {
-        cartService.removeFromCart(cartId, productId);
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer size) {
+        cartService.removeFromCart(cartId, productId, size);
         return ResponseEntity.ok().build();
     }
     
@@ -70,17 +182,51 @@ public class CartController {
     public ResponseEntity<CartDetails> updateQuantity(
             @PathVariable Long cartId,
             @PathVariable Long productId,
+            @RequestParam(required = false) Integer size,
             @RequestParam int quantity,
             @RequestHeader("Authorization") String token) {
-        CartDetails detail = cartService.updateQuantity(cartId, productId, quantity, getTokenValue(token));
+        CartDetails detail = cartService.updateQuantity(cartId, productId, size, quantity, getTokenValue(token));
         return ResponseEntity.ok(detail);
     }
     
+    /**
+     * Dry run of checkout: stock and price issues per line and the total checkout would charge, changing nothing.
+     */
+    @PostMapping("/{cartId}/checkout/preview")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<CheckoutPreviewDto> previewCheckout(
+            @PathVariable Long cartId,
+            @RequestHeader("Authorization") String token) {
+        return ResponseEntity.ok(cartService.previewCheckout(cartId, getTokenValue(token)));
+    }
+    
+    /**
+     * Starts an asynchronous checkout and answers 202 with its id; the outcome is read from
+     * {@code GET /api/carts/checkouts/{checkoutId}}. Expects {@code {"shipAddress": "..."}}.
+     */
     @PostMapping("/{cartId}/checkout")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> checkout(
             @PathVariable Long cartId,
+            @RequestBody(required = false) Map<String, Object> request,
             @RequestHeader("Authorization") String token) {
+        // Lines are priced as they were when added; a changed price answers 409 with the new prices
+        cartService.revalidatePrices(cartId, getTokenValue(token));
+        
+        CheckoutSagaService saga = checkoutSagaService.getIfAvailable();
+        if (saga != null) {
+            Object shipAddress = request != null ? request.get("shipAddress") : null;
+            try {
+                return accepted(saga.start(cartId, shipAddress != null ? shipAddress.toString() : null));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of(
+                            "status", "error",
+                            "message", e.getMessage()
+                        ));
+            }
+        }
+        
         try {
             Map<String, Object> result = cartService.checkout(cartId, getTokenValue(token));
             return ResponseEntity.ok(result);
@@ -94,6 +240,66 @@ public class CartController {
         }
     }
     
+    /**
+     * "Buy now": orders one product without adding it to the cart. Answers like checkout, 202 with the
+     * checkout id, or 200 with the invoice when RabbitMQ is disabled.
+     */
+    @PostMapping("/user/{userId}/express-checkout")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> expressCheckout(
+            @PathVariable Long userId,
+            @Valid @RequestBody ExpressCheckoutRequest request,
+            @RequestHeader("Authorization") String token) {
+        // Priced from product-service now, so there is nothing to revalidate
+        CheckoutItem item = cartService.priceItemAsync(
+                request.getProductId(), request.getSize(), request.getQuantity(), getTokenValue(token)).block();
+        
+        CheckoutSagaService saga = checkoutSagaService.getIfAvailable();
+        if (saga != null) {
+            try {
+                return accepted(saga.startExpress(userId, item, request.getShipAddress()));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of(
+                            "status", "error",
+                            "message", e.getMessage()
+                        ));
+            }
+        }
+        
+        try {
+            return ResponseEntity.ok(cartService.expressCheckout(userId, item, getTokenValue(token)));
+        } catch (Exception e) {
+            log.error("Express checkout error: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()
+                ));
+        }
+    }
+    
+    // 202 pointing at the status endpoint of a started checkout
+    static ResponseEntity<?> accepted(Checkout checkout) {
+        String statusUrl = "/api/carts/checkouts/" + checkout.getCheckoutId();
+        return ResponseEntity.accepted()
+                .location(URI.create(statusUrl))
+                .body(Map.of(
+                    "checkoutId", checkout.getCheckoutId(),
+                    "status", checkout.getStatus(),
+                    "statusUrl", statusUrl
+                ));
+    }
+    
+    @GetMapping("/checkouts/{checkoutId}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Checkout> getCheckout(@PathVariable String checkoutId) {
+        CheckoutSagaService saga = checkoutSagaService.getIfAvailable();
+        return (saga != null ? saga.getCheckout(checkoutId) : Optional.<Checkout>empty())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
     @PostMapping("/invoice/{invoiceId}/payment")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> initiatePayment(
@@ -264,7 +470,7 @@ public class CartController {
         return ResponseEntity.ok().build();
     }
     
-    private String getTokenValue(String authHeader) {
+    static String getTokenValue(String authHeader) {
         // Remove "Bearer " prefix if present
         return authHeader.startsWith("Bearer ") ? 
                 authHeader.substring(7) : authHeader;
@@ -0,0 +1,372 @@
+package com.microservice.cartservice.controller;
+
+import com.microservice.cartservice.dto.CartBatchRequest;
+import com.microservice.cartservice.dto.CartRequest;
+import com.microservice.cartservice.dto.CartSummaryDto;
+import com.microservice.cartservice.dto.CheckoutPreviewDto;
+import com.microservice.cartservice.dto.ExpressCheckoutRequest;
+import com.microservice.cartservice.dto.GuestCartDto;
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.models.CartDetails;
+import com.microservice.cartservice.models.Checkout;
+import com.microservice.cartservice.service.CartService;
+import com.microservice.cartservice.service.CheckoutSagaService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Same API as {@link CartController}, enabled with {@code cart.reactive.enabled=true} (profile "reactive").
+ * <p>
+ * Endpoints that wait on product-, invoice- or payment-service return a {@link Mono}: the servlet thread is
+ * released while the call is in flight and the response is written when it completes. Cart state is served
+ * from {@link com.microservice.cartservice.service.HotCartStore} in memory, so the remaining endpoints answer
+ * directly. Work that still blocks on the database (starting a checkout, the synchronous checkout fallback)
+ * runs on the bounded elastic scheduler instead of a request thread.
+ */
+@RestController
+@RequestMapping("/api/carts")
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "cart.reactive.enabled", havingValue = "true")
+public class ReactiveCartController {
+
+    private final CartService cartService;
+    private final WebClient.Builder webClientBuilder;
+    // Absent when RabbitMQ is disabled; checkout then runs synchronously
+    private final ObjectProvider<CheckoutSagaService> checkoutSagaService;
+    @Value("${api.gateway.url}")
+    private String apiGatewayUrl;
+
+    @GetMapping("/user/{userId}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Cart> getUserCart(@PathVariable Long userId) {
+        return ResponseEntity.ok(cartService.getOrCreateCart(userId));
+    }
+
+    @GetMapping("/user/{userId}/summary")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<CartSummaryDto> getUserCartSummary(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return CartController.summary(cartService.getCartSummary(userId), ifNoneMatch);
+    }
+
+    @PostMapping("/user/{userId}/items")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<Cart>> addToCart(
+            @PathVariable Long userId,
+            @Valid @RequestBody CartRequest request,
+            @RequestHeader("Authorization") String token) {
+        return cartService.addToCartAsync(userId, request, CartController.getTokenValue(token)).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/user/{userId}/items:batch")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<Cart>> applyBatch(
+            @PathVariable Long userId,
+            @Valid @RequestBody CartBatchRequest request,
+            @RequestHeader("Authorization") String token) {
+        return cartService.applyBatchAsync(userId, request, CartController.getTokenValue(token)).map(ResponseEntity::ok);
+    }
+
+    @GetMapping("/guest")
+    public ResponseEntity<GuestCartDto> getGuestCart(
+            @RequestHeader(value = CartController.GUEST_CART_HEADER, required = false) String guestToken) {
+        return ResponseEntity.ok(cartService.getGuestCart(guestToken));
+    }
+
+    @PostMapping("/guest/items")
+    public Mono<ResponseEntity<GuestCartDto>> addToGuestCart(
+            @RequestHeader(value = CartController.GUEST_CART_HEADER, required = false) String guestToken,
+            @Valid @RequestBody CartRequest request) {
+        return cartService.addToGuestCartAsync(guestToken, request, null).map(ResponseEntity::ok);
+    }
+
+    @PatchMapping("/guest/items/{productId}")
+    public ResponseEntity<GuestCartDto> updateGuestQuantity(
+            @RequestHeader(value = CartController.GUEST_CART_HEADER, required = false) String guestToken,
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer size,
+            @RequestParam int quantity) {
+        return ResponseEntity.ok(cartService.updateGuestQuantity(guestToken, productId, size, quantity));
+    }
+
+    @DeleteMapping("/guest/items/{productId}")
+    public ResponseEntity<GuestCartDto> removeFromGuestCart(
+            @RequestHeader(value = CartController.GUEST_CART_HEADER, required = false) String guestToken,
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(cartService.removeFromGuestCart(guestToken, productId, size));
+    }
+
+    // Writes the merged cart, so it runs off the request thread like starting a checkout
+    @PostMapping("/user/{userId}/merge-guest")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<Cart>> mergeGuestCart(
+            @PathVariable Long userId,
+            @RequestHeader(value = CartController.GUEST_CART_HEADER, required = false) String guestToken) {
+        return Mono.fromCallable(() -> ResponseEntity.ok(cartService.mergeGuestCart(userId, guestToken)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @GetMapping("/{cartId}/items")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<List<CartDetails>>> getCartDetails(@PathVariable Long cartId) {
+        return cartService.getCartDetailsAsync(cartId).map(ResponseEntity::ok);
+    }
+
+    @DeleteMapping("/{cartId}/items/{productId}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Void> removeFromCart(
+            @PathVariable Long cartId,
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer size) {
+        cartService.removeFromCart(cartId, productId, size);
+        return ResponseEntity.ok().build();
+    }
+
+    @PatchMapping("/{cartId}/items/{productId}")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<CartDetails>> updateQuantity(
+            @PathVariable Long cartId,
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer size,
+            @RequestParam int quantity,
+            @RequestHeader("Authorization") String token) {
+        return cartService.updateQuantityAsync(cartId, productId, size, quantity, CartController.getTokenValue(token))
+                .map(ResponseEntity::ok)
+                // A quantity of 0 removed the line
+                .defaultIfEmpty(ResponseEntity.ok().build());
+    }
+
+    @PostMapping("/{cartId}/checkout/preview")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<CheckoutPreviewDto>> previewCheckout(
+            @PathVariable Long cartId,
+            @RequestHeader("Authorization") String token) {
+        return cartService.previewCheckoutAsync(cartId, CartController.getTokenValue(token)).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/{cartId}/checkout")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<?>> checkout(
+            @PathVariable Long cartId,
+            @RequestBody(required = false) Map<String, Object> request,
+            @RequestHeader("Authorization") String token) {
+        // Lines are priced as they were when added; a changed price answers 409 with the new prices
+        Mono<Cart> revalidated = cartService.revalidatePricesAsync(cartId, CartController.getTokenValue(token));
+        
+        CheckoutSagaService saga = checkoutSagaService.getIfAvailable();
+        if (saga != null) {
+            Object shipAddress = request != null ? request.get("shipAddress") : null;
+            return revalidated.then(Mono.<ResponseEntity<?>>fromCallable(() ->
+                            CartController.accepted(saga.start(cartId, shipAddress != null ? shipAddress.toString() : null)))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest()
+                            .body(Map.of(
+                                "status", "error",
+                                "message", e.getMessage()
+                            )))));
+        }
+
+        return revalidated.then(Mono.<ResponseEntity<?>>fromCallable(() -> ResponseEntity.ok(cartService.checkout(cartId, CartController.getTokenValue(token))))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.error("Checkout error: {}", e.getMessage());
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(Map.of(
+                                "status", "error",
+                                "message", e.getMessage()
+                            )));
+                }));
+    }
+
+    @PostMapping("/user/{userId}/express-checkout")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<?>> expressCheckout(
+            @PathVariable Long userId,
+            @Valid @RequestBody ExpressCheckoutRequest request,
+            @RequestHeader("Authorization") String token) {
+        String actualToken = CartController.getTokenValue(token);
+        CheckoutSagaService saga = checkoutSagaService.getIfAvailable();
+        if (saga != null) {
+            return cartService.priceItemAsync(request.getProductId(), request.getSize(), request.getQuantity(), actualToken)
+                    .publishOn(Schedulers.boundedElastic())
+                    .<ResponseEntity<?>>map(item -> CartController.accepted(saga.startExpress(userId, item, request.getShipAddress())))
+                    .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest()
+                            .body(Map.of(
+                                "status", "error",
+                                "message", e.getMessage()
+                            ))));
+        }
+
+        return cartService.priceItemAsync(request.getProductId(), request.getSize(), request.getQuantity(), actualToken)
+                .flatMap(item -> Mono.<ResponseEntity<?>>fromCallable(() -> ResponseEntity.ok(cartService.expressCheckout(userId, item, actualToken)))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            log.error("Express checkout error: {}", e.getMessage());
+                            return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                    .body(Map.of(
+                                        "status", "error",
+                                        "message", e.getMessage()
+                                    )));
+                        }));
+    }
+
+    @GetMapping("/checkouts/{checkoutId}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Checkout> getCheckout(@PathVariable String checkoutId) {
+        CheckoutSagaService saga = checkoutSagaService.getIfAvailable();
+        return (saga != null ? saga.getCheckout(checkoutId) : Optional.<Checkout>empty())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/invoice/{invoiceId}/payment")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<?>> initiatePayment(
+            @PathVariable Long invoiceId,
+            @RequestBody Map<String, Object> paymentDetails,
+            @RequestHeader("Authorization") String token) {
+        log.info("Initiating payment for invoice ID {}", invoiceId);
+        String bearer = "Bearer " + CartController.getTokenValue(token);
+        WebClient webClient = webClientBuilder.build();
+
+        // Check if invoice exists and belongs to the user, then create the payment
+        Mono<ResponseEntity<?>> notFound = Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of(
+                    "status", "error",
+                    "message", "Invoice not found"
+                )));
+        return webClient.get()
+                .uri(apiGatewayUrl + "/api/v1/invoices/" + invoiceId)
+                .header(HttpHeaders.AUTHORIZATION, bearer)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .filter(invoiceData -> invoiceData.containsKey("data"))
+                .flatMap(invoiceData -> {
+                    // Create payment request
+                    Map<String, Object> paymentRequest = new HashMap<>();
+                    paymentRequest.put("invoiceId", invoiceId);
+                    paymentRequest.put("description", "Payment for order #" + invoiceId);
+
+                    // Add optional parameters if provided
+                    for (String key : List.of("bankCode", "language", "returnUrl")) {
+                        if (paymentDetails.containsKey(key)) {
+                            paymentRequest.put(key, paymentDetails.get(key));
+                        }
+                    }
+
+                    return webClient.post()
+                            .uri(apiGatewayUrl + "/api/v1/payments/create")
+                            .header(HttpHeaders.AUTHORIZATION, bearer)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(paymentRequest)
+                            .retrieve()
+                            .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                            .<ResponseEntity<?>>map(paymentResponse -> {
+                                log.info("Payment initiated successfully for invoice {}", invoiceId);
+                                return ResponseEntity.ok(paymentResponse);
+                            })
+                            .onErrorResume(WebClientResponseException.class, e -> {
+                                log.error("Payment service error: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
+                                return Mono.just(ResponseEntity.status(e.getStatusCode())
+                                        .body(Map.of(
+                                            "status", "error",
+                                            "message", "Payment initiation failed: " + e.getMessage(),
+                                            "code", e.getStatusCode().value()
+                                        )));
+                            });
+                })
+                .switchIfEmpty(notFound)
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    log.error("Error checking invoice: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
+                    return Mono.just(ResponseEntity.status(e.getStatusCode())
+                            .body(Map.of(
+                                "status", "error",
+                                "message", "Failed to verify invoice: " + e.getMessage()
+                            )));
+                })
+                .onErrorResume(e -> {
+                    log.error("Payment initiation error: {}", e.getMessage(), e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(Map.of(
+                                "status", "error",
+                                "message", "Payment initiation failed: " + e.getMessage()
+                            )));
+                });
+    }
+
+    @GetMapping("/invoice/{invoiceId}")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<?>> getInvoiceDetails(
+            @PathVariable Long invoiceId,
+            @RequestHeader("Authorization") String token) {
+        log.info("Retrieving invoice details for ID: {}", invoiceId);
+        return proxyGet("/api/v1/invoices/" + invoiceId, token, "invoice", "Failed to get invoice: ");
+    }
+
+    @GetMapping("/payment/{invoiceId}/status")
+    @PreAuthorize("hasRole('USER')")
+    public Mono<ResponseEntity<?>> getPaymentStatus(
+            @PathVariable Long invoiceId,
+            @RequestHeader("Authorization") String token) {
+        log.info("Retrieving payment status for invoice ID: {}", invoiceId);
+        return proxyGet("/api/v1/payments/status/" + invoiceId, token, "payment", "Failed to get payment status: ");
+    }
+
+    @DeleteMapping("/{cartId}/clear")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Void> clearCart(@PathVariable Long cartId) {
+        cartService.clearCart(cartId);
+        return ResponseEntity.ok().build();
+    }
+
+    // Passes a GET through the API gateway, mapping errors the way CartController does
+    private Mono<ResponseEntity<?>> proxyGet(String path, String token, String service, String failure) {
+        return webClientBuilder.build()
+                .get()
+                .uri(apiGatewayUrl + path)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + CartController.getTokenValue(token))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    log.error("Error from {} service: {} - {}", service, e.getStatusCode(), e.getResponseBodyAsString());
+                    return Mono.just(ResponseEntity.status(e.getStatusCode())
+                            .body(Map.of(
+                                "status", "error",
+                                "message", failure + e.getMessage(),
+                                "code", e.getStatusCode().value()
+                            )));
+                })
+                .onErrorResume(e -> {
+                    log.error("Error calling {} service: {}", service, e.getMessage(), e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(Map.of(
+                                "status", "error",
+                                "message", failure + e.getMessage()
+                            )));
+                });
+    }
+}
@@ -0,0 +1,49 @@
+package com.microservice.cartservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several cart changes applied together, in order, all or none.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartBatchRequest {
+
+    public enum Type {
+        // Adds quantity to the line, creating it if needed
+        ADD,
+        // Sets the quantity of a line already in the cart; 0 or less removes it
+        UPDATE,
+        REMOVE
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Operation {
+        @NotNull(message = "Operation type is required")
+        private Type type;
+
+        @NotNull(message = "Product ID is required")
+        private Long productId;
+
+        // EU size, required for products that track stock per size
+        private Integer size;
+
+        private Integer quantity = 1;
+    }
+
+    @NotEmpty(message = "At least one operation is required")
+    @Size(max = 50, message = "At most 50 operations per batch")
+    private List<@Valid Operation> operations = new ArrayList<>();
+}
@@ -14,6 +14,7 @@ import java.math.BigDecimal;
 public class CartDetailsResponseDto {
     private Long cartDetailsId;
     private Long productId;
+    private Integer size;
     private Integer quantity;
     private BigDecimal total;
     private ProductDTO product;
@@ -14,6 +14,7 @@ import java.math.BigDecimal;
 @AllArgsConstructor
 public class CartEventItem implements Serializable {
     private Long productId;
+    private Integer size;
     private Integer quantity;
     private BigDecimal price;
     private BigDecimal total;
@@ -15,4 +15,7 @@ public class CartRequest {
     
     @Min(value = 1, message = "Quantity must be at least 1")
     private Integer quantity = 1;
+    
+    // EU size, required for products that track stock per size
+    private Integer size;
 }
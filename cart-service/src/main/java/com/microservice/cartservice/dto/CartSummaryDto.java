@@ -0,0 +1,22 @@
+package com.microservice.cartservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * What the storefront header shows of a cart. {@code version} grows with every change of the cart.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartSummaryDto {
+    private Long cartId;
+    private int itemCount;
+    private BigDecimal total;
+    private long version;
+}
@@ -0,0 +1,34 @@
+package com.microservice.cartservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A checkout saga step sent to another service: ORDER_RESERVE_REQUESTED and ORDER_CANCELLED to
+ * product-service, CHECKOUT_INVOICE_REQUESTED to invoice-service.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutCommand implements Serializable {
+    private String eventId;
+    private String eventType;
+    private LocalDateTime eventTime;
+    
+    private String checkoutId;
+    private Long userId;
+    private String shipAddress;
+    private BigDecimal totalAmount;
+    
+    @Builder.Default
+    private List<CartEventItem> items = new ArrayList<>();
+}
@@ -0,0 +1,28 @@
+package com.microservice.cartservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What checking out the cart at {@code version} would do, without doing it. {@code ready} is true when the
+ * cart has lines and none has an issue; {@code total} is at the current prices and leaves out products that are gone.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutPreviewDto {
+    private Long cartId;
+    private long version;
+    private boolean ready;
+    private BigDecimal total;
+    
+    @Builder.Default
+    private List<CheckoutPreviewItemDto> items = new ArrayList<>();
+}
@@ -0,0 +1,33 @@
+package com.microservice.cartservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutPreviewItemDto {
+    
+    public enum Issue {
+        PRICE_CHANGED, OUT_OF_STOCK, INSUFFICIENT_STOCK, PRODUCT_NOT_FOUND, UNAVAILABLE
+    }
+    
+    private Long productId;
+    private Integer size;
+    private Integer quantity;
+    // Price captured in the cart, and the price checkout would charge now
+    private BigDecimal unitPrice;
+    private BigDecimal currentPrice;
+    private Integer available;
+    private BigDecimal total;
+    
+    @Builder.Default
+    private List<Issue> issues = new ArrayList<>();
+}
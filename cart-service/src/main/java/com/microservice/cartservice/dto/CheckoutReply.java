@@ -0,0 +1,27 @@
+package com.microservice.cartservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of a checkout saga step: STOCK_RESERVED / STOCK_REJECTED from product-service,
+ * INVOICE_CREATED / INVOICE_REJECTED from invoice-service.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutReply implements Serializable {
+    private String eventId;
+    private String eventType;
+    private LocalDateTime eventTime;
+    
+    private String checkoutId;
+    private Long invoiceId;
+    private BigDecimal totalAmount;
+    private String reason;
+}
@@ -0,0 +1,26 @@
+package com.microservice.cartservice.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A single "buy now" item, ordered without going through the cart.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpressCheckoutRequest {
+    @NotNull(message = "Product ID is required")
+    private Long productId;
+    
+    @Min(value = 1, message = "Quantity must be at least 1")
+    private Integer quantity = 1;
+    
+    // EU size, required for products that track stock per size
+    private Integer size;
+    
+    private String shipAddress;
+}
@@ -0,0 +1,26 @@
+package com.microservice.cartservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A guest cart and the signed token that holds it; the client sends the token back with the next change.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GuestCartDto {
+    private String token;
+    private int itemCount;
+    private BigDecimal total;
+    
+    @Builder.Default
+    private List<GuestCartItemDto> items = new ArrayList<>();
+}
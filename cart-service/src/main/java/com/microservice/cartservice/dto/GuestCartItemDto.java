@@ -0,0 +1,20 @@
+package com.microservice.cartservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GuestCartItemDto {
+    private Long productId;
+    private Integer size;
+    private Integer quantity;
+    private BigDecimal unitPrice;
+    private BigDecimal total;
+}
@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -18,6 +19,8 @@ public class ProductDTO {
     private BigDecimal productPrice;
     private String imgUrl;
     private Integer quantity;
+    private Boolean sizeTracked;
+    private Map<Integer, Integer> sizeStock;
     private String brandName;
     private String designer;
     private Integer reorderLevel;
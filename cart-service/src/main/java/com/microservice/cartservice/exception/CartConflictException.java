@@ -0,0 +1,12 @@
+package com.microservice.cartservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class CartConflictException extends RuntimeException {
+    
+    public CartConflictException(Long cartId) {
+        super("Cart " + cartId + " was modified concurrently, please retry");
+    }
+}
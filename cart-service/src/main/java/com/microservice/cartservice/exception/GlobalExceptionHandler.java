@@ -12,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestControllerAdvice
@@ -29,6 +30,37 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(CartConflictException.class)
+    public ResponseEntity<ApiResponse<Void>> handleCartConflictException(CartConflictException ex) {
+        log.warn("Cart conflict: {}", ex.getMessage());
+        ApiResponse<Void> response = ApiResponse.<Void>builder()
+                .status("error")
+                .message(ex.getMessage())
+                .build();
+        return new ResponseEntity<>(response, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(PriceChangedException.class)
+    public ResponseEntity<ApiResponse<List<PriceChangedException.PriceChange>>> handlePriceChangedException(PriceChangedException ex) {
+        log.info("Checkout stopped: {}", ex.getMessage());
+        ApiResponse<List<PriceChangedException.PriceChange>> response = ApiResponse.<List<PriceChangedException.PriceChange>>builder()
+                .status("error")
+                .message(ex.getMessage())
+                .data(ex.getChanges())
+                .build();
+        return new ResponseEntity<>(response, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(InvalidGuestCartException.class)
+    public ResponseEntity<ApiResponse<Void>> handleInvalidGuestCartException(InvalidGuestCartException ex) {
+        log.warn("Rejected guest cart: {}", ex.getMessage());
+        ApiResponse<Void> response = ApiResponse.<Void>builder()
+                .status("error")
+                .message(ex.getMessage())
+                .build();
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(ProductNotFoundException.class)
     public ResponseEntity<ApiResponse<Void>> handleProductNotFoundException(ProductNotFoundException ex) {
         log.error("Product not found: {}", ex.getMessage());
@@ -56,6 +88,16 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ApiResponse<Void>> handleIllegalArgumentException(IllegalArgumentException ex) {
+        log.error("Invalid request: {}", ex.getMessage());
+        ApiResponse<Void> response = ApiResponse.<Void>builder()
+                .status("error")
+                .message(ex.getMessage())
+                .build();
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(ServiceCommunicationException.class)
     public ResponseEntity<ApiResponse<Void>> handleServiceCommunicationException(ServiceCommunicationException ex) {
         log.error("Service communication error: {}", ex.getMessage());
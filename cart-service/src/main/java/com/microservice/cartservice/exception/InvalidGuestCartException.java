@@ -0,0 +1,12 @@
+package com.microservice.cartservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidGuestCartException extends RuntimeException {
+    
+    public InvalidGuestCartException(String message) {
+        super(message);
+    }
+}
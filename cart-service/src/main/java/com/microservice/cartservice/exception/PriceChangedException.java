@@ -0,0 +1,27 @@
+package com.microservice.cartservice.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Thrown at checkout when products in the cart changed price since they were added. The cart
+ * lines already carry the new prices, so checking out again goes through once the user agrees.
+ */
+@Getter
+@ResponseStatus(HttpStatus.CONFLICT)
+public class PriceChangedException extends RuntimeException {
+    
+    public record PriceChange(Long productId, Integer size, BigDecimal oldPrice, BigDecimal newPrice) {
+    }
+    
+    private final List<PriceChange> changes;
+    
+    public PriceChangedException(Long cartId, List<PriceChange> changes) {
+        super("Prices changed for " + changes.size() + " item(s) in cart " + cartId + ", please review before checkout");
+        this.changes = List.copyOf(changes);
+    }
+}
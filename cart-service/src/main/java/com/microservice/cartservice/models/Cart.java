@@ -6,11 +6,14 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "CART")
+@Table(name = "CART",
+        uniqueConstraints = @UniqueConstraint(name = "UK_CART_USER_ID", columnNames = "USER_ID"),
+        indexes = @Index(name = "IDX_CART_UPDATED_AT", columnList = "UPDATED_AT"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,18 +29,23 @@ public class Cart {
     @Column(name = "USER_ID")
     private Long userId;
     
-    @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    // Bumped by every write of the cart; HotCartStore writes only if it is still the version it loaded
+    @Version
+    @Column(name = "VERSION", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+    
+    // Last change of the cart or its lines; CartExpiryService deletes carts idle past the TTL
+    @Column(name = "UPDATED_AT", nullable = false, columnDefinition = "datetime(6) default current_timestamp(6)")
+    private LocalDateTime updatedAt;
+    
+    // Loaded only where asked for, with CartRepository#findWithDetailsByCartId (one fetch-joined select).
+    // TOTAL is kept up to date by HotCartStore as lines change, never re-summed from the lines.
+    @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<CartDetails> cartDetails = new ArrayList<>();
     
-    public void calculateTotal() {
-        BigDecimal total = BigDecimal.ZERO;
-        if (cartDetails != null) {
-            for (CartDetails detail : cartDetails) {
-                if (detail != null && detail.getTotal() != null) {
-                    total = total.add(detail.getTotal());
-                }
-            }
-        }
-        this.total = total;
+    @PrePersist
+    @PreUpdate
+    protected void onWrite() {
+        updatedAt = LocalDateTime.now();
     }
 }
\ No newline at end of file
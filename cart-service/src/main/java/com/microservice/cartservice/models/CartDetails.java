@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 import com.microservice.cartservice.dto.ProductDTO;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "CART_DETAILS")
@@ -23,6 +24,13 @@ public class CartDetails {
     @Column(name = "QUANTITY", nullable = false)
     private Integer quantity;
     
+    // Product price and updatedAt when the line was added; quantity changes are priced from these
+    @Column(name = "UNIT_PRICE")
+    private BigDecimal unitPrice;
+    
+    @Column(name = "PRODUCT_VERSION")
+    private LocalDateTime productVersion;
+    
     @Column(name = "TOTAL")
     private BigDecimal total;
     
@@ -34,6 +42,17 @@ public class CartDetails {
     @Column(name = "PRODUCT_ID")
     private Long productId;
     
+    @Column(name = "SIZE")
+    private Integer size;
+    
+    @Version
+    @Column(name = "VERSION", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+    
     @Transient
     private ProductDTO product;
+    
+    // True when the product could not be loaded in time; product is then null but the line is kept
+    @Transient
+    private boolean partial;
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.microservice.cartservice.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of one checkout saga: reserve stock (product-service), create the invoice
+ * (invoice-service), then take the ordered items out of the cart.
+ * An express checkout orders one item without a cart and has no cart id.
+ */
+@Entity
+@Table(name = "CHECKOUT")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Checkout {
+
+    public enum Status {
+        RESERVING, INVOICING, COMPLETED, FAILED
+    }
+
+    @Id
+    @Column(name = "CHECKOUT_ID", length = 36)
+    private String checkoutId;
+
+    @Column(name = "CART_ID")
+    private Long cartId;
+
+    @Column(name = "USER_ID")
+    private Long userId;
+
+    // Set while the checkout is in progress, so a cart has at most one at a time
+    @Column(name = "ACTIVE_CART_ID", unique = true)
+    @JsonIgnore
+    private Long activeCartId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "STATUS", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "TOTAL_AMOUNT")
+    private BigDecimal totalAmount;
+
+    @Column(name = "SHIP_ADDRESS")
+    private String shipAddress;
+
+    @Column(name = "INVOICE_ID")
+    private Long invoiceId;
+
+    @Column(name = "FAILURE_REASON")
+    private String failureReason;
+
+    // Times the current step was sent
+    @Column(name = "ATTEMPTS", nullable = false)
+    @JsonIgnore
+    private int attempts;
+
+    @Column(name = "CREATED_AT")
+    private LocalDateTime createdAt;
+
+    @Column(name = "UPDATED_AT")
+    private LocalDateTime updatedAt;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "CHECKOUT_ITEM", joinColumns = @JoinColumn(name = "CHECKOUT_ID"))
+    private List<CheckoutItem> items = new ArrayList<>();
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
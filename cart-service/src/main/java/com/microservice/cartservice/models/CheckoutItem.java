@@ -0,0 +1,33 @@
+package com.microservice.cartservice.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * A cart line as it was when the checkout started.
+ */
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutItem {
+    @Column(name = "PRODUCT_ID", nullable = false)
+    private Long productId;
+
+    @Column(name = "SIZE")
+    private Integer size;
+
+    @Column(name = "QUANTITY", nullable = false)
+    private Integer quantity;
+
+    @Column(name = "UNIT_PRICE")
+    private BigDecimal unitPrice;
+
+    @Column(name = "TOTAL")
+    private BigDecimal total;
+}
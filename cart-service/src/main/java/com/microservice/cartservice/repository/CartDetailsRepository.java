@@ -2,12 +2,38 @@ package com.microservice.cartservice.repository;
 
 import com.microservice.cartservice.models.CartDetails;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CartDetailsRepository extends JpaRepository<CartDetails, Long> {
-    Optional<CartDetails> findByCartCartIdAndProductId(Long cartId, Long productId);
-    void deleteByCartCartIdAndProductId(Long cartId, Long productId);
+    Optional<CartDetails> findByCartCartIdAndProductIdAndSize(Long cartId, Long productId, Integer size);
+    void deleteByCartCartIdAndProductIdAndSize(Long cartId, Long productId, Integer size);
+    
+    @Modifying
+    @Query("delete from CartDetails d where d.cart.cartId in :cartIds")
+    int deleteByCartIds(@Param("cartIds") Collection<Long> cartIds);
+    
+    @Query("select distinct d.cart.cartId from CartDetails d where d.productId in :productIds and d.size is null")
+    List<Long> findCartIdsWithUnsizedLines(@Param("productIds") Collection<Long> productIds);
+    
+    /**
+     * Single-statement line change, applied only if the line is still at {@code version}.
+     *
+     * @return 0 if the line was changed or deleted by someone else since
+     */
+    @Modifying
+    @Query("update CartDetails d set d.quantity = :quantity, d.unitPrice = :unitPrice, d.productVersion = :productVersion, "
+            + "d.total = :total, d.version = d.version + 1 where d.cartDetailsId = :id and d.version = :version")
+    int updateLineIfVersion(@Param("id") Long id, @Param("version") Long version, @Param("quantity") Integer quantity,
+                            @Param("unitPrice") BigDecimal unitPrice, @Param("productVersion") LocalDateTime productVersion,
+                            @Param("total") BigDecimal total);
 }
\ No newline at end of file
@@ -1,12 +1,70 @@
 package com.microservice.cartservice.repository;
 
 import com.microservice.cartservice.models.Cart;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Long> {
-    Optional<Cart> findByUserId(Long userId);
-}
\ No newline at end of file
+
+    /**
+     * The cart and all its lines in one select (left join on CART_DETAILS).
+     */
+    @EntityGraph(attributePaths = "cartDetails")
+    Optional<Cart> findWithDetailsByCartId(Long cartId);
+
+    // The oldest cart, should duplicates from before the unique USER_ID constraint remain
+    @Query("select min(c.cartId) from Cart c where c.userId = :userId")
+    Optional<Long> findCartIdByUserId(@Param("userId") Long userId);
+
+    /**
+     * Creates an empty cart for the user unless one exists, in one statement that cannot race.
+     */
+    @Modifying
+    @Query(value = "insert into CART (USER_ID, TOTAL, VERSION, UPDATED_AT) values (:userId, 0, 0, current_timestamp(6)) "
+            + "on duplicate key update USER_ID = USER_ID", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId);
+
+    /**
+     * Sets the total and moves the version to {@code newVersion}, only if the cart is still at {@code version}.
+     *
+     * @return 0 if the cart was written by someone else since (or no longer exists)
+     */
+    @Modifying
+    @Query("update Cart c set c.total = :total, c.version = :newVersion, c.updatedAt = :updatedAt "
+            + "where c.cartId = :cartId and c.version = :version")
+    int updateTotalIfVersion(@Param("cartId") Long cartId, @Param("version") Long version,
+                             @Param("newVersion") Long newVersion, @Param("total") BigDecimal total,
+                             @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Ids of carts not changed since {@code cutoff}, least recently changed first (uses IDX_CART_UPDATED_AT).
+     */
+    @Query("select c.cartId from Cart c where c.updatedAt < :cutoff order by c.updatedAt, c.cartId")
+    List<Long> findIdleCartIds(@Param("cutoff") LocalDateTime cutoff, Pageable page);
+
+    /**
+     * Locks those of the carts still idle since {@code cutoff}, with their lines, so none is changed while deleted.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @EntityGraph(attributePaths = "cartDetails")
+    @Query("select c from Cart c where c.cartId in :cartIds and c.updatedAt < :cutoff")
+    List<Cart> lockIdleCarts(@Param("cartIds") Collection<Long> cartIds, @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("delete from Cart c where c.cartId in :cartIds")
+    int deleteByCartIds(@Param("cartIds") Collection<Long> cartIds);
+}
@@ -0,0 +1,34 @@
+package com.microservice.cartservice.repository;
+
+import com.microservice.cartservice.models.Checkout;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CheckoutRepository extends JpaRepository<Checkout, String> {
+
+    Optional<Checkout> findByActiveCartId(Long cartId);
+
+    // Serializes replies and resends for one checkout across instances
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Checkout c WHERE c.checkoutId = :checkoutId")
+    Optional<Checkout> findForUpdate(@Param("checkoutId") String checkoutId);
+
+    // Items keep the ids they were ordered with, so a cancel releases stock on the product that now holds it
+    @Modifying
+    @Query(value = "UPDATE CHECKOUT_ITEM SET PRODUCT_ID = :targetId, SIZE = :size WHERE PRODUCT_ID = :productId AND SIZE IS NULL",
+           nativeQuery = true)
+    int rekeyMergedItems(@Param("productId") Long productId, @Param("targetId") Long targetId, @Param("size") Integer size);
+
+    List<Checkout> findTop100ByStatusInAndUpdatedAtBefore(Collection<Checkout.Status> statuses, LocalDateTime cutoff);
+}
@@ -72,6 +72,19 @@ public class CartEventPublisher implements CartEventPublisherInterface {
         return publishCartEvent(cart, "CART_CLEARED");
     }
 
+    /**
+     * Publishes a cart expired event
+     *
+     * @param cart The cart as it was when deleted
+     * @return true if the event was published successfully, false otherwise
+     */
+    @Override
+    @Retryable(value = {AmqpException.class}, maxAttempts = 3,
+            backoff = @Backoff(delay = 1000, multiplier = 2))
+    public boolean publishCartExpiredEvent(Cart cart) {
+        return publishCartEvent(cart, "CART_EXPIRED");
+    }
+
     /**
      * Publishes a cart checkout event
      *
@@ -157,10 +170,9 @@ public class CartEventPublisher implements CartEventPublisherInterface {
         return cartDetails.stream()
                 .map(detail -> CartEventItem.builder()
                         .productId(detail.getProductId())
+                        .size(detail.getSize())
                         .quantity(detail.getQuantity())
-                        .price(detail.getTotal().divide(
-                                java.math.BigDecimal.valueOf(detail.getQuantity()),
-                                java.math.RoundingMode.HALF_UP))
+                        .price(detail.getUnitPrice())
                         .total(detail.getTotal())
                         .build())
                 .collect(Collectors.toList());
@@ -39,4 +39,12 @@ public interface CartEventPublisherInterface {
      * @return true if the event was published successfully, false otherwise
      */
     boolean publishCartCheckoutEvent(Cart cart, Long invoiceId);
+
+    /**
+     * Publishes a cart expired event, for a cart deleted after being left idle
+     *
+     * @param cart The cart as it was when deleted
+     * @return true if the event was published successfully, false otherwise
+     */
+    boolean publishCartExpiredEvent(Cart cart);
 }
\ No newline at end of file
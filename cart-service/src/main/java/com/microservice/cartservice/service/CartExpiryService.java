@@ -0,0 +1,152 @@
+package com.microservice.cartservice.service;
+
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.repository.CartDetailsRepository;
+import com.microservice.cartservice.repository.CartRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes carts nobody changed for {@code cart.expiry.ttl-days}, found through the index on
+ * CART.UPDATED_AT. Each batch is locked, deleted and committed on its own, with a pause before the
+ * next one, so no lock is held for long and a run never takes more than a bounded number of batches.
+ * A cart changed after it was selected is kept, as is a cart still used on this instance. Carts
+ * with items are announced with CART_EXPIRED once deleted.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "cart.expiry.enabled", havingValue = "true", matchIfMissing = true)
+public class CartExpiryService {
+
+    private static final String METRIC = "cart.expiry";
+
+    private final CartRepository cartRepository;
+    private final CartDetailsRepository cartDetailsRepository;
+    private final HotCartStore hotCartStore;
+    private final CartEventPublisherInterface cartEventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter cartsReclaimed;
+    private final Counter linesReclaimed;
+    private final DistributionSummary rowsPerRun;
+
+    @Value("${cart.expiry.ttl-days:30}")
+    private long ttlDays;
+
+    @Value("${cart.expiry.batch-size:500}")
+    private int batchSize;
+
+    @Value("${cart.expiry.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    @Value("${cart.expiry.max-batches-per-run:100}")
+    private int maxBatchesPerRun;
+
+    public CartExpiryService(CartRepository cartRepository,
+                             CartDetailsRepository cartDetailsRepository,
+                             HotCartStore hotCartStore,
+                             CartEventPublisherInterface cartEventPublisher,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry) {
+        this.cartRepository = cartRepository;
+        this.cartDetailsRepository = cartDetailsRepository;
+        this.hotCartStore = hotCartStore;
+        this.cartEventPublisher = cartEventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cartsReclaimed = reclaimed(meterRegistry, "CART");
+        this.linesReclaimed = reclaimed(meterRegistry, "CART_DETAILS");
+        this.rowsPerRun = DistributionSummary.builder(METRIC + ".run.rows")
+                .description("Rows deleted by one expiry run")
+                .baseUnit("rows")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${cart.expiry.interval-ms:3600000}",
+               initialDelayString = "${cart.expiry.initial-delay-ms:60000}")
+    public void expireIdleCarts() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(ttlDays);
+        long carts = 0;
+        long lines = 0;
+        // Carts kept as still in use stay first in line, so they are skipped rather than selected again
+        int kept = 0;
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                List<Long> idle = cartRepository.findIdleCartIds(cutoff, PageRequest.of(0, batchSize + kept));
+                List<Long> candidates = idle.subList(Math.min(kept, idle.size()), idle.size());
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                Batch result = deleteBatch(candidates, cutoff);
+                kept += result.inUse();
+                carts += result.deleted().size();
+                for (Cart cart : result.deleted()) {
+                    lines += cart.getCartDetails().size();
+                    if (!cart.getCartDetails().isEmpty()) {
+                        cartEventPublisher.publishCartExpiredEvent(cart);
+                    }
+                }
+                if (candidates.size() < batchSize) {
+                    break;
+                }
+                Thread.sleep(batchPauseMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Cart expiry run stopped: {}", e.getMessage(), e);
+        } finally {
+            cartsReclaimed.increment(carts);
+            linesReclaimed.increment(lines);
+            rowsPerRun.record(carts + lines);
+            if (carts > 0) {
+                log.info("Expired {} carts with {} lines idle since {}", carts, lines, cutoff);
+            }
+        }
+    }
+
+    private record Batch(List<Cart> deleted, int inUse) {
+    }
+
+    // One transaction: lock the carts still idle, then delete their lines and them
+    private Batch deleteBatch(List<Long> candidates, LocalDateTime cutoff) {
+        long cutoffMillis = cutoff.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return transactionTemplate.execute(status -> {
+            List<Cart> idle = new ArrayList<>();
+            int inUse = 0;
+            for (Cart cart : cartRepository.lockIdleCarts(candidates, cutoff)) {
+                if (hotCartStore.release(cart.getCartId(), cart.getUserId(), cutoffMillis)) {
+                    idle.add(cart);
+                } else {
+                    inUse++;
+                }
+            }
+            if (!idle.isEmpty()) {
+                List<Long> cartIds = idle.stream().map(Cart::getCartId).toList();
+                cartDetailsRepository.deleteByCartIds(cartIds);
+                cartRepository.deleteByCartIds(cartIds);
+            }
+            return new Batch(idle, inUse);
+        });
+    }
+
+    private static Counter reclaimed(MeterRegistry meterRegistry, String table) {
+        return Counter.builder(METRIC + ".reclaimed")
+                .description("Rows deleted by cart expiry")
+                .tag("table", table)
+                .register(meterRegistry);
+    }
+}
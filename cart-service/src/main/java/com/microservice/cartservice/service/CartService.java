@@ -1,18 +1,48 @@
 package com.microservice.cartservice.service;
 
+import com.microservice.cartservice.dto.CartBatchRequest;
 import com.microservice.cartservice.dto.CartRequest;
+import com.microservice.cartservice.dto.CartSummaryDto;
+import com.microservice.cartservice.dto.CheckoutPreviewDto;
+import com.microservice.cartservice.dto.GuestCartDto;
 import com.microservice.cartservice.models.Cart;
 import com.microservice.cartservice.models.CartDetails;
+import com.microservice.cartservice.models.CheckoutItem;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.Map;
 
 public interface CartService {
     Cart getOrCreateCart(Long userId);
+    CartSummaryDto getCartSummary(Long userId);
     Cart addToCart(Long userId, CartRequest request, String token);
+    Cart applyBatch(Long userId, CartBatchRequest request, String token);
     List<CartDetails> getCartDetails(Long cartId);
-    void removeFromCart(Long cartId, Long productId);
-    CartDetails updateQuantity(Long cartId, Long productId, int quantity, String token);
+    void removeFromCart(Long cartId, Long productId, Integer size);
+    CartDetails updateQuantity(Long cartId, Long productId, Integer size, int quantity, String token);
+    Cart revalidatePrices(Long cartId, String token);
+    CheckoutPreviewDto previewCheckout(Long cartId, String token);
     Map<String, Object> checkout(Long cartId, String token);
+    // Orders one item without going through the cart: no cart rows are read or written
+    Map<String, Object> expressCheckout(Long userId, CheckoutItem item, String token);
     void clearCart(Long cartId);
+
+    // Guest carts: held in a signed token by the client, never stored; merged into the user's cart at login
+    GuestCartDto getGuestCart(String guestToken);
+    GuestCartDto addToGuestCart(String guestToken, CartRequest request, String token);
+    GuestCartDto updateGuestQuantity(String guestToken, Long productId, Integer size, int quantity);
+    GuestCartDto removeFromGuestCart(String guestToken, Long productId, Integer size);
+    Cart mergeGuestCart(Long userId, String guestToken);
+
+    // Non-blocking variants: product lookups do not hold the calling thread; cart state comes from HotCartStore
+    Mono<Cart> addToCartAsync(Long userId, CartRequest request, String token);
+    Mono<Cart> applyBatchAsync(Long userId, CartBatchRequest request, String token);
+    Mono<List<CartDetails>> getCartDetailsAsync(Long cartId);
+    Mono<CartDetails> updateQuantityAsync(Long cartId, Long productId, Integer size, int quantity, String token);
+    Mono<Cart> revalidatePricesAsync(Long cartId, String token);
+    Mono<CheckoutPreviewDto> previewCheckoutAsync(Long cartId, String token);
+    // One product looked up and priced as an order line, for express checkout
+    Mono<GuestCartDto> addToGuestCartAsync(String guestToken, CartRequest request, String token);
+    Mono<CheckoutItem> priceItemAsync(Long productId, Integer size, int quantity, String token);
 } 
\ No newline at end of file
@@ -0,0 +1,365 @@
+package com.microservice.cartservice.service;
+
+import com.microservice.cartservice.dto.CartEventItem;
+import com.microservice.cartservice.dto.CheckoutCommand;
+import com.microservice.cartservice.dto.CheckoutReply;
+import com.microservice.cartservice.exception.CartNotFoundException;
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.models.Checkout;
+import com.microservice.cartservice.models.CheckoutItem;
+import com.microservice.cartservice.repository.CheckoutRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Checkout as a saga driven over RabbitMQ, so no request thread waits on another service:
+ * <ol>
+ *     <li>RESERVING: product-service takes the stock of every item, or none (ORDER_RESERVE_REQUESTED).</li>
+ *     <li>INVOICING: invoice-service creates the invoice (CHECKOUT_INVOICE_REQUESTED).</li>
+ *     <li>COMPLETED: the ordered quantities are taken out of the cart; lines added meanwhile stay.</li>
+ * </ol>
+ * An express checkout orders a single item without a cart and skips the last step.
+ * A rejected invoice releases the reservation with ORDER_CANCELLED and ends FAILED, as does a
+ * rejected reservation. A step without reply is sent again; both services answer a repeated step
+ * with the first outcome. Reservations that never get a reply are given up after a few attempts,
+ * and a reservation arriving after that is released.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "spring.rabbitmq.enabled", havingValue = "true", matchIfMissing = true)
+public class CheckoutSagaService {
+
+    static final String RESERVE = "ORDER_RESERVE_REQUESTED";
+    static final String RELEASE = "ORDER_CANCELLED";
+    static final String CREATE_INVOICE = "CHECKOUT_INVOICE_REQUESTED";
+
+    private final CheckoutRepository checkoutRepository;
+    private final HotCartStore hotCartStore;
+    private final RabbitTemplate rabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${product.exchange.name}")
+    private String productExchange;
+
+    @Value("${product.order.routing-key}")
+    private String productOrderRoutingKey;
+
+    @Value("${invoice.exchange.name}")
+    private String invoiceExchange;
+
+    @Value("${invoice.checkout.routing-key}")
+    private String invoiceCheckoutRoutingKey;
+
+    // A step without reply for this long is sent again
+    @Value("${cart.checkout.step-timeout-ms:30000}")
+    private long stepTimeoutMs;
+
+    @Value("${cart.checkout.max-reserve-attempts:5}")
+    private int maxReserveAttempts;
+
+    public CheckoutSagaService(CheckoutRepository checkoutRepository,
+                               HotCartStore hotCartStore,
+                               RabbitTemplate rabbitTemplate,
+                               PlatformTransactionManager transactionManager) {
+        this.checkoutRepository = checkoutRepository;
+        this.hotCartStore = hotCartStore;
+        this.rabbitTemplate = rabbitTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Starts checking out the cart and returns at once. While a checkout of the cart is in
+     * progress, that checkout is returned instead of starting another.
+     *
+     * @throws IllegalArgumentException if the cart is empty or no ship address is given
+     */
+    public Checkout start(Long cartId, String shipAddress) {
+        Optional<Checkout> active = checkoutRepository.findByActiveCartId(cartId);
+        if (active.isPresent()) {
+            return active.get();
+        }
+        if (shipAddress == null || shipAddress.isBlank()) {
+            throw new IllegalArgumentException("shipAddress is required");
+        }
+
+        // The cart being ordered is persisted before anything leaves this service
+        hotCartStore.flush(cartId);
+        Cart cart = hotCartStore.get(cartId);
+        if (cart.getCartDetails().isEmpty()) {
+            throw new IllegalArgumentException("Cannot checkout empty cart");
+        }
+
+        Checkout checkout = new Checkout();
+        checkout.setCheckoutId(UUID.randomUUID().toString());
+        checkout.setCartId(cartId);
+        checkout.setActiveCartId(cartId);
+        checkout.setUserId(cart.getUserId());
+        checkout.setStatus(Checkout.Status.RESERVING);
+        checkout.setTotalAmount(cart.getTotal());
+        checkout.setShipAddress(shipAddress.trim());
+        checkout.setAttempts(1);
+        checkout.setItems(cart.getCartDetails().stream()
+                .map(detail -> new CheckoutItem(detail.getProductId(), detail.getSize(), detail.getQuantity(),
+                        detail.getUnitPrice(), detail.getTotal()))
+                .collect(Collectors.toCollection(ArrayList::new)));
+        try {
+            checkout = checkoutRepository.saveAndFlush(checkout);
+        } catch (DataIntegrityViolationException e) {
+            // Another request started checking out this cart first
+            return checkoutRepository.findByActiveCartId(cartId).orElseThrow(() -> e);
+        }
+
+        log.info("Started checkout {} for cart {} with {} items", checkout.getCheckoutId(), cartId, checkout.getItems().size());
+        try {
+            send(checkout, RESERVE);
+        } catch (AmqpException e) {
+            log.warn("Could not send reservation for checkout {}, it will be resent: {}", checkout.getCheckoutId(), e.getMessage());
+        }
+        return checkout;
+    }
+
+    /**
+     * Starts checking out a single item that is not in a cart and returns at once: one
+     * reservation and one invoice, with no cart read or written.
+     *
+     * @throws IllegalArgumentException if no ship address is given
+     */
+    public Checkout startExpress(Long userId, CheckoutItem item, String shipAddress) {
+        if (shipAddress == null || shipAddress.isBlank()) {
+            throw new IllegalArgumentException("shipAddress is required");
+        }
+
+        Checkout checkout = new Checkout();
+        checkout.setCheckoutId(UUID.randomUUID().toString());
+        checkout.setUserId(userId);
+        checkout.setStatus(Checkout.Status.RESERVING);
+        checkout.setTotalAmount(item.getTotal());
+        checkout.setShipAddress(shipAddress.trim());
+        checkout.setAttempts(1);
+        checkout.setItems(new ArrayList<>(List.of(item)));
+        checkout = checkoutRepository.saveAndFlush(checkout);
+
+        log.info("Started express checkout {} of product {} for user {}", checkout.getCheckoutId(), item.getProductId(), userId);
+        try {
+            send(checkout, RESERVE);
+        } catch (AmqpException e) {
+            log.warn("Could not send reservation for checkout {}, it will be resent: {}", checkout.getCheckoutId(), e.getMessage());
+        }
+        return checkout;
+    }
+
+    public Optional<Checkout> getCheckout(String checkoutId) {
+        return checkoutRepository.findById(checkoutId);
+    }
+
+    /**
+     * Re-keys items of checkouts that name products product-service merged into {@code targetId}.
+     */
+    public int rekeyMergedProducts(Long targetId, Map<Long, Integer> mergedSizes) {
+        Integer updated = transactionTemplate.execute(status -> mergedSizes.entrySet().stream()
+                .mapToInt(merged -> checkoutRepository.rekeyMergedItems(merged.getKey(), targetId, merged.getValue()))
+                .sum());
+        return updated != null ? updated : 0;
+    }
+
+    @RabbitListener(queues = "${cart.queue.checkout}", concurrency = "${cart.checkout.concurrency:1}")
+    public void handleReply(CheckoutReply reply) {
+        if (reply == null || reply.getCheckoutId() == null || reply.getEventType() == null) {
+            log.warn("Ignoring invalid checkout reply: {}", reply);
+            return;
+        }
+        log.info("Received checkout reply: type={}, checkoutId={}", reply.getEventType(), reply.getCheckoutId());
+
+        // Messages for the next step go out only once the new state is committed
+        Runnable next = transactionTemplate.execute(status -> {
+            Checkout checkout = checkoutRepository.findForUpdate(reply.getCheckoutId()).orElse(null);
+            if (checkout == null) {
+                log.warn("Reply {} for unknown checkout {}", reply.getEventType(), reply.getCheckoutId());
+                return null;
+            }
+            return switch (reply.getEventType()) {
+                case "STOCK_RESERVED" -> onStockReserved(checkout);
+                case "STOCK_REJECTED" -> onStockRejected(checkout, reply.getReason());
+                case "INVOICE_CREATED" -> onInvoiceCreated(checkout, reply);
+                case "INVOICE_REJECTED" -> onInvoiceRejected(checkout, reply.getReason());
+                default -> {
+                    log.warn("Unhandled checkout reply type: {}", reply.getEventType());
+                    yield null;
+                }
+            };
+        });
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * Sends again the steps that got no reply in time, and gives up reservations that never did.
+     */
+    @Scheduled(fixedDelayString = "${cart.checkout.sweep-interval-ms:5000}",
+               initialDelayString = "${cart.checkout.sweep-interval-ms:5000}")
+    public void resendStalledSteps() {
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(stepTimeoutMs * 1_000_000);
+        List<Checkout> stalled = checkoutRepository.findTop100ByStatusInAndUpdatedAtBefore(
+                List.of(Checkout.Status.RESERVING, Checkout.Status.INVOICING), cutoff);
+
+        for (Checkout candidate : stalled) {
+            try {
+                Runnable next = transactionTemplate.execute(status -> {
+                    Checkout checkout = checkoutRepository.findForUpdate(candidate.getCheckoutId()).orElse(null);
+                    // Moved on, or resent by another instance, since the query
+                    if (checkout == null || checkout.getUpdatedAt().isAfter(cutoff)) {
+                        return null;
+                    }
+                    return switch (checkout.getStatus()) {
+                        case RESERVING -> {
+                            if (checkout.getAttempts() >= maxReserveAttempts) {
+                                fail(checkout, "Stock reservation timed out");
+                                yield null;
+                            }
+                            checkout.setAttempts(checkout.getAttempts() + 1);
+                            yield () -> send(checkout, RESERVE);
+                        }
+                        // Stock is held and the invoice may still be created: keep asking
+                        case INVOICING -> {
+                            checkout.setAttempts(checkout.getAttempts() + 1);
+                            log.warn("Invoice for checkout {} not confirmed after {} attempts",
+                                    checkout.getCheckoutId(), checkout.getAttempts() - 1);
+                            yield () -> send(checkout, CREATE_INVOICE);
+                        }
+                        default -> null;
+                    };
+                });
+                if (next != null) {
+                    next.run();
+                }
+            } catch (Exception e) {
+                log.error("Failed to resend step of checkout {}: {}", candidate.getCheckoutId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private Runnable onStockReserved(Checkout checkout) {
+        if (checkout.getStatus() == Checkout.Status.FAILED) {
+            // Reserved after the checkout was given up
+            log.info("Releasing late reservation of checkout {}", checkout.getCheckoutId());
+            return () -> send(checkout, RELEASE);
+        }
+        if (checkout.getStatus() != Checkout.Status.RESERVING) {
+            return null;
+        }
+        checkout.setStatus(Checkout.Status.INVOICING);
+        checkout.setAttempts(1);
+        return () -> send(checkout, CREATE_INVOICE);
+    }
+
+    private Runnable onStockRejected(Checkout checkout, String reason) {
+        if (checkout.getStatus() == Checkout.Status.RESERVING) {
+            fail(checkout, reason != null ? reason : "Insufficient stock");
+        }
+        return null;
+    }
+
+    private Runnable onInvoiceCreated(Checkout checkout, CheckoutReply reply) {
+        if (checkout.getStatus() != Checkout.Status.INVOICING) {
+            return null;
+        }
+        checkout.setStatus(Checkout.Status.COMPLETED);
+        checkout.setActiveCartId(null);
+        checkout.setInvoiceId(reply.getInvoiceId());
+        if (reply.getTotalAmount() != null) {
+            checkout.setTotalAmount(reply.getTotalAmount());
+        }
+        log.info("Checkout {} completed with invoice {}", checkout.getCheckoutId(), reply.getInvoiceId());
+        // Express checkouts have no cart to take the items out of
+        return checkout.getCartId() != null ? () -> removeOrderedItems(checkout) : null;
+    }
+
+    private Runnable onInvoiceRejected(Checkout checkout, String reason) {
+        if (checkout.getStatus() != Checkout.Status.INVOICING) {
+            return null;
+        }
+        fail(checkout, reason != null ? reason : "Invoice could not be created");
+        return () -> send(checkout, RELEASE);
+    }
+
+    private void fail(Checkout checkout, String reason) {
+        checkout.setStatus(Checkout.Status.FAILED);
+        checkout.setActiveCartId(null);
+        checkout.setFailureReason(reason);
+        log.info("Checkout {} failed: {}", checkout.getCheckoutId(), reason);
+    }
+
+    // Only the ordered quantities: items added to the cart during checkout stay for the next order
+    private void removeOrderedItems(Checkout checkout) {
+        try {
+            hotCartStore.update(checkout.getCartId(), cart -> {
+                for (CheckoutItem item : checkout.getItems()) {
+                    HotCartStore.Line line = cart.line(item.getProductId(), item.getSize());
+                    if (line == null) {
+                        continue;
+                    }
+                    int remaining = line.getQuantity() - item.getQuantity();
+                    if (remaining <= 0) {
+                        cart.removeLine(item.getProductId(), item.getSize());
+                    } else {
+                        cart.setQuantity(item.getProductId(), item.getSize(), remaining);
+                    }
+                }
+            });
+            hotCartStore.flush(checkout.getCartId());
+        } catch (CartNotFoundException e) {
+            log.warn("Cart {} of checkout {} no longer exists", checkout.getCartId(), checkout.getCheckoutId());
+        }
+    }
+
+    private void send(Checkout checkout, String eventType) {
+        CheckoutCommand command = CheckoutCommand.builder()
+                // A release has a fixed id, so product-service restores the stock once however often it is sent
+                .eventId(RELEASE.equals(eventType) ? checkout.getCheckoutId() + "-release" : UUID.randomUUID().toString())
+                .eventType(eventType)
+                .eventTime(LocalDateTime.now())
+                .checkoutId(checkout.getCheckoutId())
+                .userId(checkout.getUserId())
+                .shipAddress(checkout.getShipAddress())
+                .totalAmount(checkout.getTotalAmount())
+                .items(checkout.getItems().stream()
+                        .map(item -> CartEventItem.builder()
+                                .productId(item.getProductId())
+                                .size(item.getSize())
+                                .quantity(item.getQuantity())
+                                // Checkouts started before unit prices were kept have only the total
+                                .price(item.getUnitPrice() != null ? item.getUnitPrice()
+                                        : item.getTotal().divide(BigDecimal.valueOf(item.getQuantity()), 2, RoundingMode.HALF_UP))
+                                .total(item.getTotal())
+                                .build())
+                        .toList())
+                .build();
+
+        if (CREATE_INVOICE.equals(eventType)) {
+            rabbitTemplate.convertAndSend(invoiceExchange, invoiceCheckoutRoutingKey, command);
+        } else {
+            rabbitTemplate.convertAndSend(productExchange, productOrderRoutingKey, command);
+        }
+        log.debug("Sent {} for checkout {}", eventType, checkout.getCheckoutId());
+    }
+}
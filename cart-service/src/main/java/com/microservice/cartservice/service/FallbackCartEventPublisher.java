@@ -43,4 +43,11 @@ public class FallbackCartEventPublisher implements CartEventPublisherInterface {
                 cart.getCartId(), invoiceId, cart.getUserId());
         return true;
     }
+
+    @Override
+    public boolean publishCartExpiredEvent(Cart cart) {
+        log.info("RabbitMQ disabled - Logging cart expired event: cartId={}, userId={}",
+                cart.getCartId(), cart.getUserId());
+        return true;
+    }
 }
\ No newline at end of file
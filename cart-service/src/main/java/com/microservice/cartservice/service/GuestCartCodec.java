@@ -0,0 +1,178 @@
+package com.microservice.cartservice.service;
+
+import com.microservice.cartservice.exception.InvalidGuestCartException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Guest carts live in a token held by the client instead of in MySQL: the lines with their price snapshot,
+ * written as varints and signed with HMAC-SHA256 so the client cannot change prices or quantities.
+ * <p>
+ * Token: {@code base64url(payload) "." base64url(hmac)}. Payload: format version, time of the last change
+ * (epoch seconds), line count, then per line product id, size + 1 (0 = none), quantity, unit price as
+ * unscaled value and scale, product version as epoch seconds + 1 (0 = none) and nanos.
+ */
+@Component
+public class GuestCartCodec {
+
+    private static final byte FORMAT = 1;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public record GuestLine(Long productId, Integer size, int quantity, BigDecimal unitPrice, LocalDateTime productVersion) {
+    }
+
+    private final SecretKeySpec key;
+
+    @Value("${cart.guest.max-lines:50}")
+    private int maxLines;
+
+    @Value("${cart.guest.max-token-bytes:4096}")
+    private int maxTokenBytes;
+
+    // A guest cart not changed for this long is treated as empty
+    @Value("${cart.guest.ttl-days:30}")
+    private long ttlDays;
+
+    public GuestCartCodec(@Value("${cart.guest.secret}") String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the lines do not fit in a token
+     */
+    public String encode(List<GuestLine> lines) {
+        if (lines.size() > maxLines) {
+            throw new IllegalArgumentException("A guest cart holds at most " + maxLines + " lines, please sign in");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + lines.size() * 16);
+        out.write(FORMAT);
+        writeVarLong(out, Instant.now().getEpochSecond());
+        writeVarLong(out, lines.size());
+        for (GuestLine line : lines) {
+            writeVarLong(out, line.productId());
+            writeVarLong(out, line.size() != null ? line.size() + 1 : 0);
+            writeVarLong(out, line.quantity());
+            writeVarLong(out, line.unitPrice().unscaledValue().longValueExact());
+            writeVarLong(out, line.unitPrice().scale());
+            if (line.productVersion() != null) {
+                writeVarLong(out, line.productVersion().toEpochSecond(ZoneOffset.UTC) + 1);
+                writeVarLong(out, line.productVersion().getNano());
+            } else {
+                writeVarLong(out, 0);
+            }
+        }
+        byte[] payload = out.toByteArray();
+        String token = ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(payload));
+        if (token.length() > maxTokenBytes) {
+            throw new IllegalArgumentException("Guest cart is too large, please sign in");
+        }
+        return token;
+    }
+
+    /**
+     * Reads the lines of a token; no token is an empty cart, and so is an expired one.
+     *
+     * @throws InvalidGuestCartException if the token is malformed or its signature does not match
+     */
+    public List<GuestLine> decode(String token) {
+        if (token == null || token.isBlank()) {
+            return new ArrayList<>();
+        }
+        if (token.length() > maxTokenBytes) {
+            throw new InvalidGuestCartException("Guest cart token is too large");
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            throw new InvalidGuestCartException("Guest cart token is malformed");
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidGuestCartException("Guest cart token is malformed");
+        }
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            throw new InvalidGuestCartException("Guest cart token signature does not match");
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            if (in.get() != FORMAT) {
+                throw new InvalidGuestCartException("Guest cart token format is not supported");
+            }
+            long changedAt = readVarLong(in);
+            if (Instant.ofEpochSecond(changedAt).plusSeconds(ttlDays * 86_400).isBefore(Instant.now())) {
+                return new ArrayList<>();
+            }
+            int count = (int) readVarLong(in);
+            List<GuestLine> lines = new ArrayList<>(Math.min(count, maxLines));
+            for (int i = 0; i < count; i++) {
+                Long productId = readVarLong(in);
+                long size = readVarLong(in);
+                int quantity = (int) readVarLong(in);
+                BigDecimal unitPrice = new BigDecimal(BigInteger.valueOf(readVarLong(in)), (int) readVarLong(in));
+                long versionSeconds = readVarLong(in);
+                LocalDateTime productVersion = versionSeconds == 0 ? null
+                        : LocalDateTime.ofEpochSecond(versionSeconds - 1, (int) readVarLong(in), ZoneOffset.UTC);
+                lines.add(new GuestLine(productId, size == 0 ? null : (int) size - 1, quantity, unitPrice, productVersion));
+            }
+            return lines;
+        } catch (BufferUnderflowException e) {
+            throw new InvalidGuestCartException("Guest cart token is malformed");
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            // Mac instances are not thread-safe and cheap to create
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    // Unsigned LEB128: 7 bits per byte, so ids, sizes and quantities take a byte or two
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new InvalidGuestCartException("Guest cart token is malformed");
+    }
+}
@@ -0,0 +1,835 @@
+package com.microservice.cartservice.service;
+
+import com.microservice.cartservice.dto.CartSummaryDto;
+import com.microservice.cartservice.exception.CartConflictException;
+import com.microservice.cartservice.exception.CartNotFoundException;
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.models.CartDetails;
+import com.microservice.cartservice.repository.CartDetailsRepository;
+import com.microservice.cartservice.repository.CartRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Serves cart reads and mutations from memory and writes dirty carts back to MySQL in batches.
+ * <p>
+ * Durability:
+ * <ul>
+ *     <li>A mutation is acknowledged once applied in memory. A crash can lose the mutations of the
+ *     last flush interval; it never leaves a cart half-written, since each cart is persisted as a
+ *     whole snapshot in one transaction.</li>
+ *     <li>{@link #flush(Long)} persists a cart synchronously; checkout uses it. A graceful shutdown
+ *     flushes everything.</li>
+ *     <li>With {@code cart.hot-store.write-back=false} every mutation is flushed before returning.</li>
+ * </ul>
+ * Concurrency: within an instance mutations of a cart are serialized on the cart. Writes to MySQL are
+ * optimistic: the cart row and each changed line are updated only if still at the version this
+ * instance loaded. When another instance wrote the cart first, the cart is reloaded, its unsaved
+ * mutations are replayed on top and the write is retried, up to {@code cart.hot-store.conflict-retries}
+ * times. Reads are only as fresh as the last write or load on this instance, so requests for one cart
+ * should still reach the same instance (sticky routing), or write-back be turned off.
+ */
+@Service
+@Slf4j
+public class HotCartStore {
+
+    private final CartRepository cartRepository;
+    private final CartDetailsRepository cartDetailsRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<Long, HotCart> carts = new ConcurrentHashMap<>();
+    private final Map<Long, Long> cartIdsByUser = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    @Value("${cart.hot-store.write-back:true}")
+    private boolean writeBack;
+
+    @Value("${cart.hot-store.flush-batch-size:100}")
+    private int flushBatchSize;
+
+    // Clean carts not touched for this long are dropped from memory
+    @Value("${cart.hot-store.idle-evict-ms:600000}")
+    private long idleEvictMs;
+
+    @Value("${cart.hot-store.conflict-retries:3}")
+    private int conflictRetries;
+
+    public HotCartStore(CartRepository cartRepository,
+                        CartDetailsRepository cartDetailsRepository,
+                        PlatformTransactionManager transactionManager) {
+        this.cartRepository = cartRepository;
+        this.cartDetailsRepository = cartDetailsRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public record LineKey(Long productId, Integer size) {
+    }
+
+    /**
+     * One cart line: quantity, the unit price and product version captured when the product was
+     * added, and the line total. {@code detailsId} and the row version are known once the line was
+     * persisted.
+     */
+    public static final class Line {
+        private Long detailsId;
+        private Long storedVersion;
+        private int quantity;
+        private BigDecimal unitPrice;
+        private LocalDateTime productVersion;
+        private BigDecimal total;
+        // Cart version of the last change; the line is unsaved while this is above the flushed version
+        private long changedAt;
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public BigDecimal getUnitPrice() {
+            return unitPrice;
+        }
+
+        public LocalDateTime getProductVersion() {
+            return productVersion;
+        }
+
+        public BigDecimal getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * A mutation not persisted yet, kept to be replayed if the stored cart turns out to have moved on.
+     */
+    private static final class Pending {
+        private final long version;
+        private final Function<HotCart, Boolean> mutation;
+        private boolean dropped;
+
+        private Pending(long version, Function<HotCart, Boolean> mutation) {
+            this.version = version;
+            this.mutation = mutation;
+        }
+    }
+
+    /**
+     * In-memory cart. Only touched while holding its monitor (see {@link #update}).
+     */
+    public static final class HotCart {
+        private final Long cartId;
+        private final Long userId;
+        private final Map<LineKey, Line> lines = new LinkedHashMap<>();
+        private BigDecimal total = BigDecimal.ZERO;
+        private int itemCount;
+        // Republished after every change, so summaries are read without the lock
+        private volatile CartSummaryDto summary;
+        private long version;
+        private long flushedVersion;
+        // VERSION of the CART row this state is based on; it moves by the number of mutations written
+        private long storedVersion;
+        // Stored lines removed since the last flush
+        private final List<Long> removedIds = new ArrayList<>();
+        private final List<Pending> pending = new ArrayList<>();
+        private long reloads;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        // Set under the monitor when the cart leaves the map; whoever locks it afterwards loads it again
+        private boolean evicted;
+
+        private HotCart(Long cartId, Long userId) {
+            this.cartId = cartId;
+            this.userId = userId;
+        }
+
+        public Long getCartId() {
+            return cartId;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public BigDecimal getTotal() {
+            return total;
+        }
+
+        public boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        // Stored version plus the mutations not written yet: unchanged by a flush, one more per mutation
+        public long getVersion() {
+            return storedVersion + version - flushedVersion;
+        }
+
+        private void publishSummary() {
+            summary = CartSummaryDto.builder()
+                    .cartId(cartId)
+                    .itemCount(itemCount)
+                    .total(total)
+                    .version(getVersion())
+                    .build();
+        }
+
+        public Line line(Long productId, Integer size) {
+            return lines.get(new LineKey(productId, size));
+        }
+
+        public Map<LineKey, Line> lines() {
+            return Collections.unmodifiableMap(lines);
+        }
+
+        /**
+         * Sets the line at the given product price, keeping the price and product version for later changes.
+         */
+        public void setLine(Long productId, Integer size, int quantity, BigDecimal unitPrice, LocalDateTime productVersion) {
+            Line line = lines.computeIfAbsent(new LineKey(productId, size), key -> new Line());
+            line.unitPrice = unitPrice;
+            line.productVersion = productVersion;
+            setQuantity(line, quantity);
+        }
+
+        /**
+         * Changes the quantity of a line at its captured unit price, without asking product-service.
+         *
+         * @return false if there is no such line
+         */
+        public boolean setQuantity(Long productId, Integer size, int quantity) {
+            Line line = lines.get(new LineKey(productId, size));
+            if (line == null) {
+                return false;
+            }
+            setQuantity(line, quantity);
+            return true;
+        }
+
+        // The cart total moves by the difference of the line total, so a mutation costs the same for any cart size
+        private void setQuantity(Line line, int quantity) {
+            BigDecimal lineTotal = line.unitPrice.multiply(BigDecimal.valueOf(quantity));
+            total = total.subtract(orZero(line.total)).add(lineTotal);
+            itemCount += quantity - line.quantity;
+            line.quantity = quantity;
+            line.total = lineTotal;
+            // update() moves the cart to this version once the mutation returns
+            line.changedAt = version + 1;
+        }
+
+        public boolean removeLine(Long productId, Integer size) {
+            Line removed = lines.remove(new LineKey(productId, size));
+            if (removed == null) {
+                return false;
+            }
+            total = total.subtract(orZero(removed.total));
+            itemCount -= removed.quantity;
+            if (removed.detailsId != null) {
+                removedIds.add(removed.detailsId);
+            }
+            return true;
+        }
+
+        /**
+         * Moves unsized lines of merged products onto the surviving product at their new size,
+         * adding to a line the cart already holds for that size.
+         *
+         * @return false if no line named a merged product
+         */
+        public boolean rekeyMergedLines(Long targetId, Map<Long, Integer> mergedSizes) {
+            boolean changed = false;
+            for (Map.Entry<LineKey, Line> entry : new ArrayList<>(lines.entrySet())) {
+                LineKey key = entry.getKey();
+                Integer size = mergedSizes.get(key.productId());
+                if (key.size() != null || size == null) {
+                    continue;
+                }
+                Line merged = entry.getValue();
+                Line existing = line(targetId, size);
+                Line priced = existing != null ? existing : merged;
+                int quantity = merged.quantity + (existing != null ? existing.quantity : 0);
+                removeLine(key.productId(), null);
+                setLine(targetId, size, quantity, priced.unitPrice, priced.productVersion);
+                changed = true;
+            }
+            return changed;
+        }
+
+        public void clear() {
+            lines.values().forEach(line -> {
+                if (line.detailsId != null) {
+                    removedIds.add(line.detailsId);
+                }
+            });
+            lines.clear();
+            total = BigDecimal.ZERO;
+            itemCount = 0;
+        }
+
+        // Replaces the state with the stored cart; unsaved changes are gone afterwards
+        private void reset(Cart stored) {
+            lines.clear();
+            removedIds.clear();
+            total = BigDecimal.ZERO;
+            itemCount = 0;
+            storedVersion = orZero(stored.getVersion());
+            for (CartDetails detail : stored.getCartDetails()) {
+                Line line = new Line();
+                line.detailsId = detail.getCartDetailsId();
+                line.storedVersion = orZero(detail.getVersion());
+                line.quantity = detail.getQuantity();
+                line.total = detail.getTotal();
+                line.productVersion = detail.getProductVersion();
+                line.unitPrice = detail.getUnitPrice();
+                // Lines stored before unit prices were kept get theirs from the total
+                if (line.unitPrice == null) {
+                    line.unitPrice = line.quantity > 0 && line.total != null
+                            ? line.total.divide(BigDecimal.valueOf(line.quantity), 2, RoundingMode.HALF_UP)
+                            : BigDecimal.ZERO;
+                }
+                LineKey key = new LineKey(detail.getProductId(), detail.getSize());
+                Line previous = lines.put(key, line);
+                total = total.subtract(orZero(previous != null ? previous.total : null)).add(orZero(line.total));
+                itemCount += line.quantity - (previous != null ? previous.quantity : 0);
+                // Duplicate rows for one line are deleted with the next write
+                if (previous != null) {
+                    removedIds.add(previous.detailsId);
+                }
+            }
+        }
+
+        private static long orZero(Long value) {
+            return value != null ? value : 0;
+        }
+
+        private static BigDecimal orZero(BigDecimal value) {
+            return value != null ? value : BigDecimal.ZERO;
+        }
+
+        /**
+         * Detached copy of one line, or null if the cart has no such line.
+         */
+        public CartDetails detail(Long productId, Integer size) {
+            LineKey key = new LineKey(productId, size);
+            Line line = lines.get(key);
+            return line != null ? toDetail(key, line) : null;
+        }
+
+        private static CartDetails toDetail(LineKey key, Line line) {
+            CartDetails detail = new CartDetails();
+            detail.setCartDetailsId(line.detailsId);
+            detail.setProductId(key.productId());
+            detail.setSize(key.size());
+            detail.setQuantity(line.quantity);
+            detail.setUnitPrice(line.unitPrice);
+            detail.setProductVersion(line.productVersion);
+            detail.setTotal(line.total);
+            return detail;
+        }
+
+        // Detached entity view for callers and JSON responses; changes to it are not tracked
+        public Cart toCart() {
+            Cart cart = new Cart();
+            cart.setCartId(cartId);
+            cart.setUserId(userId);
+            cart.setTotal(total);
+            List<CartDetails> details = new ArrayList<>(lines.size());
+            lines.forEach((key, line) -> {
+                CartDetails detail = toDetail(key, line);
+                detail.setCart(cart);
+                details.add(detail);
+            });
+            cart.setCartDetails(details);
+            return cart;
+        }
+    }
+
+    /**
+     * The user's cart, created (one insert) the first time.
+     */
+    public Cart getOrCreateByUser(Long userId) {
+        return get(cartIdForUser(userId));
+    }
+
+    /**
+     * @throws CartNotFoundException if there is no such cart
+     */
+    public Cart get(Long cartId) {
+        return read(cartId, HotCart::toCart);
+    }
+
+    /**
+     * The user's cart id, from memory once known. Otherwise reads only the id (one select, no lines);
+     * the first time the cart is created with an upsert on the unique USER_ID and read again, so
+     * concurrent first requests, on any instance, all end up with the same cart.
+     */
+    public Long cartIdForUser(Long userId) {
+        return cartIdsByUser.computeIfAbsent(userId, id -> cartRepository.findCartIdByUserId(id)
+                .orElseGet(() -> {
+                    transactionTemplate.executeWithoutResult(status -> cartRepository.insertIfAbsent(id));
+                    return cartRepository.findCartIdByUserId(id)
+                            .orElseThrow(() -> new CartNotFoundException(id, "not created"));
+                }));
+    }
+
+    /**
+     * Item count, total and version of the user's cart, kept up to date by every mutation.
+     */
+    public CartSummaryDto summaryForUser(Long userId) {
+        HotCart cart = load(cartIdForUser(userId));
+        cart.lastAccess = System.currentTimeMillis();
+        return cart.summary;
+    }
+
+    /**
+     * Reads the cart under its lock without changing it, e.g. its lines together with their version.
+     *
+     * @throws CartNotFoundException if there is no such cart
+     */
+    public <T> T read(Long cartId, Function<HotCart, T> reader) {
+        while (true) {
+            HotCart cart = load(cartId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                return reader.apply(cart);
+            }
+        }
+    }
+
+    /**
+     * One line of the cart without copying the rest, or null if the cart has no such line.
+     *
+     * @throws CartNotFoundException if there is no such cart
+     */
+    public CartDetails getLine(Long cartId, Long productId, Integer size) {
+        return read(cartId, cart -> cart.detail(productId, size));
+    }
+
+    /**
+     * Applies a mutation and returns the cart as it is afterwards.
+     */
+    public Cart update(Long cartId, Consumer<HotCart> mutation) {
+        return update(cartId, cart -> {
+            mutation.accept(cart);
+            return true;
+        }, HotCart::toCart);
+    }
+
+    /**
+     * Applies a mutation under the cart's lock. The mutation returns false if it changed nothing.
+     * A cart evicted between loading and locking it is loaded again, so no mutation lands on a copy
+     * that is no longer flushed.
+     */
+    public <T> T update(Long cartId, Function<HotCart, Boolean> mutation, Function<HotCart, T> result) {
+        HotCart cart;
+        T value;
+        Pending applied = null;
+        long reloads;
+        while (true) {
+            cart = load(cartId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                if (Boolean.TRUE.equals(mutation.apply(cart))) {
+                    cart.version++;
+                    applied = new Pending(cart.version, mutation);
+                    cart.pending.add(applied);
+                    cart.publishSummary();
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                value = result.apply(cart);
+                reloads = cart.reloads;
+                break;
+            }
+        }
+        if (applied != null) {
+            if (writeBack) {
+                dirty.add(cartId);
+            } else {
+                flush(cartId);
+                synchronized (cart) {
+                    if (applied.dropped) {
+                        throw new CartConflictException(cartId);
+                    }
+                    // Replayed on a newer stored cart, so the result is read again
+                    if (cart.reloads != reloads) {
+                        value = result.apply(cart);
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Re-keys every cart holding lines of products merged into {@code targetId} by product-service.
+     * Dirty carts are flushed first, so the database names every affected cart.
+     *
+     * @return number of carts changed
+     */
+    public int rekeyMergedProducts(Long targetId, Map<Long, Integer> mergedSizes) {
+        flushDirty();
+        int changed = 0;
+        for (Long cartId : cartDetailsRepository.findCartIdsWithUnsizedLines(mergedSizes.keySet())) {
+            try {
+                if (update(cartId, cart -> cart.rekeyMergedLines(targetId, mergedSizes), cart -> true)) {
+                    changed++;
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to re-key merged products in cart {}: {}", cartId, e.getMessage());
+            }
+        }
+        return changed;
+    }
+
+    private HotCart load(Long cartId) {
+        return carts.computeIfAbsent(cartId, id -> {
+            Cart stored = cartRepository.findWithDetailsByCartId(id)
+                    .orElseThrow(() -> new CartNotFoundException(id));
+            HotCart cart = new HotCart(stored.getCartId(), stored.getUserId());
+            cart.reset(stored);
+            cart.publishSummary();
+            if (stored.getUserId() != null) {
+                cartIdsByUser.putIfAbsent(stored.getUserId(), stored.getCartId());
+            }
+            return cart;
+        });
+    }
+
+    /**
+     * Persists the cart now if it has unsaved changes.
+     */
+    public void flush(Long cartId) {
+        HotCart cart = carts.get(cartId);
+        if (cart != null) {
+            flushAll(List.of(cart), true);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.hot-store.flush-interval-ms:500}")
+    public void flushDirty() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<HotCart> batch = new ArrayList<>(flushBatchSize);
+        Iterator<Long> ids = dirty.iterator();
+        while (ids.hasNext()) {
+            Long cartId = ids.next();
+            ids.remove();
+            HotCart cart = carts.get(cartId);
+            if (cart != null) {
+                batch.add(cart);
+            }
+            if (batch.size() == flushBatchSize) {
+                flushBatch(batch);
+                batch = new ArrayList<>(flushBatchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushBatch(batch);
+        }
+    }
+
+    private void flushBatch(List<HotCart> batch) {
+        try {
+            flushAll(batch, false);
+        } catch (RuntimeException e) {
+            log.error("Failed to flush carts: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.hot-store.idle-evict-ms:600000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleEvictMs;
+        carts.values().removeIf(cart -> {
+            synchronized (cart) {
+                boolean evict = cart.lastAccess < cutoff && cart.version == cart.flushedVersion;
+                if (evict) {
+                    cart.evicted = true;
+                    cartIdsByUser.remove(cart.userId, cart.cartId);
+                }
+                return evict;
+            }
+        });
+    }
+
+    /**
+     * Forgets a cart that is about to be deleted, unless it was used on this instance since
+     * {@code cutoff} (epoch millis) or has unsaved changes.
+     *
+     * @return false if the cart is still in use and must be kept
+     */
+    public boolean release(Long cartId, Long userId, long cutoff) {
+        HotCart cart = carts.get(cartId);
+        if (cart != null) {
+            synchronized (cart) {
+                if (cart.lastAccess >= cutoff || cart.version != cart.flushedVersion) {
+                    return false;
+                }
+                cart.evicted = true;
+                carts.remove(cartId, cart);
+            }
+        }
+        if (userId != null) {
+            cartIdsByUser.remove(userId, cartId);
+        }
+        return true;
+    }
+
+    // Cart by cart and waiting for any flush in progress, so no dirty cart is skipped
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Flushing {} dirty carts before shutdown", dirty.size());
+        for (Long cartId : List.copyOf(dirty)) {
+            dirty.remove(cartId);
+            try {
+                flush(cartId);
+            } catch (RuntimeException e) {
+                log.error("Failed to flush cart {} on shutdown: {}", cartId, e.getMessage());
+            }
+        }
+    }
+
+    // One transaction for the batch; if it fails, each cart is retried on its own so one bad cart cannot block the rest.
+    // Background batches skip carts being flushed elsewhere (they stay dirty) so two batches never wait on each other.
+    private void flushAll(List<HotCart> batch, boolean wait) {
+        List<HotCart> locked = new ArrayList<>(batch.size());
+        try {
+            Map<Long, Snapshot> snapshots = new LinkedHashMap<>();
+            for (HotCart cart : batch) {
+                if (wait) {
+                    cart.flushLock.lock();
+                } else if (!cart.flushLock.tryLock()) {
+                    dirty.add(cart.cartId);
+                    continue;
+                }
+                locked.add(cart);
+                Snapshot snapshot = snapshot(cart);
+                if (snapshot != null) {
+                    snapshots.put(cart.cartId, snapshot);
+                }
+            }
+            if (snapshots.size() > 1) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> snapshots.values().forEach(this::persist));
+                    snapshots.values().forEach(this::markFlushed);
+                    return;
+                } catch (RuntimeException e) {
+                    log.warn("Batch flush of {} carts failed, retrying one by one: {}", snapshots.size(), e.getMessage());
+                }
+            }
+            for (Snapshot snapshot : snapshots.values()) {
+                try {
+                    persistWithRetry(snapshot, wait);
+                } catch (RuntimeException e) {
+                    dirty.add(snapshot.cart.cartId);
+                    if (wait) {
+                        throw e;
+                    }
+                    log.error("Failed to flush cart {}: {}", snapshot.cart.cartId, e.getMessage());
+                }
+            }
+        } finally {
+            locked.forEach(cart -> cart.flushLock.unlock());
+        }
+    }
+
+    // After a conflict the cart is reloaded, its unsaved mutations replayed on top and written again.
+    // When the retries run out a synchronous write-through flush drops the mutations (their callers get a
+    // conflict); otherwise they stay unsaved for the next flush.
+    private void persistWithRetry(Snapshot snapshot, boolean wait) {
+        HotCart cart = snapshot.cart;
+        for (int attempt = 0; snapshot != null; attempt++) {
+            try {
+                Snapshot current = snapshot;
+                transactionTemplate.executeWithoutResult(status -> persist(current));
+                markFlushed(snapshot);
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == conflictRetries) {
+                    if (wait && !writeBack) {
+                        reload(cart, false);
+                        return;
+                    }
+                    throw new CartConflictException(cart.cartId);
+                }
+                log.debug("Cart {} was written elsewhere, replaying unsaved mutations: {}", cart.cartId, e.getMessage());
+                if (!reload(cart, true)) {
+                    return;
+                }
+                snapshot = snapshot(cart);
+            }
+        }
+    }
+
+    // Resets the cart to the stored one and replays its unsaved mutations, or drops them.
+    // Returns false if the cart no longer exists.
+    private boolean reload(HotCart cart, boolean replay) {
+        Cart stored = cartRepository.findWithDetailsByCartId(cart.cartId).orElse(null);
+        synchronized (cart) {
+            cart.reloads++;
+            if (stored == null) {
+                log.warn("Cart {} no longer exists, dropping unsaved changes", cart.cartId);
+                cart.evicted = true;
+                carts.remove(cart.cartId, cart);
+                // The user gets a new cart on the next request
+                cartIdsByUser.remove(cart.userId, cart.cartId);
+                drop(cart, cart.pending);
+                return false;
+            }
+            cart.reset(stored);
+            if (!replay) {
+                log.warn("Cart {} kept conflicting, dropping {} unsaved mutations", cart.cartId, cart.pending.size());
+                drop(cart, cart.pending);
+                cart.publishSummary();
+                return true;
+            }
+            List<Pending> rejected = new ArrayList<>();
+            for (Pending pending : cart.pending) {
+                try {
+                    pending.mutation.apply(cart);
+                } catch (RuntimeException e) {
+                    // e.g. a batch update of a line another instance removed
+                    log.warn("Mutation of cart {} no longer applies, dropping it: {}", cart.cartId, e.getMessage());
+                    rejected.add(pending);
+                }
+            }
+            drop(cart, rejected);
+            // Replayed lines carry this version, so they are written with the next snapshot
+            cart.version++;
+            cart.publishSummary();
+            return true;
+        }
+    }
+
+    private static void drop(HotCart cart, List<Pending> mutations) {
+        mutations.forEach(pending -> pending.dropped = true);
+        cart.pending.removeAll(List.copyOf(mutations));
+        if (cart.pending.isEmpty()) {
+            cart.flushedVersion = cart.version;
+        }
+    }
+
+    private record LineWrite(LineKey key, Line line, Long detailsId, Long version, int quantity,
+                             BigDecimal unitPrice, LocalDateTime productVersion, BigDecimal total) {
+    }
+
+    private record Snapshot(HotCart cart, long version, long storedVersion, long newStoredVersion, BigDecimal total,
+                            List<LineWrite> updates, List<LineWrite> inserts, List<Long> removedIds,
+                            List<CartDetails> inserted) {
+    }
+
+    private static Snapshot snapshot(HotCart cart) {
+        synchronized (cart) {
+            if (cart.version == cart.flushedVersion) {
+                return null;
+            }
+            List<LineWrite> updates = new ArrayList<>();
+            List<LineWrite> inserts = new ArrayList<>();
+            cart.lines.forEach((key, line) -> {
+                LineWrite write = new LineWrite(key, line, line.detailsId, line.storedVersion, line.quantity,
+                        line.unitPrice, line.productVersion, line.total);
+                if (line.detailsId == null) {
+                    inserts.add(write);
+                } else if (line.changedAt > cart.flushedVersion) {
+                    updates.add(write);
+                }
+            });
+            return new Snapshot(cart, cart.version, cart.storedVersion,
+                    cart.storedVersion + cart.version - cart.flushedVersion, cart.total, updates, inserts,
+                    List.copyOf(cart.removedIds), new ArrayList<>());
+        }
+    }
+
+    // Writes only what changed, each statement conditional on the version the snapshot is based on.
+    // The cart row goes first: a concurrent writer of the same cart waits on its row lock and then fails its check.
+    private void persist(Snapshot snapshot) {
+        Long cartId = snapshot.cart.cartId;
+        snapshot.inserted.clear();
+        if (cartRepository.updateTotalIfVersion(
+                cartId, snapshot.storedVersion, snapshot.newStoredVersion, snapshot.total, LocalDateTime.now()) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Cart.class, cartId);
+        }
+        for (LineWrite write : snapshot.updates) {
+            if (cartDetailsRepository.updateLineIfVersion(write.detailsId(), write.version(), write.quantity(),
+                    write.unitPrice(), write.productVersion(), write.total()) == 0) {
+                throw new ObjectOptimisticLockingFailureException(CartDetails.class, write.detailsId());
+            }
+        }
+        if (!snapshot.inserts.isEmpty()) {
+            Cart cart = cartRepository.getReferenceById(cartId);
+            List<CartDetails> details = new ArrayList<>(snapshot.inserts.size());
+            for (LineWrite write : snapshot.inserts) {
+                CartDetails detail = new CartDetails();
+                detail.setCart(cart);
+                detail.setProductId(write.key().productId());
+                detail.setSize(write.key().size());
+                detail.setQuantity(write.quantity());
+                detail.setUnitPrice(write.unitPrice());
+                detail.setProductVersion(write.productVersion());
+                detail.setTotal(write.total());
+                details.add(detail);
+            }
+            snapshot.inserted.addAll(cartDetailsRepository.saveAll(details));
+        }
+        if (!snapshot.removedIds.isEmpty()) {
+            // One statement however many lines went, so clearing a cart costs the same as removing a line
+            cartDetailsRepository.deleteAllByIdInBatch(snapshot.removedIds);
+        }
+    }
+
+    private void markFlushed(Snapshot snapshot) {
+        HotCart cart = snapshot.cart;
+        synchronized (cart) {
+            cart.flushedVersion = Math.max(cart.flushedVersion, snapshot.version);
+            cart.storedVersion = snapshot.newStoredVersion;
+            for (LineWrite write : snapshot.updates) {
+                if (cart.lines.get(write.key()) == write.line()) {
+                    write.line().storedVersion = write.version() + 1;
+                }
+            }
+            for (int i = 0; i < snapshot.inserts.size(); i++) {
+                LineWrite write = snapshot.inserts.get(i);
+                CartDetails saved = snapshot.inserted.get(i);
+                if (cart.lines.get(write.key()) == write.line()) {
+                    write.line().detailsId = saved.getCartDetailsId();
+                    write.line().storedVersion = saved.getVersion();
+                } else {
+                    // Removed while being inserted; the row is deleted with the next write
+                    cart.removedIds.add(saved.getCartDetailsId());
+                }
+            }
+            cart.removedIds.removeAll(snapshot.removedIds);
+            cart.pending.removeIf(pending -> pending.version <= snapshot.version);
+            if (cart.version != cart.flushedVersion) {
+                dirty.add(cart.cartId);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.microservice.cartservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservice.cartservice.client.ProductCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Invalidates cached products named in product-service events:
+ * INVENTORY_CHANGED / LOW_STOCK_ALERT (product.inventory) and CATALOG_CHANGED (product.events).
+ * A CATALOG_CHANGED of type MERGE also re-keys cart lines and checkout items of the merged products.
+ * Messages are read as plain JSON since the event classes live in product-service.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "spring.rabbitmq.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ProductEventListener {
+
+    private final ProductCache productCache;
+    private final ObjectMapper objectMapper;
+    private final HotCartStore hotCartStore;
+    private final CheckoutSagaService checkoutSagaService;
+
+    @RabbitListener(queues = "#{productCacheQueue.name}")
+    public void handleProductEvent(Message message) {
+        JsonNode event;
+        try {
+            event = objectMapper.readTree(message.getBody());
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable product event: {}", e.getMessage());
+            return;
+        }
+
+        Set<Long> productIds = new LinkedHashSet<>();
+        event.path("productChanges").forEach(change -> addId(productIds, change.path("productId")));
+        event.path("productIds").forEach(id -> addId(productIds, id));
+        addId(productIds, event.path("productId"));
+
+        if (!productIds.isEmpty()) {
+            productCache.invalidate(productIds);
+            log.debug("Invalidated {} cached products for {} event {}",
+                    productIds.size(), event.path("eventType").asText(), event.path("eventId").asText());
+        }
+
+        if ("MERGE".equals(event.path("changeType").asText()) && event.path("mergedInto").canConvertToLong()) {
+            applyMerge(event.path("mergedInto").asLong(), event.path("mergedSizes"));
+        }
+    }
+
+    // Every instance runs this for its own carts; re-keying an already re-keyed line is a no-op
+    private void applyMerge(Long targetId, JsonNode sizes) {
+        Map<Long, Integer> mergedSizes = new LinkedHashMap<>();
+        sizes.fields().forEachRemaining(size -> {
+            if (size.getValue().canConvertToInt()) {
+                mergedSizes.put(Long.valueOf(size.getKey()), size.getValue().asInt());
+            }
+        });
+        if (mergedSizes.isEmpty()) {
+            return;
+        }
+        int carts = hotCartStore.rekeyMergedProducts(targetId, mergedSizes);
+        int items = checkoutSagaService.rekeyMergedProducts(targetId, mergedSizes);
+        log.info("Re-keyed products {} to product {}: {} carts, {} checkout items", mergedSizes.keySet(), targetId, carts, items);
+    }
+
+    private static void addId(Set<Long> productIds, JsonNode id) {
+        if (id.canConvertToLong()) {
+            productIds.add(id.asLong());
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package com.microservice.cartservice.service.impl;
 
+import com.microservice.cartservice.client.ProductClient;
+import com.microservice.cartservice.dto.CartBatchRequest;
 import com.microservice.cartservice.dto.CartRequest;
+import com.microservice.cartservice.dto.CartSummaryDto;
+import com.microservice.cartservice.dto.CheckoutPreviewDto;
+import com.microservice.cartservice.dto.CheckoutPreviewItemDto;
+import com.microservice.cartservice.dto.GuestCartDto;
+import com.microservice.cartservice.dto.GuestCartItemDto;
 import com.microservice.cartservice.dto.ProductDTO;
+import com.microservice.cartservice.exception.InsufficientInventoryException;
+import com.microservice.cartservice.exception.PriceChangedException;
+import com.microservice.cartservice.exception.ProductNotFoundException;
+import com.microservice.cartservice.exception.ServiceCommunicationException;
 import com.microservice.cartservice.models.Cart;
 import com.microservice.cartservice.models.CartDetails;
-import com.microservice.cartservice.repository.CartDetailsRepository;
-import com.microservice.cartservice.repository.CartRepository;
+import com.microservice.cartservice.models.CheckoutItem;
 import com.microservice.cartservice.service.CartService;
+import com.microservice.cartservice.service.GuestCartCodec;
+import com.microservice.cartservice.service.HotCartStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,55 +26,77 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.reactive.function.client.WebClient;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class CartServiceImpl implements CartService {
 
-    private final CartRepository cartRepository;
-    private final CartDetailsRepository cartDetailsRepository;
+    private final HotCartStore hotCartStore;
     private final WebClient.Builder webClientBuilder;
+    private final ProductClient productClient;
+    private final GuestCartCodec guestCartCodec;
     
     @Value("${api.gateway.url}")
     private String apiGatewayUrl;
-
-    @PersistenceContext
-    private EntityManager entityManager;
+    
+    @Value("${cart.hydration.deadline-ms:2000}")
+    private long hydrationDeadlineMs;
+    
+    @Value("${cart.batch.deadline-ms:3000}")
+    private long batchDeadlineMs;
+    
+    // A checkout preview is answered again from here while its cart version is unchanged
+    @Value("${cart.checkout.preview-ttl-ms:5000}")
+    private long previewTtlMs;
+    
+    @Value("${cart.checkout.preview-max-entries:10000}")
+    private int previewMaxEntries;
+    
+    private final Map<Long, CachedPreview> previews = new ConcurrentHashMap<>();
+    
+    private record CartSnapshot(long version, Cart cart) {
+    }
+    
+    private record CachedPreview(long version, long expiresAt, CheckoutPreviewDto preview) {
+    }
 
     @Override
-    @Transactional
     public Cart getOrCreateCart(Long userId) {
-        return cartRepository.findByUserId(userId)
-                .orElseGet(() -> {
-                    Cart cart = new Cart();
-                    cart.setUserId(userId);
-                    cart.setTotal(BigDecimal.ZERO);
-                    return cartRepository.save(cart);
-                });
+        return hotCartStore.getOrCreateByUser(userId);
+    }
+
+    @Override
+    public CartSummaryDto getCartSummary(Long userId) {
+        return hotCartStore.summaryForUser(userId);
     }
 
     @Override
-    @Transactional
     public Cart addToCart(Long userId, CartRequest request, String token) {
-        Cart cart = getOrCreateCart(userId);
+        return addToCartAsync(userId, request, token).block();
+    }
+
+    @Override
+    public Mono<Cart> addToCartAsync(Long userId, CartRequest request, String token) {
+        Long cartId = hotCartStore.cartIdForUser(userId);
         
         // If no token provided, try to get it from SecurityContext
         String actualToken = token;
@@ -71,36 +105,134 @@ public class CartServiceImpl implements CartService {
             log.debug("Using token from security context: {}", actualToken != null ? "Available" : "Not available");
         }
         
-        // Get product information from product service
-        ProductDTO product = getProductDetails(request.getProductId(), actualToken);
+        // Get product information from product service; the cart is changed off the I/O thread the response arrives on
+        return productClient.getProductAsync(request.getProductId(), actualToken)
+                .publishOn(Schedulers.boundedElastic())
+                .map(product -> {
+                    Integer size = resolveSize(product, request.getSize());
+                    
+                    // Each size is its own line; adding an existing line increases its quantity
+                    return hotCartStore.update(cartId, cart -> {
+                        HotCartStore.Line existing = cart.line(product.getId(), size);
+                        int quantity = (existing != null ? existing.getQuantity() : 0) + request.getQuantity();
+                        cart.setLine(product.getId(), size, quantity, product.getProductPrice(), product.getUpdatedAt());
+                    });
+                });
+    }
+
+    /**
+     * Applies the operations in order as one cart change: every product is looked up in one batch
+     * first, and nothing is changed if any operation is invalid.
+     */
+    @Override
+    public Cart applyBatch(Long userId, CartBatchRequest request, String token) {
+        return applyBatchAsync(userId, request, token).block();
+    }
+
+    @Override
+    public Mono<Cart> applyBatchAsync(Long userId, CartBatchRequest request, String token) {
+        Long cartId = hotCartStore.cartIdForUser(userId);
         
-        // Check if item already exists in cart
-        Optional<CartDetails> existingDetail = cartDetailsRepository.findByCartCartIdAndProductId(
-                cart.getCartId(), request.getProductId());
+        String actualToken = token;
+        if (actualToken == null || actualToken.isEmpty()) {
+            actualToken = extractTokenFromSecurityContext();
+        }
         
-        CartDetails cartDetail;
-        if (existingDetail.isPresent()) {
-            // Update existing item
-            cartDetail = existingDetail.get();
-            cartDetail.setQuantity(cartDetail.getQuantity() + request.getQuantity());
-            cartDetail.setTotal(product.getProductPrice().multiply(
-                    BigDecimal.valueOf(cartDetail.getQuantity())));
-        } else {
-            // Create new cart detail
-            cartDetail = new CartDetails();
-            cartDetail.setCart(cart);
-            cartDetail.setProductId(product.getId());
-            cartDetail.setQuantity(request.getQuantity());
-            cartDetail.setTotal(product.getProductPrice().multiply(
-                    BigDecimal.valueOf(request.getQuantity())));
-            cart.getCartDetails().add(cartDetail);
+        // Only additions need the product; updates reprice at the unit price already on the line
+        List<Long> productIds = request.getOperations().stream()
+                .filter(operation -> operation.getType() == CartBatchRequest.Type.ADD)
+                .map(CartBatchRequest.Operation::getProductId)
+                .distinct()
+                .toList();
+        return productClient.getProductsAsync(productIds, actualToken, Duration.ofMillis(batchDeadlineMs))
+                .publishOn(Schedulers.boundedElastic())
+                .map(batch -> applyBatch(cartId, request, productIds, batch));
+    }
+
+    private Cart applyBatch(Long cartId, CartBatchRequest request, List<Long> productIds, ProductClient.Batch batch) {
+        if (!batch.missing().isEmpty()) {
+            throw new ServiceCommunicationException("product", "Products not loaded in time: " + batch.missing());
+        }
+        Map<Long, ProductDTO> products = batch.products();
+        for (Long productId : productIds) {
+            if (!products.containsKey(productId)) {
+                throw new ProductNotFoundException(productId);
+            }
         }
         
-        cartDetailsRepository.save(cartDetail);
+        // Sizes of added lines are checked against stock before the cart is touched
+        List<Integer> sizes = new ArrayList<>(request.getOperations().size());
+        for (CartBatchRequest.Operation operation : request.getOperations()) {
+            sizes.add(operation.getType() == CartBatchRequest.Type.ADD
+                    ? resolveSize(products.get(operation.getProductId()), operation.getSize())
+                    : operation.getSize());
+        }
         
-        // Recalculate cart total
-        cart.calculateTotal();
-        return cartRepository.save(cart);
+        return hotCartStore.update(cartId, cart -> {
+            // Resulting quantity per touched line, 0 meaning removed; applied only once all operations are valid
+            Map<HotCartStore.LineKey, Integer> quantities = new LinkedHashMap<>();
+            Set<HotCartStore.LineKey> added = new HashSet<>();
+            for (int i = 0; i < request.getOperations().size(); i++) {
+                CartBatchRequest.Operation operation = request.getOperations().get(i);
+                HotCartStore.LineKey key = new HotCartStore.LineKey(operation.getProductId(), sizes.get(i));
+                Integer pending = quantities.get(key);
+                HotCartStore.Line line = cart.line(key.productId(), key.size());
+                int current = pending != null ? pending : line != null ? line.getQuantity() : 0;
+                int quantity = operation.getQuantity() != null ? operation.getQuantity() : 1;
+                switch (operation.getType()) {
+                    case ADD -> {
+                        if (quantity < 1) {
+                            throw new IllegalArgumentException("Quantity must be at least 1 for product " + key.productId());
+                        }
+                        quantities.put(key, current + quantity);
+                        added.add(key);
+                    }
+                    case UPDATE -> {
+                        if (current == 0) {
+                            throw new IllegalArgumentException("Product " + key.productId() + " is not in the cart");
+                        }
+                        quantities.put(key, Math.max(quantity, 0));
+                    }
+                    case REMOVE -> quantities.put(key, 0);
+                }
+            }
+            boolean changed = false;
+            for (Map.Entry<HotCartStore.LineKey, Integer> entry : quantities.entrySet()) {
+                HotCartStore.LineKey key = entry.getKey();
+                int quantity = entry.getValue();
+                if (quantity == 0) {
+                    changed |= cart.removeLine(key.productId(), key.size());
+                } else if (added.contains(key)) {
+                    ProductDTO product = products.get(key.productId());
+                    cart.setLine(key.productId(), key.size(), quantity, product.getProductPrice(), product.getUpdatedAt());
+                    changed = true;
+                } else {
+                    changed |= cart.setQuantity(key.productId(), key.size(), quantity);
+                }
+            }
+            return changed;
+        }, HotCartStore.HotCart::toCart);
+    }
+
+    /**
+     * Validates the requested size against the product: size-tracked products need a size
+     * with stock on hand, other products ignore it.
+     */
+    private Integer resolveSize(ProductDTO product, Integer size) {
+        if (!Boolean.TRUE.equals(product.getSizeTracked())) {
+            return null;
+        }
+        if (size == null) {
+            throw new InsufficientInventoryException("A size is required for product " + product.getId());
+        }
+        Integer available = product.getSizeStock() != null ? product.getSizeStock().get(size) : null;
+        if (available == null) {
+            throw new InsufficientInventoryException("Size " + size + " is not available for product " + product.getId());
+        }
+        if (available <= 0) {
+            throw new InsufficientInventoryException(product.getId(), 1, 0);
+        }
+        return size;
     }
 
     /**
@@ -116,224 +248,375 @@ public class CartServiceImpl implements CartService {
 
     @Override
     public List<CartDetails> getCartDetails(Long cartId) {
-        Cart cart = cartRepository.findById(cartId)
-                .orElseThrow(() -> new RuntimeException("Cart not found"));
+        return getCartDetailsAsync(cartId).block();
+    }
+
+    @Override
+    public Mono<List<CartDetails>> getCartDetailsAsync(Long cartId) {
+        Cart cart = hotCartStore.get(cartId);
         
         // Get current authentication token if available
         String token = extractTokenFromSecurityContext();
         log.debug("Using token for product details: {}", token != null ? "Available" : "Not available");
                 
-        // Load product details for each cart item
-        cart.getCartDetails().forEach(detail -> {
-            try {
-                ProductDTO product = getProductDetails(detail.getProductId(), token);
-                detail.setProduct(product);
-            } catch (Exception e) {
-                log.error("Error loading product {}: {}", detail.getProductId(), e.getMessage());
-                // Set null instead of throwing exception
-                detail.setProduct(null);
-            }
-        });
-        
-        return cart.getCartDetails();
+        // Load all products concurrently; lines not loaded before the deadline come back partial
+        return productClient.getProductsAsync(
+                cart.getCartDetails().stream().map(CartDetails::getProductId).toList(),
+                token, Duration.ofMillis(hydrationDeadlineMs))
+                .map(products -> {
+                    cart.getCartDetails().forEach(detail -> {
+                        detail.setProduct(products.products().get(detail.getProductId()));
+                        detail.setPartial(products.missing().contains(detail.getProductId()));
+                    });
+                    return cart.getCartDetails();
+                });
     }
 
     @Override
-    @Transactional
-    public void removeFromCart(Long cartId, Long productId) {
-        try {
-            // 1. Find cart
-            Cart cart = cartRepository.findById(cartId)
-                    .orElseThrow(() -> new RuntimeException("Cart not found"));
-                    
-            // 2. Remove relationship in memory
-            cart.getCartDetails().removeIf(detail -> detail.getProductId().equals(productId));
-            
-            // 3. Save cart to update relationship
-            cartRepository.save(cart);
-            
-            // 4. Delete cart detail from repository
-            cartDetailsRepository.deleteByCartCartIdAndProductId(cartId, productId);
-            
-            // 5. Recalculate cart total
-            BigDecimal total = BigDecimal.ZERO;
-            for (CartDetails detail : cart.getCartDetails()) {
-                if (detail.getTotal() != null) {
-                    total = total.add(detail.getTotal());
-                }
-            }
-            cart.setTotal(total);
-            
-            // 6. Save cart again
-            cartRepository.save(cart);
-            
-            // 7. Clear Hibernate session
-            entityManager.flush();
-            entityManager.clear();
-            
-        } catch (Exception e) {
-            log.error("Error removing item from cart: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to remove item from cart: " + e.getMessage());
-        }
+    public void removeFromCart(Long cartId, Long productId, Integer size) {
+        hotCartStore.update(cartId, cart -> cart.removeLine(productId, size), cart -> null);
     }
 
     @Override
-    @Transactional
-    public CartDetails updateQuantity(Long cartId, Long productId, int quantity, String token) {
-        Cart cart = cartRepository.findById(cartId)
-                .orElseThrow(() -> new RuntimeException("Cart not found"));
-        
-        CartDetails cartDetail = cartDetailsRepository.findByCartCartIdAndProductId(cartId, productId)
-                .orElseThrow(() -> new RuntimeException("Product not found in cart"));
+    public CartDetails updateQuantity(Long cartId, Long productId, Integer size, int quantity, String token) {
+        return updateQuantityAsync(cartId, productId, size, quantity, token).block();
+    }
+
+    @Override
+    public Mono<CartDetails> updateQuantityAsync(Long cartId, Long productId, Integer size, int quantity, String token) {
+        if (hotCartStore.getLine(cartId, productId, size) == null) {
+            return Mono.error(new RuntimeException("Product not found in cart"));
+        }
         
         if (quantity <= 0) {
             // Remove item
-            removeFromCart(cartId, productId);
-            return null;
-        } else {
-            // Update quantity
-            // If no token provided, try to get it from SecurityContext
-            String actualToken = token;
-            if (actualToken == null || actualToken.isEmpty()) {
-                actualToken = extractTokenFromSecurityContext();
+            removeFromCart(cartId, productId, size);
+            return Mono.empty();
+        }
+        
+        // Priced at the unit price captured when the product was added; checkout revalidates it
+        CartDetails updated = hotCartStore.update(cartId,
+                cart -> cart.setQuantity(productId, size, quantity),
+                cart -> cart.detail(productId, size));
+        if (updated == null) {
+            return Mono.error(new RuntimeException("Product not found in cart"));
+        }
+        return Mono.just(updated);
+    }
+
+    @Override
+    public Cart revalidatePrices(Long cartId, String token) {
+        return revalidatePricesAsync(cartId, token).block();
+    }
+
+    /**
+     * Compares every line with its product in one batched lookup. Lines whose product version moved
+     * are refreshed; if a unit price changed the lines are repriced and checkout is stopped.
+     */
+    @Override
+    public Mono<Cart> revalidatePricesAsync(Long cartId, String token) {
+        Cart cart = hotCartStore.get(cartId);
+        List<Long> productIds = cart.getCartDetails().stream()
+                .map(CartDetails::getProductId)
+                .distinct()
+                .toList();
+        if (productIds.isEmpty()) {
+            return Mono.just(cart);
+        }
+        return productClient.getProductsAsync(productIds, token, Duration.ofMillis(batchDeadlineMs))
+                .publishOn(Schedulers.boundedElastic())
+                .map(batch -> reprice(cartId, productIds, batch));
+    }
+
+    private Cart reprice(Long cartId, List<Long> productIds, ProductClient.Batch batch) {
+        if (!batch.missing().isEmpty()) {
+            throw new ServiceCommunicationException("product", "Products not loaded in time: " + batch.missing());
+        }
+        Map<Long, ProductDTO> products = batch.products();
+        for (Long productId : productIds) {
+            if (!products.containsKey(productId)) {
+                throw new ProductNotFoundException(productId);
             }
-            
-            ProductDTO product = getProductDetails(productId, actualToken);
-            cartDetail.setQuantity(quantity);
-            cartDetail.setTotal(product.getProductPrice().multiply(BigDecimal.valueOf(quantity)));
-            cartDetailsRepository.save(cartDetail);
-            
-            // Update cart total
-            cart.calculateTotal();
-            cartRepository.save(cart);
-            
-            return cartDetail;
         }
+        
+        List<PriceChangedException.PriceChange> changes = new ArrayList<>();
+        Cart cart = hotCartStore.update(cartId, hot -> {
+            changes.clear();
+            Map<HotCartStore.LineKey, ProductDTO> stale = new LinkedHashMap<>();
+            hot.lines().forEach((key, line) -> {
+                ProductDTO product = products.get(key.productId());
+                if (product == null || Objects.equals(line.getProductVersion(), product.getUpdatedAt())) {
+                    return;
+                }
+                stale.put(key, product);
+                // Stock changes move the version too; only a different price stops the checkout
+                if (line.getUnitPrice().compareTo(product.getProductPrice()) != 0) {
+                    changes.add(new PriceChangedException.PriceChange(
+                            key.productId(), key.size(), line.getUnitPrice(), product.getProductPrice()));
+                }
+            });
+            stale.forEach((key, product) -> hot.setLine(key.productId(), key.size(),
+                    hot.line(key.productId(), key.size()).getQuantity(), product.getProductPrice(), product.getUpdatedAt()));
+            return !stale.isEmpty();
+        }, HotCartStore.HotCart::toCart);
+        if (!changes.isEmpty()) {
+            throw new PriceChangedException(cartId, changes);
+        }
+        return cart;
     }
 
     @Override
-    @Transactional
+    public CheckoutPreviewDto previewCheckout(Long cartId, String token) {
+        return previewCheckoutAsync(cartId, token).block();
+    }
+    
+    /**
+     * Dry run of checkout: every line is checked for stock and price in one batched product lookup, and
+     * the cart is left as it is. The answer is reused for a few seconds while the cart version stays the same.
+     */
+    @Override
+    public Mono<CheckoutPreviewDto> previewCheckoutAsync(Long cartId, String token) {
+        CartSnapshot snapshot = hotCartStore.read(cartId, hot -> new CartSnapshot(hot.getVersion(), hot.toCart()));
+        CachedPreview cached = previews.get(cartId);
+        if (cached != null && cached.version() == snapshot.version() && cached.expiresAt() > System.currentTimeMillis()) {
+            return Mono.just(cached.preview());
+        }
+        
+        List<Long> productIds = snapshot.cart().getCartDetails().stream()
+                .map(CartDetails::getProductId)
+                .distinct()
+                .toList();
+        Mono<ProductClient.Batch> products = productIds.isEmpty()
+                ? Mono.just(new ProductClient.Batch(Map.of(), Set.of()))
+                : productClient.getProductsAsync(productIds, token, Duration.ofMillis(batchDeadlineMs));
+        return products.map(batch -> {
+            CheckoutPreviewDto preview = preview(snapshot, batch);
+            // A lookup that did not complete is not kept: the next preview asks again
+            if (batch.missing().isEmpty()) {
+                cachePreview(cartId, snapshot.version(), preview);
+            }
+            return preview;
+        });
+    }
+    
+    private CheckoutPreviewDto preview(CartSnapshot snapshot, ProductClient.Batch batch) {
+        List<CheckoutPreviewItemDto> items = new ArrayList<>();
+        BigDecimal total = BigDecimal.ZERO;
+        boolean ready = !snapshot.cart().getCartDetails().isEmpty();
+        for (CartDetails detail : snapshot.cart().getCartDetails()) {
+            CheckoutPreviewItemDto item = CheckoutPreviewItemDto.builder()
+                    .productId(detail.getProductId())
+                    .size(detail.getSize())
+                    .quantity(detail.getQuantity())
+                    .unitPrice(detail.getUnitPrice())
+                    .build();
+            ProductDTO product = batch.products().get(detail.getProductId());
+            if (product == null) {
+                if (batch.missing().contains(detail.getProductId())) {
+                    // Not confirmed either way: counted at the cart price
+                    item.getIssues().add(CheckoutPreviewItemDto.Issue.UNAVAILABLE);
+                    item.setTotal(detail.getTotal());
+                    total = total.add(detail.getTotal());
+                } else {
+                    item.getIssues().add(CheckoutPreviewItemDto.Issue.PRODUCT_NOT_FOUND);
+                }
+            } else {
+                item.setCurrentPrice(product.getProductPrice());
+                if (detail.getUnitPrice().compareTo(product.getProductPrice()) != 0) {
+                    item.getIssues().add(CheckoutPreviewItemDto.Issue.PRICE_CHANGED);
+                }
+                Integer available = availableStock(product, detail.getSize());
+                item.setAvailable(available);
+                if (available != null && available <= 0) {
+                    item.getIssues().add(CheckoutPreviewItemDto.Issue.OUT_OF_STOCK);
+                } else if (available != null && available < detail.getQuantity()) {
+                    item.getIssues().add(CheckoutPreviewItemDto.Issue.INSUFFICIENT_STOCK);
+                }
+                BigDecimal lineTotal = product.getProductPrice().multiply(BigDecimal.valueOf(detail.getQuantity()));
+                item.setTotal(lineTotal);
+                total = total.add(lineTotal);
+            }
+            ready &= item.getIssues().isEmpty();
+            items.add(item);
+        }
+        return CheckoutPreviewDto.builder()
+                .cartId(snapshot.cart().getCartId())
+                .version(snapshot.version())
+                .ready(ready)
+                .total(total)
+                .items(items)
+                .build();
+    }
+    
+    // Stock of the size bought, or of the whole product when unsized; null when product-service did not say
+    private static Integer availableStock(ProductDTO product, Integer size) {
+        if (Boolean.TRUE.equals(product.getSizeTracked())) {
+            Integer stock = size != null && product.getSizeStock() != null ? product.getSizeStock().get(size) : null;
+            return stock != null ? stock : 0;
+        }
+        return product.getQuantity();
+    }
+    
+    private void cachePreview(Long cartId, long version, CheckoutPreviewDto preview) {
+        long now = System.currentTimeMillis();
+        if (previews.size() >= previewMaxEntries) {
+            previews.values().removeIf(entry -> entry.expiresAt() <= now);
+            if (previews.size() >= previewMaxEntries) {
+                return;
+            }
+        }
+        previews.put(cartId, new CachedPreview(version, now + previewTtlMs, preview));
+    }
+    
+    @Override
     public Map<String, Object> checkout(Long cartId, String token) {
         try {
             log.info("Starting checkout process for cart ID: {}", cartId);
             
-            Cart cart = cartRepository.findById(cartId)
-                    .orElseThrow(() -> new RuntimeException("Cart not found"));
+            // The cart being ordered is persisted before anything leaves this service
+            hotCartStore.flush(cartId);
+            Cart cart = hotCartStore.get(cartId);
             
             if (cart.getCartDetails().isEmpty()) {
                 throw new RuntimeException("Cannot checkout empty cart");
             }
             
-            // Ensure token has correct format
-            String actualToken = token;
-            if (token.startsWith("Bearer ")) {
-                actualToken = token.substring(7);
-            }
+            List<CheckoutItem> items = cart.getCartDetails().stream()
+                    .map(detail -> new CheckoutItem(detail.getProductId(), detail.getSize(), detail.getQuantity(),
+                            detail.getUnitPrice(), detail.getTotal()))
+                    .toList();
+            Map<String, Object> result = placeOrder(cart.getUserId(), cart.getTotal(), items, token);
             
-            // Create invoice request
-            Map<String, Object> invoiceRequest = new HashMap<>();
-            invoiceRequest.put("userId", cart.getUserId());
-            invoiceRequest.put("totalAmount", cart.getTotal());
+            // Clear cart after successful checkout
+            clearCart(cartId);
             
-            // Build cart items list
-            List<Map<String, Object>> items = new ArrayList<>();
-            for (CartDetails detail : cart.getCartDetails()) {
-                Map<String, Object> item = new HashMap<>();
-                item.put("productId", detail.getProductId());
-                item.put("quantity", detail.getQuantity());
-                
-                // Calculate unit price from total and quantity
-                BigDecimal unitPrice = detail.getTotal()
-                        .divide(BigDecimal.valueOf(detail.getQuantity()), 2, RoundingMode.HALF_UP);
-                item.put("price", unitPrice);
-                
-                items.add(item);
-                log.debug("Added item to checkout: productId={}, quantity={}, price={}", 
-                        detail.getProductId(), detail.getQuantity(), unitPrice);
+            log.info("Checkout completed successfully for cart ID: {}", cartId);
+            return result;
+        } catch (Exception e) {
+            log.error("Error during checkout: {}", e.getMessage(), e);
+            throw new RuntimeException("Checkout failed: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public Mono<CheckoutItem> priceItemAsync(Long productId, Integer size, int quantity, String token) {
+        return productClient.getProductAsync(productId, token).map(product -> {
+            Integer resolved = resolveSize(product, size);
+            BigDecimal unitPrice = product.getProductPrice();
+            return new CheckoutItem(product.getId(), resolved, quantity,
+                    unitPrice, unitPrice.multiply(BigDecimal.valueOf(quantity)));
+        });
+    }
+    
+    @Override
+    public Map<String, Object> expressCheckout(Long userId, CheckoutItem item, String token) {
+        try {
+            log.info("Starting express checkout of product {} for user {}", item.getProductId(), userId);
+            Map<String, Object> result = placeOrder(userId, item.getTotal(), List.of(item), token);
+            log.info("Express checkout completed for user {}", userId);
+            return result;
+        } catch (Exception e) {
+            log.error("Error during express checkout: {}", e.getMessage(), e);
+            throw new RuntimeException("Checkout failed: " + e.getMessage());
+        }
+    }
+    
+    // Creates the invoice for the items, then takes them out of stock
+    private Map<String, Object> placeOrder(Long userId, BigDecimal total, List<CheckoutItem> checkoutItems, String token) {
+        // Ensure token has correct format
+        String actualToken = token;
+        if (token.startsWith("Bearer ")) {
+            actualToken = token.substring(7);
+        }
+        
+        // Create invoice request
+        Map<String, Object> invoiceRequest = new HashMap<>();
+        invoiceRequest.put("userId", userId);
+        invoiceRequest.put("totalAmount", total);
+        
+        // Build cart items list
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (CheckoutItem checkoutItem : checkoutItems) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("productId", checkoutItem.getProductId());
+            item.put("quantity", checkoutItem.getQuantity());
+            if (checkoutItem.getSize() != null) {
+                item.put("size", checkoutItem.getSize());
             }
-            invoiceRequest.put("items", items);
             
-            // Call invoice service
-            log.info("Calling invoice service to create invoice with {} items", items.size());
-            try {
-                Map<String, Object> response = webClientBuilder.build()
-                        .post()
-                        .uri(apiGatewayUrl + "/api/v1/invoices/create-from-cart")
-                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + actualToken)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(invoiceRequest)
-                        .retrieve()
-                        .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                        .block();
-                
-                log.info("Invoice created successfully: {}", response);
-                
-                // Update product inventory
-                updateProductInventory(cart.getCartDetails(), actualToken);
-                
-                // Clear cart after successful checkout
-                clearCart(cartId);
-                
-                log.info("Checkout completed successfully for cart ID: {}", cartId);
-                
-                // Create response with invoice ID for payment initiation
-                Map<String, Object> result = new HashMap<>();
-                result.put("status", "success");
-                result.put("message", "Checkout completed successfully");
-                
-                // Extract invoice ID from response
-                if (response != null && response.containsKey("data")) {
-                    Map<String, Object> invoiceData = (Map<String, Object>) response.get("data");
-                    if (invoiceData.containsKey("id")) {
-                        result.put("invoiceId", invoiceData.get("id"));
-                    }
-                    if (invoiceData.containsKey("totalAmount")) {
-                        result.put("totalAmount", invoiceData.get("totalAmount"));
-                    }
+            BigDecimal unitPrice = checkoutItem.getUnitPrice();
+            item.put("price", unitPrice);
+            
+            items.add(item);
+            log.debug("Added item to checkout: productId={}, quantity={}, price={}", 
+                    checkoutItem.getProductId(), checkoutItem.getQuantity(), unitPrice);
+        }
+        invoiceRequest.put("items", items);
+        
+        // Call invoice service
+        log.info("Calling invoice service to create invoice with {} items", items.size());
+        try {
+            Map<String, Object> response = webClientBuilder.build()
+                    .post()
+                    .uri(apiGatewayUrl + "/api/v1/invoices/create-from-cart")
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + actualToken)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(invoiceRequest)
+                    .retrieve()
+                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .block();
+            
+            log.info("Invoice created successfully: {}", response);
+            
+            // Update product inventory
+            updateProductInventory(checkoutItems, actualToken);
+            
+            // Create response with invoice ID for payment initiation
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "success");
+            result.put("message", "Checkout completed successfully");
+            
+            // Extract invoice ID from response
+            if (response != null && response.containsKey("data")) {
+                Map<String, Object> invoiceData = (Map<String, Object>) response.get("data");
+                if (invoiceData.containsKey("id")) {
+                    result.put("invoiceId", invoiceData.get("id"));
+                }
+                if (invoiceData.containsKey("totalAmount")) {
+                    result.put("totalAmount", invoiceData.get("totalAmount"));
                 }
-                
-                return result;
-            } catch (WebClientResponseException e) {
-                log.error("Error response from invoice service: {} - {}", 
-                        e.getStatusCode(), e.getResponseBodyAsString(), e);
-                throw new RuntimeException("Checkout failed: " + e.getStatusCode() + " - " + e.getMessage());
             }
-        } catch (Exception e) {
-            log.error("Error during checkout: {}", e.getMessage(), e);
-            throw new RuntimeException("Checkout failed: " + e.getMessage());
+            
+            return result;
+        } catch (WebClientResponseException e) {
+            log.error("Error response from invoice service: {} - {}", 
+                    e.getStatusCode(), e.getResponseBodyAsString(), e);
+            throw new RuntimeException("Checkout failed: " + e.getStatusCode() + " - " + e.getMessage());
         }
     }
     
-    private void updateProductInventory(List<CartDetails> cartDetails, String token) {
-        log.info("Updating product inventory for {} items", cartDetails.size());
+    private void updateProductInventory(List<CheckoutItem> items, String token) {
+        log.info("Updating product inventory for {} items", items.size());
         
-        for (CartDetails detail : cartDetails) {
+        for (CheckoutItem detail : items) {
             try {
-                // Get current product
-                ProductDTO product = getProductDetails(detail.getProductId(), token);
+                // Current stock straight from product-service: the absolute figure written below is based on it
+                ProductDTO product = productClient.getFreshProduct(detail.getProductId(), token);
                 
-                // Calculate new quantity
-                int newQuantity = product.getQuantity() - detail.getQuantity();
+                // Calculate new quantity for the size bought, or the whole product when unsized
+                int currentQuantity = detail.getSize() != null && product.getSizeStock() != null
+                        ? product.getSizeStock().getOrDefault(detail.getSize(), 0)
+                        : product.getQuantity();
+                int newQuantity = currentQuantity - detail.getQuantity();
                 
                 // Ensure quantity doesn't go below zero
                 if (newQuantity < 0) newQuantity = 0;
                 
                 // Update inventory using the dedicated inventory endpoint
-                Map<String, Integer> request = new HashMap<>();
-                request.put("quantity", newQuantity);
+                productClient.updateInventory(detail.getProductId(), detail.getSize(), newQuantity, token);
                 
-                webClientBuilder.build()
-                        .patch()
-                        .uri(apiGatewayUrl + "/api/products/" + detail.getProductId() + "/inventory")
-                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(request)
-                        .retrieve()
-                        .bodyToMono(Object.class)
-                        .block();
-                
-                log.debug("Updated inventory for product {}: {} -> {}", 
-                        detail.getProductId(), product.getQuantity(), newQuantity);
+                log.debug("Updated inventory for product {} (size {}): {} -> {}", 
+                        detail.getProductId(), detail.getSize(), currentQuantity, newQuantity);
             } catch (Exception e) {
                 log.error("Error updating inventory for product {}: {}", 
                         detail.getProductId(), e.getMessage());
@@ -343,78 +626,133 @@ public class CartServiceImpl implements CartService {
     }
     
     @Override
-    @Transactional
-    public void clearCart(Long cartId) {
-        Cart cart = cartRepository.findById(cartId)
-                .orElseThrow(() -> new RuntimeException("Cart not found"));
-        
-        cart.getCartDetails().clear();
-        cart.setTotal(BigDecimal.ZERO);
-        cartRepository.save(cart);
-        log.info("Cart {} cleared successfully", cartId);
+    public GuestCartDto getGuestCart(String guestToken) {
+        return toGuestCart(guestCartCodec.decode(guestToken));
     }
     
-    private ProductDTO getProductDetails(Long productId, String token) {
-        log.debug("Fetching product details for ID: {}", productId);
-        
-        try {
-            // First try to use the internal endpoint which is designed for microservice communication
-            WebClient.RequestHeadersSpec<?> internalRequest = webClientBuilder.build()
-                    .get()
-                    .uri(apiGatewayUrl + "/api/products/internal/" + productId);
-                    
-            // Add token to internal request if available
-            if (token != null && !token.isEmpty()) {
-                internalRequest = internalRequest.header(HttpHeaders.AUTHORIZATION, 
-                        token.startsWith("Bearer ") ? token : "Bearer " + token);
+    @Override
+    public GuestCartDto addToGuestCart(String guestToken, CartRequest request, String token) {
+        return addToGuestCartAsync(guestToken, request, token).block();
+    }
+    
+    /**
+     * Same as adding to a user cart, but the cart comes from and goes back into the token: no cart is read or written.
+     */
+    @Override
+    public Mono<GuestCartDto> addToGuestCartAsync(String guestToken, CartRequest request, String token) {
+        // Checked before the product lookup, so a forged token costs no remote call
+        List<GuestCartCodec.GuestLine> lines = guestCartCodec.decode(guestToken);
+        return productClient.getProductAsync(request.getProductId(), token).map(product -> {
+            Integer size = resolveSize(product, request.getSize());
+            int index = indexOf(lines, product.getId(), size);
+            int quantity = (index >= 0 ? lines.get(index).quantity() : 0) + request.getQuantity();
+            GuestCartCodec.GuestLine line = new GuestCartCodec.GuestLine(
+                    product.getId(), size, quantity, product.getProductPrice(), product.getUpdatedAt());
+            if (index >= 0) {
+                lines.set(index, line);
+            } else {
+                lines.add(line);
             }
-            
-            ProductDTO product = internalRequest.retrieve()
-                    .bodyToMono(ProductDTO.class)
-                    .onErrorResume(WebClientResponseException.class, error -> {
-                        log.warn("Internal product endpoint failed, falling back to public endpoint: {}", 
-                                error.getMessage());
-                        
-                        // Fall back to public endpoint with ResponseObject wrapper
-                        WebClient.RequestHeadersSpec<?> request = webClientBuilder.build()
-                            .get()
-                            .uri(apiGatewayUrl + "/api/products/" + productId);
-                                
-                        if (token != null && !token.isEmpty()) {
-                            request = request.header(HttpHeaders.AUTHORIZATION, 
-                                    token.startsWith("Bearer ") ? token : "Bearer " + token);
-                        }
-                        
-                        return request.retrieve()
-                            .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                            .map(response -> {
-                                if (response != null && response.containsKey("data")) {
-                                    ObjectMapper mapper = new ObjectMapper();
-                                    mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-                                    
-                                    // Extract product from the ResponseObject structure
-                                    Object dataObj = response.get("data");
-                                    
-                                    // Check if the data is wrapped in an Optional
-                                    if (dataObj instanceof Map) {
-                                        Map<String, Object> dataMap = (Map<String, Object>) dataObj;
-                                        if (dataMap.containsKey("get")) {
-                                            dataObj = dataMap.get("get");
-                                        }
-                                    }
-                                    
-                                    return mapper.convertValue(dataObj, ProductDTO.class);
-                                }
-                                throw new RuntimeException("Product data not found in response");
-                            });
-                    })
-                    .block();
-            
-            log.debug("Successfully retrieved product: {}", product.getProductName());
-            return product;
-        } catch (Exception e) {
-            log.error("Error fetching product details: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to get product details: " + e.getMessage());
+            return toGuestCart(lines);
+        });
+    }
+    
+    @Override
+    public GuestCartDto updateGuestQuantity(String guestToken, Long productId, Integer size, int quantity) {
+        List<GuestCartCodec.GuestLine> lines = guestCartCodec.decode(guestToken);
+        int index = indexOf(lines, productId, size);
+        if (index < 0) {
+            throw new IllegalArgumentException("Product not found in cart");
+        }
+        if (quantity <= 0) {
+            lines.remove(index);
+        } else {
+            GuestCartCodec.GuestLine line = lines.get(index);
+            lines.set(index, new GuestCartCodec.GuestLine(
+                    productId, size, quantity, line.unitPrice(), line.productVersion()));
+        }
+        return toGuestCart(lines);
+    }
+    
+    @Override
+    public GuestCartDto removeFromGuestCart(String guestToken, Long productId, Integer size) {
+        List<GuestCartCodec.GuestLine> lines = guestCartCodec.decode(guestToken);
+        int index = indexOf(lines, productId, size);
+        if (index >= 0) {
+            lines.remove(index);
+        }
+        return toGuestCart(lines);
+    }
+    
+    /**
+     * Moves the guest lines into the user's cart as one change, written in one flush. A line already in the
+     * cart keeps the larger quantity rather than the sum, so a retried merge does not double it; prices
+     * are the guest snapshot and are revalidated at checkout like any other line.
+     */
+    @Override
+    public Cart mergeGuestCart(Long userId, String guestToken) {
+        List<GuestCartCodec.GuestLine> lines = guestCartCodec.decode(guestToken);
+        Long cartId = hotCartStore.cartIdForUser(userId);
+        if (lines.isEmpty()) {
+            return hotCartStore.get(cartId);
         }
+        Cart cart = hotCartStore.update(cartId, hot -> {
+            boolean changed = false;
+            for (GuestCartCodec.GuestLine line : lines) {
+                HotCartStore.Line existing = hot.line(line.productId(), line.size());
+                if (existing == null) {
+                    hot.setLine(line.productId(), line.size(), line.quantity(), line.unitPrice(), line.productVersion());
+                    changed = true;
+                } else if (existing.getQuantity() < line.quantity()) {
+                    changed |= hot.setQuantity(line.productId(), line.size(), line.quantity());
+                }
+            }
+            return changed;
+        }, HotCartStore.HotCart::toCart);
+        // Logging in usually leads to the cart page, so the merged lines are persisted right away
+        hotCartStore.flush(cartId);
+        log.info("Merged {} guest cart lines into cart {} of user {}", lines.size(), cartId, userId);
+        return cart;
+    }
+    
+    private static int indexOf(List<GuestCartCodec.GuestLine> lines, Long productId, Integer size) {
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).productId().equals(productId) && Objects.equals(lines.get(i).size(), size)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private GuestCartDto toGuestCart(List<GuestCartCodec.GuestLine> lines) {
+        List<GuestCartItemDto> items = new ArrayList<>(lines.size());
+        BigDecimal total = BigDecimal.ZERO;
+        int itemCount = 0;
+        for (GuestCartCodec.GuestLine line : lines) {
+            BigDecimal lineTotal = line.unitPrice().multiply(BigDecimal.valueOf(line.quantity()));
+            items.add(GuestCartItemDto.builder()
+                    .productId(line.productId())
+                    .size(line.size())
+                    .quantity(line.quantity())
+                    .unitPrice(line.unitPrice())
+                    .total(lineTotal)
+                    .build());
+            total = total.add(lineTotal);
+            itemCount += line.quantity();
+        }
+        return GuestCartDto.builder()
+                .token(guestCartCodec.encode(lines))
+                .itemCount(itemCount)
+                .total(total)
+                .items(items)
+                .build();
+    }
+    
+    @Override
+    public void clearCart(Long cartId) {
+        hotCartStore.update(cartId, HotCartStore.HotCart::clear);
+        // Clearing usually follows an order, so it is made durable right away
+        hotCartStore.flush(cartId);
+        log.info("Cart {} cleared successfully", cartId);
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package com.microservice.cartservice.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservice.cartservice.config.WebClientConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cart-view hydration latency at 1, 10 and 50 items against a simulated slow product-service:
+ * 94% of lookups take 10-30 ms, 5% take 300 ms and 1% hang for 4 s.
+ * Compares the old one-by-one lookups with {@link ProductClient#getProducts} (concurrent per-product
+ * lookups, and the bulk endpoint) under a 2 s per-cart deadline.
+ * Not part of the default test run: {@code mvn test -Dtest=ProductHydrationBenchmark}
+ */
+class ProductHydrationBenchmark {
+
+    private static final Duration DEADLINE = Duration.ofMillis(2000);
+    private static final long SLACK_MS = 500;
+
+    private static HttpServer server;
+    private static volatile boolean bulkEndpoint;
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeAll
+    static void startProductService() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(400));
+        server.createContext("/api/products/", exchange -> {
+            sleep(delay());
+            String path = exchange.getRequestURI().getPath();
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            if (!path.startsWith("/api/products/internal")) {
+                // Public endpoint, used while the internal one is considered broken
+                respond(exchange, 200, "{\"data\":" + product(id) + "}");
+            } else if (path.endsWith("/internal")) {
+                if (!bulkEndpoint) {
+                    respond(exchange, 404, "");
+                    return;
+                }
+                // One query serves the whole batch, so it is as slow as a single lookup
+                String query = exchange.getRequestURI().getQuery();
+                respond(exchange, 200, Arrays.stream(query.split("[,&]"))
+                        .map(requested -> product(requested.replace("ids=", "")))
+                        .collect(Collectors.joining(",", "[", "]")));
+            } else {
+                respond(exchange, 200, product(id));
+            }
+        });
+        server.start();
+    }
+
+    @AfterAll
+    static void stopProductService() {
+        server.stop(0);
+    }
+
+    @Test
+    void hydrateCartsAgainstSlowProductService() {
+        System.out.printf("%5s %-12s %8s %8s %10s%n", "items", "path", "p50 ms", "p99 ms", "partial");
+        for (int items : new int[]{1, 10, 50}) {
+            int iterations = items == 50 ? 30 : 150;
+
+            ProductClient sequential = client();
+            long[] oneByOne = new long[iterations];
+            for (int i = 0; i < iterations; i++) {
+                List<Long> cart = cart(items);
+                long start = System.nanoTime();
+                for (Long productId : cart) {
+                    try {
+                        sequential.getProduct(productId, "token");
+                    } catch (RuntimeException e) {
+                        // A failed line still costs its wait
+                    }
+                }
+                oneByOne[i] = (System.nanoTime() - start) / 1_000_000;
+            }
+            report(items, "one-by-one", oneByOne, -1, iterations);
+
+            bulkEndpoint = false;
+            measureBatch(items, iterations, "concurrent", client());
+            bulkEndpoint = true;
+            measureBatch(items, iterations, "bulk", client());
+        }
+    }
+
+    private void measureBatch(int items, int iterations, String path, ProductClient client) {
+        long[] latencies = new long[iterations];
+        int partial = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            ProductClient.Batch batch = client.getProducts(cart(items), "token", DEADLINE);
+            latencies[i] = (System.nanoTime() - start) / 1_000_000;
+            partial += batch.missing().isEmpty() ? 0 : 1;
+        }
+        long p99 = report(items, path, latencies, partial, iterations);
+        assertTrue(p99 <= DEADLINE.toMillis() + SLACK_MS, path + " at " + items + " items took " + p99 + " ms");
+    }
+
+    private static long report(int items, String path, long[] latencies, int partial, int iterations) {
+        Arrays.sort(latencies);
+        long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+        System.out.printf("%5d %-12s %8d %8d %10s%n", items, path, latencies[latencies.length / 2], p99,
+                partial < 0 ? "-" : partial + "/" + iterations);
+        return p99;
+    }
+
+    private List<Long> cart(int items) {
+        List<Long> cart = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            cart.add(ids.incrementAndGet());
+        }
+        return cart;
+    }
+
+    private static ProductClient client() {
+        WebClientConfig config = new WebClientConfig();
+        ProductClient client = new ProductClient(
+                config.productWebClient("http://localhost:" + server.getAddress().getPort(), 50, 2000, 3000),
+                new ObjectMapper(), new SimpleMeterRegistry(), new ProductCache(new SimpleMeterRegistry()));
+        // A failed bulk request keeps the client on per-product lookups for the rest of the run
+        ReflectionTestUtils.setField(client, "internalRetryAfterMs", 600_000L);
+        return client;
+    }
+
+    private static long delay() {
+        double draw = ThreadLocalRandom.current().nextDouble();
+        return draw < 0.94 ? 10 + ThreadLocalRandom.current().nextInt(20) : draw < 0.99 ? 300 : 4000;
+    }
+
+    private static String product(String id) {
+        return "{\"id\":" + id + ",\"productName\":\"P" + id + "\",\"productPrice\":100,\"quantity\":5}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (IOException e) {
+            // The client gave up on this request
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.microservice.cartservice.service;
+
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.models.CartDetails;
+import com.microservice.cartservice.repository.CartDetailsRepository;
+import com.microservice.cartservice.repository.CartRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory stand-in for the CART and CART_DETAILS tables behind the repository methods HotCartStore uses.
+ * Behaves like InnoDB for what the store relies on: a written cart row stays locked until commit or
+ * rollback, versioned updates match 0 rows when the version moved, and rollback discards the writes.
+ * Every repository call is one SQL statement and so is every COMMIT; each can be given a latency.
+ */
+class CartDatabaseStub {
+
+    private final Map<Long, Cart> committed = new ConcurrentHashMap<>();
+    private final Map<Long, Long> cartIdsByUser = new ConcurrentHashMap<>();
+    private final Map<Long, Long> cartIdsByLine = new ConcurrentHashMap<>();
+    private final Map<Long, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<Long, Cart>> written = ThreadLocal.withInitial(HashMap::new);
+    private final AtomicLong ids = new AtomicLong(1000);
+    private final AtomicLong statements = new AtomicLong();
+    private final Map<String, AtomicLong> statementsByName = new ConcurrentHashMap<>();
+    private final long statementNanos;
+
+    CartDatabaseStub(long statementNanos) {
+        this.statementNanos = statementNanos;
+    }
+
+    CartRepository cartRepository() {
+        return proxy(CartRepository.class, (proxy, method, args) -> switch (method.getName()) {
+            case "findWithDetailsByCartId" -> {
+                statement("findWithDetailsByCartId");
+                yield Optional.ofNullable(read((Long) args[0])).map(CartDatabaseStub::copy);
+            }
+            case "findCartIdByUserId" -> {
+                statement("findCartIdByUserId");
+                yield Optional.ofNullable(cartIdsByUser.get((Long) args[0]));
+            }
+            case "insertIfAbsent" -> {
+                statement("insertIfAbsent");
+                yield cartIdsByUser.containsKey((Long) args[0]) ? 0 : createCart((Long) args[0]) != null ? 1 : 0;
+            }
+            case "updateTotalIfVersion" -> {
+                statement("updateTotalIfVersion");
+                Cart cart = write((Long) args[0]);
+                if (cart == null || !cart.getVersion().equals(args[1])) {
+                    yield 0;
+                }
+                cart.setVersion((Long) args[2]);
+                cart.setTotal((BigDecimal) args[3]);
+                yield 1;
+            }
+            case "getReferenceById" -> {
+                Cart reference = new Cart();
+                reference.setCartId((Long) args[0]);
+                yield reference;
+            }
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    CartDetailsRepository cartDetailsRepository() {
+        return proxy(CartDetailsRepository.class, (proxy, method, args) -> switch (method.getName()) {
+            case "updateLineIfVersion" -> {
+                statement("updateLineIfVersion");
+                Long lineId = (Long) args[0];
+                Cart cart = cartIdsByLine.containsKey(lineId) ? write(cartIdsByLine.get(lineId)) : null;
+                CartDetails line = cart == null ? null : cart.getCartDetails().stream()
+                        .filter(detail -> detail.getCartDetailsId().equals(lineId)).findFirst().orElse(null);
+                if (line == null || !line.getVersion().equals(args[1])) {
+                    yield 0;
+                }
+                line.setQuantity((Integer) args[2]);
+                line.setUnitPrice((BigDecimal) args[3]);
+                line.setTotal((BigDecimal) args[5]);
+                line.setVersion(line.getVersion() + 1);
+                yield 1;
+            }
+            case "saveAll" -> {
+                List<CartDetails> saved = new ArrayList<>((Collection<CartDetails>) args[0]);
+                for (CartDetails detail : saved) {
+                    statement("insertLine");
+                    Cart cart = write(detail.getCart().getCartId());
+                    detail.setCartDetailsId(ids.incrementAndGet());
+                    detail.setVersion(0L);
+                    cart.getCartDetails().add(copyLine(detail, cart));
+                }
+                yield saved;
+            }
+            case "deleteAllByIdInBatch" -> {
+                statement("deleteLines");
+                for (Object id : (Iterable<?>) args[0]) {
+                    Long cartId = cartIdsByLine.get((Long) id);
+                    Cart cart = cartId != null ? write(cartId) : null;
+                    if (cart != null) {
+                        cart.getCartDetails().removeIf(detail -> detail.getCartDetailsId().equals(id));
+                    }
+                }
+                yield null;
+            }
+            case "findCartIdsWithUnsizedLines" -> {
+                statement("findCartIdsWithUnsizedLines");
+                Set<Long> productIds = new HashSet<>((Collection<Long>) args[0]);
+                yield committed.values().stream()
+                        .filter(cart -> cart.getCartDetails().stream().anyMatch(
+                                detail -> detail.getSize() == null && productIds.contains(detail.getProductId())))
+                        .map(Cart::getCartId)
+                        .toList();
+            }
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                statement("commit");
+                end(true);
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                end(false);
+            }
+        };
+    }
+
+    Long createCart(Long userId) {
+        return cartIdsByUser.computeIfAbsent(userId, id -> {
+            Cart cart = new Cart();
+            cart.setCartId(ids.incrementAndGet());
+            cart.setUserId(id);
+            cart.setTotal(BigDecimal.ZERO);
+            cart.setVersion(0L);
+            cart.setCartDetails(new ArrayList<>());
+            committed.put(cart.getCartId(), cart);
+            return cart.getCartId();
+        });
+    }
+
+    /**
+     * The committed cart, as a later transaction would read it.
+     */
+    Cart stored(Long cartId) {
+        return copy(committed.get(cartId));
+    }
+
+    long statements() {
+        return statements.get();
+    }
+
+    Map<String, Long> statementsByName() {
+        Map<String, Long> counts = new HashMap<>();
+        statementsByName.forEach((name, count) -> counts.put(name, count.get()));
+        return counts;
+    }
+
+    void resetStatements() {
+        statements.set(0);
+        statementsByName.clear();
+    }
+
+    // Also used by stubs of other cart-service tables, so their statements are counted here too
+    void statement(String name) {
+        statements.incrementAndGet();
+        statementsByName.computeIfAbsent(name, key -> new AtomicLong()).incrementAndGet();
+        if (statementNanos > 0) {
+            LockSupport.parkNanos(statementNanos);
+        }
+    }
+
+    private Cart read(Long cartId) {
+        Cart mine = written.get().get(cartId);
+        return mine != null ? mine : committed.get(cartId);
+    }
+
+    // The row lock is taken on the first write and held until the transaction ends, like an UPDATE in InnoDB
+    private Cart write(Long cartId) {
+        Map<Long, Cart> transaction = written.get();
+        Cart cart = transaction.get(cartId);
+        if (cart == null) {
+            ReentrantLock lock = rowLocks.computeIfAbsent(cartId, id -> new ReentrantLock());
+            lock.lock();
+            Cart stored = committed.get(cartId);
+            if (stored == null) {
+                lock.unlock();
+                return null;
+            }
+            cart = copy(stored);
+            transaction.put(cartId, cart);
+        }
+        return cart;
+    }
+
+    private void end(boolean commit) {
+        Map<Long, Cart> transaction = written.get();
+        if (commit) {
+            transaction.forEach((cartId, cart) -> {
+                committed.put(cartId, cart);
+                cart.getCartDetails().forEach(detail -> cartIdsByLine.put(detail.getCartDetailsId(), cartId));
+            });
+        }
+        transaction.keySet().forEach(cartId -> rowLocks.get(cartId).unlock());
+        transaction.clear();
+    }
+
+    private static Cart copy(Cart cart) {
+        Cart copy = new Cart();
+        copy.setCartId(cart.getCartId());
+        copy.setUserId(cart.getUserId());
+        copy.setTotal(cart.getTotal());
+        copy.setVersion(cart.getVersion());
+        List<CartDetails> details = new ArrayList<>();
+        for (CartDetails detail : cart.getCartDetails()) {
+            details.add(copyLine(detail, copy));
+        }
+        copy.setCartDetails(details);
+        return copy;
+    }
+
+    private static CartDetails copyLine(CartDetails detail, Cart cart) {
+        CartDetails copy = new CartDetails();
+        copy.setCartDetailsId(detail.getCartDetailsId());
+        copy.setProductId(detail.getProductId());
+        copy.setSize(detail.getSize());
+        copy.setQuantity(detail.getQuantity());
+        copy.setUnitPrice(detail.getUnitPrice());
+        copy.setProductVersion(detail.getProductVersion());
+        copy.setTotal(detail.getTotal());
+        copy.setVersion(detail.getVersion());
+        copy.setCart(cart);
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(CartDatabaseStub.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
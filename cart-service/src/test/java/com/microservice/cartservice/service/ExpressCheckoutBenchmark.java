@@ -0,0 +1,271 @@
+package com.microservice.cartservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservice.cartservice.client.ProductCache;
+import com.microservice.cartservice.client.ProductClient;
+import com.microservice.cartservice.config.WebClientConfig;
+import com.microservice.cartservice.dto.CartRequest;
+import com.microservice.cartservice.dto.CheckoutCommand;
+import com.microservice.cartservice.dto.CheckoutReply;
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.models.Checkout;
+import com.microservice.cartservice.models.CheckoutItem;
+import com.microservice.cartservice.repository.CheckoutRepository;
+import com.microservice.cartservice.service.impl.CartServiceImpl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Buying one item: add to cart then check out, against express checkout, both through the saga and through
+ * the synchronous fallback. Reports the time until the last request returned and until the order completed,
+ * with cart-service MySQL statements and HTTP calls per order.
+ * <p>
+ * Simulated: MySQL statement {@value #STATEMENT_MICROS} us, product lookup {@value #PRODUCT_MS} ms, stock
+ * update {@value #STOCK_UPDATE_MS} ms, invoice {@value #INVOICE_MS} ms, reservation {@value #RESERVE_MS} ms
+ * and {@value #BROKER_HOP_MS} ms per broker hop. Orders run one at a time.
+ * Not part of the default test run: {@code mvn test -Dtest=ExpressCheckoutBenchmark}
+ */
+class ExpressCheckoutBenchmark {
+
+    private static final long STATEMENT_MICROS = 500;
+    private static final long PRODUCT_MS = 10;
+    private static final long STOCK_UPDATE_MS = 15;
+    private static final long INVOICE_MS = 20;
+    private static final long RESERVE_MS = 5;
+    private static final long BROKER_HOP_MS = 1;
+    private static final int ORDERS = 150;
+    private static final String[] PATHS = {"cart-saga", "express-saga", "cart-sync", "express-sync"};
+
+    private static HttpServer server;
+    // Counted where product-service and invoice-service answer
+    private static final AtomicLong httpCalls = new AtomicLong();
+
+    private final AtomicLong ids = new AtomicLong();
+    private volatile CountDownLatch orderCompleted;
+
+    @BeforeAll
+    static void startServices() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(32));
+        server.createContext("/api/v1/invoices/create-from-cart", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            sleep(INVOICE_MS);
+            respond(exchange, 201, "{\"data\":{\"id\":1,\"totalAmount\":99.00}}");
+        });
+        server.createContext("/api/products/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            String path = exchange.getRequestURI().getPath();
+            if ("PATCH".equals(exchange.getRequestMethod())) {
+                sleep(STOCK_UPDATE_MS);
+                respond(exchange, 200, "");
+                return;
+            }
+            sleep(PRODUCT_MS);
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.contains("ids=")) {
+                respond(exchange, 200, Arrays.stream(query.replaceAll(".*ids=", "").replaceAll("&.*", "").split(","))
+                        .map(ExpressCheckoutBenchmark::product)
+                        .collect(Collectors.joining(",", "[", "]")));
+                return;
+            }
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            respond(exchange, 200, path.contains("/internal") ? product(id) : "{\"data\":" + product(id) + "}");
+        });
+        server.start();
+    }
+
+    @AfterAll
+    static void stopServices() {
+        server.stop(0);
+    }
+
+    @Test
+    void expressVersusCartCheckout() throws Exception {
+        CartDatabaseStub db = new CartDatabaseStub(STATEMENT_MICROS * 1000);
+        HotCartStore store = HotCartStoreBenchmark.store(db, true);
+        CartServiceImpl cartService = cartService(store);
+        ExecutorService broker = Executors.newFixedThreadPool(4);
+        CheckoutSagaService[] saga = new CheckoutSagaService[1];
+        saga[0] = saga(db, store, broker, saga);
+
+        Map<String, Double> statementsPerOrder = new ConcurrentHashMap<>();
+        // The first round warms up connections and code paths and is not asserted on
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("%-13s %22s %22s %12s %10s%n", "path", "requests p50/p99 ms", "completed p50/p99 ms",
+                    "statements", "HTTP calls");
+            for (String path : PATHS) {
+                statementsPerOrder.put(path, run(path, db, cartService, saga[0]));
+            }
+        }
+        broker.shutdownNow();
+
+        assertTrue(statementsPerOrder.get("express-saga") < statementsPerOrder.get("cart-saga"));
+        assertTrue(statementsPerOrder.get("express-sync") == 0, "express checkout wrote cart rows");
+    }
+
+    private double run(String path, CartDatabaseStub db, CartServiceImpl cartService, CheckoutSagaService saga)
+            throws Exception {
+        long[] requests = new long[ORDERS];
+        long[] completed = new long[ORDERS];
+        db.resetStatements();
+        httpCalls.set(0);
+        for (int i = 0; i < ORDERS; i++) {
+            long userId = ids.incrementAndGet();
+            long productId = ids.incrementAndGet();
+            orderCompleted = new CountDownLatch(1);
+            long start = System.nanoTime();
+            long returned;
+            if (path.startsWith("cart")) {
+                // POST items, then POST checkout (which revalidates prices first)
+                Cart cart = cartService.addToCart(userId, new CartRequest(productId, 1, 42), "token");
+                cartService.revalidatePrices(cart.getCartId(), "token");
+                if (path.endsWith("saga")) {
+                    saga.start(cart.getCartId(), "1 Main St");
+                    returned = System.nanoTime();
+                    assertTrue(orderCompleted.await(10, TimeUnit.SECONDS), path + " did not complete");
+                } else {
+                    cartService.checkout(cart.getCartId(), "Bearer token");
+                    returned = System.nanoTime();
+                }
+            } else {
+                CheckoutItem item = cartService.priceItemAsync(productId, 42, 1, "token").block();
+                if (path.endsWith("saga")) {
+                    saga.startExpress(userId, item, "1 Main St");
+                    returned = System.nanoTime();
+                    assertTrue(orderCompleted.await(10, TimeUnit.SECONDS), path + " did not complete");
+                } else {
+                    cartService.expressCheckout(userId, item, "Bearer token");
+                    returned = System.nanoTime();
+                }
+            }
+            requests[i] = returned - start;
+            completed[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(requests);
+        Arrays.sort(completed);
+        double statements = db.statements() / (double) ORDERS;
+        System.out.printf("%-13s %10.1f / %9.1f %10.1f / %9.1f %12.1f %10.1f%n", path,
+                requests[ORDERS / 2] / 1e6, requests[ORDERS * 99 / 100] / 1e6,
+                completed[ORDERS / 2] / 1e6, completed[ORDERS * 99 / 100] / 1e6,
+                statements, httpCalls.get() / (double) ORDERS);
+        return statements;
+    }
+
+    private CartServiceImpl cartService(HotCartStore store) {
+        String url = "http://localhost:" + server.getAddress().getPort();
+        ProductCache cache = new ProductCache(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "maxAgeMs", 300_000L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 50_000);
+        ProductClient productClient = new ProductClient(new WebClientConfig().productWebClient(url, 50, 2000, 3000),
+                new ObjectMapper(), new SimpleMeterRegistry(), cache);
+        CartServiceImpl cartService = new CartServiceImpl(store, WebClient.builder(), productClient,
+                new GuestCartCodec("benchmark"));
+        ReflectionTestUtils.setField(cartService, "apiGatewayUrl", url);
+        ReflectionTestUtils.setField(cartService, "hydrationDeadlineMs", 2000L);
+        ReflectionTestUtils.setField(cartService, "batchDeadlineMs", 3000L);
+        return cartService;
+    }
+
+    // Product-service and invoice-service answer through the broker after their work and one hop each way
+    private CheckoutSagaService saga(CartDatabaseStub db, HotCartStore store, ExecutorService broker,
+                                     CheckoutSagaService[] self) {
+        Map<String, Checkout> checkouts = new ConcurrentHashMap<>();
+        CheckoutRepository checkoutRepository = (CheckoutRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{CheckoutRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findByActiveCartId" -> {
+                            db.statement("findCheckoutByActiveCartId");
+                            return checkouts.values().stream()
+                                    .filter(checkout -> args[0].equals(checkout.getActiveCartId()))
+                                    .findFirst();
+                        }
+                        case "saveAndFlush" -> {
+                            Checkout checkout = (Checkout) args[0];
+                            // The checkout row, its item rows and the commit of the implicit transaction
+                            db.statement("insertCheckout");
+                            checkout.getItems().forEach(item -> db.statement("insertCheckoutItem"));
+                            db.statement("commit");
+                            checkout.setCreatedAt(LocalDateTime.now());
+                            checkout.setUpdatedAt(checkout.getCreatedAt());
+                            checkouts.put(checkout.getCheckoutId(), checkout);
+                            return checkout;
+                        }
+                        case "findForUpdate" -> {
+                            db.statement("findCheckoutForUpdate");
+                            return Optional.ofNullable(checkouts.get((String) args[0]));
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        RabbitTemplate rabbitTemplate = new RabbitTemplate() {
+            @Override
+            public void convertAndSend(String exchange, String routingKey, Object message) {
+                CheckoutCommand command = (CheckoutCommand) message;
+                boolean reserve = routingKey.equals("product.order");
+                broker.execute(() -> {
+                    sleep(BROKER_HOP_MS + (reserve ? RESERVE_MS : INVOICE_MS) + BROKER_HOP_MS);
+                    self[0].handleReply(new CheckoutReply("reply", reserve ? "STOCK_RESERVED" : "INVOICE_CREATED",
+                            LocalDateTime.now(), command.getCheckoutId(), 1L, null, null));
+                    if (!reserve) {
+                        orderCompleted.countDown();
+                    }
+                });
+            }
+        };
+        CheckoutSagaService saga = new CheckoutSagaService(checkoutRepository, store, rabbitTemplate, db.transactionManager());
+        ReflectionTestUtils.setField(saga, "productExchange", "product.exchange");
+        ReflectionTestUtils.setField(saga, "productOrderRoutingKey", "product.order");
+        ReflectionTestUtils.setField(saga, "invoiceExchange", "invoice.exchange");
+        ReflectionTestUtils.setField(saga, "invoiceCheckoutRoutingKey", "invoice.checkout");
+        return saga;
+    }
+
+    private static String product(String id) {
+        return "{\"id\":" + id + ",\"productName\":\"P" + id + "\",\"productPrice\":99.00,\"quantity\":1000,"
+                + "\"sizeTracked\":true,\"sizeStock\":{\"42\":1000},\"updatedAt\":\"2026-01-01T00:00:00\"}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        httpCalls.incrementAndGet();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.microservice.cartservice.service;
+
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.models.CartDetails;
+import com.microservice.cartservice.repository.CartDetailsRepository;
+import com.microservice.cartservice.repository.CartRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Add-to-cart throughput and MySQL statements per click: the hot store with write-back and with
+ * write-through, against one transaction per click shaped like the old JPA path (cart id lookup, cart
+ * load, cart row update, line update or insert, commit). Runs on {@link CartDatabaseStub} with every
+ * statement taking {@value #STATEMENT_MICROS} us, each thread clicking in its own users' carts.
+ * Not part of the default test run: {@code mvn test -Dtest=HotCartStoreBenchmark}
+ */
+class HotCartStoreBenchmark {
+
+    private static final long STATEMENT_MICROS = 200;
+    private static final int THREADS = 16;
+    private static final int USERS_PER_THREAD = 25;
+    private static final int CLICKS_PER_THREAD = 1000;
+    private static final int PRODUCTS = 20;
+    private static final BigDecimal PRICE = new BigDecimal("49.90");
+
+    @Test
+    void writeBackVersusWriteThroughVersusPerClickTransaction() throws Exception {
+        System.out.printf("%-14s %10s %12s %12s%n", "path", "clicks/s", "statements", "per click");
+
+        CartDatabaseStub writeBackDb = new CartDatabaseStub(STATEMENT_MICROS * 1000);
+        HotCartStore writeBack = store(writeBackDb, true);
+        double writeBackPerClick = run("write-back", writeBackDb, () -> {
+            AtomicBoolean done = new AtomicBoolean();
+            // Stands in for the scheduled flush at the default interval
+            Thread flusher = new Thread(() -> {
+                while (!done.get()) {
+                    sleep(500);
+                    writeBack.flushDirty();
+                }
+            });
+            flusher.start();
+            return () -> {
+                done.set(true);
+                flusher.join();
+                writeBack.flushDirty();
+            };
+        }, (cartId, productId) -> writeBack.update(cartId, cart -> addOne(cart, productId)));
+
+        CartDatabaseStub writeThroughDb = new CartDatabaseStub(STATEMENT_MICROS * 1000);
+        HotCartStore writeThrough = store(writeThroughDb, false);
+        double writeThroughPerClick = run("write-through", writeThroughDb, () -> () -> { },
+                (cartId, productId) -> writeThrough.update(cartId, cart -> addOne(cart, productId)));
+
+        CartDatabaseStub perClickDb = new CartDatabaseStub(STATEMENT_MICROS * 1000);
+        CartRepository carts = perClickDb.cartRepository();
+        CartDetailsRepository lines = perClickDb.cartDetailsRepository();
+        TransactionTemplate transactions = new TransactionTemplate(perClickDb.transactionManager());
+        double perClick = run("per-click tx", perClickDb, () -> () -> { },
+                (cartId, productId) -> transactions.executeWithoutResult(status -> {
+                    Cart cart = carts.findWithDetailsByCartId(carts.findCartIdByUserId(userOf(perClickDb, cartId))
+                            .orElseThrow()).orElseThrow();
+                    CartDetails line = cart.getCartDetails().stream()
+                            .filter(detail -> detail.getProductId().equals(productId)).findFirst().orElse(null);
+                    carts.updateTotalIfVersion(cartId, cart.getVersion(), cart.getVersion() + 1,
+                            cart.getTotal().add(PRICE), LocalDateTime.now());
+                    if (line == null) {
+                        CartDetails detail = new CartDetails();
+                        detail.setCart(carts.getReferenceById(cartId));
+                        detail.setProductId(productId);
+                        detail.setQuantity(1);
+                        detail.setUnitPrice(PRICE);
+                        detail.setTotal(PRICE);
+                        lines.saveAll(List.of(detail));
+                    } else {
+                        lines.updateLineIfVersion(line.getCartDetailsId(), line.getVersion(), line.getQuantity() + 1,
+                                PRICE, null, line.getTotal().add(PRICE));
+                    }
+                }));
+
+        assertTrue(writeBackPerClick < 1, "write-back took " + writeBackPerClick + " statements per click");
+        assertTrue(writeBackPerClick < writeThroughPerClick && writeThroughPerClick < perClick,
+                "statements per click should fall from the per-click transaction to write-through to write-back");
+    }
+
+    private double run(String path, CartDatabaseStub db, Background background, Click click) throws Exception {
+        List<List<Long>> cartsByThread = new ArrayList<>();
+        long user = 0;
+        for (int t = 0; t < THREADS; t++) {
+            List<Long> cartIds = new ArrayList<>();
+            for (int u = 0; u < USERS_PER_THREAD; u++) {
+                cartIds.add(db.createCart(++user));
+            }
+            cartsByThread.add(cartIds);
+        }
+        long[][] clicks = new long[THREADS][];
+        for (int t = 0; t < THREADS; t++) {
+            clicks[t] = new long[USERS_PER_THREAD];
+        }
+        db.resetStatements();
+
+        Background.Stop stop = background.start();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < CLICKS_PER_THREAD; i++) {
+                        int u = ThreadLocalRandom.current().nextInt(USERS_PER_THREAD);
+                        click.apply(cartsByThread.get(thread).get(u), 1L + ThreadLocalRandom.current().nextInt(PRODUCTS));
+                        clicks[thread][u]++;
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        stop.stop();
+        if (!failures.isEmpty()) {
+            throw new AssertionError(path + " failed", failures.get(0));
+        }
+
+        int total = THREADS * CLICKS_PER_THREAD;
+        double perClick = db.statements() / (double) total;
+        System.out.printf("%-14s %10.0f %12d %12.2f%n", path, total / (elapsed / 1e9), db.statements(), perClick);
+        // Every click reached MySQL, whichever path wrote it
+        for (int t = 0; t < THREADS; t++) {
+            for (int u = 0; u < USERS_PER_THREAD; u++) {
+                Cart stored = db.stored(cartsByThread.get(t).get(u));
+                assertEquals(clicks[t][u], stored.getCartDetails().stream().mapToLong(CartDetails::getQuantity).sum(), path);
+                assertEquals(0, PRICE.multiply(BigDecimal.valueOf(clicks[t][u])).compareTo(stored.getTotal()), path);
+            }
+        }
+        return perClick;
+    }
+
+    private static boolean addOne(HotCartStore.HotCart cart, Long productId) {
+        HotCartStore.Line line = cart.line(productId, null);
+        cart.setLine(productId, null, line == null ? 1 : line.getQuantity() + 1, PRICE, null);
+        return true;
+    }
+
+    private static Long userOf(CartDatabaseStub db, Long cartId) {
+        return db.stored(cartId).getUserId();
+    }
+
+    static HotCartStore store(CartDatabaseStub db, boolean writeBack) {
+        HotCartStore store = new HotCartStore(db.cartRepository(), db.cartDetailsRepository(), db.transactionManager());
+        ReflectionTestUtils.setField(store, "writeBack", writeBack);
+        ReflectionTestUtils.setField(store, "flushBatchSize", 100);
+        ReflectionTestUtils.setField(store, "idleEvictMs", 600_000L);
+        ReflectionTestUtils.setField(store, "conflictRetries", 3);
+        return store;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Click {
+        void apply(Long cartId, Long productId);
+    }
+
+    @FunctionalInterface
+    private interface Background {
+        Stop start();
+
+        @FunctionalInterface
+        interface Stop {
+            void stop() throws InterruptedException;
+        }
+    }
+}
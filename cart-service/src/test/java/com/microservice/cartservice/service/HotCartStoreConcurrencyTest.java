@@ -0,0 +1,164 @@
+package com.microservice.cartservice.service;
+
+import com.microservice.cartservice.exception.CartConflictException;
+import com.microservice.cartservice.models.Cart;
+import com.microservice.cartservice.models.CartDetails;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 32 threads changing one cart at once, like many tabs of one user. No acknowledged mutation may be
+ * lost and the stored total must match the stored lines, on one instance and on two instances writing
+ * the same cart optimistically, and while idle carts are evicted from memory under the mutations.
+ */
+class HotCartStoreConcurrencyTest {
+
+    private static final int THREADS = 32;
+    private static final int CLICKS_PER_THREAD = 50;
+    private static final int PRODUCTS = 8;
+    private static final long STATEMENT_NANOS = 50_000;
+    private static final int EVICTION_ROUNDS = 10;
+
+    @Test
+    void oneInstanceWriteBackKeepsEveryMutation() throws Exception {
+        CartDatabaseStub db = new CartDatabaseStub(STATEMENT_NANOS);
+        HotCartStore store = HotCartStoreBenchmark.store(db, true);
+        Long cartId = db.createCart(1L);
+
+        AtomicIntegerArray accepted = run("write-back, 1 instance", cartId, List.of(store));
+        store.flush(cartId);
+
+        assertStored(db.stored(cartId), accepted);
+        assertEquals(THREADS * CLICKS_PER_THREAD, sum(accepted));
+    }
+
+    @Test
+    void twoInstancesWriteThroughLoseNoAcknowledgedMutation() throws Exception {
+        CartDatabaseStub db = new CartDatabaseStub(STATEMENT_NANOS);
+        HotCartStore first = HotCartStoreBenchmark.store(db, false);
+        HotCartStore second = HotCartStoreBenchmark.store(db, false);
+        Long cartId = db.createCart(1L);
+
+        AtomicIntegerArray accepted = run("write-through, 2 instances", cartId, List.of(first, second));
+
+        // Mutations rejected with a conflict were never written; everything acknowledged was
+        assertStored(db.stored(cartId), accepted);
+        assertTrue(sum(accepted) > 0);
+    }
+
+    @Test
+    void evictionDuringUpdatesLosesNoMutation() throws Exception {
+        CartDatabaseStub db = new CartDatabaseStub(0);
+        HotCartStore store = HotCartStoreBenchmark.store(db, false);
+        // Every flushed cart counts as idle, so it can be evicted between any two mutations
+        ReflectionTestUtils.setField(store, "idleEvictMs", -60_000L);
+
+        // The race is narrow: several rounds, each on a cart of its own
+        for (int round = 0; round < EVICTION_ROUNDS; round++) {
+            Long cartId = db.createCart(1L + round);
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread evictor = new Thread(() -> {
+                while (running.get()) {
+                    store.evictIdle();
+                    store.release(cartId, null, Long.MAX_VALUE);
+                }
+            });
+            evictor.start();
+            AtomicIntegerArray accepted;
+            try {
+                accepted = run("write-through, evicting", cartId, List.of(store));
+            } finally {
+                running.set(false);
+                evictor.join();
+            }
+
+            assertStored(db.stored(cartId), accepted);
+            assertEquals(THREADS * CLICKS_PER_THREAD, sum(accepted));
+        }
+    }
+
+    private AtomicIntegerArray run(String path, Long cartId, List<HotCartStore> stores) throws Exception {
+        AtomicIntegerArray accepted = new AtomicIntegerArray(PRODUCTS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            HotCartStore store = stores.get(t % stores.size());
+            long productId = 1 + t % PRODUCTS;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < CLICKS_PER_THREAD; i++) {
+                        try {
+                            store.update(cartId, cart -> {
+                                HotCartStore.Line line = cart.line(productId, null);
+                                cart.setLine(productId, null, line == null ? 1 : line.getQuantity() + 1, price(productId), null);
+                            });
+                            accepted.incrementAndGet((int) productId);
+                        } catch (CartConflictException e) {
+                            // Retries ran out against the other instance; the caller is told and nothing is written
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (!failures.isEmpty()) {
+            throw new AssertionError(path + " failed", failures.get(0));
+        }
+        System.out.printf("%-28s %6d/%d accepted, %8.0f mutations/s%n", path, sum(accepted),
+                THREADS * CLICKS_PER_THREAD, sum(accepted) / (elapsed / 1e9));
+        return accepted;
+    }
+
+    private static void assertStored(Cart stored, AtomicIntegerArray accepted) {
+        BigDecimal expectedTotal = BigDecimal.ZERO;
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            long id = productId;
+            int quantity = stored.getCartDetails().stream()
+                    .filter(detail -> detail.getProductId() == id)
+                    .mapToInt(CartDetails::getQuantity)
+                    .sum();
+            assertEquals(accepted.get(productId), quantity, "quantity of product " + productId);
+            expectedTotal = expectedTotal.add(price(id).multiply(BigDecimal.valueOf(quantity)));
+        }
+        BigDecimal linesTotal = stored.getCartDetails().stream()
+                .map(CartDetails::getTotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, expectedTotal.compareTo(stored.getTotal()), "cart total " + stored.getTotal());
+        assertEquals(0, expectedTotal.compareTo(linesTotal), "sum of line totals " + linesTotal);
+    }
+
+    private static int sum(AtomicIntegerArray accepted) {
+        int sum = 0;
+        for (int i = 0; i < accepted.length(); i++) {
+            sum += accepted.get(i);
+        }
+        return sum;
+    }
+
+    private static BigDecimal price(long productId) {
+        return new BigDecimal("19.99").add(BigDecimal.valueOf(productId));
+    }
+}
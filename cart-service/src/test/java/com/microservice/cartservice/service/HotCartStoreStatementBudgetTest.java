@@ -0,0 +1,105 @@
+package com.microservice.cartservice.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Statements each cart operation sends to MySQL with write-back off, where every mutation is written
+ * before it returns. The budget does not depend on how many lines the cart holds: the cart is loaded
+ * with one fetch-joined select and a change writes the cart row and the changed line only.
+ */
+class HotCartStoreStatementBudgetTest {
+
+    private static final BigDecimal PRICE = new BigDecimal("59.00");
+    private static final int LINES = 50;
+
+    private CartDatabaseStub db;
+    private HotCartStore store;
+    private Long cartId;
+
+    @BeforeEach
+    void fillCart() {
+        db = new CartDatabaseStub(0);
+        cartId = db.createCart(1L);
+        HotCartStore filler = HotCartStoreBenchmark.store(db, false);
+        filler.update(cartId, cart -> {
+            for (long productId = 1; productId <= LINES; productId++) {
+                cart.setLine(productId, 40, 1, PRICE, null);
+            }
+        });
+        store = HotCartStoreBenchmark.store(db, false);
+        db.resetStatements();
+    }
+
+    @Test
+    void firstReadOfAUsersCart() {
+        store.getOrCreateByUser(1L);
+        assertBudget(Map.of("findCartIdByUserId", 1L, "findWithDetailsByCartId", 1L));
+        db.resetStatements();
+
+        store.getOrCreateByUser(1L);
+        store.summaryForUser(1L);
+        assertBudget(Map.of());
+    }
+
+    @Test
+    void firstReadOfANewUsersCart() {
+        store.getOrCreateByUser(2L);
+        assertBudget(Map.of("findCartIdByUserId", 2L, "insertIfAbsent", 1L, "commit", 1L, "findWithDetailsByCartId", 1L));
+    }
+
+    @Test
+    void addLine() {
+        store.get(cartId);
+        db.resetStatements();
+
+        store.update(cartId, cart -> cart.setLine(100L, 41, 2, PRICE, null));
+        assertBudget(Map.of("updateTotalIfVersion", 1L, "insertLine", 1L, "commit", 1L));
+    }
+
+    @Test
+    void changeQuantity() {
+        store.get(cartId);
+        db.resetStatements();
+
+        store.update(cartId, cart -> cart.setQuantity(7L, 40, 3), cart -> true);
+        assertBudget(Map.of("updateTotalIfVersion", 1L, "updateLineIfVersion", 1L, "commit", 1L));
+    }
+
+    @Test
+    void removeLine() {
+        store.get(cartId);
+        db.resetStatements();
+
+        store.update(cartId, cart -> cart.removeLine(7L, 40), cart -> true);
+        assertBudget(Map.of("updateTotalIfVersion", 1L, "deleteLines", 1L, "commit", 1L));
+    }
+
+    @Test
+    void clearCart() {
+        store.get(cartId);
+        db.resetStatements();
+
+        store.update(cartId, HotCartStore.HotCart::clear);
+        assertBudget(Map.of("updateTotalIfVersion", 1L, "deleteLines", 1L, "commit", 1L));
+        assertEquals(0, db.stored(cartId).getCartDetails().size());
+    }
+
+    @Test
+    void unchangedMutationWritesNothing() {
+        store.get(cartId);
+        db.resetStatements();
+
+        store.update(cartId, cart -> cart.setQuantity(999L, 40, 3), cart -> true);
+        assertBudget(Map.of());
+    }
+
+    private void assertBudget(Map<String, Long> expected) {
+        assertEquals(expected, db.statementsByName());
+    }
+}
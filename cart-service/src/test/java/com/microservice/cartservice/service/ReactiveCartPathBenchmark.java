@@ -0,0 +1,189 @@
+package com.microservice.cartservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservice.cartservice.client.ProductCache;
+import com.microservice.cartservice.client.ProductClient;
+import com.microservice.cartservice.config.WebClientConfig;
+import com.microservice.cartservice.dto.CartRequest;
+import com.microservice.cartservice.service.impl.CartServiceImpl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Add-to-cart with product-service answering in {@value #PRODUCT_DELAY_MS} ms, at 200 and 1000 requests in
+ * flight: blocking calls on 200 request threads (Tomcat's default) against the non-blocking path, which
+ * holds no thread while the lookup is in flight. Also checks that the non-blocking path never changes a
+ * cart on the HTTP client's I/O threads. Carts are written through to {@link CartDatabaseStub}.
+ * Not part of the default test run: {@code mvn test -Dtest=ReactiveCartPathBenchmark}
+ */
+class ReactiveCartPathBenchmark {
+
+    private static final long PRODUCT_DELAY_MS = 100;
+    private static final int REQUEST_THREADS = 200;
+    private static final int USERS = 1000;
+
+    private static HttpServer server;
+    private final AtomicLong productIds = new AtomicLong();
+    private final Set<String> mutationThreads = ConcurrentHashMap.newKeySet();
+
+    @BeforeAll
+    static void startProductService() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/products/", exchange -> {
+            sleep(PRODUCT_DELAY_MS);
+            String path = exchange.getRequestURI().getPath();
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            respond(exchange, path.startsWith("/api/products/internal")
+                    ? product(id) : "{\"data\":" + product(id) + "}");
+        });
+        server.start();
+    }
+
+    @AfterAll
+    static void stopProductService() {
+        server.stop(0);
+    }
+
+    @Test
+    void blockingVersusNonBlockingAddToCart() throws Exception {
+        CartServiceImpl cartService = cartService();
+        // Carts and connections exist before measuring, as in a warm service
+        for (long userId = 1; userId <= USERS; userId++) {
+            cartService.getOrCreateCart(userId);
+        }
+        run("warm-up", 200, cartService, true);
+        mutationThreads.clear();
+
+        System.out.printf("%-12s %8s %10s %10s %10s%n", "path", "flight", "req/s", "p50 ms", "p99 ms");
+        for (int inFlight : new int[]{200, 1000}) {
+            run("blocking", inFlight, cartService, false);
+            run("non-blocking", inFlight, cartService, true);
+        }
+        assertTrue(mutationThreads.stream().noneMatch(name -> name.startsWith("reactor-http")),
+                "carts changed on I/O threads: " + mutationThreads);
+    }
+
+    private void run(String path, int inFlight, CartServiceImpl cartService, boolean nonBlocking) throws Exception {
+        long[] latencies = new long[inFlight];
+        List<Throwable> failures = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(inFlight);
+        ExecutorService requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+        long begin = System.nanoTime();
+        for (int i = 0; i < inFlight; i++) {
+            int request = i;
+            long userId = 1L + i % USERS;
+            CartRequest add = request();
+            long start = System.nanoTime();
+            if (nonBlocking) {
+                cartService.addToCartAsync(userId, add, "token").subscribe(
+                        cart -> latencies[request] = System.nanoTime() - start,
+                        e -> fail(failures, e, done),
+                        done::countDown);
+            } else {
+                requestThreads.execute(() -> {
+                    try {
+                        cartService.addToCart(userId, add, "token");
+                        latencies[request] = System.nanoTime() - start;
+                    } catch (Throwable e) {
+                        fail(failures, e, null);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS), path + " did not finish");
+        long elapsed = System.nanoTime() - begin;
+        requestThreads.shutdown();
+        if (!failures.isEmpty()) {
+            throw new AssertionError(path + " failed", failures.get(0));
+        }
+        assertEquals(0, Arrays.stream(latencies).filter(latency -> latency == 0).count(), path);
+        Arrays.sort(latencies);
+        System.out.printf("%-12s %8d %10.0f %10d %10d%n", path, inFlight, inFlight / (elapsed / 1e9),
+                latencies[inFlight / 2] / 1_000_000, latencies[(int) Math.ceil(inFlight * 0.99) - 1] / 1_000_000);
+    }
+
+    private CartServiceImpl cartService() {
+        CartDatabaseStub db = new CartDatabaseStub(0);
+        HotCartStore store = new HotCartStore(db.cartRepository(), db.cartDetailsRepository(), db.transactionManager()) {
+            @Override
+            public <T> T update(Long cartId, Function<HotCart, Boolean> mutation, Function<HotCart, T> result) {
+                mutationThreads.add(Thread.currentThread().getName());
+                return super.update(cartId, mutation, result);
+            }
+        };
+        ReflectionTestUtils.setField(store, "writeBack", false);
+        ReflectionTestUtils.setField(store, "conflictRetries", 3);
+
+        ProductClient productClient = new ProductClient(
+                new WebClientConfig().productWebClient("http://localhost:" + server.getAddress().getPort(), 2000, 2000, 5000),
+                new ObjectMapper(), new SimpleMeterRegistry(), new ProductCache(new SimpleMeterRegistry()));
+        CartServiceImpl cartService = new CartServiceImpl(store, WebClient.builder(), productClient, new GuestCartCodec("benchmark"));
+        ReflectionTestUtils.setField(cartService, "batchDeadlineMs", 5000L);
+        ReflectionTestUtils.setField(cartService, "hydrationDeadlineMs", 5000L);
+        return cartService;
+    }
+
+    // A product not seen before, so every request waits on product-service
+    private CartRequest request() {
+        CartRequest request = new CartRequest();
+        request.setProductId(productIds.incrementAndGet());
+        request.setQuantity(1);
+        return request;
+    }
+
+    private static void fail(List<Throwable> failures, Throwable e, CountDownLatch done) {
+        synchronized (failures) {
+            failures.add(e);
+        }
+        if (done != null) {
+            done.countDown();
+        }
+    }
+
+    private static String product(String id) {
+        return "{\"id\":" + id + ",\"productName\":\"P" + id + "\",\"productPrice\":100,\"quantity\":5}";
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -18,6 +18,9 @@ public class RabbitMQConfig {
     @Value("${invoice.queue.name}")
     private String invoiceQueue;
 
+    @Value("${invoice.queue.checkout}")
+    private String checkoutQueue;
+
     // Define Queues
     @Bean
     public Queue paymentInvoiceQueue() {
@@ -29,6 +32,11 @@ public class RabbitMQConfig {
         return new Queue(invoiceQueue, true);
     }
 
+    @Bean
+    public Queue checkoutQueue() {
+        return new Queue(checkoutQueue, true);
+    }
+
     // Define Exchange
     @Bean
     public DirectExchange invoiceExchange() {
@@ -41,6 +49,12 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(invoiceQueue).to(invoiceExchange).with("invoice.events");
     }
 
+    // Invoice step of cart-service checkouts
+    @Bean
+    public Binding checkoutBinding(Queue checkoutQueue, DirectExchange invoiceExchange) {
+        return BindingBuilder.bind(checkoutQueue).to(invoiceExchange).with("invoice.checkout");
+    }
+
     // Message converter for JSON serialization/deserialization
     @Bean
     public MessageConverter jsonMessageConverter() {
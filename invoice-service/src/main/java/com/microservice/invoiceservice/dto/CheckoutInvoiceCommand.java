@@ -0,0 +1,32 @@
+package com.microservice.invoiceservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sent by a cart-service checkout once the stock is reserved: create the invoice for these items.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutInvoiceCommand implements Serializable {
+    
+    private String eventId;
+    private String eventType;
+    private LocalDateTime eventTime;
+    
+    private String checkoutId;
+    private Long userId;
+    private String shipAddress;
+    private BigDecimal totalAmount;
+    private List<Map<String, Object>> items;
+}
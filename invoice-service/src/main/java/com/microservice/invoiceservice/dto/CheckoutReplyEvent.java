@@ -0,0 +1,29 @@
+package com.microservice.invoiceservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of a checkout's invoice step, sent back to cart-service: INVOICE_CREATED or INVOICE_REJECTED.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutReplyEvent implements Serializable {
+    
+    private String eventId;
+    private String eventType;
+    private LocalDateTime eventTime;
+    
+    private String checkoutId;
+    private Long invoiceId;
+    private BigDecimal totalAmount;
+    private String reason;
+}
@@ -17,4 +17,5 @@ public class InvoiceRequest {
     private String status;
     private String shipAddress;
     private List<Map<String, Object>> items;
+    private String checkoutId;
 } 
\ No newline at end of file
@@ -40,6 +40,10 @@ public class Invoice {
     @Column(name = "USER_ID", nullable = false)
     private Long userId;
     
+    // Cart-service checkout that created the invoice; at most one invoice per checkout
+    @Column(name = "CHECKOUT_ID", unique = true, length = 36)
+    private String checkoutId;
+    
     @Column(name = "CREATED_AT")
     private LocalDateTime createdAt;
 
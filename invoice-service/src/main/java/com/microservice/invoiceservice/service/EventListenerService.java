@@ -1,9 +1,13 @@
 package com.microservice.invoiceservice.service;
 
+import com.microservice.invoiceservice.dto.CheckoutInvoiceCommand;
+import com.microservice.invoiceservice.dto.InvoiceRequest;
 import com.microservice.invoiceservice.dto.PaymentEvent;
+import com.microservice.invoiceservice.entity.Invoice;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,6 +17,49 @@ import org.springframework.transaction.annotation.Transactional;
 public class EventListenerService {
     
     private final InvoiceService invoiceService;
+    private final EventPublisherService eventPublisherService;
+    
+    /**
+     * Invoice step of a cart-service checkout. The invoice is keyed by checkout id, so a command
+     * sent again (after a lost reply or a timeout) is answered with the invoice created the first time.
+     */
+    @RabbitListener(queues = "${invoice.queue.checkout}", concurrency = "${invoice.checkout.concurrency:1}")
+    public void handleCheckoutCommand(CheckoutInvoiceCommand command) {
+        if (command == null || command.getCheckoutId() == null) {
+            log.error("Received checkout command without checkout id: {}", command);
+            return;
+        }
+        log.info("Received checkout command: checkoutId={}, items={}", command.getCheckoutId(),
+                command.getItems() != null ? command.getItems().size() : 0);
+        
+        Invoice invoice;
+        try {
+            invoice = invoiceService.findByCheckoutId(command.getCheckoutId())
+                    .orElseGet(() -> invoiceService.createInvoiceFromCart(toInvoiceRequest(command)));
+        } catch (IllegalArgumentException e) {
+            eventPublisherService.publishCheckoutInvoiceRejected(command.getCheckoutId(), e.getMessage());
+            return;
+        } catch (DataIntegrityViolationException e) {
+            // Created concurrently by another delivery of the same command
+            invoice = invoiceService.findByCheckoutId(command.getCheckoutId()).orElseThrow(() -> e);
+        } catch (Exception e) {
+            // Not requeued: cart-service sends the command again if no reply arrives
+            log.error("Failed to create invoice for checkout {}: {}", command.getCheckoutId(), e.getMessage(), e);
+            return;
+        }
+        eventPublisherService.publishCheckoutInvoiceCreated(command.getCheckoutId(), invoice);
+    }
+    
+    private InvoiceRequest toInvoiceRequest(CheckoutInvoiceCommand command) {
+        InvoiceRequest request = new InvoiceRequest();
+        request.setCheckoutId(command.getCheckoutId());
+        request.setUserId(command.getUserId());
+        request.setShipAddress(command.getShipAddress());
+        request.setTotalAmount(command.getTotalAmount());
+        request.setStatus("PENDING");
+        request.setItems(command.getItems());
+        return request;
+    }
     
     @RabbitListener(queues = "${invoice.queue.payment}")
     @Transactional
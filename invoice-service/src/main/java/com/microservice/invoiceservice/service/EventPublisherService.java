@@ -1,5 +1,6 @@
 package com.microservice.invoiceservice.service;
 
+import com.microservice.invoiceservice.dto.CheckoutReplyEvent;
 import com.microservice.invoiceservice.dto.InvoiceEvent;
 import com.microservice.invoiceservice.dto.InvoiceItemDto;
 import com.microservice.invoiceservice.entity.Invoice;
@@ -7,6 +8,7 @@ import com.microservice.invoiceservice.entity.InvoiceItem;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -21,6 +23,12 @@ public class EventPublisherService {
     
     private final RabbitTemplate rabbitTemplate;
     
+    @Value("${cart.exchange.name}")
+    private String cartExchange;
+    
+    @Value("${cart.checkout.routing-key}")
+    private String checkoutRoutingKey;
+    
     public void publishInvoiceCreated(Invoice invoice) {
         InvoiceEvent event = buildInvoiceEvent(invoice, "INVOICE_CREATED");
         publishToExchange(event);
@@ -33,6 +41,34 @@ public class EventPublisherService {
         log.info("Published invoice updated event for invoice: {}", invoice.getId());
     }
     
+    /**
+     * Replies to a cart-service checkout with the invoice created for it.
+     * Failures propagate, so the command is redelivered and the reply sent again.
+     */
+    public void publishCheckoutInvoiceCreated(String checkoutId, Invoice invoice) {
+        publishCheckoutReply(CheckoutReplyEvent.builder()
+                .eventType("INVOICE_CREATED")
+                .checkoutId(checkoutId)
+                .invoiceId(invoice.getId())
+                .totalAmount(invoice.getTotalAmount())
+                .build());
+    }
+    
+    public void publishCheckoutInvoiceRejected(String checkoutId, String reason) {
+        publishCheckoutReply(CheckoutReplyEvent.builder()
+                .eventType("INVOICE_REJECTED")
+                .checkoutId(checkoutId)
+                .reason(reason)
+                .build());
+    }
+    
+    private void publishCheckoutReply(CheckoutReplyEvent event) {
+        event.setEventId(UUID.randomUUID().toString());
+        event.setEventTime(LocalDateTime.now());
+        rabbitTemplate.convertAndSend(cartExchange, checkoutRoutingKey, event);
+        log.info("Published checkout reply: type={}, checkoutId={}", event.getEventType(), event.getCheckoutId());
+    }
+    
     private InvoiceEvent buildInvoiceEvent(Invoice invoice, String eventType) {
         List<InvoiceItemDto> items = mapInvoiceItems(invoice.getItems());
         
@@ -18,6 +18,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -119,6 +120,7 @@ public class InvoiceService {
             invoice.setUserId(request.getUserId());
             invoice.setStatus(request.getStatus() != null ? request.getStatus() : "PENDING");
             invoice.setOrderDate(LocalDateTime.now());
+            invoice.setCheckoutId(request.getCheckoutId());
             
             // Ensure shipAddress is properly set
             if (request.getShipAddress() == null || request.getShipAddress().trim().isEmpty()) {
@@ -243,6 +245,10 @@ public class InvoiceService {
                 .orElseThrow(() -> new EntityNotFoundException("Invoice not found with id: " + id));
     }
 
+    public Optional<Invoice> findByCheckoutId(String checkoutId) {
+        return invoiceRepository.findByCheckoutId(checkoutId);
+    }
+
     public List<Invoice> getInvoicesByUserId(Long userId) {
         return invoiceRepository.findByUserId(userId);
     }
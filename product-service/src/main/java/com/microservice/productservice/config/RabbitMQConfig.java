@@ -18,6 +18,9 @@ public class RabbitMQConfig {
     @Value("${product.queue.inventory}")
     private String inventoryQueue;
 
+    @Value("${product.queue.demand}")
+    private String demandQueue;
+
     // Define Queues
     @Bean
     public Queue orderQueue() {
@@ -29,6 +32,11 @@ public class RabbitMQConfig {
         return new Queue(inventoryQueue, true);
     }
 
+    @Bean
+    public Queue demandQueue() {
+        return new Queue(demandQueue, true);
+    }
+
     // Define Exchange
     @Bean
     public DirectExchange productExchange() {
@@ -46,6 +54,12 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(inventoryQueue).to(productExchange).with("product.inventory");
     }
 
+    // Separate queue on the same routing key, so the forecaster gets its own copy of every inventory event
+    @Bean
+    public Binding demandBinding(Queue demandQueue, DirectExchange productExchange) {
+        return BindingBuilder.bind(demandQueue).to(productExchange).with("product.inventory");
+    }
+
     // Message converter for JSON serialization/deserialization
     @Bean
     public MessageConverter jsonMessageConverter() {
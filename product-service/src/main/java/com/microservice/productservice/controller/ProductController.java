@@ -1,51 +1,106 @@
 package com.microservice.productservice.controller;
 
+import com.microservice.productservice.dto.AllocationRequestDto;
+import com.microservice.productservice.dto.AllocationResultDto;
+import com.microservice.productservice.dto.BulkUpdateRequestDto;
+import com.microservice.productservice.dto.BulkUpdateResultDto;
 import com.microservice.productservice.dto.PageResponse;
-import com.microservice.productservice.dto.ProductMapperDto;
+import com.microservice.productservice.dto.ProductFieldSet;
 import com.microservice.productservice.dto.ProductRequestDto;
 import com.microservice.productservice.dto.ProductResponseDto;
+import com.microservice.productservice.dto.ReorderSuggestionDto;
 import com.microservice.productservice.dto.ResponseObject;
+import com.microservice.productservice.dto.ReviewRequestDto;
+import com.microservice.productservice.entity.LocationStock;
 import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.Review;
+import com.microservice.productservice.entity.StockLocation;
 import com.microservice.productservice.repository.ProductRepository;
+import com.microservice.productservice.repository.ProductSpecifications;
+import com.microservice.productservice.service.DemandForecastService;
+import com.microservice.productservice.service.InventoryLedgerService;
+import com.microservice.productservice.service.ProductBulkUpdateService;
+import com.microservice.productservice.service.ProductExportService;
 import com.microservice.productservice.service.ProductService;
+import com.microservice.productservice.service.ReviewService;
+import com.microservice.productservice.service.SizeVariantMigrationService;
+import com.microservice.productservice.service.StockAllocationService;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
     private static final Logger log = LoggerFactory.getLogger(ProductController.class);
+    // Matches the largest batch cart-service sends in one call
+    private static final int MAX_INTERNAL_IDS = 100;
     private final ProductRepository productRepository;
     private final ProductService productService;
+    private final SizeVariantMigrationService sizeVariantMigrationService;
+    private final ProductBulkUpdateService productBulkUpdateService;
+    private final ProductExportService productExportService;
+    private final InventoryLedgerService inventoryLedgerService;
+    private final StockAllocationService stockAllocationService;
+    private final ReviewService reviewService;
+    private final DemandForecastService demandForecastService;
+
+    @Value("${product.similarity.k:8}")
+    private int maxSimilarProducts;
 
     @Autowired
-    public ProductController(ProductRepository productRepository, ProductService productService) {
+    public ProductController(ProductRepository productRepository, ProductService productService,
+                             SizeVariantMigrationService sizeVariantMigrationService,
+                             ProductBulkUpdateService productBulkUpdateService,
+                             ProductExportService productExportService,
+                             InventoryLedgerService inventoryLedgerService,
+                             StockAllocationService stockAllocationService,
+                             ReviewService reviewService,
+                             DemandForecastService demandForecastService) {
         this.productRepository = productRepository;
         this.productService = productService;
+        this.sizeVariantMigrationService = sizeVariantMigrationService;
+        this.productBulkUpdateService = productBulkUpdateService;
+        this.productExportService = productExportService;
+        this.inventoryLedgerService = inventoryLedgerService;
+        this.stockAllocationService = stockAllocationService;
+        this.reviewService = reviewService;
+        this.demandForecastService = demandForecastService;
     }
 
     @GetMapping("/all")
-    ResponseEntity<ResponseObject> GetProducts(){
-        List<ProductResponseDto> products = productService.getAllProductResponsesDto();
+    ResponseEntity<ResponseObject> GetProducts(@RequestParam(required = false) String fields){
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
+        List<?> products = fieldSet != null
+                ? productService.findProductFields(ProductSpecifications.all(), Pageable.unpaged(), fieldSet).getContent()
+                : productService.getAllProductResponsesDto();
 
         if(products != null){
             return ResponseEntity.status(HttpStatus.OK).body(
@@ -58,28 +113,20 @@ public class ProductController {
     }
 
     @GetMapping("/all-products")
-    ResponseEntity<PageResponse> getAllProductPage(@RequestParam Optional<Integer> page){
-        Page<ProductResponseDto> pageProducts = productService.getAllProductResponsesDtoPaged(
-                PageRequest.of(page.orElse(0), 6));
-        
+    ResponseEntity<PageResponse> getAllProductPage(@RequestParam Optional<Integer> page,
+                                                   @RequestParam(required = false) String fields){
         return ResponseEntity.status(HttpStatus.OK).body(
-                new PageResponse(page, pageProducts.getSize(), pageProducts.getTotalElements(),
-                        pageProducts.getTotalPages(),
-                        pageProducts.getContent()
-                )
+                pageResponse(page, fields, ProductSpecifications.all(), PageRequest.of(page.orElse(0), 6),
+                        productService::getAllProductResponsesDtoPaged)
         );
     }
 
     @GetMapping("/shop-products")
-    ResponseEntity<PageResponse> getShopProductPage(@RequestParam Optional<Integer> page){
-        Page<ProductResponseDto> pageProducts = productService.getAllProductResponsesDtoPaged(
-                PageRequest.of(page.orElse(0), 10));
-        
+    ResponseEntity<PageResponse> getShopProductPage(@RequestParam Optional<Integer> page,
+                                                   @RequestParam(required = false) String fields){
         return ResponseEntity.status(HttpStatus.OK).body(
-                new PageResponse(page, pageProducts.getSize(), pageProducts.getTotalElements(),
-                        pageProducts.getTotalPages(),
-                        pageProducts.getContent()
-                )
+                pageResponse(page, fields, ProductSpecifications.all(), PageRequest.of(page.orElse(0), 10),
+                        productService::getAllProductResponsesDtoPaged)
         );
     }
 
@@ -87,21 +134,33 @@ public class ProductController {
     ResponseEntity<PageResponse> getShopProductPageSort(
             @RequestParam Optional<Integer> page,
             @RequestParam Optional<String> sortBy,
-            @RequestParam Integer asc
+            @RequestParam Integer asc,
+            @RequestParam(required = false) String fields
     ){
         Sort.Direction direction = asc == 1 ? Sort.Direction.ASC : Sort.Direction.DESC;
-        Page<ProductResponseDto> pageProducts = productService.getAllProductResponsesDtoPaged(
-                PageRequest.of(page.orElse(0), 10, direction, sortBy.orElse("productPrice"))
-        );
+        // sortBy=rating orders by the stored average (indexed with the review count as tie-breaker)
+        Sort sort = "rating".equals(sortBy.orElse(null))
+                ? Sort.by(direction, "ratingAverage", "ratingCount")
+                : Sort.by(direction, sortBy.orElse("productPrice"));
         
         return ResponseEntity.status(HttpStatus.OK).body(
-                new PageResponse(page, pageProducts.getSize(), pageProducts.getTotalElements(),
-                        pageProducts.getTotalPages(),
-                        pageProducts.getContent()
-                )
+                pageResponse(page, fields, ProductSpecifications.all(),
+                        PageRequest.of(page.orElse(0), 10, sort),
+                        productService::getAllProductResponsesDtoPaged)
         );
     }
 
+    // ?fields= requests are served from a column-restricted query, everything else from the full DTO path
+    private PageResponse pageResponse(Optional<Integer> page, String fields, Specification<Product> spec,
+                                      Pageable pageable, Function<Pageable, Page<ProductResponseDto>> fullPage) {
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
+        Page<?> results = fieldSet != null
+                ? productService.findProductFields(spec, pageable, fieldSet)
+                : fullPage.apply(pageable);
+        return new PageResponse(page, results.getSize(), results.getTotalElements(),
+                results.getTotalPages(), results.getContent());
+    }
+
     // Add a GET endpoint for add product page
     @GetMapping("/add")
     @PreAuthorize("hasRole('ADMIN')")
@@ -143,10 +202,13 @@ public class ProductController {
 
     // Get 1 product
     @GetMapping("/{id:[\\d]+}")
-    ResponseEntity<ResponseObject> GetDetailProduct(@PathVariable Long id)  {
+    ResponseEntity<ResponseObject> GetDetailProduct(@PathVariable Long id, @RequestParam(required = false) String fields)  {
         log.debug("Getting product details for ID: {}", id);
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
         try {
-            ProductResponseDto product = productService.getProductResponseDtoById(id);
+            Object product = fieldSet != null
+                    ? productService.getProductFieldsById(id, fieldSet)
+                    : productService.getProductResponseDtoById(id);
             return ResponseEntity.status(HttpStatus.OK).body(
                     new ResponseObject("ok", "get success", product)
             );
@@ -157,12 +219,47 @@ public class ProductController {
         }
     }
 
+    // Similar products for the product page, served from the precomputed similarity index
+    @GetMapping("/{id:[\\d]+}/similar")
+    ResponseEntity<ResponseObject> getSimilarProducts(@PathVariable Long id, @RequestParam Optional<Integer> limit) {
+        log.debug("Getting similar products for ID: {}", id);
+        try {
+            List<ProductResponseDto> products = productService.getSimilarProductsDto(
+                    id, Math.max(1, Math.min(limit.orElse(maxSimilarProducts), maxSimilarProducts)));
+            return ResponseEntity.ok(
+                    new ResponseObject("ok", "get similar products successfully", products)
+            );
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                    new ResponseObject("failed", "can not find product with "+id, "")
+            );
+        }
+    }
+
+    // Stock for every size of a product in one read
+    @GetMapping("/{id:[\\d]+}/sizes")
+    ResponseEntity<ResponseObject> getSizeAvailability(@PathVariable Long id) {
+        log.debug("Getting size availability for product ID: {}", id);
+        try {
+            return ResponseEntity.ok(
+                    new ResponseObject("ok", "get size availability successfully", productService.getSizeAvailability(id))
+            );
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                    new ResponseObject("failed", "can not find product with "+id, "")
+            );
+        }
+    }
+
     // Internal endpoint for direct access by other services (cart, invoice)
     @GetMapping("/internal/{id}")
-    ResponseEntity<Product> getProductInternal(@PathVariable Long id) {
+    ResponseEntity<?> getProductInternal(@PathVariable Long id, @RequestParam(required = false) String fields) {
         log.debug("Internal request for product ID: {}", id);
+        ProductFieldSet fieldSet = ProductFieldSet.parse(fields);
         try {
-            Product product = productService.getProductById(id);
+            Object product = fieldSet != null
+                    ? productService.getProductFieldsById(id, fieldSet)
+                    : productService.getProductResponseDtoById(id);
             return ResponseEntity.ok(product);
         } catch (Exception e) {
             log.error("Error retrieving product for internal use: {}", e.getMessage());
@@ -170,6 +267,18 @@ public class ProductController {
         }
     }
 
+    // Several products in one call for other services; ids that do not exist are left out
+    @GetMapping("/internal")
+    ResponseEntity<?> getProductsInternal(@RequestParam List<Long> ids) {
+        if (ids.size() > MAX_INTERNAL_IDS) {
+            return ResponseEntity.badRequest().body(
+                    new ResponseObject("failed", "At most " + MAX_INTERNAL_IDS + " ids per request", "")
+            );
+        }
+        log.debug("Internal request for {} products", ids.size());
+        return ResponseEntity.ok(productService.getProductResponsesDtoByIds(ids));
+    }
+
     // Update product with ProductRequestDto
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
@@ -208,8 +317,10 @@ public class ProductController {
                 );
             }
             
-            Product updatedProduct = productService.updateProductQuantity(id, newQuantity);
-            ProductResponseDto response = ProductMapperDto.toProductResponseDto(updatedProduct);
+            Integer size = request.get("size");
+            ProductResponseDto response = size != null
+                    ? productService.updateSizeQuantity(id, size, newQuantity)
+                    : productService.updateProductQuantity(id, newQuantity);
             
             return ResponseEntity.ok(
                     new ResponseObject("ok", "Inventory updated successfully", response)
@@ -243,60 +354,52 @@ public class ProductController {
     @GetMapping("/search")
     ResponseEntity<PageResponse> searchProducts(
             @RequestParam String keyword,
-            @RequestParam Optional<Integer> page) {
+            @RequestParam Optional<Integer> page,
+            @RequestParam(required = false) String fields) {
         log.debug("Searching for products with keyword: {}", keyword);
         
-        Page<ProductResponseDto> results = productService.searchByKeywordDto(
-                keyword, PageRequest.of(page.orElse(0), 10));
-        
         return ResponseEntity.ok(
-                new PageResponse(page, results.getSize(), results.getTotalElements(),
-                        results.getTotalPages(), results.getContent())
+                pageResponse(page, fields, ProductSpecifications.matchesKeyword(keyword), PageRequest.of(page.orElse(0), 10),
+                        pageable -> productService.searchByKeywordDto(keyword, pageable))
         );
     }
     
     @GetMapping("/category/{category}")
     ResponseEntity<PageResponse> getProductsByCategory(
             @PathVariable String category,
-            @RequestParam Optional<Integer> page) {
+            @RequestParam Optional<Integer> page,
+            @RequestParam(required = false) String fields) {
         log.debug("Getting products by category: {}", category);
         
-        Page<ProductResponseDto> results = productService.searchByCategoryDto(
-                category, PageRequest.of(page.orElse(0), 10));
-        
         return ResponseEntity.ok(
-                new PageResponse(page, results.getSize(), results.getTotalElements(),
-                        results.getTotalPages(), results.getContent())
+                pageResponse(page, fields, ProductSpecifications.hasCategory(category), PageRequest.of(page.orElse(0), 10),
+                        pageable -> productService.searchByCategoryDto(category, pageable))
         );
     }
     
     @GetMapping("/brand/{brand}")
     ResponseEntity<PageResponse> getProductsByBrand(
             @PathVariable String brand,
-            @RequestParam Optional<Integer> page) {
+            @RequestParam Optional<Integer> page,
+            @RequestParam(required = false) String fields) {
         log.debug("Getting products by brand: {}", brand);
         
-        Page<ProductResponseDto> results = productService.searchByBrandDto(
-                brand, PageRequest.of(page.orElse(0), 10));
-        
         return ResponseEntity.ok(
-                new PageResponse(page, results.getSize(), results.getTotalElements(),
-                        results.getTotalPages(), results.getContent())
+                pageResponse(page, fields, ProductSpecifications.hasBrand(brand), PageRequest.of(page.orElse(0), 10),
+                        pageable -> productService.searchByBrandDto(brand, pageable))
         );
     }
     
     @GetMapping("/designer/{designer}")
     ResponseEntity<PageResponse> getProductsByDesigner(
             @PathVariable String designer,
-            @RequestParam Optional<Integer> page) {
+            @RequestParam Optional<Integer> page,
+            @RequestParam(required = false) String fields) {
         log.debug("Getting products by designer: {}", designer);
         
-        Page<ProductResponseDto> results = productService.searchByDesignerDto(
-                designer, PageRequest.of(page.orElse(0), 10));
-        
         return ResponseEntity.ok(
-                new PageResponse(page, results.getSize(), results.getTotalElements(),
-                        results.getTotalPages(), results.getContent())
+                pageResponse(page, fields, ProductSpecifications.hasDesigner(designer), PageRequest.of(page.orElse(0), 10),
+                        pageable -> productService.searchByDesignerDto(designer, pageable))
         );
     }
     
@@ -304,15 +407,13 @@ public class ProductController {
     ResponseEntity<PageResponse> getProductsByPriceRange(
             @RequestParam BigDecimal min,
             @RequestParam BigDecimal max,
-            @RequestParam Optional<Integer> page) {
+            @RequestParam Optional<Integer> page,
+            @RequestParam(required = false) String fields) {
         log.debug("Getting products by price range: {} - {}", min, max);
         
-        Page<ProductResponseDto> results = productService.searchByPriceRangeDto(
-                min, max, PageRequest.of(page.orElse(0), 10));
-        
         return ResponseEntity.ok(
-                new PageResponse(page, results.getSize(), results.getTotalElements(),
-                        results.getTotalPages(), results.getContent())
+                pageResponse(page, fields, ProductSpecifications.priceBetween(min, max), PageRequest.of(page.orElse(0), 10),
+                        pageable -> productService.searchByPriceRangeDto(min, max, pageable))
         );
     }
     
@@ -330,6 +431,16 @@ public class ProductController {
         );
     }
     
+    // Reorder quantities from the smoothed daily sales rate; all=true also lists products with enough cover
+    @GetMapping("/reorder-suggestions")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> getReorderSuggestions(@RequestParam(defaultValue = "false") boolean all) {
+        List<ReorderSuggestionDto> suggestions = demandForecastService.getReorderSuggestions(all);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "get reorder suggestions successfully", suggestions)
+        );
+    }
+    
     @PatchMapping("/{id}/reorder-level")
     @PreAuthorize("hasRole('ADMIN')")
     ResponseEntity<ResponseObject> updateReorderLevel(
@@ -385,6 +496,193 @@ public class ProductController {
         }
     }
 
+    // Seasonal price changes: percentage rules by brand/category plus explicit id -> price lists
+    @PostMapping("/bulk-update")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> bulkUpdate(@Valid @RequestBody BulkUpdateRequestDto request) {
+        log.debug("Bulk updating products: {} rules, {} explicit prices",
+                request.getRules() == null ? 0 : request.getRules().size(),
+                request.getPrices() == null ? 0 : request.getPrices().size());
+        try {
+            BulkUpdateResultDto result = productBulkUpdateService.applyBulkUpdate(request);
+            return ResponseEntity.ok(
+                    new ResponseObject("ok", "Updated " + result.getUpdatedCount() + " products", result)
+            );
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                    new ResponseObject("error", e.getMessage(), null)
+            );
+        } catch (Exception e) {
+            log.error("Error during bulk update: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    new ResponseObject("error", "Failed to bulk update products: " + e.getMessage(), null)
+            );
+        }
+    }
+
+    // Folds legacy one-row-per-size products into size-tracked products; dry run by default
+    @PostMapping("/migrate-size-variants")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> migrateSizeVariants(@RequestParam(defaultValue = "true") boolean dryRun) {
+        log.debug("Migrating size variants, dryRun={}", dryRun);
+        try {
+            List<Map<String, Object>> report = sizeVariantMigrationService.migrate(dryRun);
+            return ResponseEntity.ok(
+                    new ResponseObject("ok", (dryRun ? "Would migrate " : "Migrated ") + report.size() + " products", report)
+            );
+        } catch (Exception e) {
+            log.error("Error migrating size variants: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    new ResponseObject("error", "Failed to migrate size variants: " + e.getMessage(), null)
+            );
+        }
+    }
+
+    // Catalog and stock export, streamed row by row so memory stays flat for any catalog size
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = "xlsx") String format) {
+        log.debug("Exporting products as {}", format);
+
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"xlsx".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Unsupported export format: " + format + ". Use xlsx or csv");
+        }
+
+        StreamingResponseBody body = csv ? productExportService::exportCsv : productExportService::exportXlsx;
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"products." + (csv ? "csv" : "xlsx") + "\"")
+                .contentType(csv
+                        ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
+    }
+
+    // Stock movement history of one product, newest first
+    @GetMapping("/{id:[\\d]+}/inventory/ledger")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> getInventoryLedger(@PathVariable Long id) {
+        productService.getProductById(id);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "get inventory ledger successfully", inventoryLedgerService.recentEntries(id))
+        );
+    }
+
+    // Products whose stock snapshot no longer matches the ledger entries folded into it
+    @GetMapping("/inventory/reconciliation")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> reconcileInventory() {
+        List<Map<String, Object>> report = inventoryLedgerService.reconcile(false);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", report.size() + " products out of balance", report)
+        );
+    }
+
+    // Appends correction entries for every mismatch; on-hand stock is unchanged
+    @PostMapping("/inventory/reconciliation")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> repairInventory() {
+        log.debug("Repairing inventory ledger drift");
+        List<Map<String, Object>> report = inventoryLedgerService.reconcile(true);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "Reconciled " + report.size() + " products", report)
+        );
+    }
+
+    @GetMapping("/{id:[\\d]+}/reviews")
+    ResponseEntity<ResponseObject> getReviews(@PathVariable Long id, @RequestParam Optional<Integer> page) {
+        Page<Review> reviews = reviewService.getReviews(id,
+                PageRequest.of(page.orElse(0), 10, Sort.by(Sort.Direction.DESC, "id")));
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "get reviews successfully", reviews.getContent())
+        );
+    }
+
+    // Adds the signed-in user's review, or replaces their earlier one
+    @PostMapping("/{id:[\\d]+}/reviews")
+    ResponseEntity<ResponseObject> saveReview(@PathVariable Long id, @Valid @RequestBody ReviewRequestDto request,
+                                              Authentication authentication) {
+        Review review = reviewService.saveReview(id, authentication.getName(), request);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "saved review successfully", review)
+        );
+    }
+
+    @DeleteMapping("/{id:[\\d]+}/reviews/{reviewId}")
+    ResponseEntity<ResponseObject> deleteReview(@PathVariable Long id, @PathVariable Long reviewId,
+                                                Authentication authentication) {
+        boolean admin = authentication.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+        reviewService.deleteReview(id, reviewId, authentication.getName(), admin);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "deleted review successfully", "")
+        );
+    }
+
+    // Rebuilds rating aggregates from the reviews table
+    @PostMapping("/reviews/recompute")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> recomputeRatings() {
+        int updated = reviewService.recomputeAggregates();
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "Recomputed ratings for " + updated + " products", updated)
+        );
+    }
+
+    // Warehouses and stores that hold stock
+    @GetMapping("/locations")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> getStockLocations() {
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "get stock locations successfully", stockAllocationService.getLocations())
+        );
+    }
+
+    @PostMapping("/locations")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> addStockLocation(@RequestBody StockLocation location) {
+        log.debug("Adding stock location: {}", location.getCode());
+        location.setId(null);
+        return ResponseEntity.status(HttpStatus.CREATED).body(
+                new ResponseObject("ok", "added stock location successfully", stockAllocationService.saveLocation(location))
+        );
+    }
+
+    // Sets the stock of one product (and size) at one location
+    @PutMapping("/locations/{locationId}/stock/{productId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> setLocationStock(@PathVariable Long locationId, @PathVariable Long productId,
+                                                    @RequestBody Map<String, Integer> request) {
+        Integer quantity = request.get("quantity");
+        if (quantity == null) {
+            return ResponseEntity.badRequest().body(
+                    new ResponseObject("error", "Quantity is required", null)
+            );
+        }
+        LocationStock stock = stockAllocationService.setLocationStock(locationId, productId, request.get("size"), quantity);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "Location stock updated successfully", stock)
+        );
+    }
+
+    @GetMapping("/{id:[\\d]+}/locations")
+    @PreAuthorize("hasRole('ADMIN')")
+    ResponseEntity<ResponseObject> getProductLocationStock(@PathVariable Long id) {
+        return ResponseEntity.ok(
+                new ResponseObject("ok", "get location stock successfully", stockAllocationService.getProductStock(id))
+        );
+    }
+
+    // Plans which locations ship an order, with as few shipments as possible
+    @PostMapping("/allocations")
+    ResponseEntity<ResponseObject> allocateOrder(@Valid @RequestBody AllocationRequestDto request) {
+        AllocationResultDto result = stockAllocationService.allocate(request);
+        return ResponseEntity.ok(
+                new ResponseObject("ok", result.getShipmentCount() + " shipments", result)
+        );
+    }
+
     @PostMapping("/import-excel")
     @PreAuthorize("hasRole('ADMIN')")
     ResponseEntity<ResponseObject> importProductsFromExcel(@RequestParam("file") MultipartFile file) {
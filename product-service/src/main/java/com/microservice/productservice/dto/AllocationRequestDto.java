@@ -0,0 +1,23 @@
+package com.microservice.productservice.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AllocationRequestDto {
+    // Invoice ship address; the region is derived from its province
+    private String shipAddress;
+
+    // Overrides the region derived from shipAddress: NORTH, CENTRAL or SOUTH
+    private String region;
+
+    @NotEmpty
+    private List<OrderItemDto> items;
+}
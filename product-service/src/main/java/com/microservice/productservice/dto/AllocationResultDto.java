@@ -0,0 +1,21 @@
+package com.microservice.productservice.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AllocationResultDto {
+    private String region;
+    private int shipmentCount;
+    private List<ShipmentDto> shipments;
+    // Quantities no location can supply; empty when the order is fully allocated
+    private List<OrderItemDto> unfilled;
+    private boolean complete;
+    private long durationMicros;
+}
@@ -0,0 +1,29 @@
+package com.microservice.productservice.dto;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import java.math.BigDecimal;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkPriceRuleDto {
+    // At least one of brandName / category must be set
+    private String brandName;
+
+    private String category;
+
+    // e.g. -20 for a 20% discount, 10 for a 10% increase
+    @DecimalMin(value = "-99.99", message = "Phần trăm thay đổi giá phải lớn hơn -100")
+    @DecimalMax(value = "1000", message = "Phần trăm thay đổi giá không được vượt quá 1000")
+    private BigDecimal percentChange;
+
+    @Min(value = 0, message = "Reorder level phải lớn hơn hoặc bằng 0")
+    private Integer reorderLevel;
+}
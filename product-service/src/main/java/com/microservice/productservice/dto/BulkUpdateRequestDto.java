@@ -0,0 +1,23 @@
+package com.microservice.productservice.dto;
+
+import jakarta.validation.Valid;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkUpdateRequestDto {
+    // Applied in order; explicit prices are applied last and win over rules
+    @Valid
+    private List<BulkPriceRuleDto> rules;
+
+    // Product id -> new price
+    private Map<Long, BigDecimal> prices;
+}
@@ -0,0 +1,19 @@
+package com.microservice.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkUpdateResultDto {
+    private int updatedCount;
+    private int statementCount;
+    private long durationMs;
+    private List<Long> productIds;
+}
@@ -0,0 +1,21 @@
+package com.microservice.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@SuperBuilder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogEvent extends BaseEvent {
+    private String changeType;
+    private List<Long> productIds;
+    // MERGE only: the surviving product, and the size unsized lines of each merged id (itself included) become
+    private Long mergedInto;
+    private Map<Long, Integer> mergedSizes;
+}
@@ -0,0 +1,18 @@
+package com.microservice.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * Outcome of a checkout saga step, sent back to cart-service: STOCK_RESERVED or STOCK_REJECTED.
+ */
+@Data
+@SuperBuilder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutReplyEvent extends BaseEvent {
+    private String checkoutId;
+    private String reason;
+}
@@ -13,6 +13,8 @@ import java.util.List;
 @AllArgsConstructor
 public class OrderEvent extends BaseEvent {
     private Long invoiceId;
+    // Set on events that belong to a cart-service checkout saga
+    private String checkoutId;
     private Long userId;
     private String status;
     private List<OrderItemDto> items;
@@ -15,5 +15,6 @@ import java.math.BigDecimal;
 public class OrderItemDto implements Serializable {
     private Long productId;
     private Integer quantity;
+    private Integer size;
     private BigDecimal price;
 } 
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.microservice.productservice.dto;
+
+import com.microservice.productservice.entity.RatingHistogram;
+import com.microservice.productservice.entity.SizeStock;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A sparse fieldset requested with {@code ?fields=id,productName,productPrice}.
+ * Knows which entity attributes each response field needs, so the query selects only those
+ * columns and the response map carries only the requested properties.
+ */
+public final class ProductFieldSet {
+
+    // Response field -> entity attributes it is computed from
+    private static final Map<String, List<String>> ATTRIBUTES;
+
+    static {
+        Map<String, List<String>> attributes = new LinkedHashMap<>();
+        for (String basic : List.of("id", "productName", "description", "category", "productPrice", "imgUrl",
+                "quantity", "brandName", "designer", "sizeTracked", "reorderLevel", "ratingCount", "ratingAverage",
+                "ratingHistogram", "createdAt", "updatedAt")) {
+            attributes.put(basic, List.of(basic));
+        }
+        attributes.put("sizeStock", List.of("sizeTracked", "sizeStock"));
+        attributes.put("inStock", List.of("quantity"));
+        attributes.put("lowStock", List.of("quantity", "reorderLevel"));
+        ATTRIBUTES = Collections.unmodifiableMap(attributes);
+    }
+
+    private final List<String> fields;
+    private final Set<String> attributes;
+
+    private ProductFieldSet(List<String> fields) {
+        this.fields = fields;
+        Set<String> needed = new LinkedHashSet<>();
+        fields.forEach(field -> needed.addAll(ATTRIBUTES.get(field)));
+        if (needed.contains("quantity") || needed.contains("sizeStock")) {
+            // Stock is snapshot plus pending ledger entries, which are looked up by id
+            needed.add("id");
+        }
+        this.attributes = Collections.unmodifiableSet(needed);
+    }
+
+    /**
+     * Parses a comma separated field list; returns null when no fieldset was requested.
+     *
+     * @throws IllegalArgumentException if a field is not a product response property
+     */
+    public static ProductFieldSet parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+
+        Set<String> requested = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!ATTRIBUTES.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown product field: " + name
+                        + ". Allowed fields: " + String.join(",", ATTRIBUTES.keySet()));
+            }
+            requested.add(name);
+        }
+
+        return requested.isEmpty() ? null : new ProductFieldSet(List.copyOf(requested));
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Entity attributes to select, in a stable order.
+     */
+    public Set<String> getAttributes() {
+        return attributes;
+    }
+
+    public boolean hasStockFields() {
+        return attributes.contains("quantity") || attributes.contains("sizeStock");
+    }
+
+    /**
+     * Builds the response map from selected attribute values, in the order the fields were requested.
+     */
+    public Map<String, Object> toMap(Function<String, Object> attribute) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String field : fields) {
+            row.put(field, switch (field) {
+                case "sizeStock" -> Boolean.TRUE.equals(attribute.apply("sizeTracked"))
+                        && attribute.apply("sizeStock") instanceof SizeStock sizeStock ? sizeStock.asMap() : null;
+                case "ratingHistogram" -> attribute.apply("ratingHistogram") instanceof RatingHistogram histogram
+                        ? histogram.asMap() : null;
+                case "inStock" -> intValue(attribute.apply("quantity")) > 0;
+                case "lowStock" -> intValue(attribute.apply("quantity")) <= intValue(attribute.apply("reorderLevel"));
+                default -> attribute.apply(field);
+            });
+        }
+        return row;
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", fields);
+    }
+}
@@ -13,6 +13,7 @@ import java.io.Serializable;
 @AllArgsConstructor
 public class ProductInventoryChangeDto implements Serializable {
     private Long productId;
+    private Integer size;
     private Integer previousQuantity;
     private Integer newQuantity;
     private Integer changeAmount;
@@ -1,6 +1,7 @@
 package com.microservice.productservice.dto;
 
 import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.SizeStock;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -22,7 +23,12 @@ public class ProductMapperDto {
                 .quantity(product.getQuantity())
                 .brandName(product.getBrandName())
                 .designer(product.getDesigner())
+                .sizeTracked(product.isSizeTracked())
+                .sizeStock(product.isSizeTracked() ? product.getSizeStock().asMap() : null)
                 .reorderLevel(product.getReorderLevel())
+                .ratingCount(product.getRatingCount())
+                .ratingAverage(product.getRatingAverage())
+                .ratingHistogram(product.getRatingHistogram() != null ? product.getRatingHistogram().asMap() : null)
                 .createdAt(product.getCreatedAt())
                 .updatedAt(product.getUpdatedAt())
                 .inStock(product.getQuantity() > 0)
@@ -59,6 +65,8 @@ public class ProductMapperDto {
             product.setReorderLevel(request.getReorderLevel());
         }
         
+        applySizeStock(product, request);
+        
         return product;
     }
     
@@ -79,5 +87,18 @@ public class ProductMapperDto {
         if (request.getReorderLevel() != null) {
             product.setReorderLevel(request.getReorderLevel());
         }
+        
+        applySizeStock(product, request);
+    }
+    
+    private static void applySizeStock(Product product, ProductRequestDto request) {
+        if (request.getSizeStock() == null || request.getSizeStock().isEmpty()) {
+            return;
+        }
+        
+        SizeStock sizeStock = SizeStock.fromMap(request.getSizeStock());
+        product.setSizeTracked(true);
+        product.setSizeStock(sizeStock);
+        product.setQuantity(sizeStock.total());
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import java.math.BigDecimal;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -44,4 +45,7 @@ public class ProductRequestDto {
     
     @Min(value = 0, message = "Reorder level phải lớn hơn hoặc bằng 0")
     private Integer reorderLevel = 5; // Default reorder level
+    
+    // Optional per-size stock (EU size -> quantity); when present the quantity becomes its sum
+    private Map<Integer, Integer> sizeStock;
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Data
 @Builder
@@ -22,7 +23,12 @@ public class ProductResponseDto {
     private int quantity;
     private String brandName;
     private String designer;
+    private boolean sizeTracked;
+    private Map<Integer, Integer> sizeStock;
     private int reorderLevel;
+    private int ratingCount;
+    private double ratingAverage;
+    private Map<Integer, Integer> ratingHistogram;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private boolean inStock;
@@ -0,0 +1,23 @@
+package com.microservice.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReorderSuggestionDto {
+    private Long productId;
+    private String productName;
+    private int onHand;
+    private int reorderLevel;
+    // Smoothed units sold per day
+    private double dailySalesRate;
+    // On-hand stock divided by the daily rate; null when nothing has sold recently
+    private Double daysOfCover;
+    private int suggestedReorderLevel;
+    private int suggestedOrderQuantity;
+}
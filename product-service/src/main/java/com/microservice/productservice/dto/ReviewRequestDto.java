@@ -0,0 +1,24 @@
+package com.microservice.productservice.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewRequestDto {
+    @NotNull(message = "Số sao không được để trống")
+    @Min(value = 1, message = "Số sao phải từ 1 đến 5")
+    @Max(value = 5, message = "Số sao phải từ 1 đến 5")
+    private Integer rating;
+
+    @Size(max = 2000, message = "Nhận xét không được vượt quá 2000 ký tự")
+    private String comment;
+}
@@ -0,0 +1,18 @@
+package com.microservice.productservice.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShipmentDto {
+    private Long locationId;
+    private String locationCode;
+    private String region;
+    private List<OrderItemDto> items;
+}
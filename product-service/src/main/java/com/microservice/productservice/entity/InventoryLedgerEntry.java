@@ -0,0 +1,59 @@
+package com.microservice.productservice.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stock movement. Rows are only ever inserted; products.quantity is a snapshot of the
+ * entries up to products.ledger_watermark, folded in by the ledger compactor.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@Table(name = "inventory_ledger",
+       // One movement per event and SKU: a redelivered event cannot be recorded twice
+       uniqueConstraints = @UniqueConstraint(name = "uk_inventory_ledger_movement",
+                                             columnNames = {"reason", "reference", "product_id", "size"}),
+       indexes = {
+           @Index(name = "idx_inventory_ledger_product", columnList = "product_id, id"),
+           @Index(name = "idx_inventory_ledger_reference", columnList = "reference")
+       })
+public class InventoryLedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    
+    // EU size for size-tracked products, null otherwise
+    @Column(name = "size")
+    private Integer size;
+    
+    @Column(name = "delta", nullable = false)
+    private int delta;
+    
+    @Column(name = "reason", nullable = false, length = 32)
+    private String reason;
+    
+    // Event id or other correlation id, when there is one
+    @Column(name = "reference", length = 64)
+    private String reference;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,49 @@
+package com.microservice.productservice.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stock of one SKU (product, and size for size-tracked products) at one location.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@Table(name = "location_stock",
+       indexes = @Index(name = "idx_location_stock_sku", columnList = "product_id, size"))
+public class LocationStock {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "location_id", nullable = false)
+    private Long locationId;
+    
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    
+    // EU size for size-tracked products, null otherwise
+    @Column(name = "size")
+    private Integer size;
+    
+    @Column(name = "quantity", nullable = false)
+    private int quantity;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
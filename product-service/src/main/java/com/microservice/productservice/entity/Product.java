@@ -1,10 +1,12 @@
 package com.microservice.productservice.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -14,7 +16,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Getter
 @Setter
-@Table(name = "products")
+@Table(name = "products",
+       indexes = @Index(name = "idx_products_rating", columnList = "rating_average, rating_count"))
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -36,9 +39,37 @@ public class Product {
 
     private String designer;
     
+    // When set, quantity is the sum of the per-size stock below
+    @Column(name = "size_tracked", nullable = false)
+    private boolean sizeTracked;
+    
+    @Embedded
+    private SizeStock sizeStock = new SizeStock();
+    
     @Column(name = "reorder_level")
     private int reorderLevel = 5; // Default reorder level
     
+    // quantity and sizeStock are a snapshot: they include every inventory_ledger entry up to this id
+    @Column(name = "ledger_watermark", nullable = false)
+    @JsonIgnore
+    private long ledgerWatermark;
+    
+    // Review aggregates, maintained incrementally by ReviewService; entity saves never write them
+    @Column(name = "rating_count", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private int ratingCount;
+    
+    @Column(name = "rating_sum", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private long ratingSum;
+    
+    @Column(name = "rating_average", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private double ratingAverage;
+    
+    @Embedded
+    private RatingHistogram ratingHistogram = new RatingHistogram();
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
@@ -63,4 +94,8 @@ public class Product {
     public boolean isLowStock() {
         return quantity <= reorderLevel;
     }
+    
+    public int getAvailable(Integer size) {
+        return sizeTracked && size != null ? sizeStock.get(size) : quantity;
+    }
 }
@@ -0,0 +1,51 @@
+package com.microservice.productservice.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Exponentially smoothed daily sales rate of one product. Constant size per product: the smoothed
+ * rate of completed days plus the units of the day still open.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@Table(name = "product_demand")
+public class ProductDemand {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+    
+    // Units per day, smoothed over completed days
+    @Column(name = "daily_rate", nullable = false)
+    private double dailyRate;
+    
+    // Number of completed days folded into dailyRate (capped); 0 means no estimate yet
+    @Column(name = "observed_days", nullable = false)
+    private int observedDays;
+    
+    // Epoch day of the open bucket and the net units sold on it so far
+    @Column(name = "bucket_day", nullable = false)
+    private long bucketDay;
+    
+    @Column(name = "bucket_units", nullable = false)
+    private int bucketUnits;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,75 @@
+package com.microservice.productservice.entity;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Number of reviews per star rating (1-5), embedded in the product row.
+ * Only written by ReviewService's incremental UPDATEs, never by entity saves.
+ */
+@Embeddable
+@NoArgsConstructor
+public class RatingHistogram {
+    public static final int MIN_RATING = 1;
+    public static final int MAX_RATING = 5;
+
+    @Column(name = "rating_star1", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private int star1;
+
+    @Column(name = "rating_star2", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private int star2;
+
+    @Column(name = "rating_star3", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private int star3;
+
+    @Column(name = "rating_star4", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private int star4;
+
+    @Column(name = "rating_star5", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private int star5;
+
+    public static boolean isValid(Integer rating) {
+        return rating != null && rating >= MIN_RATING && rating <= MAX_RATING;
+    }
+
+    /**
+     * Column counting a star rating. Only built from a validated rating, so safe in native statements.
+     */
+    public static String columnFor(int rating) {
+        if (!isValid(rating)) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5: " + rating);
+        }
+        return "rating_star" + rating;
+    }
+
+    public int get(int rating) {
+        switch (rating) {
+            case 1: return star1;
+            case 2: return star2;
+            case 3: return star3;
+            case 4: return star4;
+            case 5: return star5;
+            default: throw new IllegalArgumentException("Rating must be between 1 and 5: " + rating);
+        }
+    }
+
+    @JsonValue
+    public Map<Integer, Integer> asMap() {
+        Map<Integer, Integer> histogram = new LinkedHashMap<>();
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++) {
+            histogram.put(rating, get(rating));
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,137 @@
+package com.microservice.productservice.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-size stock vector (EU 36-47) embedded in the product row, so availability for every
+ * size comes back with the product in a single read and can be decremented atomically per size.
+ */
+@Embeddable
+@NoArgsConstructor
+public class SizeStock {
+    public static final int MIN_SIZE = 36;
+    public static final int MAX_SIZE = 47;
+
+    @Column(name = "stock_eu36", nullable = false)
+    private int eu36;
+
+    @Column(name = "stock_eu37", nullable = false)
+    private int eu37;
+
+    @Column(name = "stock_eu38", nullable = false)
+    private int eu38;
+
+    @Column(name = "stock_eu39", nullable = false)
+    private int eu39;
+
+    @Column(name = "stock_eu40", nullable = false)
+    private int eu40;
+
+    @Column(name = "stock_eu41", nullable = false)
+    private int eu41;
+
+    @Column(name = "stock_eu42", nullable = false)
+    private int eu42;
+
+    @Column(name = "stock_eu43", nullable = false)
+    private int eu43;
+
+    @Column(name = "stock_eu44", nullable = false)
+    private int eu44;
+
+    @Column(name = "stock_eu45", nullable = false)
+    private int eu45;
+
+    @Column(name = "stock_eu46", nullable = false)
+    private int eu46;
+
+    @Column(name = "stock_eu47", nullable = false)
+    private int eu47;
+
+    public static boolean isSupported(Integer size) {
+        return size != null && size >= MIN_SIZE && size <= MAX_SIZE;
+    }
+
+    /**
+     * Column holding the stock of a size. Only ever built from a validated size,
+     * so it is safe to splice into native statements.
+     */
+    public static String columnFor(int size) {
+        if (!isSupported(size)) {
+            throw new IllegalArgumentException("Unsupported shoe size: " + size);
+        }
+        return "stock_eu" + size;
+    }
+
+    public int get(int size) {
+        switch (size) {
+            case 36: return eu36;
+            case 37: return eu37;
+            case 38: return eu38;
+            case 39: return eu39;
+            case 40: return eu40;
+            case 41: return eu41;
+            case 42: return eu42;
+            case 43: return eu43;
+            case 44: return eu44;
+            case 45: return eu45;
+            case 46: return eu46;
+            case 47: return eu47;
+            default: throw new IllegalArgumentException("Unsupported shoe size: " + size);
+        }
+    }
+
+    public void set(int size, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Stock for size " + size + " cannot be negative");
+        }
+        switch (size) {
+            case 36: eu36 = quantity; break;
+            case 37: eu37 = quantity; break;
+            case 38: eu38 = quantity; break;
+            case 39: eu39 = quantity; break;
+            case 40: eu40 = quantity; break;
+            case 41: eu41 = quantity; break;
+            case 42: eu42 = quantity; break;
+            case 43: eu43 = quantity; break;
+            case 44: eu44 = quantity; break;
+            case 45: eu45 = quantity; break;
+            case 46: eu46 = quantity; break;
+            case 47: eu47 = quantity; break;
+            default: throw new IllegalArgumentException("Unsupported shoe size: " + size);
+        }
+    }
+
+    public int total() {
+        int total = 0;
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            total += get(size);
+        }
+        return total;
+    }
+
+    @JsonValue
+    public Map<Integer, Integer> asMap() {
+        Map<Integer, Integer> stock = new LinkedHashMap<>();
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            stock.put(size, get(size));
+        }
+        return stock;
+    }
+
+    @JsonCreator
+    public static SizeStock fromMap(Map<Integer, Integer> stock) {
+        SizeStock sizeStock = new SizeStock();
+        if (stock != null) {
+            stock.forEach((size, quantity) -> sizeStock.set(size, quantity == null ? 0 : quantity));
+        }
+        return sizeStock;
+    }
+}
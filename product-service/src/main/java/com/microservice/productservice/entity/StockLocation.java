@@ -0,0 +1,42 @@
+package com.microservice.productservice.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A warehouse or store that ships orders.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@Table(name = "stock_locations")
+public class StockLocation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "code", nullable = false, unique = true, length = 32)
+    private String code;
+    
+    @Column(name = "name")
+    private String name;
+    
+    // Shipping region served at the lowest cost, e.g. NORTH, CENTRAL, SOUTH
+    @Column(name = "region", nullable = false, length = 16)
+    private String region;
+    
+    // Lower ships first when locations are otherwise equal
+    @Column(name = "priority", nullable = false)
+    private int priority;
+    
+    @Column(name = "active", nullable = false)
+    @Builder.Default
+    private boolean active = true;
+}
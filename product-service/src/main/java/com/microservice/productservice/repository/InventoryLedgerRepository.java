@@ -0,0 +1,32 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.entity.InventoryLedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface InventoryLedgerRepository extends JpaRepository<InventoryLedgerEntry, Long> {
+    
+    // Entries not yet folded into the product snapshot, per size: rows of [size, sum(delta)]
+    @Query("SELECT e.size, SUM(e.delta) FROM InventoryLedgerEntry e " +
+           "WHERE e.productId = :productId AND e.id > :watermark GROUP BY e.size")
+    List<Object[]> sumTailBySize(@Param("productId") Long productId, @Param("watermark") long watermark);
+    
+    // Same for a page of products in one query: rows of [productId, size, sum(delta)]
+    @Query("SELECT e.productId, e.size, SUM(e.delta) FROM InventoryLedgerEntry e, Product p " +
+           "WHERE p.id = e.productId AND e.id > p.ledgerWatermark AND e.productId IN :productIds " +
+           "GROUP BY e.productId, e.size")
+    List<Object[]> sumTailsBySize(@Param("productIds") Collection<Long> productIds);
+    
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM InventoryLedgerEntry e WHERE e.productId = :productId")
+    long findLastIdByProductId(@Param("productId") Long productId);
+    
+    List<InventoryLedgerEntry> findTop100ByProductIdOrderByIdDesc(Long productId);
+    
+    boolean existsByReasonAndReference(String reason, String reference);
+}
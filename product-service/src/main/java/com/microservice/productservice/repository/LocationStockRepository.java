@@ -0,0 +1,27 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.entity.LocationStock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface LocationStockRepository extends JpaRepository<LocationStock, Long> {
+    
+    // size is null for products that do not track sizes
+    @Query("SELECT s FROM LocationStock s WHERE s.locationId = :locationId AND s.productId = :productId " +
+           "AND ((:size IS NULL AND s.size IS NULL) OR s.size = :size)")
+    Optional<LocationStock> findSku(@Param("locationId") Long locationId,
+                                    @Param("productId") Long productId,
+                                    @Param("size") Integer size);
+    
+    List<LocationStock> findByProductId(Long productId);
+    
+    List<LocationStock> findByQuantityGreaterThan(int quantity);
+    
+    void deleteByProductId(Long productId);
+}
@@ -0,0 +1,19 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.entity.ProductDemand;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ProductDemandRepository extends JpaRepository<ProductDemand, Long> {
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM ProductDemand d WHERE d.productId = :productId")
+    Optional<ProductDemand> findForUpdate(@Param("productId") Long productId);
+}
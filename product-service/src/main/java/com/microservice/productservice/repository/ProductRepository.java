@@ -1,19 +1,23 @@
 package com.microservice.productservice.repository;
 
 import com.microservice.productservice.entity.Product;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product>,
+        ProductRepositoryCustom {
     Product findByProductName(String name);
     boolean existsByProductName(String productName);
     
@@ -49,6 +53,14 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
            "LOWER(p.designer) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     Page<Product> searchByKeyword(@Param("keyword") String keyword, Pageable pageable);
     
-    // Find products that need reordering (stock <= reorder level)
-    List<Product> findByQuantityLessThanEqualAndQuantityGreaterThan(int reorderLevel, int zero);
+    // Stock changes read the on-hand figure under this lock, see InventoryLedgerService
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.id = :id")
+    Optional<Product> findForUpdate(@Param("id") Long id);
+    
+    // Find products that need reordering (0 < stock <= reorder level). Stock is the snapshot plus the
+    // ledger entries not yet folded into it, as everywhere else; the snapshot alone lags behind orders.
+    @Query("SELECT p FROM Product p WHERE p.quantity + COALESCE((SELECT SUM(e.delta) FROM InventoryLedgerEntry e " +
+           "WHERE e.productId = p.id AND e.id > p.ledgerWatermark), 0) BETWEEN 1 AND :reorderLevel")
+    List<Product> findNeedingReorder(@Param("reorderLevel") int reorderLevel);
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.dto.ProductFieldSet;
+import com.microservice.productservice.entity.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Map;
+
+public interface ProductRepositoryCustom {
+    /**
+     * Selects only the columns behind the requested fields and returns one map per product.
+     * Stock fields include inventory ledger entries not yet compacted into the snapshot.
+     */
+    Page<Map<String, Object>> findFields(Specification<Product> spec, Pageable pageable, ProductFieldSet fieldSet);
+}
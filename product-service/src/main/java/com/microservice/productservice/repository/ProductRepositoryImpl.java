@@ -0,0 +1,101 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.dto.ProductFieldSet;
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.SizeStock;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private InventoryLedgerRepository inventoryLedgerRepository;
+
+    @Override
+    public Page<Map<String, Object>> findFields(Specification<Product> spec, Pageable pageable, ProductFieldSet fieldSet) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Product> root = query.from(Product.class);
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String attribute : fieldSet.getAttributes()) {
+            selections.add(root.get(attribute).alias(attribute));
+        }
+        query.multiselect(selections).where(spec.toPredicate(root, query, cb));
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+        }
+
+        List<Tuple> tuples = typedQuery.getResultList();
+        Map<Long, Map<Integer, Integer>> pending = fieldSet.hasStockFields() ? pendingDeltas(tuples) : Map.of();
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : tuples) {
+            Map<Integer, Integer> tail = pending.get(tuple.get("id"));
+            rows.add(fieldSet.toMap(tail == null ? tuple::get : attribute -> withTail(attribute, tuple.get(attribute), tail)));
+        }
+
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(rows);
+        }
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<Product> countRoot = countQuery.from(Product.class);
+        countQuery.select(cb.count(countRoot)).where(spec.toPredicate(countRoot, countQuery, cb));
+        return new PageImpl<>(rows, pageable, entityManager.createQuery(countQuery).getSingleResult());
+    }
+
+    // productId -> size (null if unsized) -> sum of ledger entries after the product's watermark
+    private Map<Long, Map<Integer, Integer>> pendingDeltas(List<Tuple> tuples) {
+        List<Long> ids = tuples.stream().map(tuple -> (Long) tuple.get("id")).toList();
+        Map<Long, Map<Integer, Integer>> pending = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Object[] row : inventoryLedgerRepository.sumTailsBySize(ids)) {
+                pending.computeIfAbsent((Long) row[0], id -> new HashMap<>())
+                        .put((Integer) row[1], ((Number) row[2]).intValue());
+            }
+        }
+        return pending;
+    }
+
+    private static Object withTail(String attribute, Object value, Map<Integer, Integer> tail) {
+        if ("quantity".equals(attribute) && value instanceof Number quantity) {
+            return quantity.intValue() + tail.values().stream().mapToInt(Integer::intValue).sum();
+        }
+        if ("sizeStock".equals(attribute) && value instanceof SizeStock sizeStock) {
+            Map<Integer, Integer> sizes = sizeStock.asMap();
+            tail.forEach((size, delta) -> {
+                if (size != null && sizes.containsKey(size)) {
+                    // SizeStock rejects negative stock; an oversold size shows as sold out
+                    sizes.merge(size, delta, (stock, change) -> Math.max(0, stock + change));
+                }
+            });
+            return SizeStock.fromMap(sizes);
+        }
+        return value;
+    }
+}
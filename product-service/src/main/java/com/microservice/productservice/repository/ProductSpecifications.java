@@ -0,0 +1,51 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.entity.Product;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Criteria equivalents of the derived/JPQL finders, for queries that select only some columns.
+ */
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> all() {
+        return (root, query, cb) -> cb.conjunction();
+    }
+
+    public static Specification<Product> hasId(Long id) {
+        return (root, query, cb) -> cb.equal(root.get("id"), id);
+    }
+
+    // Same matching as ProductRepository.searchByKeyword
+    public static Specification<Product> matchesKeyword(String keyword) {
+        String pattern = "%" + keyword.toLowerCase(Locale.ROOT) + "%";
+        return (root, query, cb) -> cb.or(
+                cb.like(cb.lower(root.get("productName")), pattern),
+                cb.like(cb.lower(root.get("description")), pattern),
+                cb.like(cb.lower(root.get("category")), pattern),
+                cb.like(cb.lower(root.get("brandName")), pattern),
+                cb.like(cb.lower(root.get("designer")), pattern));
+    }
+
+    public static Specification<Product> hasCategory(String category) {
+        return (root, query, cb) -> cb.equal(root.get("category"), category);
+    }
+
+    public static Specification<Product> hasBrand(String brandName) {
+        return (root, query, cb) -> cb.equal(root.get("brandName"), brandName);
+    }
+
+    public static Specification<Product> hasDesigner(String designer) {
+        return (root, query, cb) -> cb.equal(root.get("designer"), designer);
+    }
+
+    public static Specification<Product> priceBetween(BigDecimal min, BigDecimal max) {
+        return (root, query, cb) -> cb.between(root.get("productPrice"), min, max);
+    }
+}
@@ -0,0 +1,26 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.entity.Review;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ReviewRepository extends JpaRepository<Review, Long> {
+    
+    Page<Review> findByProductId(Long productId, Pageable pageable);
+    
+    // Locked so two edits of the same review cannot both apply their rating delta
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Review> findByProductIdAndUsername(Long productId, String username);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Review> findByIdAndProductId(Long id, Long productId);
+    
+    void deleteByProductId(Long productId);
+}
@@ -0,0 +1,15 @@
+package com.microservice.productservice.repository;
+
+import com.microservice.productservice.entity.StockLocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StockLocationRepository extends JpaRepository<StockLocation, Long> {
+    
+    List<StockLocation> findByActiveTrueOrderByPriorityAscIdAsc();
+    
+    boolean existsByCode(String code);
+}
@@ -4,6 +4,7 @@ import com.microservice.productservice.security.jwt.AuthEntryPointJwt;
 import com.microservice.productservice.security.jwt.AuthTokenFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -38,13 +39,25 @@ public class WebSecurityConfig {
             .authorizeHttpRequests(auth ->
                 auth.requestMatchers("/api/products/all", "/api/products/all-products", 
                                   "/api/products/shop-products", "/api/products/sort-products",
-                                  "/api/products/{id:[\\d]+}", "/api/products/search",
+                                  "/api/products/{id:[\\d]+}", "/api/products/{id:[\\d]+}/similar",
+                                  "/api/products/{id:[\\d]+}/sizes",
+                                  "/api/products/search",
                                   "/api/products/category/**", "/api/products/brand/**",
                                   "/api/products/price-range").permitAll()
+                    .requestMatchers(HttpMethod.GET, "/api/products/{id:[\\d]+}/reviews").permitAll()
+                    // Allocation and the bulk internal read are for any signed-in caller; checked before the "/{id}" admin rule
+                    .requestMatchers("/api/products/allocations").authenticated()
+                    .requestMatchers(HttpMethod.GET, "/api/products/internal").authenticated()
                     .requestMatchers("/api/products/add", "/api/products/{id}", 
                                   "/api/products/low-stock", "/api/products/{id}/reorder-level",
+                                  "/api/products/reorder-suggestions",
                                   "/api/products/batch-inventory-update",
-                                  "/api/products/import-excel").hasRole("ADMIN")
+                                  "/api/products/import-excel", "/api/products/bulk-update",
+                                  "/api/products/export", "/api/products/inventory/reconciliation",
+                                  "/api/products/{id}/inventory/ledger",
+                                  "/api/products/locations", "/api/products/locations/**",
+                                  "/api/products/{id}/locations", "/api/products/reviews/recompute",
+                                  "/api/products/migrate-size-variants").hasRole("ADMIN")
                     .anyRequest().authenticated()
             );
 
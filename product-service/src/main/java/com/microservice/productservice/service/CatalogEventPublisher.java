@@ -0,0 +1,95 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.CatalogEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CatalogEventPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${product.exchange.name}")
+    private String productExchange;
+
+    @Value("${product.events.routing-key}")
+    private String eventsRoutingKey;
+
+    /**
+     * Publishes one event for a batch of catalog changes instead of one per product
+     *
+     * @param changeType What changed, e.g. BULK_UPDATE
+     * @param productIds The ids of every product touched by the change
+     * @return true if the event was published successfully, false otherwise
+     */
+    @Retryable(value = {AmqpException.class}, maxAttempts = 3,
+              backoff = @Backoff(delay = 1000, multiplier = 2))
+    public boolean publishCatalogChangedEvent(String changeType, List<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            log.warn("Attempted to publish empty catalog change - skipping");
+            return false;
+        }
+
+        return send(CatalogEvent.builder()
+                .changeType(changeType)
+                .productIds(productIds));
+    }
+
+    /**
+     * Announces products folded into another one, so holders of the old ids (cart lines, checkouts)
+     * can re-key them to the surviving product and size
+     *
+     * @param targetId The surviving product
+     * @param mergedSizes The size each merged product id became on the surviving product, the surviving id included
+     * @return true if the event was published successfully, false otherwise
+     */
+    @Retryable(value = {AmqpException.class}, maxAttempts = 3,
+              backoff = @Backoff(delay = 1000, multiplier = 2))
+    public boolean publishProductsMergedEvent(Long targetId, Map<Long, Integer> mergedSizes) {
+        List<Long> productIds = new ArrayList<>(mergedSizes.keySet());
+        if (!mergedSizes.containsKey(targetId)) {
+            productIds.add(targetId);
+        }
+        return send(CatalogEvent.builder()
+                .changeType("MERGE")
+                .productIds(productIds)
+                .mergedInto(targetId)
+                .mergedSizes(mergedSizes));
+    }
+
+    private boolean send(CatalogEvent.CatalogEventBuilder<?, ?> builder) {
+        try {
+            CatalogEvent event = builder
+                    .eventId(UUID.randomUUID().toString())
+                    .eventType("CATALOG_CHANGED")
+                    .eventTime(LocalDateTime.now())
+                    .build();
+
+            log.info("Publishing catalog event: type={}, id={}, productCount={}",
+                    event.getChangeType(), event.getEventId(), event.getProductIds().size());
+
+            rabbitTemplate.convertAndSend(productExchange, eventsRoutingKey, event);
+            return true;
+        } catch (AmqpException ex) {
+            log.error("Failed to publish catalog event: {}", ex.getMessage(), ex);
+            throw ex; // Retryable annotation will handle retry
+        } catch (Exception ex) {
+            log.error("Unexpected error publishing catalog event: {}", ex.getMessage(), ex);
+            return false;
+        }
+    }
+}
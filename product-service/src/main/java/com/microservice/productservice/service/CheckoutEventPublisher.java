@@ -0,0 +1,61 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.CheckoutReplyEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.retry.annotation.Retryable;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CheckoutEventPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${cart.exchange.name}")
+    private String cartExchange;
+
+    @Value("${cart.checkout.routing-key}")
+    private String checkoutRoutingKey;
+
+    /**
+     * Replies to a stock reservation requested by a cart-service checkout
+     *
+     * @param checkoutId The checkout the reservation belongs to
+     * @param reserved Whether all items were reserved
+     * @param reason Why the reservation was rejected (null when reserved)
+     * @return true if the event was published successfully, false otherwise
+     */
+    @Retryable(value = {AmqpException.class}, maxAttempts = 3,
+              backoff = @Backoff(delay = 1000, multiplier = 2))
+    public boolean publishReservationResult(String checkoutId, boolean reserved, String reason) {
+        try {
+            CheckoutReplyEvent event = CheckoutReplyEvent.builder()
+                    .eventId(UUID.randomUUID().toString())
+                    .eventType(reserved ? "STOCK_RESERVED" : "STOCK_REJECTED")
+                    .eventTime(LocalDateTime.now())
+                    .checkoutId(checkoutId)
+                    .reason(reason)
+                    .build();
+
+            log.info("Publishing checkout reply: type={}, checkoutId={}", event.getEventType(), checkoutId);
+
+            rabbitTemplate.convertAndSend(cartExchange, checkoutRoutingKey, event);
+            return true;
+        } catch (AmqpException ex) {
+            log.error("Failed to publish checkout reply: {}", ex.getMessage(), ex);
+            throw ex; // Retryable annotation will handle retry
+        } catch (Exception ex) {
+            log.error("Unexpected error publishing checkout reply: {}", ex.getMessage(), ex);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.InventoryEvent;
+import com.microservice.productservice.dto.ProductInventoryChangeDto;
+import com.microservice.productservice.dto.ReorderSuggestionDto;
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.ProductDemand;
+import com.microservice.productservice.repository.ProductDemandRepository;
+import com.microservice.productservice.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Forecasts demand from the service's own INVENTORY_CHANGED events. Each event updates one small
+ * row per product (an exponentially smoothed daily rate and the open day's units), so forecasts
+ * never rescan order history.
+ */
+@Service
+@Slf4j
+public class DemandForecastService {
+
+    private static final int MAX_OBSERVED_DAYS = 10_000;
+    private static final int RECENT_EVENT_IDS = 10_000;
+
+    private final ProductDemandRepository productDemandRepository;
+    private final ProductRepository productRepository;
+    private final InventoryLedgerService inventoryLedger;
+
+    // Redelivered events must not be counted twice
+    private final Set<String> recentEventIds = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_EVENT_IDS;
+                }
+            }));
+
+    // Weight of the latest day; 0.3 reacts within about a week
+    @Value("${inventory.forecast.smoothing:0.3}")
+    private double smoothing;
+
+    @Value("${inventory.forecast.lead-time-days:7}")
+    private int leadTimeDays;
+
+    @Value("${inventory.forecast.safety-days:3}")
+    private int safetyDays;
+
+    // Stock to order up to, in days of sales beyond the lead time
+    @Value("${inventory.forecast.cover-days:30}")
+    private int coverDays;
+
+    public DemandForecastService(ProductDemandRepository productDemandRepository,
+                                 ProductRepository productRepository,
+                                 InventoryLedgerService inventoryLedger) {
+        this.productDemandRepository = productDemandRepository;
+        this.productRepository = productRepository;
+        this.inventoryLedger = inventoryLedger;
+    }
+
+    @RabbitListener(queues = "${product.queue.demand}")
+    @Transactional
+    public void handleInventoryEvent(InventoryEvent event) {
+        if (event == null || !"INVENTORY_CHANGED".equals(event.getEventType()) || event.getProductChanges() == null) {
+            return;
+        }
+        if (event.getEventId() != null && recentEventIds.contains(event.getEventId())) {
+            log.debug("Skipping already counted inventory event {}", event.getEventId());
+            return;
+        }
+
+        long day = (event.getEventTime() != null ? event.getEventTime().toLocalDate() : LocalDate.now()).toEpochDay();
+
+        // Orders take stock (negative change), cancellations put it back: net units sold per product
+        Map<Long, Integer> sold = new LinkedHashMap<>();
+        for (ProductInventoryChangeDto change : event.getProductChanges()) {
+            if (change.getProductId() != null && change.getChangeAmount() != null && change.getChangeAmount() != 0) {
+                sold.merge(change.getProductId(), -change.getChangeAmount(), Integer::sum);
+            }
+        }
+
+        sold.forEach((productId, units) -> {
+            ProductDemand demand = productDemandRepository.findForUpdate(productId)
+                    .orElseGet(() -> ProductDemand.builder().productId(productId).bucketDay(day).build());
+            record(demand, day, units);
+            productDemandRepository.save(demand);
+        });
+        rememberAfterCommit(event.getEventId());
+        log.debug("Recorded demand for {} products from event {}", sold.size(), event.getEventId());
+    }
+
+    // Only a committed event counts as seen: after a failed commit the redelivery must be recorded
+    private void rememberAfterCommit(String eventId) {
+        if (eventId == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recentEventIds.add(eventId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentEventIds.add(eventId);
+            }
+        });
+    }
+
+    /**
+     * Products whose stock will not last through the lead time plus safety days, most urgent first.
+     *
+     * @param all when true, every product with demand history is returned
+     */
+    @Transactional(readOnly = true)
+    public List<ReorderSuggestionDto> getReorderSuggestions(boolean all) {
+        long today = LocalDate.now().toEpochDay();
+        Map<Long, ProductDemand> demands = productDemandRepository.findAll().stream()
+                .collect(Collectors.toMap(ProductDemand::getProductId, Function.identity()));
+        if (demands.isEmpty()) {
+            return List.of();
+        }
+
+        List<Product> products = productRepository.findAllById(demands.keySet());
+        Map<Long, Map<Integer, Integer>> pending = inventoryLedger.pendingDeltas(demands.keySet());
+
+        List<ReorderSuggestionDto> suggestions = new ArrayList<>();
+        for (Product product : products) {
+            double rate = Math.max(0, rateOn(demands.get(product.getId()), today));
+            int onHand = product.getQuantity() + pending.getOrDefault(product.getId(), Map.of())
+                    .values().stream().mapToInt(Integer::intValue).sum();
+
+            int reorderPoint = (int) Math.ceil(rate * (leadTimeDays + safetyDays));
+            int orderUpTo = (int) Math.ceil(rate * (leadTimeDays + coverDays));
+            boolean needsReorder = rate > 0 && onHand <= reorderPoint;
+            if (!all && !needsReorder) {
+                continue;
+            }
+
+            suggestions.add(ReorderSuggestionDto.builder()
+                    .productId(product.getId())
+                    .productName(product.getProductName())
+                    .onHand(onHand)
+                    .reorderLevel(product.getReorderLevel())
+                    .dailySalesRate(Math.round(rate * 100) / 100.0)
+                    .daysOfCover(rate > 0 ? Math.round(Math.max(0, onHand) / rate * 10) / 10.0 : null)
+                    .suggestedReorderLevel(reorderPoint)
+                    .suggestedOrderQuantity(needsReorder ? Math.max(0, orderUpTo - onHand) : 0)
+                    .build());
+        }
+
+        suggestions.sort(Comparator.comparing(ReorderSuggestionDto::getDaysOfCover,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        return suggestions;
+    }
+
+    private void record(ProductDemand demand, long day, int units) {
+        if (day > demand.getBucketDay()) {
+            demand.setDailyRate(rateOn(demand, day));
+            demand.setObservedDays(Math.min(MAX_OBSERVED_DAYS, demand.getObservedDays() + (int) (day - demand.getBucketDay())));
+            demand.setBucketDay(day);
+            demand.setBucketUnits(0);
+        }
+        // Late events for a day already closed are counted in the open day
+        demand.setBucketUnits(demand.getBucketUnits() + units);
+    }
+
+    /**
+     * Smoothed rate as of the start of {@code day}: closes the open bucket and decays the rate
+     * over the days without any sales since.
+     */
+    private double rateOn(ProductDemand demand, long day) {
+        if (day <= demand.getBucketDay()) {
+            // Open day only; with no completed day yet, today's units are the best guess
+            return demand.getObservedDays() == 0 ? demand.getBucketUnits() : demand.getDailyRate();
+        }
+        double rate = demand.getObservedDays() == 0
+                ? demand.getBucketUnits()
+                : smoothing * demand.getBucketUnits() + (1 - smoothing) * demand.getDailyRate();
+        long quietDays = day - demand.getBucketDay() - 1;
+        return rate * Math.pow(1 - smoothing, quietDays);
+    }
+}
@@ -2,7 +2,7 @@ package com.microservice.productservice.service;
 
 import com.microservice.productservice.dto.OrderEvent;
 import com.microservice.productservice.dto.ProductInventoryChangeDto;
-import com.microservice.productservice.entity.Product;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
@@ -13,8 +13,12 @@ import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -24,17 +28,23 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class EventListenerService {
     
+    // Ledger reason of stock held for a checkout; the ledger reference is the checkout id
+    static final String ORDER_RESERVE_REQUESTED = "ORDER_RESERVE_REQUESTED";
+    
     private final ProductService productService;
     private final InventoryEventPublisher inventoryEventPublisher;
+    private final InventoryLedgerService inventoryLedger;
+    private final CheckoutEventPublisher checkoutEventPublisher;
     
     /**
      * Handles order events received from the message queue.
-     * Processes inventory updates for order creation and placement.
+     * Processes inventory updates for order creation and placement, and stock reservations
+     * for cart-service checkouts (released again by ORDER_CANCELLED).
      * 
      * @param event The order event containing order details
-     * @throws AmqpRejectAndDontRequeueException if the event is malformed and cannot be processed
+     * @throws AmqpRejectAndDontRequeueException if the event is malformed or fails in a way a redelivery would not fix
      */
-    @RabbitListener(queues = "${product.queue.order}")
+    @RabbitListener(queues = "${product.queue.order}", concurrency = "${product.order.concurrency:1}")
     @Transactional(isolation = Isolation.READ_COMMITTED)
     @Retryable(value = {OptimisticLockingFailureException.class}, 
                maxAttempts = 3, 
@@ -53,6 +63,9 @@ public class EventListenerService {
                 case "ORDER_PLACED":
                     updateInventoryForOrder(event);
                     break;
+                case ORDER_RESERVE_REQUESTED:
+                    reserveStockForCheckout(event);
+                    break;
                 case "ORDER_CANCELLED":
                     restoreInventoryForCancelledOrder(event);
                     break;
@@ -65,7 +78,8 @@ public class EventListenerService {
             if (isRetryableException(e)) {
                 throw e;
             }
-            // Otherwise, acknowledge the message but log the error
+            // Otherwise roll back whatever was applied and drop the message: it would fail the same way again
+            throw new AmqpRejectAndDontRequeueException("Order event " + event.getEventId() + " failed", e);
         }
     }
     
@@ -84,70 +98,78 @@ public class EventListenerService {
             return;
         }
         
-        // Collect all inventory updates
-        Map<Long, Integer> inventoryUpdates = event.getItems().stream()
-                .filter(item -> item.getProductId() != null && item.getQuantity() != null && item.getQuantity() > 0)
-                .collect(Collectors.toMap(
-                    item -> item.getProductId(),
-                    item -> -item.getQuantity(),  // Negate quantity because we're reducing inventory
-                    (existing, replacement) -> existing + replacement  // If same product appears multiple times, sum the quantities
-                ));
+        // Negate quantity because we're reducing inventory
+        Map<StockKey, Integer> inventoryUpdates = collectStockChanges(event, -1);
         
         if (inventoryUpdates.isEmpty()) {
             log.warn("No valid items to process in order event: {}", event.getEventId());
             return;
         }
         
-        // Process inventory changes atomically
-        List<ProductInventoryChangeDto> inventoryChanges = new ArrayList<>();
+        // Checked under the product locks, so a redelivery handled at the same time takes nothing
+        lockProducts(inventoryUpdates);
+        if (inventoryLedger.hasEntries(event.getEventType(), event.getEventId())) {
+            log.info("Inventory for order event {} was already updated", event.getEventId());
+            return;
+        }
+        
+        applyAndPublish(event, inventoryUpdates);
+    }
+    
+    /**
+     * Takes the stock of every item for a checkout, or none of it. Replies STOCK_RESERVED once the
+     * reservation is committed, or STOCK_REJECTED naming the first item short of stock.
+     * A reservation requested again for the same checkout is answered without taking stock twice, also
+     * when both deliveries are handled at once: the check is made under the row locks of the products.
+     */
+    private void reserveStockForCheckout(OrderEvent event) {
+        String checkoutId = event.getCheckoutId();
+        if (checkoutId == null) {
+            log.warn("Reservation event {} has no checkout id, skipping", event.getEventId());
+            return;
+        }
+        
+        Map<StockKey, Integer> reservations = event.getItems() == null ? Map.of() : collectStockChanges(event, -1);
+        if (reservations.isEmpty()) {
+            checkoutEventPublisher.publishReservationResult(checkoutId, false, "Order contains no items");
+            return;
+        }
         
-        inventoryUpdates.forEach((productId, changeAmount) -> {
+        lockProducts(reservations);
+        if (inventoryLedger.hasEntries(ORDER_RESERVE_REQUESTED, checkoutId)) {
+            log.info("Stock for checkout {} is already reserved", checkoutId);
+            checkoutEventPublisher.publishReservationResult(checkoutId, true, null);
+            return;
+        }
+        
+        List<ProductInventoryChangeDto> inventoryChanges = new ArrayList<>();
+        for (Map.Entry<StockKey, Integer> reservation : reservations.entrySet()) {
+            StockKey key = reservation.getKey();
+            ProductInventoryChangeDto change;
             try {
-                // Get current product
-                Product product = productService.getProductById(productId);
-                if (product == null) {
-                    log.warn("Product not found: {}", productId);
-                    return;
-                }
-                
-                // Record the current quantity
-                int currentStock = product.getQuantity();
-                
-                // Validate the inventory change
-                int newStock = Math.max(0, currentStock + changeAmount);
-                
-                // Update the product quantity
-                product.setQuantity(newStock);
-                productService.updateProduct(product);
-                
-                // Add to inventory changes for event publishing
-                inventoryChanges.add(ProductInventoryChangeDto.builder()
-                        .productId(productId)
-                        .previousQuantity(currentStock)
-                        .newQuantity(newStock)
-                        .changeAmount(changeAmount)
-                        .build());
-                
-                log.info("Updated inventory for product {}: {} -> {}", productId, currentStock, newStock);
-                
-                // Check if low stock
-                if (newStock <= product.getReorderLevel()) {
-                    log.warn("Product {} is running low on stock: {}", productId, newStock);
-                    // You could trigger a separate low stock event here
-                }
-            } catch (Exception e) {
-                log.error("Error updating inventory for product {}: {}", productId, e.getMessage(), e);
+                change = productService.applyStockChange(
+                        key.productId(), key.size(), reservation.getValue(), ORDER_RESERVE_REQUESTED, checkoutId);
+            } catch (EntityNotFoundException e) {
+                change = null;
             }
-        });
-        
-        // Publish inventory update event if there were any changes
-        if (!inventoryChanges.isEmpty()) {
-            inventoryEventPublisher.publishInventoryChangedEvent(
-                    event.getInvoiceId(),
-                    null, // orderId might not be available
-                    inventoryChanges
-            );
+            // applyStockChange takes what is left, so a short item shows as a smaller change
+            if (change == null || !reservation.getValue().equals(change.getChangeAmount())) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                String reason = key.size() != null
+                        ? "Insufficient stock for product " + key.productId() + " size " + key.size()
+                        : "Insufficient stock for product " + key.productId();
+                log.info("Rejecting reservation for checkout {}: {}", checkoutId, reason);
+                checkoutEventPublisher.publishReservationResult(checkoutId, false, reason);
+                return;
+            }
+            inventoryChanges.add(change);
         }
+        
+        afterCommit(() -> {
+            inventoryEventPublisher.publishInventoryChangedEvent(null, null, inventoryChanges);
+            checkoutEventPublisher.publishReservationResult(checkoutId, true, null);
+        });
+        log.info("Reserved stock for checkout {}: {} items", checkoutId, inventoryChanges.size());
     }
     
     /**
@@ -161,57 +183,101 @@ public class EventListenerService {
             return;
         }
         
-        // For order cancellation, we restore inventory by adding back the quantities
-        Map<Long, Integer> inventoryUpdates = event.getItems().stream()
-                .filter(item -> item.getProductId() != null && item.getQuantity() != null && item.getQuantity() > 0)
-                .collect(Collectors.toMap(
-                    item -> item.getProductId(),
-                    item -> item.getQuantity(),  // Positive quantity because we're restoring inventory
-                    (existing, replacement) -> existing + replacement
-                ));
+        // Positive quantity because we're restoring inventory
+        Map<StockKey, Integer> inventoryUpdates = collectStockChanges(event, 1);
         
         if (inventoryUpdates.isEmpty()) {
             log.warn("No valid items to restore in cancelled order: {}", event.getEventId());
             return;
         }
         
-        // Process inventory changes and collect results
+        // Checked under the product locks, so a redelivery handled at the same time restores nothing
+        lockProducts(inventoryUpdates);
+        if (inventoryLedger.hasEntries(event.getEventType(), event.getEventId())) {
+            log.info("Cancelled order {} was already restored", event.getEventId());
+            return;
+        }
+        // A checkout releases only stock it actually reserved
+        if (event.getCheckoutId() != null && !inventoryLedger.hasEntries(ORDER_RESERVE_REQUESTED, event.getCheckoutId())) {
+            log.warn("No reservation found for checkout {}, nothing to release", event.getCheckoutId());
+            return;
+        }
+        
+        applyAndPublish(event, inventoryUpdates);
+    }
+    
+    /**
+     * Sums the order lines per product and size, so the same SKU appearing twice is applied once.
+     */
+    private Map<StockKey, Integer> collectStockChanges(OrderEvent event, int sign) {
+        return event.getItems().stream()
+                .filter(item -> item.getProductId() != null && item.getQuantity() != null && item.getQuantity() > 0)
+                .collect(Collectors.toMap(
+                    item -> new StockKey(item.getProductId(), item.getSize()),
+                    item -> sign * item.getQuantity(),
+                    Integer::sum,
+                    LinkedHashMap::new
+                ));
+    }
+    
+    /**
+     * Takes the row locks of the products up front, in id order, so listeners handling orders with the
+     * same products at once wait on each other instead of deadlocking.
+     */
+    private void lockProducts(Map<StockKey, Integer> changes) {
+        changes.keySet().stream()
+                .map(StockKey::productId)
+                .distinct()
+                .sorted()
+                .forEach(inventoryLedger::lock);
+    }
+    
+    private void applyAndPublish(OrderEvent event, Map<StockKey, Integer> inventoryUpdates) {
         List<ProductInventoryChangeDto> inventoryChanges = new ArrayList<>();
         
-        inventoryUpdates.forEach((productId, changeAmount) -> {
+        inventoryUpdates.forEach((key, changeAmount) -> {
             try {
-                Product product = productService.getProductById(productId);
-                if (product == null) {
-                    log.warn("Product not found for restoration: {}", productId);
+                ProductInventoryChangeDto change = productService.applyStockChange(
+                        key.productId(), key.size(), changeAmount, event.getEventType(), event.getEventId());
+                if (change == null) {
                     return;
                 }
-                
-                int currentStock = product.getQuantity();
-                int newStock = currentStock + changeAmount;
-                
-                product.setQuantity(newStock);
-                productService.updateProduct(product);
-                
-                inventoryChanges.add(ProductInventoryChangeDto.builder()
-                        .productId(productId)
-                        .previousQuantity(currentStock)
-                        .newQuantity(newStock)
-                        .changeAmount(changeAmount)
-                        .build());
-                
-                log.info("Restored inventory for product {}: {} -> {}", productId, currentStock, newStock);
-            } catch (Exception e) {
-                log.error("Error restoring inventory for product {}: {}", productId, e.getMessage(), e);
+                inventoryChanges.add(change);
+                log.info("Updated inventory for product {} (size {}): {} -> {}",
+                        key.productId(), key.size(), change.getPreviousQuantity(), change.getNewQuantity());
+            } catch (EntityNotFoundException e) {
+                // Any other failure leaves the transaction rollback-only, so it fails the whole event
+                log.error("Error updating inventory for product {}: {}", key.productId(), e.getMessage());
             }
         });
         
-        // Publish inventory restoration event
+        // Publish inventory update event if there were any changes
         if (!inventoryChanges.isEmpty()) {
             inventoryEventPublisher.publishInventoryChangedEvent(
                     event.getInvoiceId(),
-                    null,
+                    null, // orderId might not be available
                     inventoryChanges
             );
         }
     }
-}
\ No newline at end of file
+    
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    log.error("Failed to publish after commit: {}", e.getMessage(), e);
+                }
+            }
+        });
+    }
+    
+    private record StockKey(Long productId, Integer size) {
+    }
+}
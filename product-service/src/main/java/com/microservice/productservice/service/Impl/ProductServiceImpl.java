@@ -1,12 +1,23 @@
 package com.microservice.productservice.service.Impl;
 
+import com.microservice.productservice.dto.ProductFieldSet;
+import com.microservice.productservice.dto.ProductInventoryChangeDto;
 import com.microservice.productservice.dto.ProductMapperDto;
 import com.microservice.productservice.dto.ProductRequestDto;
 import com.microservice.productservice.dto.ProductResponseDto;
 import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.SizeStock;
+import com.microservice.productservice.repository.LocationStockRepository;
+import com.microservice.productservice.repository.ProductDemandRepository;
 import com.microservice.productservice.repository.ProductRepository;
+import com.microservice.productservice.repository.ProductSpecifications;
+import com.microservice.productservice.repository.ReviewRepository;
+import com.microservice.productservice.service.CatalogEventPublisher;
 import com.microservice.productservice.service.InventoryEventPublisher;
+import com.microservice.productservice.service.InventoryLedgerService;
+import com.microservice.productservice.service.InventoryLedgerService.OnHand;
 import com.microservice.productservice.service.ProductService;
+import com.microservice.productservice.service.ProductSimilarityService;
 import jakarta.persistence.EntityNotFoundException;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.DateUtil;
@@ -17,8 +28,12 @@ import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.multipart.MultipartFile;
@@ -26,6 +41,8 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -36,11 +53,27 @@ public class ProductServiceImpl implements ProductService {
     private static final Logger log = LoggerFactory.getLogger(ProductServiceImpl.class);
     private final ProductRepository productRepository;
     private final InventoryEventPublisher inventoryEventPublisher;
+    private final ProductSimilarityService productSimilarityService;
+    private final InventoryLedgerService inventoryLedger;
+    private final ReviewRepository reviewRepository;
+    private final CatalogEventPublisher catalogEventPublisher;
+    private final LocationStockRepository locationStockRepository;
+    private final ProductDemandRepository productDemandRepository;
 
     @Autowired
-    public ProductServiceImpl(ProductRepository productRepository, InventoryEventPublisher inventoryEventPublisher) {
+    public ProductServiceImpl(ProductRepository productRepository, InventoryEventPublisher inventoryEventPublisher,
+                              ProductSimilarityService productSimilarityService, InventoryLedgerService inventoryLedger,
+                              ReviewRepository reviewRepository, CatalogEventPublisher catalogEventPublisher,
+                              LocationStockRepository locationStockRepository,
+                              ProductDemandRepository productDemandRepository) {
         this.productRepository = productRepository;
         this.inventoryEventPublisher = inventoryEventPublisher;
+        this.productSimilarityService = productSimilarityService;
+        this.inventoryLedger = inventoryLedger;
+        this.reviewRepository = reviewRepository;
+        this.catalogEventPublisher = catalogEventPublisher;
+        this.locationStockRepository = locationStockRepository;
+        this.productDemandRepository = productDemandRepository;
     }
 
     @Override
@@ -51,13 +84,13 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public List<ProductResponseDto> getAllProductResponsesDto() {
         List<Product> products = productRepository.findAll();
-        return ProductMapperDto.toProductResponseDtoList(products);
+        return inventoryLedger.withPending(ProductMapperDto.toProductResponseDtoList(products));
     }
 
     @Override
     public Page<ProductResponseDto> getAllProductResponsesDtoPaged(Pageable pageable) {
-        return productRepository.findAll(pageable)
-                .map(ProductMapperDto::toProductResponseDto);
+        return withPending(productRepository.findAll(pageable)
+                .map(ProductMapperDto::toProductResponseDto));
     }
 
     @Override
@@ -69,7 +102,11 @@ public class ProductServiceImpl implements ProductService {
         }
 
         log.info("Adding new product: {}", product.getProductName());
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        inventoryLedger.rebase(saved, null, InventoryLedgerService.OPENING_BALANCE);
+        productSimilarityService.onProductChanged(saved);
+        publishCatalogChange("CREATE", saved.getId());
+        return saved;
     }
     
     @Override
@@ -108,6 +145,9 @@ public class ProductServiceImpl implements ProductService {
             // Chuyển đổi và lưu sản phẩm
             Product product = ProductMapperDto.toProduct(productRequest);
             product = productRepository.save(product);
+            inventoryLedger.rebase(product, null, InventoryLedgerService.OPENING_BALANCE);
+            productSimilarityService.onProductChanged(product);
+            publishCatalogChange("CREATE", product.getId());
             
             log.info("[ADD] Thêm sản phẩm thành công. ID: {}, Tên: {}", 
                     product.getId(), product.getProductName());
@@ -129,7 +169,12 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public ProductResponseDto getProductResponseDtoById(Long id) {
         Product product = getProductById(id);
-        return ProductMapperDto.toProductResponseDto(product);
+        return inventoryLedger.withPending(ProductMapperDto.toProductResponseDto(product));
+    }
+
+    @Override
+    public List<ProductResponseDto> getProductResponsesDtoByIds(Collection<Long> ids) {
+        return inventoryLedger.withPending(ProductMapperDto.toProductResponseDtoList(productRepository.findAllById(ids)));
     }
 
     @Override
@@ -138,37 +183,148 @@ public class ProductServiceImpl implements ProductService {
                 .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + productId));
     }
 
+    // Taken first in stock changes: the ledger tail read after it includes every committed movement
+    private Product getProductForUpdate(Long productId) {
+        return productRepository.findForUpdate(productId)
+                .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + productId));
+    }
+
     @Override
     public boolean existsByProductName(String productName) {
         return productRepository.existsByProductName(productName);
     }
     
     @Override
-    @Transactional
-    public Product updateProductQuantity(Long id, int quantity) {
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public ProductResponseDto updateProductQuantity(Long id, int quantity) {
         log.info("Updating product quantity: productId={}, quantity={}", id, quantity);
         
-        Product product = productRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + id));
+        Product product = getProductForUpdate(id);
         
-        int oldQuantity = product.getQuantity();
-        product.setQuantity(quantity);
-        Product saved = productRepository.save(product);
+        if (product.isSizeTracked()) {
+            throw new IllegalArgumentException("Product " + id + " tracks stock per size; a size is required");
+        }
+        
+        // The caller sends an absolute figure; record it as the difference to what is on hand now
+        int oldQuantity = inventoryLedger.onHand(product).total();
+        appendAdjustment(id, null, quantity - oldQuantity);
+        
+        notifyIfLowStock(product, oldQuantity, quantity);
+        publishCatalogChange("STOCK", id);
+        
+        return getProductResponseDtoById(id);
+    }
+    
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public ProductResponseDto updateSizeQuantity(Long id, int size, int quantity) {
+        log.info("Updating size quantity: productId={}, size={}, quantity={}", id, size, quantity);
+        
+        Product product = getProductForUpdate(id);
+        if (!product.isSizeTracked()) {
+            throw new IllegalArgumentException("Product " + id + " does not track stock per size");
+        }
+        if (!SizeStock.isSupported(size)) {
+            throw new IllegalArgumentException("Unsupported size: " + size);
+        }
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Stock cannot be negative: " + quantity);
+        }
         
+        OnHand onHand = inventoryLedger.onHand(product);
+        int delta = quantity - onHand.size(size);
+        appendAdjustment(id, size, delta);
+        
+        notifyIfLowStock(product, onHand.total(), onHand.total() + delta);
+        publishCatalogChange("STOCK", id);
+        
+        return getProductResponseDtoById(id);
+    }
+    
+    private void appendAdjustment(Long productId, Integer size, int delta) {
+        if (delta != 0) {
+            inventoryLedger.append(productId, size, delta, InventoryLedgerService.ADJUSTMENT, null);
+        }
+    }
+    
+    @Override
+    public Map<Integer, Integer> getSizeAvailability(Long id) {
+        Product product = getProductById(id);
+        return product.isSizeTracked() ? inventoryLedger.onHand(product).sizes() : Map.of();
+    }
+    
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public ProductInventoryChangeDto applyStockChange(Long productId, Integer size, int changeAmount,
+                                                      String reason, String reference) {
+        Product product = getProductForUpdate(productId);
+        if (product.isSizeTracked() && !SizeStock.isSupported(size)) {
+            log.warn("Skipping stock change for product {} without a valid size: {}", productId, size);
+            return null;
+        }
+        Integer entrySize = product.isSizeTracked() ? size : null;
+        
+        // Stock never goes below zero: take what remains of the product (or of this size), read under the row lock
+        OnHand onHand = inventoryLedger.onHand(product);
+        int available = Math.max(0, entrySize != null ? onHand.size(entrySize) : onHand.total());
+        int applied = Math.max(changeAmount, -available);
+        if (applied != 0) {
+            inventoryLedger.append(productId, entrySize, applied, reason, reference);
+        }
+        
+        int previousStock = onHand.total();
+        int newStock = previousStock + applied;
+        if (newStock <= product.getReorderLevel()) {
+            log.warn("Product {} is running low on stock: {}", productId, newStock);
+        }
+        
+        return ProductInventoryChangeDto.builder()
+                .productId(productId)
+                .size(entrySize)
+                .previousQuantity(previousStock)
+                .newQuantity(newStock)
+                .changeAmount(applied)
+                .build();
+    }
+    
+    private void notifyIfLowStock(Product product, int oldQuantity, int newQuantity) {
         // Check if we need to notify about low stock
-        if (saved.isLowStock() && oldQuantity > saved.getReorderLevel()) {
+        if (newQuantity <= product.getReorderLevel() && oldQuantity > product.getReorderLevel()) {
             log.warn("Product {} is now below reorder level: {}/{}", 
-                    id, saved.getQuantity(), saved.getReorderLevel());
+                    product.getId(), newQuantity, product.getReorderLevel());
             
             try {
                 inventoryEventPublisher.publishLowStockEvent(
-                        saved.getId(), saved.getQuantity(), saved.getReorderLevel());
+                        product.getId(), newQuantity, product.getReorderLevel());
             } catch (Exception e) {
                 log.error("Failed to publish low stock event: {}", e.getMessage(), e);
             }
         }
-        
-        return saved;
+    }
+    
+    // Sent after commit, so consumers that re-read the product (e.g. cart-service's cache) see the change
+    private void publishCatalogChange(String changeType, Long productId) {
+        publishCatalogChange(changeType, List.of(productId));
+    }
+    
+    private void publishCatalogChange(String changeType, List<Long> productIds) {
+        Runnable publish = () -> {
+            try {
+                catalogEventPublisher.publishCatalogChangedEvent(changeType, productIds);
+            } catch (Exception e) {
+                log.error("Failed to publish catalog changed event: {}", e.getMessage(), e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
     }
     
     @Override
@@ -180,12 +336,14 @@ public class ProductServiceImpl implements ProductService {
             throw new IllegalArgumentException("Product ID cannot be null for update operation");
         }
         
-        // Verify product exists
-        if (!productRepository.existsById(product.getId())) {
-            throw new EntityNotFoundException("Product not found with id: " + product.getId());
-        }
+        // Verify product exists and remember its stock before the overwrite
+        OnHand previous = inventoryLedger.onHand(getProductById(product.getId()));
         
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        inventoryLedger.rebase(saved, previous, InventoryLedgerService.ADJUSTMENT);
+        productSimilarityService.onProductChanged(saved);
+        publishCatalogChange("UPDATE", saved.getId());
+        return saved;
     }
     
     @Override
@@ -202,9 +360,13 @@ public class ProductServiceImpl implements ProductService {
             return null;
         }
         
-        // Update product with request data
+        // Update product with request data; the stock figures in the request become the new on-hand stock
+        OnHand previous = inventoryLedger.onHand(existingProduct);
         ProductMapperDto.updateProductFromRequest(existingProduct, productRequest);
         Product updatedProduct = productRepository.save(existingProduct);
+        inventoryLedger.rebase(updatedProduct, previous, InventoryLedgerService.ADJUSTMENT);
+        productSimilarityService.onProductChanged(updatedProduct);
+        publishCatalogChange("UPDATE", id);
         
         return ProductMapperDto.toProductResponseDto(updatedProduct);
     }
@@ -215,18 +377,43 @@ public class ProductServiceImpl implements ProductService {
         if (!productRepository.existsById(id)) {
             throw new EntityNotFoundException("Product not found with id: " + id);
         }
+        // Rows keyed by the product go with it; the ledger would otherwise outlive it unfolded and unreconciled
+        inventoryLedger.lock(id);
+        inventoryLedger.deleteEntries(id);
+        locationStockRepository.deleteByProductId(id);
+        productDemandRepository.deleteById(id);
         productRepository.deleteById(id);
+        reviewRepository.deleteByProductId(id);
+        productSimilarityService.onProductDeleted(id);
+        publishCatalogChange("DELETE", id);
         log.info("Deleted product with ID: {}", id);
     }
     
+    @Override
+    public List<ProductResponseDto> getSimilarProductsDto(Long id, int limit) {
+        if (!productRepository.existsById(id)) {
+            throw new EntityNotFoundException("Product not found with id: " + id);
+        }
+        
+        List<Long> similarIds = productSimilarityService.findSimilarProductIds(id, limit);
+        if (similarIds.isEmpty()) {
+            return List.of();
+        }
+        
+        // findAllById does not keep the order of the ids, so restore the ranking
+        List<Product> products = productRepository.findAllById(similarIds);
+        products.sort(Comparator.comparingInt(product -> similarIds.indexOf(product.getId())));
+        return inventoryLedger.withPending(ProductMapperDto.toProductResponseDtoList(products));
+    }
+    
     @Override
     public boolean hasInStock(Long productId, int quantity) {
-        Product product = getProductById(productId);
-        boolean hasStock = product.getQuantity() >= quantity;
+        int available = inventoryLedger.onHand(getProductById(productId)).total();
+        boolean hasStock = available >= quantity;
         
         if (!hasStock) {
             log.warn("Insufficient stock for product {}: requested={}, available={}", 
-                    productId, quantity, product.getQuantity());
+                    productId, quantity, available);
         }
         
         return hasStock;
@@ -234,10 +421,9 @@ public class ProductServiceImpl implements ProductService {
     
     @Override
     public List<ProductResponseDto> getProductsNeedingReorderDto() {
-        List<Product> lowStockProducts = productRepository.findByQuantityLessThanEqualAndQuantityGreaterThan(
-                5, 0); // Default reorder level and greater than zero
+        List<Product> lowStockProducts = productRepository.findNeedingReorder(5); // Default reorder level
         
-        return ProductMapperDto.toProductResponseDtoList(lowStockProducts);
+        return inventoryLedger.withPending(ProductMapperDto.toProductResponseDtoList(lowStockProducts));
     }
     
     @Override
@@ -254,10 +440,11 @@ public class ProductServiceImpl implements ProductService {
         log.info("Updated reorder level for product {}: {}", id, reorderLevel);
         
         // Check if product is now below reorder level
-        if (product.isLowStock()) {
+        int onHand = inventoryLedger.onHand(product).total();
+        if (onHand <= reorderLevel) {
             try {
                 inventoryEventPublisher.publishLowStockEvent(
-                        product.getId(), product.getQuantity(), product.getReorderLevel());
+                        product.getId(), onHand, product.getReorderLevel());
             } catch (Exception e) {
                 log.error("Failed to publish low stock event: {}", e.getMessage(), e);
             }
@@ -277,6 +464,13 @@ public class ProductServiceImpl implements ProductService {
             try {
                 Product product = getProductById(productId);
                 
+                // Absolute totals cannot be split across sizes
+                if (product.isSizeTracked()) {
+                    log.warn("Skipping size-tracked product {} in batch inventory update", productId);
+                    failedUpdates.add(productId);
+                    continue;
+                }
+                
                 // Skip invalid quantities
                 if (newQuantity < 0) {
                     log.warn("Skipping invalid quantity ({}) for product {}", newQuantity, productId);
@@ -284,19 +478,9 @@ public class ProductServiceImpl implements ProductService {
                     continue;
                 }
                 
-                int oldQuantity = product.getQuantity();
-                product.setQuantity(newQuantity);
-                productRepository.save(product);
-                
-                // Check if we need to notify about low stock
-                if (product.isLowStock() && oldQuantity > product.getReorderLevel()) {
-                    try {
-                        inventoryEventPublisher.publishLowStockEvent(
-                                product.getId(), product.getQuantity(), product.getReorderLevel());
-                    } catch (Exception e) {
-                        log.error("Failed to publish low stock event: {}", e.getMessage(), e);
-                    }
-                }
+                int oldQuantity = inventoryLedger.onHand(product).total();
+                appendAdjustment(productId, null, newQuantity - oldQuantity);
+                notifyIfLowStock(product, oldQuantity, newQuantity);
                 
                 successfulUpdates.add(productId);
                 log.info("Updated inventory for product {}: {} -> {}", 
@@ -315,40 +499,55 @@ public class ProductServiceImpl implements ProductService {
         return failedUpdates.isEmpty();
     }
     
+    @Override
+    public Map<String, Object> getProductFieldsById(Long id, ProductFieldSet fieldSet) {
+        List<Map<String, Object>> rows = productRepository.findFields(
+                ProductSpecifications.hasId(id), Pageable.unpaged(), fieldSet).getContent();
+        if (rows.isEmpty()) {
+            throw new EntityNotFoundException("Product not found with id: " + id);
+        }
+        return rows.get(0);
+    }
+    
+    @Override
+    public Page<Map<String, Object>> findProductFields(Specification<Product> spec, Pageable pageable, ProductFieldSet fieldSet) {
+        return productRepository.findFields(spec, pageable, fieldSet);
+    }
+    
     @Override
     public Page<ProductResponseDto> searchByKeywordDto(String keyword, Pageable pageable) {
-        return productRepository.searchByKeyword(keyword, pageable)
-                .map(ProductMapperDto::toProductResponseDto);
+        return withPending(productRepository.searchByKeyword(keyword, pageable)
+                .map(ProductMapperDto::toProductResponseDto));
     }
     
     @Override
     public Page<ProductResponseDto> searchByCategoryDto(String category, Pageable pageable) {
-        return productRepository.findByCategory(category, pageable)
-                .map(ProductMapperDto::toProductResponseDto);
+        return withPending(productRepository.findByCategory(category, pageable)
+                .map(ProductMapperDto::toProductResponseDto));
     }
     
     @Override
     public Page<ProductResponseDto> searchByBrandDto(String brand, Pageable pageable) {
-        return productRepository.findByBrandName(brand, pageable)
-                .map(ProductMapperDto::toProductResponseDto);
+        return withPending(productRepository.findByBrandName(brand, pageable)
+                .map(ProductMapperDto::toProductResponseDto));
     }
     
     @Override
     public Page<ProductResponseDto> searchByDesignerDto(String designer, Pageable pageable) {
-        return productRepository.findByDesigner(designer, pageable)
-                .map(ProductMapperDto::toProductResponseDto);
+        return withPending(productRepository.findByDesigner(designer, pageable)
+                .map(ProductMapperDto::toProductResponseDto));
     }
     
     @Override
     public Page<ProductResponseDto> searchByPriceRangeDto(BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable) {
-        return productRepository.findByProductPriceBetween(minPrice, maxPrice, pageable)
-                .map(ProductMapperDto::toProductResponseDto);
+        return withPending(productRepository.findByProductPriceBetween(minPrice, maxPrice, pageable)
+                .map(ProductMapperDto::toProductResponseDto));
     }
     
     @Override
     public Page<ProductResponseDto> searchByCategoryAndBrandDto(String category, String brand, Pageable pageable) {
-        return productRepository.findByCategoryAndBrandName(category, brand, pageable)
-                .map(ProductMapperDto::toProductResponseDto);
+        return withPending(productRepository.findByCategoryAndBrandName(category, brand, pageable)
+                .map(ProductMapperDto::toProductResponseDto));
     }
 
     @Override
@@ -358,6 +557,7 @@ public class ProductServiceImpl implements ProductService {
         
         List<ProductResponseDto> importedProducts = new ArrayList<>();
         List<String> skippedProducts = new ArrayList<>();
+        List<Long> importedIds = new ArrayList<>();
         
         try (Workbook workbook = WorkbookFactory.create(file.getInputStream())) {
             Sheet sheet = workbook.getSheetAt(0);
@@ -390,7 +590,10 @@ public class ProductServiceImpl implements ProductService {
                     // Save product
                     Product savedProduct = productRepository.save(product);
                     if (savedProduct != null) {
+                        inventoryLedger.rebase(savedProduct, null, InventoryLedgerService.OPENING_BALANCE);
+                        productSimilarityService.onProductChanged(savedProduct);
                         importedProducts.add(ProductMapperDto.toProductResponseDto(savedProduct));
+                        importedIds.add(savedProduct.getId());
                         log.info("Successfully imported product: {}", savedProduct.getProductName());
                     }
                     
@@ -400,6 +603,9 @@ public class ProductServiceImpl implements ProductService {
             }
         }
         
+        if (!importedIds.isEmpty()) {
+            publishCatalogChange("CREATE", importedIds);
+        }
         log.info("Completed import. Successfully imported {} products", importedProducts.size());
         if (!skippedProducts.isEmpty()) {
             log.warn("Skipped {} duplicate products: {}", skippedProducts.size(), String.join(", ", skippedProducts));
@@ -408,6 +614,11 @@ public class ProductServiceImpl implements ProductService {
         return importedProducts;
     }
     
+    private Page<ProductResponseDto> withPending(Page<ProductResponseDto> page) {
+        inventoryLedger.withPending(page.getContent());
+        return page;
+    }
+    
     private String getCellValueAsString(Cell cell) {
         if (cell == null) return "";
         
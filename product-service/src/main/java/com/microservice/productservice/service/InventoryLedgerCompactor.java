@@ -0,0 +1,119 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.entity.SizeStock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Periodically folds ledger entries into the product snapshot and advances ledger_watermark,
+ * so reads only have to add a short tail of recent entries.
+ * <p>
+ * Each product is folded in its own short transaction under its row lock. Appends take the same lock,
+ * so at that point every entry of the product is committed and visible: the whole tail is folded and
+ * the watermark moves to its last id. A lower IDENTITY id committing after a higher one is only possible
+ * across products, and watermarks are per product.
+ */
+@Service
+@Slf4j
+public class InventoryLedgerCompactor {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public InventoryLedgerCompactor(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // The tail is read after the lock is taken, so it must not come from an older snapshot
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    @Scheduled(initialDelayString = "${inventory.ledger.compact-interval-ms:60000}",
+               fixedDelayString = "${inventory.ledger.compact-interval-ms:60000}")
+    public void scheduledCompaction() {
+        try {
+            compact();
+        } catch (Exception e) {
+            log.error("Inventory ledger compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return number of products whose snapshot was advanced
+     */
+    public int compact() {
+        List<Long> productIds = jdbcTemplate.queryForList(
+                "SELECT DISTINCT e.product_id FROM inventory_ledger e " +
+                "JOIN products p ON p.id = e.product_id WHERE e.id > p.ledger_watermark",
+                Long.class);
+        if (productIds.isEmpty()) {
+            return 0;
+        }
+
+        int compacted = 0;
+        for (Long productId : productIds) {
+            // One lock at a time, so compaction never deadlocks with an order locking several products
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> fold(productId)))) {
+                compacted++;
+            }
+        }
+
+        log.info("Compacted inventory ledger for {}/{} products", compacted, productIds.size());
+        return compacted;
+    }
+
+    private boolean fold(Long productId) {
+        List<Long> watermark = jdbcTemplate.queryForList(
+                "SELECT ledger_watermark FROM products WHERE id = ? FOR UPDATE", Long.class, productId);
+        if (watermark.isEmpty()) {
+            return false;
+        }
+
+        Tail tail = new Tail();
+        jdbcTemplate.query(
+                "SELECT size, SUM(delta), MAX(id) FROM inventory_ledger WHERE product_id = ? AND id > ? GROUP BY size",
+                rs -> {
+                    tail.add((Integer) rs.getObject(1), rs.getInt(2), rs.getLong(3));
+                },
+                productId, watermark.get(0));
+        if (tail.lastId == 0) {
+            return false;
+        }
+
+        StringBuilder sql = new StringBuilder("UPDATE products SET quantity = quantity + ?");
+        List<Object> args = new ArrayList<>();
+        args.add(tail.total);
+        tail.sizes.forEach((size, delta) -> {
+            String column = SizeStock.columnFor(size);
+            sql.append(", ").append(column).append(" = ").append(column).append(" + ?");
+            args.add(delta);
+        });
+        sql.append(", ledger_watermark = ? WHERE id = ?");
+        args.add(tail.lastId);
+        args.add(productId);
+        return jdbcTemplate.update(sql.toString(), args.toArray()) > 0;
+    }
+
+    private static final class Tail {
+        private final Map<Integer, Integer> sizes = new HashMap<>();
+        private int total;
+        private long lastId;
+
+        private void add(Integer size, int delta, long maxId) {
+            total += delta;
+            lastId = Math.max(lastId, maxId);
+            if (size != null && SizeStock.isSupported(size)) {
+                sizes.merge(size, delta, Integer::sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.ProductResponseDto;
+import com.microservice.productservice.entity.InventoryLedgerEntry;
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.SizeStock;
+import com.microservice.productservice.repository.InventoryLedgerRepository;
+import com.microservice.productservice.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Stock movements are appended to inventory_ledger instead of rewriting products.quantity.
+ * On-hand stock is the product snapshot (quantity / sizeStock, folded up to ledger_watermark)
+ * plus the tail of entries after the watermark.
+ * <p>
+ * Every append holds the product row lock until its transaction ends. Entries of one product therefore
+ * commit in id order, and whoever holds the lock sees all of them: a stock check made under the lock
+ * cannot be spent twice, and the compactor can fold the whole tail without skipping a late commit.
+ */
+@Service
+@Slf4j
+public class InventoryLedgerService {
+
+    public static final String OPENING_BALANCE = "OPENING_BALANCE";
+    public static final String ADJUSTMENT = "ADJUSTMENT";
+    public static final String CORRECTION = "CORRECTION";
+
+    // Followed by the id of the reconciliation run
+    static final String RECONCILIATION_REFERENCE = "reconciliation:";
+
+    private final InventoryLedgerRepository ledgerRepository;
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public InventoryLedgerService(InventoryLedgerRepository ledgerRepository,
+                                  ProductRepository productRepository,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager) {
+        this.ledgerRepository = ledgerRepository;
+        this.productRepository = productRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * On-hand stock: the total, and per size for size-tracked products.
+     */
+    public record OnHand(int total, Map<Integer, Integer> sizes) {
+
+        public static final OnHand NONE = new OnHand(0, Map.of());
+
+        public int size(Integer size) {
+            return sizes.getOrDefault(size, 0);
+        }
+
+        int unsized() {
+            return total - sizes.values().stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+
+    /**
+     * Locks the product row until the transaction ends. Take it before reading the on-hand stock a change
+     * depends on; a no-op if this transaction already holds it.
+     */
+    public void lock(Long productId) {
+        jdbcTemplate.queryForList("SELECT id FROM products WHERE id = ? FOR UPDATE", Long.class, productId);
+    }
+
+    /**
+     * Records a stock movement, under the product row lock.
+     */
+    public InventoryLedgerEntry append(Long productId, Integer size, int delta, String reason, String reference) {
+        lock(productId);
+        return ledgerRepository.save(InventoryLedgerEntry.builder()
+                .productId(productId)
+                .size(size)
+                .delta(delta)
+                .reason(reason)
+                .reference(reference)
+                .build());
+    }
+
+    /**
+     * Whether a movement with this reason was already recorded for the reference, so redelivered
+     * events are applied once.
+     */
+    public boolean hasEntries(String reason, String reference) {
+        return reference != null && ledgerRepository.existsByReasonAndReference(reason, reference);
+    }
+
+    public OnHand onHand(Product product) {
+        Map<Integer, Integer> tail = new HashMap<>();
+        for (Object[] row : ledgerRepository.sumTailBySize(product.getId(), product.getLedgerWatermark())) {
+            tail.put((Integer) row[0], ((Number) row[1]).intValue());
+        }
+        return combine(snapshot(product), tail);
+    }
+
+    /**
+     * Pending (not yet compacted) deltas for many products in one query: productId -> size (null if unsized) -> delta.
+     */
+    public Map<Long, Map<Integer, Integer>> pendingDeltas(Collection<Long> productIds) {
+        Map<Long, Map<Integer, Integer>> pending = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return pending;
+        }
+        for (Object[] row : ledgerRepository.sumTailsBySize(productIds)) {
+            pending.computeIfAbsent((Long) row[0], id -> new HashMap<>())
+                    .put((Integer) row[1], ((Number) row[2]).intValue());
+        }
+        return pending;
+    }
+
+    /**
+     * Brings DTOs built from product snapshots up to date with the ledger tail.
+     */
+    public <T extends Collection<ProductResponseDto>> T withPending(T products) {
+        Map<Long, Map<Integer, Integer>> pending = pendingDeltas(
+                products.stream().map(ProductResponseDto::getId).toList());
+        for (ProductResponseDto product : products) {
+            Map<Integer, Integer> tail = pending.get(product.getId());
+            if (tail == null) {
+                continue;
+            }
+            tail.forEach((size, delta) -> {
+                product.setQuantity(product.getQuantity() + delta);
+                if (size != null && product.getSizeStock() != null) {
+                    product.getSizeStock().merge(size, delta, Integer::sum);
+                }
+            });
+        }
+        return products;
+    }
+
+    public ProductResponseDto withPending(ProductResponseDto product) {
+        return withPending(List.of(product)).get(0);
+    }
+
+    /**
+     * Call after an entity save overwrote the snapshot with absolute values (create, edit, import).
+     * Records the difference to the previous on-hand stock and marks the ledger as folded up to now.
+     *
+     * @param previous on-hand stock before the overwrite, or null for a new product
+     */
+    public void rebase(Product product, OnHand previous, String reason) {
+        OnHand before = previous != null ? previous : OnHand.NONE;
+        OnHand after = snapshot(product);
+
+        Set<Integer> sizes = new TreeSet<>(before.sizes().keySet());
+        sizes.addAll(after.sizes().keySet());
+        for (Integer size : sizes) {
+            int delta = after.size(size) - before.size(size);
+            if (delta != 0) {
+                append(product.getId(), size, delta, reason, null);
+            }
+        }
+        int unsizedDelta = after.unsized() - before.unsized();
+        if (unsizedDelta != 0) {
+            append(product.getId(), null, unsizedDelta, reason, null);
+        }
+
+        product.setLedgerWatermark(ledgerRepository.findLastIdByProductId(product.getId()));
+        productRepository.save(product);
+    }
+
+    /**
+     * Deletes every movement of a product, in the transaction that deletes the product.
+     */
+    public void deleteEntries(Long productId) {
+        jdbcTemplate.update("DELETE FROM inventory_ledger WHERE product_id = ?", productId);
+    }
+
+    public List<InventoryLedgerEntry> recentEntries(Long productId) {
+        return ledgerRepository.findTop100ByProductIdOrderByIdDesc(productId);
+    }
+
+    /**
+     * Compares every product snapshot with the ledger entries folded into it. A mismatch means a
+     * movement bypassed the ledger or was overwritten (e.g. a concurrent absolute stock edit).
+     *
+     * @param repair when true, appends a correction per mismatch so the ledger history balances
+     *               while the on-hand stock customers see stays the same. Each run has its own ledger
+     *               reference, so a SKU that drifts again can be repaired again.
+     */
+    public List<Map<String, Object>> reconcile(boolean repair) {
+        // Snapshots and folded sums must come from the same consistent read
+        List<Map<String, Object>> report = readOnlyTransaction.execute(status -> findDrift());
+
+        if (repair) {
+            String reference = RECONCILIATION_REFERENCE + UUID.randomUUID();
+            for (Map<String, Object> entry : report) {
+                @SuppressWarnings("unchecked")
+                Map<Integer, Integer> drift = (Map<Integer, Integer>) entry.remove("sizeDrift");
+                entry.put("repaired", repair((Long) entry.get("productId"), (Long) entry.get("watermark"), drift,
+                        "NO_HISTORY".equals(entry.get("status")) ? OPENING_BALANCE : CORRECTION, reference));
+            }
+        } else {
+            report.forEach(entry -> entry.remove("sizeDrift"));
+        }
+
+        log.info("Inventory reconciliation found {} products out of balance (repair={})", report.size(), repair);
+        return report;
+    }
+
+    private List<Map<String, Object>> findDrift() {
+        Map<Long, Map<Integer, Integer>> folded = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT e.product_id, e.size, SUM(e.delta) FROM inventory_ledger e " +
+                "JOIN products p ON p.id = e.product_id AND e.id <= p.ledger_watermark " +
+                "GROUP BY e.product_id, e.size",
+                rs -> {
+                    folded.computeIfAbsent(rs.getLong(1), id -> new HashMap<>())
+                            .put((Integer) rs.getObject(2), rs.getInt(3));
+                });
+
+        List<Map<String, Object>> report = new ArrayList<>();
+        for (Product product : productRepository.findAll()) {
+            Map<Integer, Integer> productFolded = folded.get(product.getId());
+            Map<Integer, Integer> drift = drift(product, productFolded != null ? productFolded : Map.of());
+            if (drift.isEmpty()) {
+                continue;
+            }
+
+            // JSON keys cannot be null: the unsized part of the total is reported as "unsized"
+            Map<String, Integer> driftBySize = new LinkedHashMap<>();
+            drift.forEach((size, delta) -> driftBySize.put(size != null ? size.toString() : "unsized", delta));
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("productId", product.getId());
+            entry.put("productName", product.getProductName());
+            entry.put("snapshot", product.getQuantity());
+            entry.put("watermark", product.getLedgerWatermark());
+            entry.put("status", productFolded == null ? "NO_HISTORY" : "DRIFT");
+            entry.put("drift", driftBySize);
+            entry.put("sizeDrift", drift);
+            report.add(entry);
+        }
+        return report;
+    }
+
+    // Snapshot minus folded ledger, per size (null = the unsized part of the total)
+    private static Map<Integer, Integer> drift(Product product, Map<Integer, Integer> folded) {
+        OnHand snapshot = snapshot(product);
+        Map<Integer, Integer> drift = new LinkedHashMap<>();
+
+        Set<Integer> sizes = new TreeSet<>(snapshot.sizes().keySet());
+        folded.keySet().stream().filter(Objects::nonNull).forEach(sizes::add);
+        int foldedSized = 0;
+        for (Integer size : sizes) {
+            int foldedSize = folded.getOrDefault(size, 0);
+            foldedSized += foldedSize;
+            if (snapshot.size(size) != foldedSize) {
+                drift.put(size, snapshot.size(size) - foldedSize);
+            }
+        }
+        int foldedUnsized = folded.getOrDefault(null, 0);
+        if (snapshot.unsized() != foldedUnsized) {
+            drift.put(null, snapshot.unsized() - foldedUnsized);
+        }
+        return drift;
+    }
+
+    /**
+     * Appends the drift as ledger entries and takes the same amount out of the snapshot, in one
+     * transaction and only if the product was not compacted in the meantime.
+     */
+    private boolean repair(Long productId, long watermark, Map<Integer, Integer> drift, String reason,
+                           String reference) {
+        Boolean repaired = transactionTemplate.execute(status -> {
+            StringBuilder sql = new StringBuilder("UPDATE products SET quantity = quantity - ?");
+            List<Object> args = new ArrayList<>();
+            args.add(drift.values().stream().mapToInt(Integer::intValue).sum());
+            drift.forEach((size, delta) -> {
+                if (size != null) {
+                    String column = SizeStock.columnFor(size);
+                    sql.append(", ").append(column).append(" = ").append(column).append(" - ?");
+                    args.add(delta);
+                }
+            });
+            sql.append(" WHERE id = ? AND ledger_watermark = ?");
+            args.add(productId);
+            args.add(watermark);
+
+            if (jdbcTemplate.update(sql.toString(), args.toArray()) != 1) {
+                status.setRollbackOnly();
+                return false;
+            }
+            drift.forEach((size, delta) -> append(productId, size, delta, reason, reference));
+            return true;
+        });
+        return Boolean.TRUE.equals(repaired);
+    }
+
+    private static OnHand snapshot(Product product) {
+        return new OnHand(product.getQuantity(),
+                product.isSizeTracked() ? product.getSizeStock().asMap() : Map.of());
+    }
+
+    private static OnHand combine(OnHand snapshot, Map<Integer, Integer> tail) {
+        if (tail.isEmpty()) {
+            return snapshot;
+        }
+        int total = snapshot.total();
+        Map<Integer, Integer> sizes = new LinkedHashMap<>(snapshot.sizes());
+        for (Map.Entry<Integer, Integer> entry : tail.entrySet()) {
+            total += entry.getValue();
+            if (entry.getKey() != null) {
+                sizes.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        return new OnHand(total, sizes);
+    }
+}
@@ -0,0 +1,195 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.BulkPriceRuleDto;
+import com.microservice.productservice.dto.BulkUpdateRequestDto;
+import com.microservice.productservice.dto.BulkUpdateResultDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Applies catalog-wide price and attribute changes with set-based UPDATEs in id chunks,
+ * instead of loading and saving every product through the entity layer.
+ */
+@Service
+@Slf4j
+public class ProductBulkUpdateService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ProductSimilarityService productSimilarityService;
+    private final CatalogEventPublisher catalogEventPublisher;
+
+    @Value("${product.bulk-update.chunk-size:500}")
+    private int chunkSize;
+
+    public ProductBulkUpdateService(JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    ProductSimilarityService productSimilarityService,
+                                    CatalogEventPublisher catalogEventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.productSimilarityService = productSimilarityService;
+        this.catalogEventPublisher = catalogEventPublisher;
+    }
+
+    public BulkUpdateResultDto applyBulkUpdate(BulkUpdateRequestDto request) {
+        validate(request);
+
+        long start = System.nanoTime();
+        TreeSet<Long> touched = new TreeSet<>();
+        int[] statements = new int[1];
+
+        // All rules commit or roll back together; caches and listeners only hear about committed data
+        transactionTemplate.executeWithoutResult(status -> {
+            if (request.getRules() != null) {
+                for (BulkPriceRuleDto rule : request.getRules()) {
+                    statements[0] += applyRule(rule, touched);
+                }
+            }
+            if (request.getPrices() != null && !request.getPrices().isEmpty()) {
+                statements[0] += applyExplicitPrices(request.getPrices(), touched);
+            }
+        });
+
+        List<Long> productIds = new ArrayList<>(touched);
+        if (!productIds.isEmpty()) {
+            productSimilarityService.onCatalogChanged(productIds);
+            try {
+                catalogEventPublisher.publishCatalogChangedEvent("BULK_UPDATE", productIds);
+            } catch (Exception e) {
+                log.error("Failed to publish catalog changed event: {}", e.getMessage(), e);
+            }
+        }
+
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("Bulk update touched {} products with {} statements in {} ms",
+                productIds.size(), statements[0], durationMs);
+
+        return BulkUpdateResultDto.builder()
+                .updatedCount(productIds.size())
+                .statementCount(statements[0])
+                .durationMs(durationMs)
+                .productIds(productIds)
+                .build();
+    }
+
+    private void validate(BulkUpdateRequestDto request) {
+        boolean hasRules = request.getRules() != null && !request.getRules().isEmpty();
+        boolean hasPrices = request.getPrices() != null && !request.getPrices().isEmpty();
+        if (!hasRules && !hasPrices) {
+            throw new IllegalArgumentException("At least one rule or price is required");
+        }
+
+        if (hasRules) {
+            for (BulkPriceRuleDto rule : request.getRules()) {
+                if (isBlank(rule.getBrandName()) && isBlank(rule.getCategory())) {
+                    throw new IllegalArgumentException("Each rule needs a brandName or category");
+                }
+                if (rule.getPercentChange() == null && rule.getReorderLevel() == null) {
+                    throw new IllegalArgumentException("Each rule needs a percentChange or reorderLevel");
+                }
+            }
+        }
+
+        if (hasPrices) {
+            request.getPrices().forEach((id, price) -> {
+                if (id == null || price == null || price.signum() < 0) {
+                    throw new IllegalArgumentException("Invalid price for product " + id + ": " + price);
+                }
+            });
+        }
+    }
+
+    private int applyRule(BulkPriceRuleDto rule, TreeSet<Long> touched) {
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        List<Object> filterArgs = new ArrayList<>();
+        if (!isBlank(rule.getBrandName())) {
+            where.append(" AND brand_name = ?");
+            filterArgs.add(rule.getBrandName());
+        }
+        if (!isBlank(rule.getCategory())) {
+            where.append(" AND category = ?");
+            filterArgs.add(rule.getCategory());
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM products" + where + " ORDER BY id", Long.class, filterArgs.toArray());
+        if (ids.isEmpty()) {
+            return 1;
+        }
+
+        StringBuilder set = new StringBuilder("UPDATE products SET updated_at = NOW()");
+        List<Object> setArgs = new ArrayList<>();
+        if (rule.getPercentChange() != null) {
+            set.append(", product_price = GREATEST(0, ROUND(product_price * ?, 2))");
+            setArgs.add(BigDecimal.ONE.add(rule.getPercentChange().divide(BigDecimal.valueOf(100), MathContext.DECIMAL64)));
+        }
+        if (rule.getReorderLevel() != null) {
+            set.append(", reorder_level = ?");
+            setArgs.add(rule.getReorderLevel());
+        }
+
+        int statements = 1;
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + chunkSize));
+            List<Object> args = new ArrayList<>(setArgs);
+            args.addAll(chunk);
+            jdbcTemplate.update(set + " WHERE id IN (" + placeholders(chunk.size()) + ")", args.toArray());
+            touched.addAll(chunk);
+            statements++;
+        }
+        return statements;
+    }
+
+    private int applyExplicitPrices(Map<Long, BigDecimal> prices, TreeSet<Long> touched) {
+        List<Long> requested = new ArrayList<>(new TreeSet<>(prices.keySet()));
+
+        int statements = 0;
+        for (int from = 0; from < requested.size(); from += chunkSize) {
+            List<Long> chunk = requested.subList(from, Math.min(requested.size(), from + chunkSize));
+            List<Long> existing = jdbcTemplate.queryForList(
+                    "SELECT id FROM products WHERE id IN (" + placeholders(chunk.size()) + ")",
+                    Long.class, chunk.toArray());
+            statements++;
+            if (existing.isEmpty()) {
+                continue;
+            }
+
+            // One CASE statement per chunk instead of one UPDATE per product
+            StringBuilder sql = new StringBuilder("UPDATE products SET product_price = CASE id");
+            List<Object> args = new ArrayList<>(existing.size() * 3);
+            for (Long id : existing) {
+                sql.append(" WHEN ? THEN ?");
+                args.add(id);
+                args.add(prices.get(id));
+            }
+            sql.append(" END, updated_at = NOW() WHERE id IN (").append(placeholders(existing.size())).append(")");
+            args.addAll(existing);
+
+            jdbcTemplate.update(sql.toString(), args.toArray());
+            touched.addAll(existing);
+            statements++;
+        }
+        return statements;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,170 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.entity.SizeStock;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the catalog with stock levels as CSV or XLSX straight from a forward-only cursor,
+ * so memory use does not grow with the number of products.
+ */
+@Service
+@Slf4j
+public class ProductExportService {
+
+    // Rows SXSSF keeps in memory before flushing older rows to its temp file
+    private static final int XLSX_ROW_WINDOW = 100;
+    private static final int FLUSH_EVERY_ROWS = 500;
+
+    private static final List<String> BASE_COLUMNS = List.of(
+            "id", "product_name", "category", "brand_name", "designer", "product_price",
+            "quantity", "reorder_level", "size_tracked");
+
+    private static final List<String> COLUMNS;
+    private static final String EXPORT_SQL;
+
+    static {
+        List<String> columns = new ArrayList<>(BASE_COLUMNS);
+        for (int size = SizeStock.MIN_SIZE; size <= SizeStock.MAX_SIZE; size++) {
+            columns.add(SizeStock.columnFor(size));
+        }
+        columns.add("updated_at");
+        COLUMNS = List.copyOf(columns);
+
+        // Stock columns are the snapshot plus inventory ledger entries not yet compacted into it
+        List<String> select = new ArrayList<>();
+        List<String> tail = new ArrayList<>(List.of("e.product_id", "SUM(e.delta) AS quantity"));
+        for (String column : COLUMNS) {
+            if (column.equals("quantity") || column.startsWith("stock_eu")) {
+                select.add("p." + column + " + COALESCE(t." + column + ", 0) AS " + column);
+            } else {
+                select.add("p." + column);
+            }
+            if (column.startsWith("stock_eu")) {
+                tail.add("SUM(CASE WHEN e.size = " + column.substring("stock_eu".length())
+                        + " THEN e.delta ELSE 0 END) AS " + column);
+            }
+        }
+        EXPORT_SQL = "SELECT " + String.join(", ", select) + " FROM products p LEFT JOIN ("
+                + "SELECT " + String.join(", ", tail) + " FROM inventory_ledger e "
+                + "JOIN products q ON q.id = e.product_id AND e.id > q.ledger_watermark "
+                + "GROUP BY e.product_id) t ON t.product_id = p.id ORDER BY p.id";
+    }
+
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    public ProductExportService(DataSource dataSource) {
+        // Own template: MySQL Connector/J only streams rows one at a time with fetch size Integer.MIN_VALUE
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    public void exportCsv(OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        // BOM so Excel opens UTF-8 (Vietnamese product names) correctly
+        writer.write('\uFEFF');
+        writer.write(String.join(",", COLUMNS));
+        writer.write("\r\n");
+
+        int[] rows = new int[1];
+        stream(rs -> {
+            try {
+                for (int i = 1; i <= COLUMNS.size(); i++) {
+                    if (i > 1) {
+                        writer.write(',');
+                    }
+                    writer.write(csvValue(value(rs, i)));
+                }
+                writer.write("\r\n");
+                if (++rows[0] % FLUSH_EVERY_ROWS == 0) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+        log.info("Exported {} products as CSV", rows[0]);
+    }
+
+    public void exportXlsx(OutputStream outputStream) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(XLSX_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            Sheet sheet = workbook.createSheet("Products");
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < COLUMNS.size(); i++) {
+                header.createCell(i).setCellValue(COLUMNS.get(i));
+            }
+
+            int[] rows = new int[1];
+            stream(rs -> {
+                Row row = sheet.createRow(++rows[0]);
+                for (int i = 1; i <= COLUMNS.size(); i++) {
+                    Object value = value(rs, i);
+                    Cell cell = row.createCell(i - 1);
+                    if (value instanceof Number number) {
+                        cell.setCellValue(number.doubleValue());
+                    } else if (value instanceof Boolean bool) {
+                        cell.setCellValue(bool);
+                    } else if (value != null) {
+                        cell.setCellValue(value.toString());
+                    }
+                }
+            });
+
+            workbook.write(outputStream);
+            outputStream.flush();
+            log.info("Exported {} products as XLSX", rows[0]);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private void stream(RowCallbackHandler handler) {
+        try {
+            streamingJdbcTemplate.query(EXPORT_SQL, handler);
+        } catch (UncheckedIOException e) {
+            // Client went away mid-download; the cursor is closed by the template
+            log.warn("Product export aborted: {}", e.getCause().getMessage());
+            throw e;
+        }
+    }
+
+    private static Object value(ResultSet rs, int column) throws SQLException {
+        Object value = rs.getObject(column);
+        return value instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : value;
+    }
+
+    private static String csvValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -1,14 +1,18 @@
 package com.microservice.productservice.service;
 
+import com.microservice.productservice.dto.ProductFieldSet;
+import com.microservice.productservice.dto.ProductInventoryChangeDto;
 import com.microservice.productservice.dto.ProductRequestDto;
 import com.microservice.productservice.dto.ProductResponseDto;
 import com.microservice.productservice.entity.Product;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -25,13 +29,23 @@ public interface ProductService {
     
     // DTO-based operations for API endpoints
     ProductResponseDto getProductResponseDtoById(Long id);
+    List<ProductResponseDto> getProductResponsesDtoByIds(Collection<Long> ids);
     List<ProductResponseDto> getAllProductResponsesDto();
     Page<ProductResponseDto> getAllProductResponsesDtoPaged(Pageable pageable);
     ProductResponseDto addNewProductDto(ProductRequestDto productRequest);
     ProductResponseDto updateProductDto(Long id, ProductRequestDto productRequest);
+    List<ProductResponseDto> getSimilarProductsDto(Long id, int limit);
+    
+    // Sparse fieldsets: only the requested columns are selected and serialized
+    Map<String, Object> getProductFieldsById(Long id, ProductFieldSet fieldSet);
+    Page<Map<String, Object>> findProductFields(Specification<Product> spec, Pageable pageable, ProductFieldSet fieldSet);
     
     // Inventory management
-    Product updateProductQuantity(Long id, int quantity);
+    // Stock changes are appended to the inventory ledger; returned figures include them
+    ProductResponseDto updateProductQuantity(Long id, int quantity);
+    ProductResponseDto updateSizeQuantity(Long id, int size, int quantity);
+    Map<Integer, Integer> getSizeAvailability(Long id);
+    ProductInventoryChangeDto applyStockChange(Long productId, Integer size, int changeAmount, String reason, String reference);
     boolean hasInStock(Long productId, int quantity);
     List<ProductResponseDto> getProductsNeedingReorderDto();
     void updateReorderLevel(Long id, int reorderLevel);
@@ -0,0 +1,588 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed "similar products" index.
+ *
+ * Every product is turned into a sparse, L2-normalised feature vector built from its
+ * category, brand, designer, price band and description tokens. A background job computes
+ * the top-k cosine neighbours of every product on a dedicated fork-join pool: an exact
+ * all-pairs pass for small catalogs and a random-hyperplane LSH pass (candidate generation
+ * followed by exact re-ranking) for large ones. Reads are a single map lookup.
+ *
+ * Product changes are applied incrementally: the changed product gets a fresh neighbour
+ * list and is offered to every other product's list. Incremental updates never rescan for
+ * replacements when a product drops out of a list; the next full rebuild restores exact lists.
+ */
+@Service
+@Slf4j
+public class ProductSimilarityService {
+
+    private static final int FEATURE_SPACE = 1 << 20;
+    private static final int LSH_TABLES = 8;
+    private static final int LSH_BITS = 12;
+
+    private static final float CATEGORY_WEIGHT = 3.0f;
+    private static final float BRAND_WEIGHT = 2.0f;
+    private static final float DESIGNER_WEIGHT = 1.5f;
+    private static final float PRICE_BAND_WEIGHT = 1.0f;
+    private static final float ADJACENT_PRICE_BAND_WEIGHT = 0.4f;
+    private static final float DESCRIPTION_WEIGHT = 1.5f;
+    private static final double PRICE_BAND_RATIO = Math.log(1.5);
+
+    private final ProductRepository productRepository;
+    private final ForkJoinPool buildPool;
+    private final ExecutorService incrementalExecutor;
+
+    @Value("${product.similarity.k:8}")
+    private int neighbourCount;
+
+    @Value("${product.similarity.exact-threshold:2000}")
+    private int exactThreshold;
+
+    @Value("${product.similarity.max-bucket-size:256}")
+    private int maxBucketSize;
+
+    private volatile SimilarityIndex index = SimilarityIndex.empty();
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    public ProductSimilarityService(ProductRepository productRepository,
+                                    @Value("${product.similarity.parallelism:0}") int parallelism) {
+        this.productRepository = productRepository;
+        this.buildPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.incrementalExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similarity-incremental");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        incrementalExecutor.shutdownNow();
+        buildPool.shutdownNow();
+    }
+
+    /**
+     * Returns the ids of the most similar products, best match first.
+     */
+    public List<Long> findSimilarProductIds(Long productId, int limit) {
+        SimilarityIndex current = index;
+        Neighbours neighbours = current.neighbours.get(productId);
+
+        if (neighbours == null) {
+            // Not indexed yet (e.g. before the first build): fall back to a linear scan if we can
+            FeatureVector vector = current.vectors.get(productId);
+            if (vector == null) {
+                return List.of();
+            }
+            neighbours = scan(productId, vector, current.vectors);
+        }
+
+        int size = Math.min(limit, neighbours.ids.length);
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(neighbours.ids[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Schedules an incremental update for a created or modified product.
+     * Inside a transaction the update waits for the commit, so a rolled-back save leaves the index alone.
+     */
+    public void onProductChanged(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+
+        afterCommit(() -> {
+            Long productId = product.getId();
+            FeatureVector vector = vectorize(product, index);
+            if (rebuilding.get()) {
+                changedDuringRebuild.add(productId);
+            }
+            incrementalExecutor.execute(() -> applyChange(productId, vector));
+        });
+    }
+
+    /**
+     * Schedules removal of a deleted product from the index, after the commit like {@link #onProductChanged}.
+     */
+    public void onProductDeleted(Long productId) {
+        if (productId == null) {
+            return;
+        }
+
+        afterCommit(() -> {
+            if (rebuilding.get()) {
+                changedDuringRebuild.add(productId);
+            }
+            incrementalExecutor.execute(() -> applyRemoval(productId));
+        });
+    }
+
+    /**
+     * Invalidates the index after a bulk catalog change that bypassed the per-product hooks.
+     * One background rebuild is cheaper than an incremental scan per changed product.
+     */
+    public void onCatalogChanged(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+
+        if (rebuilding.get()) {
+            // The running build may have read the old rows; it replays these when it finishes
+            changedDuringRebuild.addAll(productIds);
+            return;
+        }
+        buildPool.execute(this::rebuildQuietly);
+    }
+
+    // Only hands the build to the pool: a full rebuild takes minutes on a large catalog and would
+    // otherwise hold Spring's single scheduler thread, stalling every other @Scheduled job
+    @Scheduled(initialDelayString = "${product.similarity.initial-delay-ms:30000}",
+               fixedDelayString = "${product.similarity.rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        if (rebuilding.get()) {
+            log.info("Similarity index rebuild already in progress - skipping");
+            return;
+        }
+        buildPool.execute(this::rebuildQuietly);
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Failed to rebuild similarity index: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recomputes all neighbour lists from the current catalog and swaps the index in one step.
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            log.info("Similarity index rebuild already in progress - skipping");
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            List<Product> products = productRepository.findAll();
+            int n = products.size();
+
+            Map<String, Integer> documentFrequency = new HashMap<>();
+            for (Product product : products) {
+                for (String token : tokenCounts(product.getDescription()).keySet()) {
+                    documentFrequency.merge(token, 1, Integer::sum);
+                }
+            }
+            SimilarityIndex next = new SimilarityIndex(documentFrequency, n);
+
+            long[] ids = new long[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = products.get(i).getId();
+            }
+            FeatureVector[] vectors = buildPool.submit(() -> IntStream.range(0, n).parallel()
+                    .mapToObj(i -> vectorize(products.get(i), next))
+                    .toArray(FeatureVector[]::new)).join();
+
+            boolean exact = n <= exactThreshold;
+            Neighbours[] neighbours = exact ? allPairs(vectors) : approximate(vectors);
+
+            for (int i = 0; i < n; i++) {
+                next.vectors.put(ids[i], vectors[i]);
+                next.neighbours.put(ids[i], neighbours[i].resolve(ids));
+            }
+            index = next;
+
+            log.info("Rebuilt similarity index for {} products ({} pass) in {} ms",
+                    n, exact ? "all-pairs" : "LSH", (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            rebuilding.set(false);
+        }
+
+        replayChangesDuringRebuild();
+    }
+
+    private void replayChangesDuringRebuild() {
+        List<Long> changed = new ArrayList<>(changedDuringRebuild);
+        changedDuringRebuild.removeAll(changed);
+
+        for (Long productId : changed) {
+            productRepository.findById(productId).ifPresentOrElse(
+                    this::onProductChanged,
+                    () -> onProductDeleted(productId));
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void applyChange(Long productId, FeatureVector vector) {
+        SimilarityIndex current = index;
+        current.vectors.put(productId, vector);
+        current.neighbours.put(productId, scan(productId, vector, current.vectors));
+
+        current.vectors.forEach((otherId, otherVector) -> {
+            if (otherId.equals(productId)) {
+                return;
+            }
+            float score = vector.dot(otherVector);
+            current.neighbours.computeIfPresent(otherId,
+                    (id, list) -> list.offer(productId, score, neighbourCount));
+        });
+    }
+
+    private void applyRemoval(Long productId) {
+        SimilarityIndex current = index;
+        current.vectors.remove(productId);
+        current.neighbours.remove(productId);
+        current.neighbours.replaceAll((id, list) -> list.without(productId));
+    }
+
+    private Neighbours scan(Long productId, FeatureVector vector, Map<Long, FeatureVector> vectors) {
+        TopK top = new TopK(neighbourCount);
+        vectors.forEach((otherId, otherVector) -> {
+            if (!otherId.equals(productId)) {
+                top.offer(otherId, vector.dot(otherVector));
+            }
+        });
+        return top.toNeighbours();
+    }
+
+    // Exact all-pairs pass: each row is scored independently on the fork-join pool
+    private Neighbours[] allPairs(FeatureVector[] vectors) {
+        int n = vectors.length;
+        return buildPool.submit(() -> IntStream.range(0, n).parallel()
+                .mapToObj(i -> {
+                    TopK top = new TopK(neighbourCount);
+                    for (int j = 0; j < n; j++) {
+                        if (j != i) {
+                            top.offer(j, vectors[i].dot(vectors[j]));
+                        }
+                    }
+                    return top.toNeighbours();
+                })
+                .toArray(Neighbours[]::new)).join();
+    }
+
+    // Approximate pass: random-hyperplane LSH buckets generate candidates, which are re-ranked exactly
+    private Neighbours[] approximate(FeatureVector[] vectors) {
+        int n = vectors.length;
+        int[][] signatures = buildPool.submit(() -> IntStream.range(0, n).parallel()
+                .mapToObj(i -> vectors[i].signatures())
+                .toArray(int[][]::new)).join();
+
+        long[][] tables = new long[LSH_TABLES][];
+        int[][] positions = new int[LSH_TABLES][n];
+        for (int t = 0; t < LSH_TABLES; t++) {
+            long[] table = new long[n];
+            for (int i = 0; i < n; i++) {
+                table[i] = ((long) signatures[i][t] << 32) | i;
+            }
+            Arrays.sort(table);
+            for (int p = 0; p < n; p++) {
+                positions[t][(int) table[p]] = p;
+            }
+            tables[t] = table;
+        }
+
+        int half = Math.max(1, maxBucketSize / 2);
+        return buildPool.submit(() -> IntStream.range(0, n).parallel()
+                .mapToObj(i -> {
+                    int[] candidates = new int[LSH_TABLES * (2 * half + 1)];
+                    int count = 0;
+                    for (int t = 0; t < LSH_TABLES; t++) {
+                        long[] table = tables[t];
+                        int pos = positions[t][i];
+                        long key = table[pos] >>> 32;
+                        for (int p = Math.max(0, pos - half); p < Math.min(n, pos + half + 1); p++) {
+                            if ((table[p] >>> 32) == key && (int) table[p] != i) {
+                                candidates[count++] = (int) table[p];
+                            }
+                        }
+                    }
+
+                    // The same candidate usually shows up in several tables; score it once
+                    Arrays.sort(candidates, 0, count);
+                    TopK top = new TopK(neighbourCount);
+                    for (int c = 0; c < count; c++) {
+                        if (c == 0 || candidates[c] != candidates[c - 1]) {
+                            top.offer(candidates[c], vectors[i].dot(vectors[candidates[c]]));
+                        }
+                    }
+                    return top.toNeighbours();
+                })
+                .toArray(Neighbours[]::new)).join();
+    }
+
+    private FeatureVector vectorize(Product product, SimilarityIndex index) {
+        Map<Integer, Float> weights = new HashMap<>();
+
+        addFeature(weights, "c:", product.getCategory(), CATEGORY_WEIGHT);
+        addFeature(weights, "b:", product.getBrandName(), BRAND_WEIGHT);
+        addFeature(weights, "d:", product.getDesigner(), DESIGNER_WEIGHT);
+
+        BigDecimal price = product.getProductPrice();
+        if (price != null && price.signum() > 0) {
+            int band = (int) Math.floor(Math.log(price.doubleValue()) / PRICE_BAND_RATIO);
+            addFeature(weights, "p:", String.valueOf(band), PRICE_BAND_WEIGHT);
+            addFeature(weights, "p:", String.valueOf(band - 1), ADJACENT_PRICE_BAND_WEIGHT);
+            addFeature(weights, "p:", String.valueOf(band + 1), ADJACENT_PRICE_BAND_WEIGHT);
+        }
+
+        // Description tokens are tf-idf weighted and scaled as one block so long texts don't dominate
+        Map<String, Integer> counts = tokenCounts(product.getDescription());
+        if (!counts.isEmpty()) {
+            Map<Integer, Float> description = new HashMap<>();
+            double norm = 0;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                float weight = (float) ((1 + Math.log(entry.getValue())) * index.idf(entry.getKey()));
+                description.merge(featureIndex("t:" + entry.getKey()), weight, Float::sum);
+                norm += weight * weight;
+            }
+            float scale = (float) (DESCRIPTION_WEIGHT / Math.sqrt(norm));
+            description.forEach((feature, weight) -> weights.merge(feature, weight * scale, Float::sum));
+        }
+
+        return FeatureVector.of(weights);
+    }
+
+    private static void addFeature(Map<Integer, Float> weights, String prefix, String value, float weight) {
+        if (value == null || value.isBlank()) {
+            return;
+        }
+        weights.merge(featureIndex(prefix + value.trim().toLowerCase(Locale.ROOT)), weight, Float::sum);
+    }
+
+    private static int featureIndex(String token) {
+        return (token.hashCode() & 0x7fffffff) % FEATURE_SPACE;
+    }
+
+    private static Map<String, Integer> tokenCounts(String text) {
+        if (text == null || text.isBlank()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (token.length() >= 3) {
+                counts.merge(token, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static final class SimilarityIndex {
+        private final Map<String, Integer> documentFrequency;
+        private final int documentCount;
+        private final double maxIdf;
+        private final ConcurrentHashMap<Long, FeatureVector> vectors = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, Neighbours> neighbours = new ConcurrentHashMap<>();
+
+        private SimilarityIndex(Map<String, Integer> documentFrequency, int documentCount) {
+            this.documentFrequency = documentFrequency;
+            this.documentCount = documentCount;
+            this.maxIdf = Math.log(documentCount + 1.0) + 1;
+        }
+
+        static SimilarityIndex empty() {
+            return new SimilarityIndex(Map.of(), 0);
+        }
+
+        double idf(String token) {
+            Integer df = documentFrequency.get(token);
+            // Tokens unseen at build time are treated as the rarest possible
+            return df == null ? maxIdf : Math.log((documentCount + 1.0) / (df + 1.0)) + 1;
+        }
+    }
+
+    private static final class FeatureVector {
+        private final int[] features;
+        private final float[] weights;
+
+        private FeatureVector(int[] features, float[] weights) {
+            this.features = features;
+            this.weights = weights;
+        }
+
+        static FeatureVector of(Map<Integer, Float> sparse) {
+            int[] features = sparse.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            float[] weights = new float[features.length];
+            double norm = 0;
+            for (int i = 0; i < features.length; i++) {
+                weights[i] = sparse.get(features[i]);
+                norm += weights[i] * weights[i];
+            }
+            if (norm > 0) {
+                float scale = (float) (1 / Math.sqrt(norm));
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] *= scale;
+                }
+            }
+            return new FeatureVector(features, weights);
+        }
+
+        float dot(FeatureVector other) {
+            float sum = 0;
+            int i = 0;
+            int j = 0;
+            while (i < features.length && j < other.features.length) {
+                if (features[i] == other.features[j]) {
+                    sum += weights[i++] * other.weights[j++];
+                } else if (features[i] < other.features[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return sum;
+        }
+
+        // One LSH_BITS-wide random-hyperplane signature per table; hyperplanes are derived by hashing
+        int[] signatures() {
+            int[] signatures = new int[LSH_TABLES];
+            for (int t = 0; t < LSH_TABLES; t++) {
+                int signature = 0;
+                for (int b = 0; b < LSH_BITS; b++) {
+                    int plane = t * LSH_BITS + b;
+                    float projection = 0;
+                    for (int i = 0; i < features.length; i++) {
+                        projection += mix(features[i], plane) < 0 ? -weights[i] : weights[i];
+                    }
+                    if (projection >= 0) {
+                        signature |= 1 << b;
+                    }
+                }
+                signatures[t] = signature;
+            }
+            return signatures;
+        }
+
+        private static int mix(int feature, int plane) {
+            int h = feature * 0x9E3779B1 + plane * 0x85EBCA6B;
+            h ^= h >>> 16;
+            h *= 0x7FEB352D;
+            h ^= h >>> 15;
+            return h;
+        }
+    }
+
+    private static final class Neighbours {
+        private static final Neighbours NONE = new Neighbours(new long[0], new float[0]);
+
+        private final long[] ids;
+        private final float[] scores;
+
+        private Neighbours(long[] ids, float[] scores) {
+            this.ids = ids;
+            this.scores = scores;
+        }
+
+        // During a full build ids hold row indexes; map them back to product ids
+        Neighbours resolve(long[] productIds) {
+            long[] resolved = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                resolved[i] = productIds[(int) ids[i]];
+            }
+            return new Neighbours(resolved, scores);
+        }
+
+        Neighbours offer(long id, float score, int capacity) {
+            TopK top = new TopK(capacity);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != id) {
+                    top.offer(ids[i], scores[i]);
+                }
+            }
+            top.offer(id, score);
+            return top.toNeighbours();
+        }
+
+        Neighbours without(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    long[] keptIds = new long[ids.length - 1];
+                    float[] keptScores = new float[ids.length - 1];
+                    System.arraycopy(ids, 0, keptIds, 0, i);
+                    System.arraycopy(ids, i + 1, keptIds, i, ids.length - i - 1);
+                    System.arraycopy(scores, 0, keptScores, 0, i);
+                    System.arraycopy(scores, i + 1, keptScores, i, ids.length - i - 1);
+                    return new Neighbours(keptIds, keptScores);
+                }
+            }
+            return this;
+        }
+    }
+
+    // Bounded selection of the highest scores, kept sorted by insertion (k is small)
+    private static final class TopK {
+        private final long[] ids;
+        private final float[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            this.ids = new long[capacity];
+            this.scores = new float[capacity];
+        }
+
+        void offer(long id, float score) {
+            if (score <= 0 || ids.length == 0 || (size == ids.length && score <= scores[size - 1])) {
+                return;
+            }
+            int pos = size == ids.length ? size - 1 : size++;
+            while (pos > 0 && scores[pos - 1] < score) {
+                ids[pos] = ids[pos - 1];
+                scores[pos] = scores[pos - 1];
+                pos--;
+            }
+            ids[pos] = id;
+            scores[pos] = score;
+        }
+
+        Neighbours toNeighbours() {
+            return size == 0 ? Neighbours.NONE
+                    : new Neighbours(Arrays.copyOf(ids, size), Arrays.copyOf(scores, size));
+        }
+    }
+}
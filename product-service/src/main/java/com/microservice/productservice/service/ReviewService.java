@@ -0,0 +1,127 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.ReviewRequestDto;
+import com.microservice.productservice.entity.RatingHistogram;
+import com.microservice.productservice.entity.Review;
+import com.microservice.productservice.repository.ProductRepository;
+import com.microservice.productservice.repository.ReviewRepository;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Objects;
+
+/**
+ * Reviews and the per-product rating aggregates (count, sum, average, star histogram).
+ * Every review write adjusts the aggregates in the same transaction with a relative UPDATE,
+ * so listings read ratings straight from the product row and never aggregate reviews.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ReviewService {
+
+    private final ReviewRepository reviewRepository;
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public Page<Review> getReviews(Long productId, Pageable pageable) {
+        if (!productRepository.existsById(productId)) {
+            throw new EntityNotFoundException("Product not found with id: " + productId);
+        }
+        return reviewRepository.findByProductId(productId, pageable);
+    }
+
+    /**
+     * Adds the user's review of a product, or replaces their earlier one.
+     */
+    @Transactional
+    public Review saveReview(Long productId, String username, ReviewRequestDto request) {
+        if (!RatingHistogram.isValid(request.getRating())) {
+            throw new IllegalArgumentException("Số sao phải từ 1 đến 5");
+        }
+        if (!productRepository.existsById(productId)) {
+            throw new EntityNotFoundException("Product not found with id: " + productId);
+        }
+
+        Review review = reviewRepository.findByProductIdAndUsername(productId, username).orElse(null);
+        if (review == null) {
+            review = Review.builder().productId(productId).username(username).rating(request.getRating()).build();
+            applyRatingChange(productId, null, request.getRating());
+        } else {
+            applyRatingChange(productId, review.getRating(), request.getRating());
+            review.setRating(request.getRating());
+        }
+        review.setComment(request.getComment());
+
+        Review saved = reviewRepository.save(review);
+        log.info("Saved review {} of product {} by {}: {} stars", saved.getId(), productId, username, saved.getRating());
+        return saved;
+    }
+
+    @Transactional
+    public void deleteReview(Long productId, Long reviewId, String username, boolean admin) {
+        Review review = reviewRepository.findByIdAndProductId(reviewId, productId)
+                .orElseThrow(() -> new EntityNotFoundException("Review not found with id: " + reviewId));
+        if (!admin && !Objects.equals(review.getUsername(), username)) {
+            throw new AccessDeniedException("Only the author or an admin can delete this review");
+        }
+
+        reviewRepository.delete(review);
+        applyRatingChange(productId, review.getRating(), null);
+        log.info("Deleted review {} of product {}", reviewId, productId);
+    }
+
+    /**
+     * Rebuilds every product's aggregates from the reviews table, in one statement.
+     * Only needed if reviews were changed outside this service.
+     */
+    @Transactional
+    public int recomputeAggregates() {
+        StringBuilder stars = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++) {
+            String column = RatingHistogram.columnFor(rating);
+            stars.append(", SUM(rating = ").append(rating).append(") AS ").append(column);
+            assignments.append(", p.").append(column).append(" = COALESCE(r.").append(column).append(", 0)");
+        }
+
+        int updated = jdbcTemplate.update(
+                "UPDATE products p LEFT JOIN (SELECT product_id, COUNT(*) AS rating_count, SUM(rating) AS rating_sum"
+                        + stars + " FROM reviews GROUP BY product_id) r ON r.product_id = p.id "
+                        + "SET p.rating_count = COALESCE(r.rating_count, 0), p.rating_sum = COALESCE(r.rating_sum, 0), "
+                        + "p.rating_average = COALESCE(r.rating_sum / r.rating_count, 0)" + assignments);
+        log.info("Recomputed rating aggregates for {} products", updated);
+        return updated;
+    }
+
+    // oldRating is null for a new review, newRating is null for a deleted one
+    private void applyRatingChange(Long productId, Integer oldRating, Integer newRating) {
+        int countDelta = (newRating != null ? 1 : 0) - (oldRating != null ? 1 : 0);
+        int sumDelta = (newRating != null ? newRating : 0) - (oldRating != null ? oldRating : 0);
+
+        // The average is assigned first so it is computed from the old values on every database
+        StringBuilder sql = new StringBuilder("UPDATE products SET "
+                + "rating_average = COALESCE((rating_sum + ?) / NULLIF(rating_count + ?, 0), 0), "
+                + "rating_count = rating_count + ?, rating_sum = rating_sum + ?");
+        if (!Objects.equals(oldRating, newRating)) {
+            if (oldRating != null) {
+                String column = RatingHistogram.columnFor(oldRating);
+                sql.append(", ").append(column).append(" = ").append(column).append(" - 1");
+            }
+            if (newRating != null) {
+                String column = RatingHistogram.columnFor(newRating);
+                sql.append(", ").append(column).append(" = ").append(column).append(" + 1");
+            }
+        }
+        sql.append(" WHERE id = ?");
+
+        jdbcTemplate.update(sql.toString(), sumDelta, countDelta, countDelta, sumDelta, productId);
+    }
+}
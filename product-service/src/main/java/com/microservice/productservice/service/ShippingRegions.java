@@ -0,0 +1,73 @@
+package com.microservice.productservice.service;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps a free-text Vietnamese ship address (Invoice.shipAddress) to a shipping region: NORTH, CENTRAL or SOUTH.
+ */
+public final class ShippingRegions {
+
+    public static final String NORTH = "NORTH";
+    public static final String CENTRAL = "CENTRAL";
+    public static final String SOUTH = "SOUTH";
+
+    // Province (without diacritics) -> region, plus common short forms
+    private static final Map<String, String> PROVINCES = new LinkedHashMap<>();
+
+    static {
+        register(NORTH, "ha noi", "hai phong", "quang ninh", "bac ninh", "bac giang", "hai duong", "hung yen",
+                "thai binh", "nam dinh", "ninh binh", "ha nam", "vinh phuc", "phu tho", "thai nguyen", "bac kan",
+                "cao bang", "lang son", "tuyen quang", "ha giang", "yen bai", "lao cai", "lai chau", "dien bien",
+                "son la", "hoa binh");
+        register(CENTRAL, "thanh hoa", "nghe an", "ha tinh", "quang binh", "quang tri", "thua thien hue", "hue",
+                "da nang", "quang nam", "quang ngai", "binh dinh", "phu yen", "khanh hoa", "nha trang",
+                "ninh thuan", "binh thuan", "kon tum", "gia lai", "dak lak", "dak nong", "lam dong", "da lat");
+        register(SOUTH, "ho chi minh", "hcm", "tphcm", "sai gon", "saigon", "binh duong", "dong nai",
+                "ba ria vung tau", "vung tau", "binh phuoc", "tay ninh", "long an", "tien giang", "ben tre",
+                "tra vinh", "vinh long", "dong thap", "an giang", "kien giang", "can tho", "hau giang",
+                "soc trang", "bac lieu", "ca mau");
+    }
+
+    private ShippingRegions() {
+    }
+
+    private static void register(String region, String... provinces) {
+        for (String province : provinces) {
+            PROVINCES.put(province, region);
+        }
+    }
+
+    /**
+     * @return the region of the province named in the address, or null if none is recognised
+     */
+    public static String resolve(String shipAddress) {
+        if (shipAddress == null || shipAddress.isBlank()) {
+            return null;
+        }
+
+        // The province is normally the last part; checking from the end avoids streets named after provinces
+        List<String> parts = List.of(shipAddress.split("[,\\n]"));
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            String part = " " + normalize(parts.get(i)) + " ";
+            for (Map.Entry<String, String> province : PROVINCES.entrySet()) {
+                if (part.contains(" " + province.getKey() + " ")) {
+                    return province.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    static String normalize(String text) {
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT);
+        return stripped.replaceAll("[^a-z0-9]+", " ").trim();
+    }
+}
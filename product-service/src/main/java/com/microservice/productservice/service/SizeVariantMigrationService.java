@@ -0,0 +1,171 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.SizeStock;
+import com.microservice.productservice.repository.ProductDemandRepository;
+import com.microservice.productservice.repository.ProductRepository;
+import com.microservice.productservice.repository.ReviewRepository;
+import com.microservice.productservice.service.InventoryLedgerService.OnHand;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One-off migration from the old "one product row per size" catalog to size-tracked products.
+ * Rows whose names end in a supported EU size (e.g. "Air Max 90 - 42", "Air Max 90 (EU 43)") are grouped
+ * by base name, brand and category and folded into the lowest id of the group; the other rows are deleted.
+ * Reviews and location stock of a deleted row move to the surviving product first, and a MERGE catalog event
+ * sent after commit lets cart-service re-key cart lines and open checkouts that still name the old ids.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SizeVariantMigrationService {
+
+    // A separator is required so model numbers like "Air Max 90" are not read as sizes
+    private static final Pattern SIZE_SUFFIX = Pattern.compile(
+            "^(.*?\\S)[\\s\\-–/,(]+(?:(?:size|sz|eu)\\s*)?(3[6-9]|4[0-7])\\)?$",
+            Pattern.CASE_INSENSITIVE);
+
+    private final ProductRepository productRepository;
+    private final ProductSimilarityService productSimilarityService;
+    private final InventoryLedgerService inventoryLedger;
+    private final ReviewRepository reviewRepository;
+    private final ProductDemandRepository productDemandRepository;
+    private final ReviewService reviewService;
+    private final CatalogEventPublisher catalogEventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Transactional
+    public List<Map<String, Object>> migrate(boolean dryRun) {
+        Map<String, List<SizedRow>> groups = new LinkedHashMap<>();
+        for (Product product : productRepository.findAll()) {
+            if (product.isSizeTracked() || product.getProductName() == null) {
+                continue;
+            }
+            Matcher matcher = SIZE_SUFFIX.matcher(product.getProductName().trim());
+            if (!matcher.matches()) {
+                continue;
+            }
+            String baseName = matcher.group(1).trim();
+            String key = String.join("|", baseName.toLowerCase(Locale.ROOT),
+                    Objects.toString(product.getBrandName(), ""), Objects.toString(product.getCategory(), ""));
+            groups.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(new SizedRow(product, baseName, Integer.parseInt(matcher.group(2))));
+        }
+
+        List<Map<String, Object>> report = new ArrayList<>();
+        Map<Long, Map<Long, Integer>> merges = new LinkedHashMap<>();
+        for (List<SizedRow> rows : groups.values()) {
+            rows.sort(Comparator.comparing(row -> row.product().getId()));
+            Product target = rows.get(0).product();
+            String baseName = rows.get(0).baseName();
+
+            Product existing = productRepository.findByProductName(baseName);
+            if (existing != null && !Objects.equals(existing.getId(), target.getId())) {
+                log.warn("Skipping size migration for '{}': product {} already uses that name", baseName, existing.getId());
+                continue;
+            }
+
+            SizeStock sizeStock = new SizeStock();
+            List<Long> mergedIds = new ArrayList<>();
+            OnHand previous = OnHand.NONE;
+            for (SizedRow row : rows) {
+                OnHand onHand = inventoryLedger.onHand(row.product());
+                sizeStock.set(row.size(), sizeStock.get(row.size()) + Math.max(0, onHand.total()));
+                if (row.product() == target) {
+                    previous = onHand;
+                } else {
+                    mergedIds.add(row.product().getId());
+                }
+            }
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("productId", target.getId());
+            entry.put("productName", baseName);
+            entry.put("mergedIds", mergedIds);
+            entry.put("sizeStock", sizeStock.asMap());
+            report.add(entry);
+
+            if (dryRun) {
+                continue;
+            }
+
+            target.setProductName(baseName);
+            target.setSizeTracked(true);
+            target.setSizeStock(sizeStock);
+            target.setQuantity(sizeStock.total());
+            productRepository.save(target);
+            inventoryLedger.rebase(target, previous, "SIZE_MIGRATION");
+            productSimilarityService.onProductChanged(target);
+
+            Map<Long, Integer> mergedSizes = new LinkedHashMap<>();
+            for (SizedRow row : rows) {
+                Long productId = row.product().getId();
+                // Unsized location rows of the group become rows of the row's size on the surviving product
+                jdbcTemplate.update("UPDATE location_stock SET product_id = ?, size = ? WHERE product_id = ? AND size IS NULL",
+                        target.getId(), row.size(), productId);
+                mergedSizes.put(productId, row.size());
+                if (row.product() == target) {
+                    continue;
+                }
+                // A user who reviewed several sizes keeps the review already on the surviving product
+                jdbcTemplate.update("UPDATE reviews SET product_id = ? WHERE product_id = ? AND username NOT IN "
+                                + "(SELECT username FROM (SELECT username FROM reviews WHERE product_id = ?) kept)",
+                        target.getId(), productId, target.getId());
+                reviewRepository.deleteByProductId(productId);
+                productDemandRepository.deleteById(productId);
+                // Its stock was rebased onto the surviving product above
+                inventoryLedger.deleteEntries(productId);
+                productRepository.delete(row.product());
+                productSimilarityService.onProductDeleted(productId);
+            }
+            merges.put(target.getId(), mergedSizes);
+            log.info("Migrated {} size rows into product {} ({})", rows.size(), target.getId(), baseName);
+        }
+
+        if (!merges.isEmpty()) {
+            // Rating aggregates are per product row, and reviews just moved between rows
+            reviewService.recomputeAggregates();
+            publishMergesAfterCommit(merges);
+        }
+        return report;
+    }
+
+    private void publishMergesAfterCommit(Map<Long, Map<Long, Integer>> merges) {
+        Runnable publish = () -> merges.forEach((targetId, mergedSizes) -> {
+            try {
+                catalogEventPublisher.publishProductsMergedEvent(targetId, mergedSizes);
+            } catch (Exception e) {
+                log.error("Failed to publish merge of {} into product {}: {}", mergedSizes.keySet(), targetId, e.getMessage(), e);
+            }
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
+    }
+
+    private record SizedRow(Product product, String baseName, int size) {
+    }
+}
@@ -0,0 +1,231 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.AllocationRequestDto;
+import com.microservice.productservice.dto.AllocationResultDto;
+import com.microservice.productservice.dto.OrderItemDto;
+import com.microservice.productservice.dto.ShipmentDto;
+import com.microservice.productservice.entity.LocationStock;
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.entity.SizeStock;
+import com.microservice.productservice.entity.StockLocation;
+import com.microservice.productservice.repository.LocationStockRepository;
+import com.microservice.productservice.repository.ProductRepository;
+import com.microservice.productservice.repository.StockLocationRepository;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps per-location stock as in-memory vectors (one int per active location for every SKU)
+ * and plans which locations ship an order.
+ */
+@Service
+@Slf4j
+public class StockAllocationService {
+
+    private static final Set<String> REGIONS = Set.of(ShippingRegions.NORTH, ShippingRegions.CENTRAL, ShippingRegions.SOUTH);
+
+    private final StockLocationRepository stockLocationRepository;
+    private final LocationStockRepository locationStockRepository;
+    private final ProductRepository productRepository;
+    private final StockAllocator allocator;
+
+    private volatile StockIndex index;
+
+    public StockAllocationService(StockLocationRepository stockLocationRepository,
+                                  LocationStockRepository locationStockRepository,
+                                  ProductRepository productRepository,
+                                  @Value("${inventory.allocation.pair-candidates:64}") int pairCandidates) {
+        this.stockLocationRepository = stockLocationRepository;
+        this.locationStockRepository = locationStockRepository;
+        this.productRepository = productRepository;
+        this.allocator = new StockAllocator(pairCandidates);
+    }
+
+    private record Sku(long productId, Integer size) {
+    }
+
+    // Vectors are replaced, never written in place, so a running allocation sees consistent stock
+    private record StockIndex(List<StockAllocator.Location> locations, Map<Long, Integer> positions,
+                              Map<Sku, int[]> stock) {
+    }
+
+    public AllocationResultDto allocate(AllocationRequestDto request) {
+        String region = request.getRegion() != null && !request.getRegion().isBlank()
+                ? request.getRegion().trim().toUpperCase(Locale.ROOT)
+                : ShippingRegions.resolve(request.getShipAddress());
+
+        Map<Sku, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItemDto item : request.getItems()) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Each item needs a productId and a positive quantity");
+            }
+            quantities.merge(new Sku(item.getProductId(), item.getSize()), item.getQuantity(), Integer::sum);
+        }
+
+        long start = System.nanoTime();
+        StockIndex current = index();
+        List<StockAllocator.Line> lines = new ArrayList<>();
+        List<int[]> stock = new ArrayList<>();
+        quantities.forEach((sku, quantity) -> {
+            lines.add(new StockAllocator.Line(sku.productId(), sku.size(), quantity));
+            int[] vector = current.stock().get(sku);
+            if (vector == null && sku.size() != null) {
+                // Products that do not track sizes are stocked without one
+                vector = current.stock().get(new Sku(sku.productId(), null));
+            }
+            stock.add(vector);
+        });
+
+        StockAllocator.Plan plan = allocator.allocate(current.locations(), region, lines, stock);
+        long durationMicros = (System.nanoTime() - start) / 1_000;
+
+        List<ShipmentDto> shipments = plan.shipments().stream()
+                .map(shipment -> ShipmentDto.builder()
+                        .locationId(shipment.location().id())
+                        .locationCode(shipment.location().code())
+                        .region(shipment.location().region())
+                        .items(toItems(shipment.lines()))
+                        .build())
+                .toList();
+
+        log.info("Allocated {} lines to {} shipments (region={}, complete={}) in {} µs",
+                lines.size(), shipments.size(), region, plan.unfilled().isEmpty(), durationMicros);
+
+        return AllocationResultDto.builder()
+                .region(region)
+                .shipmentCount(shipments.size())
+                .shipments(shipments)
+                .unfilled(toItems(plan.unfilled()))
+                .complete(plan.unfilled().isEmpty())
+                .durationMicros(durationMicros)
+                .build();
+    }
+
+    public List<StockLocation> getLocations() {
+        return stockLocationRepository.findAll();
+    }
+
+    public StockLocation saveLocation(StockLocation location) {
+        if (location.getCode() == null || location.getCode().isBlank()) {
+            throw new IllegalArgumentException("Location code is required");
+        }
+        if (location.getRegion() == null || !REGIONS.contains(location.getRegion().toUpperCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("Location region must be one of " + REGIONS);
+        }
+        if (location.getId() == null && stockLocationRepository.existsByCode(location.getCode())) {
+            throw new IllegalArgumentException("Location code already exists: " + location.getCode());
+        }
+        location.setRegion(location.getRegion().toUpperCase(Locale.ROOT));
+
+        StockLocation saved = stockLocationRepository.save(location);
+        log.info("Saved stock location {} ({}, region {})", saved.getId(), saved.getCode(), saved.getRegion());
+        refresh();
+        return saved;
+    }
+
+    public List<LocationStock> getProductStock(Long productId) {
+        return locationStockRepository.findByProductId(productId);
+    }
+
+    /**
+     * Sets the absolute stock of one SKU at one location and updates the in-memory vector.
+     */
+    public LocationStock setLocationStock(Long locationId, Long productId, Integer size, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Stock cannot be negative: " + quantity);
+        }
+        if (!stockLocationRepository.existsById(locationId)) {
+            throw new EntityNotFoundException("Stock location not found with id: " + locationId);
+        }
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + productId));
+        if (product.isSizeTracked() && !SizeStock.isSupported(size)) {
+            throw new IllegalArgumentException("Product " + productId + " tracks stock per size; a valid size is required");
+        }
+        Integer skuSize = product.isSizeTracked() ? size : null;
+
+        LocationStock stock = locationStockRepository.findSku(locationId, productId, skuSize)
+                .orElseGet(() -> LocationStock.builder().locationId(locationId).productId(productId).size(skuSize).build());
+        stock.setQuantity(quantity);
+        LocationStock saved = locationStockRepository.save(stock);
+
+        updateVector(locationId, new Sku(productId, skuSize), quantity);
+        return saved;
+    }
+
+    @Scheduled(initialDelayString = "${inventory.allocation.refresh-interval-ms:300000}",
+               fixedDelayString = "${inventory.allocation.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Failed to refresh location stock: {}", e.getMessage(), e);
+        }
+    }
+
+    public synchronized void refresh() {
+        List<StockLocation> active = stockLocationRepository.findByActiveTrueOrderByPriorityAscIdAsc();
+        List<StockAllocator.Location> locations = new ArrayList<>(active.size());
+        Map<Long, Integer> positions = new HashMap<>();
+        for (StockLocation location : active) {
+            positions.put(location.getId(), locations.size());
+            locations.add(new StockAllocator.Location(location.getId(), location.getCode(),
+                    location.getRegion(), location.getPriority()));
+        }
+
+        Map<Sku, int[]> stock = new ConcurrentHashMap<>();
+        for (LocationStock row : locationStockRepository.findByQuantityGreaterThan(0)) {
+            Integer position = positions.get(row.getLocationId());
+            if (position != null) {
+                stock.computeIfAbsent(new Sku(row.getProductId(), row.getSize()), sku -> new int[locations.size()])
+                        [position] = row.getQuantity();
+            }
+        }
+
+        index = new StockIndex(List.copyOf(locations), positions, stock);
+        log.info("Loaded stock vectors: {} locations, {} SKUs", locations.size(), stock.size());
+    }
+
+    private synchronized void updateVector(Long locationId, Sku sku, int quantity) {
+        StockIndex current = index();
+        Integer position = current.positions().get(locationId);
+        if (position == null) {
+            return; // inactive location
+        }
+        int[] vector = current.stock().get(sku);
+        int[] updated = vector != null ? vector.clone() : new int[current.locations().size()];
+        updated[position] = quantity;
+        current.stock().put(sku, updated);
+    }
+
+    private StockIndex index() {
+        StockIndex current = index;
+        if (current == null) {
+            refresh();
+            current = index;
+        }
+        return current;
+    }
+
+    private static List<OrderItemDto> toItems(List<StockAllocator.Line> lines) {
+        return lines.stream()
+                .map(line -> OrderItemDto.builder()
+                        .productId(line.productId())
+                        .size(line.size())
+                        .quantity(line.quantity())
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,215 @@
+package com.microservice.productservice.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits an order across stock locations with as few shipments as possible.
+ * Works on plain stock vectors (one int per location and order line), so a typical cart is planned in microseconds:
+ * <ol>
+ *     <li>one location that has everything, preferring the ship-to region and then location priority</li>
+ *     <li>otherwise the best pair among the locations covering the most units (exact for two shipments)</li>
+ *     <li>otherwise greedy set cover: repeatedly take the location covering the most remaining units</li>
+ * </ol>
+ * Lines can be split across shipments. Instances hold no per-call state and can be shared.
+ */
+public final class StockAllocator {
+
+    public record Location(long id, String code, String region, int priority) {
+    }
+
+    public record Line(long productId, Integer size, int quantity) {
+    }
+
+    public record Shipment(Location location, List<Line> lines) {
+    }
+
+    public record Plan(List<Shipment> shipments, List<Line> unfilled) {
+    }
+
+    private final int pairCandidates;
+
+    /**
+     * @param pairCandidates how many of the best covering locations are searched pairwise
+     */
+    public StockAllocator(int pairCandidates) {
+        this.pairCandidates = pairCandidates;
+    }
+
+    /**
+     * @param locations locations, indexed like the stock vectors
+     * @param region    ship-to region, or null if unknown
+     * @param lines     order lines, one per SKU
+     * @param stock     per line, the stock of that SKU at every location; null if no location has it
+     */
+    public Plan allocate(List<Location> locations, String region, List<Line> lines, List<int[]> stock) {
+        int lineCount = lines.size();
+        int[] need = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            need[i] = lines.get(i).quantity();
+        }
+
+        long[] rank = rank(locations, region);
+        List<Integer> candidates = new ArrayList<>();
+        int[] covered = new int[locations.size()];
+        int totalNeed = Arrays.stream(need).sum();
+        boolean feasible = true;
+        for (int i = 0; i < lineCount; i++) {
+            if (available(stock.get(i)) < need[i]) {
+                feasible = false;
+            }
+        }
+        for (int location = 0; location < locations.size(); location++) {
+            covered[location] = coveredUnits(stock, need, location);
+            if (covered[location] > 0) {
+                candidates.add(location);
+            }
+        }
+
+        List<Integer> chosen = null;
+        if (feasible) {
+            chosen = single(candidates, covered, totalNeed, rank);
+            if (chosen == null) {
+                candidates.sort(Comparator.<Integer>comparingInt(location -> -covered[location])
+                        .thenComparingLong(location -> rank[location]));
+                chosen = pair(candidates, stock, need, rank);
+            }
+        }
+        if (chosen == null) {
+            chosen = greedy(candidates, stock, need, rank);
+        }
+        chosen.sort(Comparator.comparingLong(location -> rank[location]));
+
+        return assign(locations, lines, stock, need, chosen);
+    }
+
+    // Lower is better: locations in the ship-to region first, then by priority, then by position
+    private static long[] rank(List<Location> locations, String region) {
+        long[] rank = new long[locations.size()];
+        for (int i = 0; i < rank.length; i++) {
+            Location location = locations.get(i);
+            boolean local = region != null && region.equalsIgnoreCase(location.region());
+            rank[i] = ((local ? 0L : 1L) << 62) + ((long) location.priority() << 24) + i;
+        }
+        return rank;
+    }
+
+    private static List<Integer> single(List<Integer> candidates, int[] covered, int totalNeed, long[] rank) {
+        Integer best = null;
+        for (int location : candidates) {
+            if (covered[location] == totalNeed && (best == null || rank[location] < rank[best])) {
+                best = location;
+            }
+        }
+        return best == null ? null : new ArrayList<>(List.of(best));
+    }
+
+    private List<Integer> pair(List<Integer> candidates, List<int[]> stock, int[] need, long[] rank) {
+        int limit = Math.min(candidates.size(), pairCandidates);
+        int bestA = -1;
+        int bestB = -1;
+        long bestScore = Long.MAX_VALUE;
+        for (int a = 0; a < limit; a++) {
+            int first = candidates.get(a);
+            for (int b = a + 1; b < limit; b++) {
+                int second = candidates.get(b);
+                long score = Math.max(rank[first], rank[second]) + Math.min(rank[first], rank[second]) / 2;
+                if (score < bestScore && covers(stock, need, first, second)) {
+                    bestScore = score;
+                    bestA = first;
+                    bestB = second;
+                }
+            }
+        }
+        return bestA < 0 ? null : new ArrayList<>(List.of(bestA, bestB));
+    }
+
+    private static List<Integer> greedy(List<Integer> candidates, List<int[]> stock, int[] need, long[] rank) {
+        int[] remaining = need.clone();
+        List<Integer> chosen = new ArrayList<>();
+        List<Integer> open = new ArrayList<>(candidates);
+        while (!open.isEmpty() && Arrays.stream(remaining).sum() > 0) {
+            int bestIndex = -1;
+            int bestCovered = 0;
+            for (int i = 0; i < open.size(); i++) {
+                int location = open.get(i);
+                int units = coveredUnits(stock, remaining, location);
+                if (units > bestCovered || (units == bestCovered && units > 0 && rank[location] < rank[open.get(bestIndex)])) {
+                    bestIndex = i;
+                    bestCovered = units;
+                }
+            }
+            if (bestIndex < 0) {
+                break;
+            }
+            int location = open.remove(bestIndex);
+            chosen.add(location);
+            for (int line = 0; line < remaining.length; line++) {
+                remaining[line] -= Math.min(remaining[line], stockAt(stock, line, location));
+            }
+        }
+        return chosen;
+    }
+
+    private static Plan assign(List<Location> locations, List<Line> lines, List<int[]> stock,
+                               int[] need, List<Integer> chosen) {
+        int[] remaining = need.clone();
+        List<Shipment> shipments = new ArrayList<>();
+        for (int location : chosen) {
+            List<Line> picked = new ArrayList<>();
+            for (int line = 0; line < lines.size(); line++) {
+                int take = Math.min(remaining[line], stockAt(stock, line, location));
+                if (take > 0) {
+                    remaining[line] -= take;
+                    picked.add(new Line(lines.get(line).productId(), lines.get(line).size(), take));
+                }
+            }
+            if (!picked.isEmpty()) {
+                shipments.add(new Shipment(locations.get(location), picked));
+            }
+        }
+
+        List<Line> unfilled = new ArrayList<>();
+        for (int line = 0; line < lines.size(); line++) {
+            if (remaining[line] > 0) {
+                unfilled.add(new Line(lines.get(line).productId(), lines.get(line).size(), remaining[line]));
+            }
+        }
+        return new Plan(shipments, unfilled);
+    }
+
+    private static boolean covers(List<int[]> stock, int[] need, int first, int second) {
+        for (int line = 0; line < need.length; line++) {
+            if (stockAt(stock, line, first) + stockAt(stock, line, second) < need[line]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int coveredUnits(List<int[]> stock, int[] need, int location) {
+        int units = 0;
+        for (int line = 0; line < need.length; line++) {
+            units += Math.min(need[line], stockAt(stock, line, location));
+        }
+        return units;
+    }
+
+    private static int stockAt(List<int[]> stock, int line, int location) {
+        int[] vector = stock.get(line);
+        return vector == null || location >= vector.length ? 0 : Math.max(0, vector[location]);
+    }
+
+    private static long available(int[] vector) {
+        if (vector == null) {
+            return 0;
+        }
+        long total = 0;
+        for (int quantity : vector) {
+            total += Math.max(0, quantity);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,124 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.dto.OrderEvent;
+import com.microservice.productservice.dto.OrderItemDto;
+import com.microservice.productservice.dto.ProductInventoryChangeDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Order events with several order consumers: the products are locked in id order, and only then is the
+ * ledger asked whether the event or checkout already moved stock, so two deliveries cannot both take it.
+ */
+class EventListenerServiceTest {
+
+    private ProductService productService;
+    private InventoryLedgerService inventoryLedger;
+    private CheckoutEventPublisher checkoutEventPublisher;
+    private InventoryEventPublisher inventoryEventPublisher;
+    private EventListenerService listener;
+
+    @BeforeEach
+    void setUp() {
+        productService = mock(ProductService.class);
+        inventoryLedger = mock(InventoryLedgerService.class);
+        checkoutEventPublisher = mock(CheckoutEventPublisher.class);
+        inventoryEventPublisher = mock(InventoryEventPublisher.class);
+        listener = new EventListenerService(productService, inventoryEventPublisher,
+                inventoryLedger, checkoutEventPublisher);
+    }
+
+    @Test
+    void reservationLocksProductsInIdOrderBeforeCheckingForAnEarlierOne() {
+        when(productService.applyStockChange(anyLong(), any(), anyInt(), anyString(), anyString()))
+                .thenAnswer(call -> ProductInventoryChangeDto.builder()
+                        .productId(call.getArgument(0))
+                        .changeAmount(call.getArgument(2))
+                        .build());
+
+        listener.handleOrderEvent(reservation("checkout-1", 7L, 3L, 5L, 3L));
+
+        InOrder order = inOrder(inventoryLedger, productService);
+        order.verify(inventoryLedger).lock(3L);
+        order.verify(inventoryLedger).lock(5L);
+        order.verify(inventoryLedger).lock(7L);
+        order.verify(inventoryLedger).hasEntries(EventListenerService.ORDER_RESERVE_REQUESTED, "checkout-1");
+        order.verify(productService).applyStockChange(eq(7L), any(), eq(-1), anyString(), eq("checkout-1"));
+        verify(checkoutEventPublisher).publishReservationResult("checkout-1", true, null);
+    }
+
+    @Test
+    void redeliveredReservationTakesNoStock() {
+        when(inventoryLedger.hasEntries(EventListenerService.ORDER_RESERVE_REQUESTED, "checkout-2")).thenReturn(true);
+
+        listener.handleOrderEvent(reservation("checkout-2", 4L, 2L));
+
+        InOrder order = inOrder(inventoryLedger);
+        order.verify(inventoryLedger).lock(2L);
+        order.verify(inventoryLedger).lock(4L);
+        order.verify(inventoryLedger).hasEntries(EventListenerService.ORDER_RESERVE_REQUESTED, "checkout-2");
+        verify(productService, never()).applyStockChange(anyLong(), any(), anyInt(), anyString(), anyString());
+        verify(checkoutEventPublisher).publishReservationResult("checkout-2", true, null);
+    }
+
+    @Test
+    void redeliveredOrderTakesNoStock() {
+        when(inventoryLedger.hasEntries("ORDER_PLACED", "order-1")).thenReturn(true);
+
+        listener.handleOrderEvent(order("order-1", 9L, 6L));
+
+        InOrder order = inOrder(inventoryLedger);
+        order.verify(inventoryLedger).lock(6L);
+        order.verify(inventoryLedger).lock(9L);
+        order.verify(inventoryLedger).hasEntries("ORDER_PLACED", "order-1");
+        verify(productService, never()).applyStockChange(anyLong(), any(), anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    void persistenceFailureDropsTheWholeOrder() {
+        when(productService.applyStockChange(anyLong(), any(), anyInt(), anyString(), anyString()))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry for key 'uk_inventory_ledger_movement'"));
+
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> listener.handleOrderEvent(order("order-2", 1L, 2L)));
+        verify(productService).applyStockChange(anyLong(), any(), anyInt(), anyString(), anyString());
+        verify(inventoryEventPublisher, never()).publishInventoryChangedEvent(any(), any(), any());
+    }
+
+    private static OrderEvent order(String eventId, Long... productIds) {
+        return OrderEvent.builder()
+                .eventId(eventId)
+                .eventType("ORDER_PLACED")
+                .items(Arrays.stream(productIds)
+                        .map(productId -> OrderItemDto.builder().productId(productId).quantity(1).build())
+                        .toList())
+                .build();
+    }
+
+    private static OrderEvent reservation(String checkoutId, Long... productIds) {
+        return OrderEvent.builder()
+                .eventId("event-" + checkoutId)
+                .eventType(EventListenerService.ORDER_RESERVE_REQUESTED)
+                .checkoutId(checkoutId)
+                .items(Arrays.stream(productIds)
+                        .map(productId -> OrderItemDto.builder().productId(productId).quantity(1).build())
+                        .toList())
+                .build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.microservice.productservice.service.Impl;
+
+import com.microservice.productservice.dto.ProductRequestDto;
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.repository.LocationStockRepository;
+import com.microservice.productservice.repository.ProductDemandRepository;
+import com.microservice.productservice.repository.ProductRepository;
+import com.microservice.productservice.repository.ReviewRepository;
+import com.microservice.productservice.service.CatalogEventPublisher;
+import com.microservice.productservice.service.InventoryEventPublisher;
+import com.microservice.productservice.service.InventoryLedgerService;
+import com.microservice.productservice.service.ProductSimilarityService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Rows keyed by a product go with it, and a new product is announced like an edited one, so
+ * near-caches and the similarity index of other services pick it up.
+ */
+class ProductServiceImplTest {
+
+    private ProductRepository productRepository;
+    private InventoryLedgerService inventoryLedger;
+    private LocationStockRepository locationStockRepository;
+    private ProductDemandRepository productDemandRepository;
+    private ReviewRepository reviewRepository;
+    private CatalogEventPublisher catalogEventPublisher;
+    private ProductServiceImpl productService;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        inventoryLedger = mock(InventoryLedgerService.class);
+        locationStockRepository = mock(LocationStockRepository.class);
+        productDemandRepository = mock(ProductDemandRepository.class);
+        reviewRepository = mock(ReviewRepository.class);
+        catalogEventPublisher = mock(CatalogEventPublisher.class);
+        productService = new ProductServiceImpl(productRepository, mock(InventoryEventPublisher.class),
+                mock(ProductSimilarityService.class), inventoryLedger, reviewRepository, catalogEventPublisher,
+                locationStockRepository, productDemandRepository);
+    }
+
+    @Test
+    void deletingAProductDeletesItsLedgerLocationStockAndDemand() {
+        when(productRepository.existsById(7L)).thenReturn(true);
+
+        productService.deleteProduct(7L);
+
+        InOrder order = inOrder(inventoryLedger, locationStockRepository, productDemandRepository, productRepository);
+        order.verify(inventoryLedger).lock(7L);
+        order.verify(inventoryLedger).deleteEntries(7L);
+        order.verify(locationStockRepository).deleteByProductId(7L);
+        order.verify(productDemandRepository).deleteById(7L);
+        order.verify(productRepository).deleteById(7L);
+        verify(reviewRepository).deleteByProductId(7L);
+        verify(catalogEventPublisher).publishCatalogChangedEvent("DELETE", List.of(7L));
+    }
+
+    @Test
+    void addingAProductPublishesACatalogEvent() {
+        when(productRepository.save(any(Product.class))).thenAnswer(call -> {
+            Product product = call.getArgument(0);
+            product.setId(12L);
+            return product;
+        });
+        ProductRequestDto request = new ProductRequestDto();
+        request.setProductName("Runner");
+        request.setProductPrice(new BigDecimal("59.00"));
+        request.setQuantity(10);
+        request.setReorderLevel(5);
+
+        productService.addNewProductDto(request);
+
+        verify(catalogEventPublisher).publishCatalogChangedEvent("CREATE", List.of(12L));
+    }
+}
@@ -0,0 +1,181 @@
+package com.microservice.productservice.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Contention on one hot product: an in-place conditional UPDATE of products.quantity against a ledger
+ * append as InventoryLedgerService does it (row lock, tail read, insert), and against a bare ledger insert.
+ * The bare insert does not check stock; it shows what the lock costs.
+ * <p>
+ * Needs a MySQL schema it may create tables in:
+ * {@code mvn test -Dtest=InventoryLedgerContentionBenchmark -Dbenchmark.jdbc-url=jdbc:mysql://localhost:3306/bench
+ * -Dbenchmark.jdbc-user=root -Dbenchmark.jdbc-password=...}
+ */
+@EnabledIfSystemProperty(named = "benchmark.jdbc-url", matches = ".+")
+class InventoryLedgerContentionBenchmark {
+
+    private static final int[] THREADS = {1, 8, 32};
+    private static final int OPS_PER_THREAD = 500;
+
+    @BeforeAll
+    static void createTables() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_inventory_ledger");
+            statement.execute("DROP TABLE IF EXISTS bench_products");
+            statement.execute("CREATE TABLE bench_products (id BIGINT PRIMARY KEY, quantity INT NOT NULL, "
+                    + "ledger_watermark BIGINT NOT NULL DEFAULT 0) ENGINE=InnoDB");
+            statement.execute("CREATE TABLE bench_inventory_ledger (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "product_id BIGINT NOT NULL, delta INT NOT NULL, KEY idx_product (product_id, id)) ENGINE=InnoDB");
+        }
+    }
+
+    @AfterAll
+    static void dropTables() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_inventory_ledger");
+            statement.execute("DROP TABLE IF EXISTS bench_products");
+        }
+    }
+
+    @Test
+    void rowUpdateVersusLedgerAppend() throws Exception {
+        System.out.printf("%-16s %8s %12s %10s %10s%n", "path", "threads", "ops/s", "p50 us", "p99 us");
+        for (int threads : THREADS) {
+            run("row-update", threads, connection -> {
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE bench_products SET quantity = quantity - 1 WHERE id = 1 AND quantity >= 1")) {
+                    return update.executeUpdate() == 1;
+                }
+            });
+            run("ledger-locked", threads, connection -> {
+                connection.setAutoCommit(false);
+                try {
+                    int onHand;
+                    try (PreparedStatement lock = connection.prepareStatement(
+                            "SELECT quantity, ledger_watermark FROM bench_products WHERE id = 1 FOR UPDATE");
+                         ResultSet row = lock.executeQuery()) {
+                        row.next();
+                        onHand = row.getInt(1) + tail(connection, row.getLong(2));
+                    }
+                    boolean taken = onHand >= 1;
+                    if (taken) {
+                        insert(connection);
+                    }
+                    connection.commit();
+                    return taken;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            });
+            run("ledger-unlocked", threads, connection -> {
+                insert(connection);
+                return true;
+            });
+        }
+    }
+
+    private void run(String path, int threads, Operation operation) throws Exception {
+        int stock = threads * OPS_PER_THREAD;
+        reset(stock);
+
+        long[] latencies = new long[threads * OPS_PER_THREAD];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger taken = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try (Connection connection = connect()) {
+                    start.await();
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        long begin = System.nanoTime();
+                        if (operation.apply(connection)) {
+                            taken.incrementAndGet();
+                        }
+                        latencies[next.getAndIncrement()] = System.nanoTime() - begin;
+                    }
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%-16s %8d %12.0f %10d %10d%n", path, threads,
+                latencies.length / (elapsed / 1e9),
+                latencies[latencies.length / 2] / 1000,
+                latencies[(int) (latencies.length * 0.99)] / 1000);
+        // Exactly as much stock as there are operations: none may fail, and none may go below zero
+        assertEquals(stock, taken.get(), path);
+    }
+
+    private static void reset(int stock) throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM bench_inventory_ledger");
+            statement.execute("DELETE FROM bench_products");
+            statement.execute("INSERT INTO bench_products (id, quantity, ledger_watermark) VALUES (1, " + stock + ", 0)");
+        }
+    }
+
+    private static int tail(Connection connection, long watermark) throws SQLException {
+        try (PreparedStatement sum = connection.prepareStatement(
+                "SELECT COALESCE(SUM(delta), 0) FROM bench_inventory_ledger WHERE product_id = 1 AND id > ?")) {
+            sum.setLong(1, watermark);
+            try (ResultSet rs = sum.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static void insert(Connection connection) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO bench_inventory_ledger (product_id, delta) VALUES (1, -1)")) {
+            insert.executeUpdate();
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        Connection connection = DriverManager.getConnection(System.getProperty("benchmark.jdbc-url"),
+                System.getProperty("benchmark.jdbc-user", "root"), System.getProperty("benchmark.jdbc-password", ""));
+        connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return connection;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        boolean apply(Connection connection) throws SQLException;
+    }
+}
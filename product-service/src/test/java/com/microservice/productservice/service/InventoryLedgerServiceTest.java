@@ -0,0 +1,100 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.entity.InventoryLedgerEntry;
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.repository.InventoryLedgerRepository;
+import com.microservice.productservice.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reconciliation repairs against a ledger that enforces uk_inventory_ledger_movement, so a repair that
+ * reused an earlier movement's key would fail the way MySQL fails it.
+ */
+class InventoryLedgerServiceTest {
+
+    private static final long PRODUCT_ID = 7L;
+    private static final int SIZE = 42;
+
+    private final List<InventoryLedgerEntry> entries = new ArrayList<>();
+    private InventoryLedgerService ledger;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InventoryLedgerRepository ledgerRepository = mock(InventoryLedgerRepository.class);
+        Set<List<Object>> movements = new HashSet<>();
+        when(ledgerRepository.save(any(InventoryLedgerEntry.class))).thenAnswer(call -> {
+            InventoryLedgerEntry entry = call.getArgument(0);
+            if (!movements.add(List.of(entry.getReason(), entry.getReference(), entry.getProductId(), entry.getSize()))) {
+                throw new DataIntegrityViolationException("Duplicate entry for key 'uk_inventory_ledger_movement'");
+            }
+            entries.add(entry);
+            return entry;
+        });
+
+        // The product holds 3 more of size 42 than its folded ledger entries, every time it is checked
+        Product product = new Product();
+        product.setId(PRODUCT_ID);
+        product.setProductName("Runner");
+        product.setSizeTracked(true);
+        product.getSizeStock().set(SIZE, 8);
+        product.setQuantity(8);
+        product.setLedgerWatermark(100L);
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findAll()).thenReturn(List.of(product));
+
+        ResultSet folded = mock(ResultSet.class);
+        when(folded.getLong(1)).thenReturn(PRODUCT_ID);
+        when(folded.getObject(2)).thenReturn(SIZE);
+        when(folded.getInt(3)).thenReturn(5);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(call -> {
+            call.getArgument(1, RowCallbackHandler.class).processRow(folded);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(1);
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(call -> new SimpleTransactionStatus());
+
+        ledger = new InventoryLedgerService(ledgerRepository, productRepository, jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    void repairsTheSameSkuAgainWhenItDriftsAgain() {
+        List<Map<String, Object>> first = ledger.reconcile(true);
+        List<Map<String, Object>> second = ledger.reconcile(true);
+
+        assertEquals(true, first.get(0).get("repaired"));
+        assertEquals(true, second.get(0).get("repaired"));
+        assertEquals(2, entries.size());
+        for (InventoryLedgerEntry entry : entries) {
+            assertEquals(InventoryLedgerService.CORRECTION, entry.getReason());
+            assertEquals(SIZE, entry.getSize());
+            assertEquals(3, entry.getDelta());
+            assertTrue(entry.getReference().startsWith(InventoryLedgerService.RECONCILIATION_REFERENCE));
+        }
+        assertNotEquals(entries.get(0).getReference(), entries.get(1).getReference());
+    }
+}
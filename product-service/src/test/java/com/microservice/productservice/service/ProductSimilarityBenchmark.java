@@ -0,0 +1,95 @@
+package com.microservice.productservice.service;
+
+import com.microservice.productservice.entity.Product;
+import com.microservice.productservice.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Full rebuild of the similarity index on one core over synthetic catalogs: 2,000 products with the exact
+ * all-pairs pass, 10,000 and 100,000 with LSH candidates, then the average neighbour lookup.
+ * Descriptions are 40 words drawn from a skewed vocabulary of 3,000, over 8 categories and 40 brands.
+ * Not part of the default test run: {@code mvn test -Dtest=ProductSimilarityBenchmark}
+ */
+class ProductSimilarityBenchmark {
+
+    private static final String[] CATEGORIES =
+            {"basketball", "running", "lifestyle", "skate", "football", "tennis", "training", "hiking"};
+    private static final int EXACT_THRESHOLD = 2000;
+    private static final int NEIGHBOURS = 8;
+    private static final int LOOKUPS = 100_000;
+
+    @Test
+    void rebuildTimeByCatalogSize() {
+        System.out.printf("%10s %8s %10s %12s%n", "products", "pass", "build ms", "lookup ns");
+        // The first build warms up the JIT and is not reported
+        run(EXACT_THRESHOLD, false);
+        run(EXACT_THRESHOLD, true);
+        run(10_000, true);
+        run(100_000, true);
+    }
+
+    private void run(int size, boolean report) {
+        List<Product> catalog = catalog(size);
+        ProductRepository repository = (ProductRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findAll") && (args == null || args.length == 0)) {
+                        return new ArrayList<>(catalog);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        ProductSimilarityService similarity = new ProductSimilarityService(repository, 1);
+        ReflectionTestUtils.setField(similarity, "neighbourCount", NEIGHBOURS);
+        ReflectionTestUtils.setField(similarity, "exactThreshold", EXACT_THRESHOLD);
+        ReflectionTestUtils.setField(similarity, "maxBucketSize", 256);
+        try {
+            long start = System.nanoTime();
+            similarity.rebuild();
+            long buildNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                similarity.findSimilarProductIds(1L + i % size, NEIGHBOURS);
+            }
+            long lookupNanos = (System.nanoTime() - start) / LOOKUPS;
+
+            assertEquals(NEIGHBOURS, similarity.findSimilarProductIds(1L, NEIGHBOURS).size());
+            if (report) {
+                System.out.printf("%10d %8s %10d %12d%n", size, size <= EXACT_THRESHOLD ? "exact" : "LSH",
+                        buildNanos / 1_000_000, lookupNanos);
+            }
+        } finally {
+            similarity.shutdown();
+        }
+    }
+
+    private static List<Product> catalog(int size) {
+        Random random = new Random(42);
+        List<Product> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = new Product();
+            product.setId(i + 1L);
+            product.setProductName("Product " + (i + 1));
+            product.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            product.setBrandName("brand" + random.nextInt(40));
+            product.setDesigner("designer" + random.nextInt(200));
+            product.setProductPrice(BigDecimal.valueOf(500_000 + random.nextInt(5_000_000)));
+            StringBuilder description = new StringBuilder();
+            for (int w = 0; w < 40; w++) {
+                // Most words come from the first few hundred, like real product copy
+                description.append("word").append((int) Math.abs(random.nextGaussian() * 500) % 3000).append(' ');
+            }
+            product.setDescription(description.toString());
+            catalog.add(product);
+        }
+        return catalog;
+    }
+}
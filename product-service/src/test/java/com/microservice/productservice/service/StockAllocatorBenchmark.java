@@ -0,0 +1,83 @@
+package com.microservice.productservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocation latency over 1,000 synthetic locations and 5,000 SKUs, for carts of 1-10 lines.
+ * Stock is dense (half the locations hold a SKU), sparse (5%) or scarce (1%, one or two units).
+ * Not part of the default test run: {@code mvn test -Dtest=StockAllocatorBenchmark}
+ */
+class StockAllocatorBenchmark {
+
+    private static final String[] REGIONS = {"NORTH", "CENTRAL", "SOUTH"};
+    private static final int LOCATIONS = 1000;
+    private static final int SKUS = 5000;
+    private static final int WARMUP = 5000;
+    private static final int MEASURED = 20000;
+    private static final long BUDGET_NANOS = 2_000_000;
+
+    @Test
+    void allocateAcrossThousandLocations() {
+        Random random = new Random(42);
+        List<StockAllocator.Location> locations = new ArrayList<>();
+        for (int i = 0; i < LOCATIONS; i++) {
+            locations.add(new StockAllocator.Location(i + 1, "L" + i, REGIONS[i % REGIONS.length], random.nextInt(5)));
+        }
+        StockAllocator allocator = new StockAllocator(64);
+
+        run("dense", 0.5, 10, random, locations, allocator);
+        run("sparse", 0.05, 10, random, locations, allocator);
+        run("scarce", 0.01, 2, random, locations, allocator);
+    }
+
+    private void run(String scenario, double held, int maxUnits, Random random,
+                     List<StockAllocator.Location> locations, StockAllocator allocator) {
+        int[][] stock = new int[SKUS][LOCATIONS];
+        for (int[] sku : stock) {
+            for (int l = 0; l < LOCATIONS; l++) {
+                if (random.nextDouble() < held) {
+                    sku[l] = 1 + random.nextInt(maxUnits);
+                }
+            }
+        }
+
+        long[] latencies = new long[MEASURED];
+        int shipments = 0;
+        int incomplete = 0;
+        for (int i = 0; i < WARMUP + MEASURED; i++) {
+            int lineCount = 1 + random.nextInt(10);
+            List<StockAllocator.Line> lines = new ArrayList<>(lineCount);
+            List<int[]> vectors = new ArrayList<>(lineCount);
+            for (int j = 0; j < lineCount; j++) {
+                int sku = random.nextInt(SKUS);
+                lines.add(new StockAllocator.Line(sku, null, 1 + random.nextInt(3)));
+                vectors.add(stock[sku]);
+            }
+            String region = REGIONS[random.nextInt(REGIONS.length)];
+
+            long start = System.nanoTime();
+            StockAllocator.Plan plan = allocator.allocate(locations, region, lines, vectors);
+            long elapsed = System.nanoTime() - start;
+
+            if (i >= WARMUP) {
+                latencies[i - WARMUP] = elapsed;
+                shipments += plan.shipments().size();
+                incomplete += plan.unfilled().isEmpty() ? 0 : 1;
+            }
+        }
+
+        Arrays.sort(latencies);
+        long p99 = latencies[(int) (MEASURED * 0.99)];
+        System.out.printf("%-6s %d locations, 1-10 lines: p50=%.1fus p99=%.1fus max=%.1fus avgShipments=%.2f incomplete=%d/%d%n",
+                scenario, LOCATIONS, latencies[MEASURED / 2] / 1e3, p99 / 1e3, latencies[MEASURED - 1] / 1e3,
+                shipments / (double) MEASURED, incomplete, MEASURED);
+        assertTrue(p99 < BUDGET_NANOS, scenario + " p99 " + p99 / 1000 + "us is over the 2ms budget");
+    }
+}